@@ -0,0 +1,87 @@
+package org.deepsymmetry.beatlink;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.net.DatagramPacket;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+
+/**
+ * Loads the recorded packets which the benchmarks parse. Each fixture is a text resource in the {@code fixtures}
+ * folder containing the packet bytes in hexadecimal, with comment lines starting with {@code #} describing where
+ * it came from.
+ *
+ * @author James Elliott
+ * @since 0.6.3
+ */
+public final class Fixtures {
+
+    /**
+     * Prevent instantiation.
+     */
+    private Fixtures() {
+        // Nothing to do.
+    }
+
+    /**
+     * Read the bytes of a fixture packet.
+     *
+     * @param name the name of the fixture, without its folder or {@code .hex} extension
+     *
+     * @return the packet content
+     *
+     * @throws IOException if the fixture cannot be found or read
+     */
+    public static byte[] load(String name) throws IOException {
+        final InputStream stream = Fixtures.class.getResourceAsStream("/fixtures/" + name + ".hex");
+        if (stream == null) {
+            throw new IOException("No fixture named " + name);
+        }
+        final ByteArrayOutputStream result = new ByteArrayOutputStream();
+        final BufferedReader reader = new BufferedReader(new InputStreamReader(stream, "UTF-8"));
+        try {
+            String line = reader.readLine();
+            while (line != null) {
+                line = line.trim();
+                if (!line.isEmpty() && !line.startsWith("#")) {
+                    for (String hex : line.split("\\s+")) {
+                        result.write(Integer.parseInt(hex, 16));
+                    }
+                }
+                line = reader.readLine();
+            }
+        } finally {
+            reader.close();
+        }
+        return result.toByteArray();
+    }
+
+    /**
+     * Build a packet that looks like it was just received from a device on a typical DJ Link network.
+     *
+     * @param name the name of the fixture, without its folder or {@code .hex} extension
+     * @param port the port on which the packet was received
+     *
+     * @return a packet holding the fixture content
+     *
+     * @throws IOException if the fixture cannot be found or read
+     */
+    public static DatagramPacket packet(String name, int port) throws IOException {
+        final byte[] data = load(name);
+        return new DatagramPacket(data, data.length, sourceAddress(), port);
+    }
+
+    /**
+     * Get the address from which fixture packets appear to have been sent.
+     *
+     * @return a link-local address of the kind players use when there is no DHCP server
+     *
+     * @throws UnknownHostException never, since the address is numeric
+     */
+    public static InetAddress sourceAddress() throws UnknownHostException {
+        return InetAddress.getByAddress(new byte[] {(byte)169, (byte)254, 94, (byte)135});
+    }
+}
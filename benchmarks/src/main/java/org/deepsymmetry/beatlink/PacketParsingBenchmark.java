@@ -0,0 +1,138 @@
+package org.deepsymmetry.beatlink;
+
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Measures how long it takes to turn each kind of packet received on the hot path into the object that represents
+ * it, for each model whose packets we have recorded. Run with {@code -prof gc} to see the allocation per packet as
+ * well.
+ *
+ * @author James Elliott
+ * @since 0.6.3
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PacketParsingBenchmark {
+
+    /**
+     * Holds a recorded CDJ status packet.
+     */
+    @State(Scope.Thread)
+    public static class CdjPackets {
+        @Param({"cdj-2000-status", "cdj-2000nexus-status", "cdj-2000nxs2-status", "xdj-xz-status"})
+        public String fixture;
+
+        public DatagramPacket packet;
+        public DeviceUpdatePool pool;
+
+        @Setup
+        public void setup() throws IOException {
+            packet = Fixtures.packet(fixture, VirtualCdj.UPDATE_PORT);
+            pool = new DeviceUpdatePool();
+        }
+    }
+
+    /**
+     * Holds a recorded mixer status packet.
+     */
+    @State(Scope.Thread)
+    public static class MixerPackets {
+        @Param({"djm-900nxs2-status", "djm-2000nexus-status"})
+        public String fixture;
+
+        public DatagramPacket packet;
+        public DeviceUpdatePool pool;
+
+        @Setup
+        public void setup() throws IOException {
+            packet = Fixtures.packet(fixture, VirtualCdj.UPDATE_PORT);
+            pool = new DeviceUpdatePool();
+        }
+    }
+
+    /**
+     * Holds a recorded beat packet.
+     */
+    @State(Scope.Thread)
+    public static class BeatPackets {
+        @Param({"cdj-2000nxs2-beat", "djm-900nxs2-beat"})
+        public String fixture;
+
+        public DatagramPacket packet;
+
+        @Setup
+        public void setup() throws IOException {
+            packet = Fixtures.packet(fixture, BeatFinder.BEAT_PORT);
+        }
+    }
+
+    /**
+     * Holds a recorded device announcement packet.
+     */
+    @State(Scope.Thread)
+    public static class AnnouncementPackets {
+        @Param({"cdj-2000nxs2-keep-alive", "djm-900nxs2-keep-alive", "rekordbox-keep-alive"})
+        public String fixture;
+
+        public DatagramPacket packet;
+
+        @Setup
+        public void setup() throws IOException {
+            packet = Fixtures.packet(fixture, DeviceFinder.ANNOUNCEMENT_PORT);
+        }
+    }
+
+    @Benchmark
+    public CdjStatus cdjStatus(CdjPackets state) {
+        return new CdjStatus(state.packet);
+    }
+
+    /**
+     * Parses a CDJ status packet and reads the fields most listeners look at, so the cost of decoding them lazily
+     * is counted too.
+     */
+    @Benchmark
+    public void cdjStatusFields(CdjPackets state, Blackhole hole) {
+        final CdjStatus status = new CdjStatus(state.packet);
+        hole.consume(status.getRekordboxId());
+        hole.consume(status.getEffectiveTempo());
+        hole.consume(status.isPlaying());
+        hole.consume(status.getBeatNumber());
+    }
+
+    /**
+     * Rebinds a pooled instance to the packet, as the {@link VirtualCdj} does in flyweight mode.
+     */
+    @Benchmark
+    public CdjStatus cdjStatusFlyweight(CdjPackets state) {
+        return state.pool.cdjStatusFor(state.packet);
+    }
+
+    @Benchmark
+    public MixerStatus mixerStatus(MixerPackets state) {
+        return new MixerStatus(state.packet);
+    }
+
+    @Benchmark
+    public MixerStatus mixerStatusFlyweight(MixerPackets state) {
+        return state.pool.mixerStatusFor(state.packet);
+    }
+
+    @Benchmark
+    public Beat beat(BeatPackets state) {
+        return new Beat(state.packet);
+    }
+
+    @Benchmark
+    public DeviceAnnouncement deviceAnnouncement(AnnouncementPackets state) {
+        return new DeviceAnnouncement(state.packet);
+    }
+}
@@ -0,0 +1,87 @@
+package org.deepsymmetry.beatlink;
+
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Measures the end-to-end cost of handling a status packet once it has been received: building the update, tracking
+ * it in the {@link VirtualCdj}, working out tempo master state, and delivering it to a varying number of
+ * registered listeners that do a trivial amount of work.
+ *
+ * @author James Elliott
+ * @since 0.6.3
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ProcessUpdateBenchmark {
+
+    /**
+     * How many update listeners are registered.
+     */
+    @Param({"1", "5", "10", "25", "50"})
+    public int listenerCount;
+
+    /**
+     * Which packet is being processed; the tempo master and non-master cases take different paths.
+     */
+    @Param({"cdj-2000nxs2-status", "cdj-2000nexus-status", "djm-900nxs2-status"})
+    public String fixture;
+
+    /**
+     * Whether updates are built the way the virtual CDJ does in flyweight mode, reusing pooled status objects.
+     */
+    @Param({"false", "true"})
+    public boolean flyweight;
+
+    private DatagramPacket packet;
+    private DeviceUpdatePool pool;
+    private final List<DeviceUpdateListener> listeners = new ArrayList<DeviceUpdateListener>();
+
+    @Setup
+    public void setup(final Blackhole hole) throws IOException {
+        packet = Fixtures.packet(fixture, VirtualCdj.UPDATE_PORT);
+        pool = new DeviceUpdatePool();
+        for (int i = 0; i < listenerCount; i++) {
+            final DeviceUpdateListener listener = new DeviceUpdateListener() {
+                @Override
+                public void received(DeviceUpdate update) {
+                    hole.consume(update.getBpm());
+                }
+            };
+            listeners.add(listener);
+            VirtualCdj.getInstance().addUpdateListener(listener);
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        for (DeviceUpdateListener listener : listeners) {
+            VirtualCdj.getInstance().removeUpdateListener(listener);
+        }
+        listeners.clear();
+    }
+
+    /**
+     * Builds the update the same way the receiver does, then processes it.
+     */
+    @Benchmark
+    public void processUpdate() {
+        final DeviceUpdate update;
+        if (fixture.startsWith("djm")) {
+            update = flyweight? pool.mixerStatusFor(packet) : new MixerStatus(packet);
+        } else {
+            update = flyweight? pool.cdjStatusFor(packet) : new CdjStatus(packet);
+        }
+        VirtualCdj.getInstance().processUpdate(update);
+    }
+}
@@ -0,0 +1,64 @@
+package org.deepsymmetry.beatlink;
+
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Measures the low-level helpers that run for every packet received: identifying the packet type, and
+ * extracting numeric fields.
+ *
+ * @author James Elliott
+ * @since 0.6.3
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class UtilBenchmark {
+
+    /**
+     * Which port's packet types to identify, represented by a packet typically received on it.
+     */
+    @Param({"cdj-2000nxs2-status", "cdj-2000nxs2-beat", "cdj-2000nxs2-keep-alive"})
+    public String fixture;
+
+    private DatagramPacket packet;
+    private int port;
+
+    @Setup
+    public void setup() throws IOException {
+        if (fixture.endsWith("-beat")) {
+            port = BeatFinder.BEAT_PORT;
+        } else if (fixture.endsWith("-keep-alive")) {
+            port = DeviceFinder.ANNOUNCEMENT_PORT;
+        } else {
+            port = VirtualCdj.UPDATE_PORT;
+        }
+        packet = Fixtures.packet(fixture, port);
+    }
+
+    @Benchmark
+    public Util.PacketType validateHeader() {
+        return Util.validateHeader(packet, port);
+    }
+
+    /**
+     * Holds the size of the number being extracted, kept separate so the header benchmark is not repeated for
+     * each size.
+     */
+    @State(Scope.Thread)
+    public static class NumberSize {
+        @Param({"1", "2", "3", "4"})
+        public int length;
+    }
+
+    @Benchmark
+    public long bytesToNumber(NumberSize size) {
+        return Util.bytesToNumber(packet.getData(), 0x24, size.length);
+    }
+}
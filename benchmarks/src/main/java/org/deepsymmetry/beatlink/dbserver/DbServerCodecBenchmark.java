@@ -0,0 +1,154 @@
+package org.deepsymmetry.beatlink.dbserver;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Measures how quickly dbserver messages are decoded from, and encoded for, the network. The decoding benchmarks
+ * read whole response streams, so their scores are per response rather than per message; run with
+ * {@code -prof gc} to see the bytes allocated per response as well.
+ *
+ * @author James Elliott
+ * @since 0.6.3
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DbServerCodecBenchmark {
+
+    /**
+     * Holds an encoded response stream, and the messages it was built from.
+     */
+    @State(Scope.Thread)
+    public static class Responses {
+        /**
+         * Which response is being decoded or encoded: a track metadata response, a 5,000 item menu render, or a
+         * colour waveform detail.
+         */
+        @Param({"metadata", "menu-render", "waveform-detail"})
+        public String response;
+
+        public List<Message> messages;
+        public byte[] encoded;
+        public ByteArrayOutputStream sink;
+        public WritableByteChannel channel;
+
+        @Setup
+        public void setup() throws IOException {
+            if (response.equals("metadata")) {
+                messages = DbServerFixtures.metadataResponse();
+            } else if (response.equals("menu-render")) {
+                messages = DbServerFixtures.menuRender(5000);
+            } else if (response.equals("waveform-detail")) {
+                messages = Collections.singletonList(DbServerFixtures.colorWaveformDetail());
+            } else {
+                throw new IllegalArgumentException("Unknown response: " + response);
+            }
+            encoded = DbServerFixtures.encode(messages);
+            sink = new ByteArrayOutputStream(encoded.length);
+            channel = Channels.newChannel(sink);
+        }
+    }
+
+    /**
+     * Holds the encoding of a single field of each type.
+     */
+    @State(Scope.Thread)
+    public static class Fields {
+        @Param({"number", "string", "binary"})
+        public String type;
+
+        public byte[] encoded;
+
+        @Setup
+        public void setup() throws IOException {
+            final Field field;
+            if (type.equals("number")) {
+                field = new NumberField(0x12345678L, 4);
+            } else if (type.equals("string")) {
+                field = new StringField("Strings of Life (Original Mix)");
+            } else if (type.equals("binary")) {
+                field = new BinaryField(new byte[1024]);
+            } else {
+                throw new IllegalArgumentException("Unknown field type: " + type);
+            }
+            final ByteArrayOutputStream result = new ByteArrayOutputStream();
+            field.write(Channels.newChannel(result));
+            encoded = result.toByteArray();
+        }
+    }
+
+    /**
+     * Reads every message in a response stream with {@link Message#read(DataInputStream)}, the way the
+     * {@link Client} used to.
+     */
+    @Benchmark
+    public void decodeResponse(Responses state, Blackhole hole) throws IOException {
+        final DataInputStream is = new DataInputStream(new ByteArrayInputStream(state.encoded));
+        for (int i = state.messages.size(); i > 0; i--) {
+            hole.consume(Message.read(is));
+        }
+    }
+
+    /**
+     * Reads every message in a response stream using a {@link MessageDecoder} over a stream, as the {@link Client}
+     * does now.
+     */
+    @Benchmark
+    public void decodeResponseBuffered(Responses state, Blackhole hole) throws IOException {
+        final MessageDecoder decoder = new MessageDecoder(new ByteArrayInputStream(state.encoded));
+        for (int i = state.messages.size(); i > 0; i--) {
+            hole.consume(decoder.readMessage());
+        }
+    }
+
+    /**
+     * Reads every message in a response stream using a {@link MessageDecoder} over a channel, which uses direct
+     * buffers.
+     */
+    @Benchmark
+    public void decodeResponseChannel(Responses state, Blackhole hole) throws IOException {
+        final MessageDecoder decoder = new MessageDecoder(Channels.newChannel(new ByteArrayInputStream(state.encoded)));
+        for (int i = state.messages.size(); i > 0; i--) {
+            hole.consume(decoder.readMessage());
+        }
+    }
+
+    @Benchmark
+    public Field decodeField(Fields state) throws IOException {
+        return Field.read(new DataInputStream(new ByteArrayInputStream(state.encoded)));
+    }
+
+    /**
+     * Gathers each message of a response into a single buffer, the way the {@link Client} does before sending it.
+     */
+    @Benchmark
+    public void assembleResponse(Responses state, Blackhole hole) {
+        for (Message message : state.messages) {
+            hole.consume(Client.assemble(message));
+        }
+    }
+
+    /**
+     * Writes each message of a response field by field, the way metadata cache files are created.
+     */
+    @Benchmark
+    public void writeResponse(Responses state) throws IOException {
+        state.sink.reset();
+        for (Message message : state.messages) {
+            message.write(state.channel);
+        }
+    }
+}
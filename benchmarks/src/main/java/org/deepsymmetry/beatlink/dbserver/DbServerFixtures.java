@@ -0,0 +1,134 @@
+package org.deepsymmetry.beatlink.dbserver;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Builds the dbserver response streams which the codec benchmarks decode. Each stream holds the complete sequence
+ * of messages a player sends in answer to a common kind of query, encoded by the library itself so the bytes are
+ * exactly what {@link Message#read(java.io.DataInputStream)} expects to find on the wire.
+ *
+ * @author James Elliott
+ * @since 0.6.3
+ */
+public final class DbServerFixtures {
+
+    /**
+     * The transaction ID used for all the fixture messages.
+     */
+    private static final long TRANSACTION = 0x2a;
+
+    /**
+     * The number of bytes in a colour waveform detail, which is two bytes per half-frame for a track of about
+     * five minutes.
+     */
+    public static final int WAVEFORM_DETAIL_SIZE = 90000;
+
+    /**
+     * Prevent instantiation.
+     */
+    private DbServerFixtures() {
+        // Nothing to do.
+    }
+
+    /**
+     * Build a rendered menu item in the form a player sends it.
+     *
+     * @param parentId the first numeric value, such as the artist ID of a track
+     * @param id the second numeric value, such as the track ID
+     * @param label1 the main text of the item
+     * @param label2 the secondary text of the item
+     * @param type identifies what kind of item this is
+     *
+     * @return the menu item message
+     */
+    public static Message menuItem(long parentId, long id, String label1, String label2, Message.MenuItemType type) {
+        return new Message(TRANSACTION, Message.KnownType.MENU_ITEM,
+                new NumberField(parentId), new NumberField(id),
+                new NumberField((label1.length() + 1) * 2), new StringField(label1),
+                new NumberField((label2.length() + 1) * 2), new StringField(label2),
+                new NumberField(type.protocolValue), new NumberField(0x01000000), new NumberField(id % 500),
+                new NumberField(0), NumberField.WORD_0, NumberField.WORD_0);
+    }
+
+    /**
+     * Build the messages a player sends in response to a track metadata request, with the items Beat Link uses
+     * to build a {@link org.deepsymmetry.beatlink.data.TrackMetadata}.
+     *
+     * @return the menu available response, header, items, and footer
+     */
+    public static List<Message> metadataResponse() {
+        final List<Message> result = new ArrayList<Message>();
+        result.add(new Message(TRANSACTION, Message.KnownType.MENU_AVAILABLE,
+                new NumberField(Message.KnownType.REKORDBOX_METADATA_REQ.protocolValue), new NumberField(11)));
+        result.add(new Message(TRANSACTION, Message.KnownType.MENU_HEADER));
+        result.add(menuItem(0, 417, "Strings of Life (Original Mix)", "", Message.MenuItemType.TRACK_TITLE));
+        result.add(menuItem(0, 12, "Derrick May", "", Message.MenuItemType.ARTIST));
+        result.add(menuItem(0, 7, "Innovator", "", Message.MenuItemType.ALBUM_TITLE));
+        result.add(menuItem(0, 389, "", "", Message.MenuItemType.DURATION));
+        result.add(menuItem(0, 12400, "", "", Message.MenuItemType.TEMPO));
+        result.add(menuItem(0, 0, "Classic from the vault", "", Message.MenuItemType.COMMENT));
+        result.add(menuItem(0, 3, "Fm", "", Message.MenuItemType.KEY));
+        result.add(menuItem(0, 4, "", "", Message.MenuItemType.RATING));
+        result.add(menuItem(0, 0, "", "", Message.MenuItemType.COLOR_NONE));
+        result.add(menuItem(0, 5, "Detroit Techno", "", Message.MenuItemType.GENRE));
+        result.add(menuItem(0, 0, "2019-06-14", "", Message.MenuItemType.DATE_ADDED));
+        result.add(new Message(TRANSACTION, Message.KnownType.MENU_FOOTER));
+        return result;
+    }
+
+    /**
+     * Build the messages a player sends when rendering a large track menu, of the kind used when building a
+     * metadata cache or searching a big collection.
+     *
+     * @param count the number of tracks in the menu
+     *
+     * @return the header, items, and footer
+     */
+    public static List<Message> menuRender(int count) {
+        final List<Message> result = new ArrayList<Message>(count + 2);
+        result.add(new Message(TRANSACTION, Message.KnownType.MENU_HEADER));
+        for (int i = 1; i <= count; i++) {
+            result.add(menuItem(i % 300, i, "Track number " + i + " (Extended Mix)", "Artist " + (i % 300),
+                    Message.MenuItemType.TRACK_TITLE_AND_ARTIST));
+        }
+        result.add(new Message(TRANSACTION, Message.KnownType.MENU_FOOTER));
+        return result;
+    }
+
+    /**
+     * Build the message a player sends in response to a request for a track's colour waveform detail.
+     *
+     * @return an analysis tag response holding a waveform of {@link #WAVEFORM_DETAIL_SIZE} bytes
+     */
+    public static Message colorWaveformDetail() {
+        final byte[] waveform = new byte[WAVEFORM_DETAIL_SIZE];
+        new Random(0x7c9).nextBytes(waveform);
+        return new Message(TRANSACTION, Message.KnownType.ANLZ_TAG,
+                new NumberField(Message.KnownType.ANLZ_TAG_REQ.protocolValue), NumberField.WORD_0,
+                new NumberField(waveform.length), new BinaryField(waveform), NumberField.WORD_1);
+    }
+
+    /**
+     * Encode messages the way they would arrive from the network.
+     *
+     * @param messages the messages to encode
+     *
+     * @return the bytes of all the messages, one after the other
+     *
+     * @throws IOException if there is a problem encoding them
+     */
+    public static byte[] encode(List<Message> messages) throws IOException {
+        final ByteArrayOutputStream result = new ByteArrayOutputStream();
+        final WritableByteChannel channel = Channels.newChannel(result);
+        for (Message message : messages) {
+            message.write(channel);
+        }
+        return result.toByteArray();
+    }
+}
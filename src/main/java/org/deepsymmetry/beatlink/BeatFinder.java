@@ -2,10 +2,13 @@ package org.deepsymmetry.beatlink;
 
 import java.io.IOException;
 import java.net.DatagramPacket;
-import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
 import java.net.SocketException;
+import java.nio.channels.DatagramChannel;
 import java.util.Collections;
-import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.TreeSet;
 import java.util.concurrent.ConcurrentHashMap;
@@ -47,9 +50,9 @@ public class BeatFinder extends LifecycleParticipant {
     public static final int BEAT_PORT = 50001;
 
     /**
-     * The socket used to listen for beat packets while we are active.
+     * The channel used to listen for beat packets while we are active.
      */
-    private final AtomicReference<DatagramSocket> socket = new AtomicReference<DatagramSocket>(null);
+    private final AtomicReference<DatagramChannel> channel = new AtomicReference<DatagramChannel>(null);
 
     /**
      * Check whether we are presently listening for beat packets.
@@ -57,7 +60,7 @@ public class BeatFinder extends LifecycleParticipant {
      * @return {@code true} if our socket is open and monitoring for DJ Link beat packets on the network
      */
     public boolean isRunning() {
-        return socket.get() != null;
+        return channel.get() != null;
     }
 
     /**
@@ -85,6 +88,119 @@ public class BeatFinder extends LifecycleParticipant {
         return true;
     }
 
+    /**
+     * Process a packet that has been received on the beat port.
+     *
+     * @param kind the type of packet that was received
+     * @param packet the packet content
+     */
+    private void handlePacket(Util.PacketType kind, DatagramPacket packet) {
+        switch (kind) {
+
+            case BEAT:
+                if (isPacketLongEnough(packet, 96, "beat")) {
+                    deliverBeat(new Beat(packet));
+                }
+                break;
+
+            case CHANNELS_ON_AIR:
+                if (isPacketLongEnough(packet, 0x2d, "channels on-air")) {
+                    byte[] data = packet.getData();
+                    Set<Integer> audibleChannels = new TreeSet<Integer>();
+                    for (int channel = 1; channel <= 4; channel++) {
+                        if (data[0x23 + channel] != 0) {
+                            audibleChannels.add(channel);
+                        }
+                    }
+                    audibleChannels = Collections.unmodifiableSet(audibleChannels);
+                    deliverOnAirUpdate(audibleChannels);
+                }
+                break;
+
+            case SYNC_CONTROL:
+                if (isPacketLongEnough(packet, 0x2c, "sync control command")) {
+                    deliverSyncCommand(packet.getData()[0x2b]);
+                }
+                break;
+
+            case MASTER_HANDOFF_REQUEST:
+                if (isPacketLongEnough(packet, 0x28, "tempo master handoff request")) {
+                    deliverMasterYieldCommand(packet.getData()[0x21]);
+                }
+                break;
+
+            case MASTER_HANDOFF_RESPONSE:
+                if (isPacketLongEnough(packet, 0x2c, "tempo master handoff response")) {
+                    byte[] data = packet.getData();
+                    deliverMasterYieldResponse(data[0x21], data[0x2b] == 1);
+                }
+                break;
+
+            case FADER_START_COMMAND:
+                if (isPacketLongEnough(packet, 0x28, "fader start command")) {
+                    byte[] data = packet.getData();
+                    Set<Integer> playersToStart = new TreeSet<Integer>();
+                    Set<Integer> playersToStop = new TreeSet<Integer>();
+                    for (int channel = 1; channel <= 4; channel++) {
+                        switch (data[0x23 + channel]) {
+
+                            case 0:
+                                playersToStart.add(channel);
+                                break;
+
+                            case 1:
+                                playersToStop.add(channel);
+                                break;
+
+                            case 2:
+                                // Leave this player alone
+                                break;
+
+                            default:
+                                logger.warn("Ignoring unrecognized fader start command, " +
+                                        data[0x23 + channel] + ", for channel " + channel);
+                        }
+                    }
+                    playersToStart = Collections.unmodifiableSet(playersToStart);
+                    playersToStop = Collections.unmodifiableSet(playersToStop);
+                    deliverFaderStartCommand(playersToStart, playersToStop);
+                }
+                break;
+
+            default:
+                logger.warn("Ignoring packet received on beat port with unexpected type: " + kind);
+        }
+    }
+
+    /**
+     * Receives the packets which arrive on our channel, on the {@link PacketReceiver} thread.
+     */
+    private final PacketReceiver.Handler packetHandler = new PacketReceiver.Handler() {
+        @Override
+        boolean accepts(InetAddress address) {
+            return !DeviceFinder.getInstance().isAddressIgnored(address);
+        }
+
+        @Override
+        void received(Util.PacketType kind, DatagramPacket packet) {
+            try {
+                handlePacket(kind, packet);
+            } catch (Throwable t) {
+                logger.warn("Problem processing beat packet", t);
+            }
+        }
+
+        @Override
+        void failed(IOException e) {
+            // Don't log a warning if the exception was due to the channel closing at shutdown.
+            if (isRunning()) {
+                // We did not expect to have a problem; log a warning and shut down.
+                logger.warn("Problem reading from beat/sync channel, stopping", e);
+                stop();
+            }
+        }
+    };
+
     /**
      * Start listening for beat announcements and sync commands. If already listening, has no effect.
      *
@@ -92,117 +208,10 @@ public class BeatFinder extends LifecycleParticipant {
      */
     public synchronized void start() throws SocketException {
         if (!isRunning()) {
-            socket.set(new DatagramSocket(BEAT_PORT));
+            final DatagramChannel newChannel = PacketReceiver.openChannel(new InetSocketAddress(BEAT_PORT));
+            PacketReceiver.getInstance().register(newChannel, BEAT_PORT, packetHandler);  // Closes the channel on failure.
+            channel.set(newChannel);
             deliverLifecycleAnnouncement(logger, true);
-            final byte[] buffer = new byte[512];
-            final DatagramPacket packet = new DatagramPacket(buffer, buffer.length);
-            Thread receiver = new Thread(null, new Runnable() {
-                @Override
-                public void run() {
-                    boolean received;
-                    while (isRunning()) {
-                        try {
-                            socket.get().receive(packet);
-                            received = !DeviceFinder.getInstance().isAddressIgnored(packet.getAddress());
-                        } catch (IOException e) {
-                            // Don't log a warning if the exception was due to the socket closing at shutdown.
-                            if (isRunning()) {
-                                // We did not expect to have a problem; log a warning and shut down.
-                                logger.warn("Problem reading from beat/sync socket, stopping", e);
-                                stop();
-                            }
-                            received = false;
-                        }
-                        try {
-                            if (received) {
-                                final Util.PacketType kind = Util.validateHeader(packet,  BEAT_PORT);
-                                if (kind != null) {
-                                    switch (kind) {
-
-                                        case BEAT:
-                                            if (isPacketLongEnough(packet, 96, "beat")) {
-                                                deliverBeat(new Beat(packet));
-                                            }
-                                            break;
-
-                                        case CHANNELS_ON_AIR:
-                                            if (isPacketLongEnough(packet, 0x2d, "channels on-air")) {
-                                                byte[] data = packet.getData();
-                                                Set<Integer> audibleChannels = new TreeSet<Integer>();
-                                                for (int channel = 1; channel <= 4; channel++) {
-                                                    if (data[0x23 + channel] != 0) {
-                                                        audibleChannels.add(channel);
-                                                    }
-                                                }
-                                                audibleChannels = Collections.unmodifiableSet(audibleChannels);
-                                                deliverOnAirUpdate(audibleChannels);
-                                            }
-                                            break;
-
-                                        case SYNC_CONTROL:
-                                            if (isPacketLongEnough(packet, 0x2c, "sync control command")) {
-                                                deliverSyncCommand(packet.getData()[0x2b]);
-                                            }
-                                            break;
-
-                                        case MASTER_HANDOFF_REQUEST:
-                                            if (isPacketLongEnough(packet, 0x28, "tempo master handoff request")) {
-                                                deliverMasterYieldCommand(packet.getData()[0x21]);
-                                            }
-                                            break;
-
-                                        case MASTER_HANDOFF_RESPONSE:
-                                            if (isPacketLongEnough(packet, 0x2c, "tempo master handoff response")) {
-                                                byte[] data = packet.getData();
-                                                deliverMasterYieldResponse(data[0x21], data[0x2b] == 1);
-                                            }
-                                            break;
-
-                                        case FADER_START_COMMAND:
-                                            if (isPacketLongEnough(packet, 0x28, "fader start command")) {
-                                                byte[] data = packet.getData();
-                                                Set<Integer> playersToStart = new TreeSet<Integer>();
-                                                Set<Integer> playersToStop = new TreeSet<Integer>();
-                                                for (int channel = 1; channel <= 4; channel++) {
-                                                    switch (data[0x23 + channel]) {
-
-                                                        case 0:
-                                                            playersToStart.add(channel);
-                                                            break;
-
-                                                        case 1:
-                                                            playersToStop.add(channel);
-                                                            break;
-
-                                                        case 2:
-                                                            // Leave this player alone
-                                                            break;
-
-                                                        default:
-                                                            logger.warn("Ignoring unrecognized fader start command, " +
-                                                                    data[0x23 + channel] + ", for channel " + channel);
-                                                    }
-                                                }
-                                                playersToStart = Collections.unmodifiableSet(playersToStart);
-                                                playersToStop = Collections.unmodifiableSet(playersToStop);
-                                                deliverFaderStartCommand(playersToStart, playersToStop);
-                                            }
-                                            break;
-
-                                        default:
-                                            logger.warn("Ignoring packet received on beat port with unexpected type: " + kind);
-                                    }
-                                }
-                            }
-                        } catch (Throwable t) {
-                            logger.warn("Problem processing beat packet", t);
-                        }
-                    }
-                }
-            }, "beat-link BeatFinder receiver");
-            receiver.setDaemon(true);
-            receiver.setPriority(Thread.MAX_PRIORITY);
-            receiver.start();
         }
     }
 
@@ -211,8 +220,7 @@ public class BeatFinder extends LifecycleParticipant {
      */
     public synchronized void stop() {
         if (isRunning()) {
-            socket.get().close();
-            socket.set(null);
+            PacketReceiver.getInstance().unregister(channel.getAndSet(null));
             deliverLifecycleAnnouncement(logger, false);
         }
     }
@@ -220,8 +228,16 @@ public class BeatFinder extends LifecycleParticipant {
     /**
      * Keeps track of the registered beat listeners.
      */
-    private final Set<BeatListener> beatListeners =
-            Collections.newSetFromMap(new ConcurrentHashMap<BeatListener, Boolean>());
+    private final ListenerRegistry<BeatListener> beatListeners =
+            new ListenerRegistry<BeatListener>();
+
+    /**
+     * Holds what beats are actually delivered to: the listeners that are called directly, and the delivery lanes of
+     * the ones that were registered with an overflow policy, so a beat being delivered while a listener is removed
+     * can only reach its closed lane, never the listener itself on the wrong thread.
+     */
+    private final ListenerRegistry<BeatListener> beatTargets =
+            new ListenerRegistry<BeatListener>();
 
     /**
      * <p>Adds the specified beat listener to receive beat announcements when DJ Link devices broadcast
@@ -235,16 +251,87 @@ public class BeatFinder extends LifecycleParticipant {
      *
      * Even if you are not interacting with user interface objects, any code in the listener method
      * <em>must</em> finish quickly, or it will add latency for other listeners, and beat announcements will back up.
-     * If you want to perform lengthy processing of any sort, do so on another thread.</p>
+     * If you want to perform lengthy processing of any sort, do so on another thread, or register the listener
+     * using {@link #addBeatListener(BeatListener, DeliveryLane.OverflowPolicy, int)} so it gets one.</p>
      *
      * @param listener the beat listener to add
      */
-    public void addBeatListener(BeatListener listener) {
-        if (listener != null) {
+    public synchronized void addBeatListener(BeatListener listener) {
+        if (beatListeners.add(listener)) {
+            beatTargets.add(listener);
+        }
+    }
+
+    /**
+     * A delivery lane for a beat listener which was registered with an overflow policy. It is itself registered as
+     * a beat target, and queues the beats it receives for delivery to the listener.
+     */
+    private static final class BeatLane extends DeliveryLane<Beat> implements BeatListener {
+
+        /**
+         * The listener to which the lane delivers beats.
+         */
+        private final BeatListener listener;
+
+        BeatLane(BeatListener listener, DeliveryLane.OverflowPolicy policy, int capacity) {
+            super("beat listener", policy, capacity);
+            this.listener = listener;
+        }
+
+        @Override
+        public void newBeat(Beat beat) {
+            offer(beat);
+        }
+
+        @Override
+        void deliver(Beat beat) {
+            listener.newBeat(beat);
+        }
+    }
+
+    /**
+     * Keeps track of the delivery lanes of beat listeners that were registered with an overflow policy.
+     */
+    private final Map<BeatListener, BeatLane> beatLanes = new ConcurrentHashMap<BeatListener, BeatLane>();
+
+    /**
+     * <p>Adds the specified beat listener to receive beat announcements on its own thread, rather than the thread
+     * that is receiving them from the network, so that if it is slow to return it does not delay beat delivery to
+     * other listeners. If {@code listener} is {@code null} or already present in the list of registered listeners,
+     * no exception is thrown and no action is performed.</p>
+     *
+     * <p>If the listener falls behind by {@code capacity} beats, {@code policy} determines what happens to new
+     * ones. How far behind it is running can be monitored through the lane returned by
+     * {@link #getBeatListenerLane(BeatListener)}.</p>
+     *
+     * @param listener the beat listener to add
+     * @param policy what to do with new beats when the listener has fallen too far behind
+     * @param capacity how many beats can be waiting for delivery to the listener
+     *
+     * @throws IllegalArgumentException if {@code policy} is {@code null} or {@code capacity} is not positive
+     */
+    public synchronized void addBeatListener(final BeatListener listener, DeliveryLane.OverflowPolicy policy, int capacity) {
+        if (listener != null && !beatListeners.contains(listener)) {
+            final BeatLane lane = new BeatLane(listener, policy, capacity);
+            beatLanes.put(listener, lane);
             beatListeners.add(listener);
+            beatTargets.add(lane);
         }
     }
 
+    /**
+     * Find the delivery lane of a beat listener which was registered with an overflow policy, so that its lag
+     * can be checked.
+     *
+     * @param listener a registered beat listener
+     *
+     * @return the lane delivering beats to that listener, or {@code null} if it is not registered, or is being
+     *         called directly on the thread receiving beats
+     */
+    public DeliveryLane<Beat> getBeatListenerLane(BeatListener listener) {
+        return beatLanes.get(listener);
+    }
+
     /**
      * Removes the specified beat listener so that it no longer receives beat announcements when
      * DJ Link devices broadcast them to the network. If {@code listener} is {@code null} or not present
@@ -253,8 +340,21 @@ public class BeatFinder extends LifecycleParticipant {
      * @param listener the beat listener to remove
      */
     public void removeBeatListener(BeatListener listener) {
-        if (listener != null) {
-            beatListeners.remove(listener);
+        final BeatLane lane;
+        synchronized (this) {
+            if (!beatListeners.remove(listener)) {
+                return;
+            }
+            lane = beatLanes.remove(listener);
+            if (lane == null) {
+                beatTargets.remove(listener);
+            } else {
+                lane.close();
+                beatTargets.remove(lane);
+            }
+        }
+        if (lane != null) {
+            lane.awaitDelivery();
         }
     }
 
@@ -264,8 +364,7 @@ public class BeatFinder extends LifecycleParticipant {
      * @return the currently registered beat listeners
      */
     public Set<BeatListener> getBeatListeners() {
-        // Make a copy so callers get an immutable snapshot of the current state.
-        return Collections.unmodifiableSet(new HashSet<BeatListener>(beatListeners));
+        return beatListeners.asSet();
     }
 
     /**
@@ -276,7 +375,9 @@ public class BeatFinder extends LifecycleParticipant {
      */
     private void deliverBeat(final Beat beat) {
         VirtualCdj.getInstance().processBeat(beat);
-        for (final BeatListener listener : getBeatListeners()) {
+        final List<BeatListener> listeners = beatTargets.snapshot();
+        for (int i = 0; i < listeners.size(); i++) {
+            final BeatListener listener = listeners.get(i);
             try {
                 listener.newBeat(beat);
             } catch (Throwable t) {
@@ -288,8 +389,8 @@ public class BeatFinder extends LifecycleParticipant {
     /**
      * Keeps track of the registered sync command listeners.
      */
-    private final Set<SyncListener> syncListeners =
-            Collections.newSetFromMap(new ConcurrentHashMap<SyncListener, Boolean>());
+    private final ListenerRegistry<SyncListener> syncListeners =
+            new ListenerRegistry<SyncListener>();
 
     /**
      * <p>Adds the specified sync command listener to receive sync commands when DJ Link devices send
@@ -332,8 +433,7 @@ public class BeatFinder extends LifecycleParticipant {
      * @return the currently registered sync listeners
      */
     public Set<SyncListener> getSyncListeners() {
-        // Make a copy so callers get an immutable snapshot of the current state.
-        return Collections.unmodifiableSet(new HashSet<SyncListener>(syncListeners));
+        return syncListeners.asSet();
     }
 
     /**
@@ -342,7 +442,9 @@ public class BeatFinder extends LifecycleParticipant {
      * @param command the byte which identifies the type of sync command we received
      */
     private void deliverSyncCommand(byte command) {
-        for (final SyncListener listener : getSyncListeners()) {
+        final List<SyncListener> listeners = syncListeners.snapshot();
+        for (int i = 0; i < listeners.size(); i++) {
+            final SyncListener listener = listeners.get(i);
             try {
                 switch (command) {
 
@@ -367,8 +469,8 @@ public class BeatFinder extends LifecycleParticipant {
     /**
      * Keeps track of the registered master  handoff command listeners.
      */
-    private final Set<MasterHandoffListener> masterHandoffListeners =
-            Collections.newSetFromMap(new ConcurrentHashMap<MasterHandoffListener, Boolean>());
+    private final ListenerRegistry<MasterHandoffListener> masterHandoffListeners =
+            new ListenerRegistry<MasterHandoffListener>();
 
     /**
      * <p>Adds the specified master handoff listener to receive tempo master handoff commands when DJ Link devices send
@@ -411,8 +513,7 @@ public class BeatFinder extends LifecycleParticipant {
      * @return the currently registered tempo master handoff command listeners
      */
     public Set<MasterHandoffListener> getMasterHandoffListeners() {
-        // Make a copy so callers get an immutable snapshot of the current state.
-        return Collections.unmodifiableSet(new HashSet<MasterHandoffListener>(masterHandoffListeners));
+        return masterHandoffListeners.asSet();
     }
 
     /**
@@ -421,7 +522,9 @@ public class BeatFinder extends LifecycleParticipant {
      * @param toPlayer the device number to which we are being instructed to yield the tempo master role
      */
     private void deliverMasterYieldCommand(int toPlayer) {
-        for (final MasterHandoffListener listener : getMasterHandoffListeners()) {
+        final List<MasterHandoffListener> listeners = masterHandoffListeners.snapshot();
+        for (int i = 0; i < listeners.size(); i++) {
+            final MasterHandoffListener listener = listeners.get(i);
             try {
                 listener.yieldMasterTo(toPlayer);
             } catch (Throwable t) {
@@ -437,7 +540,9 @@ public class BeatFinder extends LifecycleParticipant {
      * @param yielded will be {@code true} if we should now be the tempo master
      */
     private void deliverMasterYieldResponse(int fromPlayer, boolean yielded) {
-        for (final MasterHandoffListener listener : getMasterHandoffListeners()) {
+        final List<MasterHandoffListener> listeners = masterHandoffListeners.snapshot();
+        for (int i = 0; i < listeners.size(); i++) {
+            final MasterHandoffListener listener = listeners.get(i);
             try {
                 listener.yieldResponse(fromPlayer, yielded);
             } catch (Throwable t) {
@@ -449,8 +554,8 @@ public class BeatFinder extends LifecycleParticipant {
     /**
      * Keeps track of the registered on-air listeners.
      */
-    private final Set<OnAirListener> onAirListeners =
-            Collections.newSetFromMap(new ConcurrentHashMap<OnAirListener, Boolean>());
+    private final ListenerRegistry<OnAirListener> onAirListeners =
+            new ListenerRegistry<OnAirListener>();
 
     /**
      * <p>Adds the specified on-air listener to receive channel on-air updates when the mixer broadcasts
@@ -493,8 +598,7 @@ public class BeatFinder extends LifecycleParticipant {
      * @return the currently registered on-air listeners
      */
     public Set<OnAirListener> getOnAirListeners() {
-        // Make a copy so callers get an immutable snapshot of the current state.
-        return Collections.unmodifiableSet(new HashSet<OnAirListener>(onAirListeners));
+        return onAirListeners.asSet();
     }
 
     /**
@@ -503,7 +607,9 @@ public class BeatFinder extends LifecycleParticipant {
      * @param audibleChannels holds the device numbers of all channels that can currently be heard in the mixer output
      */
     private void deliverOnAirUpdate(Set<Integer> audibleChannels) {
-        for (final OnAirListener listener : getOnAirListeners()) {
+        final List<OnAirListener> listeners = onAirListeners.snapshot();
+        for (int i = 0; i < listeners.size(); i++) {
+            final OnAirListener listener = listeners.get(i);
             try {
                 listener.channelsOnAir(audibleChannels);
             } catch (Throwable t) {
@@ -515,8 +621,8 @@ public class BeatFinder extends LifecycleParticipant {
     /**
      * Keeps track of the registered fader start listeners.
      */
-    private final Set<FaderStartListener> faderStartListeners =
-            Collections.newSetFromMap(new ConcurrentHashMap<FaderStartListener, Boolean>());
+    private final ListenerRegistry<FaderStartListener> faderStartListeners =
+            new ListenerRegistry<FaderStartListener>();
 
     /**
      * <p>Adds the specified fader start listener to receive fader start commands when the mixer broadcasts
@@ -559,8 +665,7 @@ public class BeatFinder extends LifecycleParticipant {
      * @return the currently registered fader start listeners
      */
     public Set<FaderStartListener> getFaderStartListeners() {
-        // Make a copy so callers get an immutable snapshot of the current state.
-        return Collections.unmodifiableSet(new HashSet<FaderStartListener>(faderStartListeners));
+        return faderStartListeners.asSet();
     }
 
     /**
@@ -570,7 +675,9 @@ public class BeatFinder extends LifecycleParticipant {
      * @param playersToStop contains the device numbers of all players that should stop playing
      */
     private void deliverFaderStartCommand(Set<Integer> playersToStart, Set<Integer> playersToStop) {
-        for (final FaderStartListener listener : getFaderStartListeners()) {
+        final List<FaderStartListener> listeners = faderStartListeners.snapshot();
+        for (int i = 0; i < listeners.size(); i++) {
+            final FaderStartListener listener = listeners.get(i);
             try {
                 listener.fadersChanged(playersToStart, playersToStop);
             } catch (Throwable t) {
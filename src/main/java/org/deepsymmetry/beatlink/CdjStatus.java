@@ -71,12 +71,6 @@ public class CdjStatus extends DeviceUpdate {
     @SuppressWarnings("WeakerAccess")
     public static final int PLAYING_FLAG = 0x40;
 
-    /**
-     * The device number of the player from which the track was loaded, if any; labeled <i>D<sub>r</sub></i> in
-     * the <a href="https://djl-analysis.deepsymmetry.org/djl-analysis/vcdj.html#cdj-status-packets">Packet Analysis document</a>.
-     */
-    private final int trackSourcePlayer;
-
     /**
      * Get the device number of the player from which the track was loaded, if any; labeled <i>D<sub>r</sub></i> in
      * the <a href="https://djl-analysis.deepsymmetry.org/djl-analysis/vcdj.html#cdj-status-packets">Packet Analysis document</a>.
@@ -139,12 +133,6 @@ public class CdjStatus extends DeviceUpdate {
         TRACK_SOURCE_SLOT_MAP = Collections.unmodifiableMap(scratch);
     }
 
-    /**
-     * The slot from which the track was loaded, if any; labeled <i>S<sub>r</sub></i> in
-     * the <a href="https://djl-analysis.deepsymmetry.org/djl-analysis/vcdj.html#cdj-status-packets">Packet Analysis document</a>.
-     */
-    private final TrackSourceSlot trackSourceSlot;
-
     /**
      * Get the slot from which the track was loaded, if any; labeled <i>S<sub>r</sub></i> in
      * the <a href="https://djl-analysis.deepsymmetry.org/djl-analysis/vcdj.html#cdj-status-packets">Packet Analysis document</a>.
@@ -205,12 +193,6 @@ public class CdjStatus extends DeviceUpdate {
         TRACK_TYPE_MAP = Collections.unmodifiableMap(scratch);
     }
 
-    /**
-     * The type of the track that was loaded, if any; labeled <i>T<sub>r</sub></i> in
-     * the <a href="https://djl-analysis.deepsymmetry.org/djl-analysis/vcdj.html#cdj-status-packets">Packet Analysis document</a>.
-     */
-    private final TrackType trackType;
-
     /**
      * Get the type of the track was loaded, if any; labeled <i>T<sub>r</sub></i> in
      * the <a href="https://djl-analysis.deepsymmetry.org/djl-analysis/vcdj.html#cdj-status-packets">Packet Analysis document</a>.
@@ -219,12 +201,6 @@ public class CdjStatus extends DeviceUpdate {
      */
     public TrackType getTrackType() { return trackType; }
 
-    /**
-     * The rekordbox ID of the track that was loaded, if any; labeled<i>rekordbox</i> in
-     * the <a href="https://djl-analysis.deepsymmetry.org/djl-analysis/vcdj.html#cdj-status-packets">Packet Analysis document</a>.
-     */
-    private final int rekordboxId;
-
     /**
      * Get the rekordbox ID of the track that was loaded, if any; labeled <i>rekordbox</i> in Figure 11 of
      * the <a href="https://djl-analysis.deepsymmetry.org/djl-analysis/vcdj.html#cdj-status-packets">Packet Analysis document</a>.
@@ -315,12 +291,6 @@ public class CdjStatus extends DeviceUpdate {
         PLAY_STATE_1_MAP = Collections.unmodifiableMap(scratch);
     }
 
-    /**
-     * The first play state found in the packet, labeled <i>P<sub>1</sub></i> in the
-     * <a href="https://djl-analysis.deepsymmetry.org/djl-analysis/vcdj.html#cdj-status-packets">Packet Analysis document</a>.
-     */
-    private final PlayState1 playState1;
-
     /**
      * Get the first play state found in the packet, labeled <i>P<sub>1</sub></i> in
      * <a href="https://djl-analysis.deepsymmetry.org/djl-analysis/vcdj.html#cdj-status-packets">Packet Analysis document</a>.
@@ -380,12 +350,6 @@ public class CdjStatus extends DeviceUpdate {
         PLAY_STATE_2_MAP = Collections.unmodifiableMap(scratch);
     }
 
-    /**
-     * The second play state found in the packet, labeled <i>P<sub>2</sub></i> in the
-     * <a href="https://djl-analysis.deepsymmetry.org/djl-analysis/vcdj.html#cdj-status-packets">Packet Analysis document</a>.
-     */
-    private final PlayState2 playState2;
-
     /**
      * Get the second play state found in the packet, labeled <i>P<sub>2</sub></i> in the
      * <a href="https://djl-analysis.deepsymmetry.org/djl-analysis/vcdj.html#cdj-status-packets">Packet Analysis document</a>.
@@ -452,12 +416,6 @@ public class CdjStatus extends DeviceUpdate {
         PLAY_STATE_3_MAP = Collections.unmodifiableMap(scratch);
     }
 
-    /**
-     * The third play state found in the packet, labeled <i>P<sub>3</sub></i> in the
-     * <a href="https://djl-analysis.deepsymmetry.org/djl-analysis/vcdj.html#cdj-status-packets">Packet Analysis document</a>.
-     */
-    private final PlayState3 playState3;
-
     /**
      * Get the third play state found in the packet, labeled <i>P<sub>3</sub></i> in the
      * <a href="https://djl-analysis.deepsymmetry.org/djl-analysis/vcdj.html#cdj-status-packets">Packet Analysis document</a>.
@@ -469,25 +427,100 @@ public class CdjStatus extends DeviceUpdate {
     }
 
     /**
-     * The device playback pitch found in the packet.
+     * The device number of the player from which the track was loaded.
      */
-    private final int pitch;
+    private int trackSourcePlayer;
+
+    /**
+     * The slot from which the track was loaded.
+     */
+    private TrackSourceSlot trackSourceSlot;
+
+    /**
+     * The type of track that is loaded.
+     */
+    private TrackType trackType;
+
+    /**
+     * The rekordbox ID of the loaded track.
+     */
+    private int rekordboxId;
+
+    /**
+     * The first play state found in the packet.
+     */
+    private PlayState1 playState1;
+
+    /**
+     * The second play state found in the packet.
+     */
+    private PlayState2 playState2;
+
+    /**
+     * The third play state found in the packet.
+     */
+    private PlayState3 playState3;
+
+    /**
+     * The effective device pitch found in the packet.
+     */
+    private int pitch;
 
     /**
      * The track BPM found in the packet.
      */
-    private final int bpm;
+    private int bpm;
+
+    /**
+     * The beat number found in the packet, or -1 if it was not available.
+     */
+    private int beatNumber;
+
+    /**
+     * The sync counter found in the packet.
+     */
+    private int syncNumber;
+
+    /**
+     * The device number to which the tempo master role is being handed, or 0xff if there is no hand-off underway.
+     */
+    private int handingMasterToDevice;
+
+    /**
+     * The raw bytes of the firmware version, so a pooled instance can tell whether its string is still valid.
+     */
+    private int firmwareBytes;
 
     /**
      * The firmware version found in the packet.
      */
-    private final String firmwareVersion;
+    private String firmwareVersion;
 
     /**
-     * If we are in the process of handing the tempo master role to another device, this will be the device number
-     * of that device, otherwise it will have the value 255.
+     * Interpret the fields of the packet that we have been constructed or bound to, so that the getters do not
+     * need to decode them each time they are called. The firmware version string is only rebuilt when it has
+     * changed, so a pooled instance being bound to a new packet from the same device allocates nothing.
      */
-    private final int handingMasterToDevice;
+    private void decode() {
+        trackSourcePlayer = packetBytes[40];
+        trackSourceSlot = findTrackSourceSlot();
+        trackType = findTrackType();
+        rekordboxId = (int)Util.bytesToNumber(packetBytes, 44, 4);
+        pitch = (int)Util.bytesToNumber(packetBytes, 141, 3);
+        bpm = (int)Util.bytesToNumber(packetBytes, 146, 2);
+        playState1 = findPlayState1();
+        playState2 = findPlayState2();
+        playState3 = findPlayState3();
+        final long rawBeat = Util.bytesToNumber(packetBytes, 160, 4);
+        beatNumber = (rawBeat == 0xffffffffL)? -1 : (int)rawBeat;
+        syncNumber = (int)Util.bytesToNumber(packetBytes, 0x84, 4);
+        handingMasterToDevice = Util.unsign(packetBytes[MASTER_HAND_OFF]);
+        final int rawFirmware = (int)Util.bytesToNumber(packetBytes, 124, 4);
+        if (firmwareVersion == null || rawFirmware != firmwareBytes) {
+            firmwareBytes = rawFirmware;
+            firmwareVersion = new String(packetBytes, 124, 4).trim();
+        }
+    }
 
     /**
      * Determine the enum value corresponding to the track source slot found in the packet.
@@ -593,7 +626,63 @@ public class CdjStatus extends DeviceUpdate {
      */
     public CdjStatus(DatagramPacket packet) {
         super(packet, "CDJ status", packet.getLength());
+        validatePacketSize();
+        decode();
+    }
+
+    /**
+     * Constructor for the pooled flyweight instances handed out by {@link DeviceUpdatePool}, which are not
+     * meaningful until they have been bound to a packet by calling {@link #rebind(DatagramPacket, String)}.
+     */
+    CdjStatus() {
+        super();
+    }
+
+    /**
+     * Constructor used by {@link #detach()} to create an independent, immutable copy of a pooled instance.
+     * The caller must hold the lock on {@code original}, so it cannot be rebound while we copy it.
+     *
+     * @param original the pooled update whose content should be copied
+     */
+    private CdjStatus(CdjStatus original) {
+        super(original);
+        firmwareBytes = original.firmwareBytes;
+        firmwareVersion = original.firmwareVersion;
+        decode();
+    }
 
+    /**
+     * Point a pooled flyweight instance at a newly received packet. Validation of the packet size (and the
+     * warnings it might log) is only repeated when the size differs from the last packet we represented, since
+     * it never changes in the steady state for a given device. This is synchronized so that {@link #detach()}
+     * can never copy a partially rebound instance.
+     *
+     * @param packet the CDJ status packet that was received
+     * @param name the interned name of the device that sent the packet
+     *
+     * @return {@code true} if the packet was a different size than the last one bound to this instance
+     */
+    @Override
+    synchronized boolean rebind(DatagramPacket packet, String name) {
+        if (packet.getLength() < MINIMUM_PACKET_SIZE) {
+            throw new IllegalArgumentException("Unable to bind a CdjStatus object, packet too short: we need " + MINIMUM_PACKET_SIZE +
+                    " bytes and were given only " + packet.getLength());
+        }
+        final boolean resized = super.rebind(packet, name);
+        if (resized) {
+            validatePacketSize();
+        }
+        decode();
+        return resized;
+    }
+
+    /**
+     * Make sure the packet we are representing is long enough to contain the fields we know how to interpret,
+     * and log a warning (once per combination) if its size is unexpected or does not match its own payload length.
+     *
+     * @throws IllegalArgumentException if the packet is too short
+     */
+    private void validatePacketSize() {
         if (packetBytes.length < MINIMUM_PACKET_SIZE) {
             throw new IllegalArgumentException("Unable to create a CdjStatus object, packet too short: we need " + MINIMUM_PACKET_SIZE +
                     " bytes and were given only " + packetBytes.length);
@@ -613,17 +702,24 @@ public class CdjStatus extends DeviceUpdate {
         if (expectedStatusPacketSizes.add(packetBytes.length)) {
             logger.warn("Processing CDJ Status packets with unexpected lengths " + packetBytes.length + ".");
         }
-        trackSourcePlayer = packetBytes[40];
-        trackSourceSlot = findTrackSourceSlot();
-        trackType = findTrackType();
-        rekordboxId = (int)Util.bytesToNumber(packetBytes, 44, 4);
-        pitch = (int)Util.bytesToNumber(packetBytes, 141, 3);
-        bpm = (int)Util.bytesToNumber(packetBytes, 146, 2);
-        playState1 = findPlayState1();
-        playState2 = findPlayState2();
-        playState3 = findPlayState3();
-        firmwareVersion = new String(packetBytes, 124, 4).trim();
-        handingMasterToDevice = Util.unsign(packetBytes[MASTER_HAND_OFF]);
+    }
+
+    /**
+     * Get a version of this update that is safe to hold on to. Ordinary updates are immutable, so they are simply
+     * returned, but if this is a pooled flyweight instance (see {@link #isPooled()}), an independent copy is made,
+     * since the pooled instance will be reused for a later packet from the same device. If that has already
+     * happened, the copy reflects the later packet, which is the most recent status of the same device.
+     *
+     * @return an update with the same content which will never change
+     */
+    @Override
+    public CdjStatus detach() {
+        if (isPooled()) {
+            synchronized (this) {
+                return new CdjStatus(this);
+            }
+        }
+        return this;
     }
 
     /**
@@ -880,7 +976,7 @@ public class CdjStatus extends DeviceUpdate {
      * @return true if a track has been loaded
      */
     public boolean isTrackLoaded() {
-        return  playState1 != PlayState1.NO_TRACK;
+        return  getPlayState1() != PlayState1.NO_TRACK;
     }
 
     /**
@@ -889,7 +985,7 @@ public class CdjStatus extends DeviceUpdate {
      * @return true if a loop is being played
      */
     public boolean isLooping() {
-        return playState1 == PlayState1.LOOPING;
+        return getPlayState1() == PlayState1.LOOPING;
     }
 
     /**
@@ -898,7 +994,8 @@ public class CdjStatus extends DeviceUpdate {
      * @return true if the player is paused, whether or not at the cue point
      */
     public boolean isPaused() {
-        return (playState1 == PlayState1.PAUSED) || (playState1 == PlayState1.CUED);
+        final PlayState1 state = getPlayState1();
+        return (state == PlayState1.PAUSED) || (state == PlayState1.CUED);
     }
 
     /**
@@ -907,7 +1004,7 @@ public class CdjStatus extends DeviceUpdate {
      * @return true if the player is paused at the cue point
      */
     public boolean isCued() {
-        return playState1 == PlayState1.CUED;
+        return getPlayState1() == PlayState1.CUED;
     }
 
     /**
@@ -916,7 +1013,7 @@ public class CdjStatus extends DeviceUpdate {
      * @return true if the player is searching forwards or backwards
      */
     public boolean isSearching() {
-        return playState1 == PlayState1.SEARCHING;
+        return getPlayState1() == PlayState1.SEARCHING;
     }
 
     /**
@@ -925,7 +1022,7 @@ public class CdjStatus extends DeviceUpdate {
      * @return true if playback stopped because a track ended
      */
     public boolean isAtEnd() {
-        return playState1 == PlayState1.ENDED;
+        return getPlayState1() == PlayState1.ENDED;
     }
 
     /**
@@ -934,7 +1031,7 @@ public class CdjStatus extends DeviceUpdate {
      * @return true if forward playback is underway
      */
     public boolean isPlayingForwards() {
-        return (playState1 == PlayState1.PLAYING) && (playState3 != PlayState3.PAUSED_OR_REVERSE);
+        return (getPlayState1() == PlayState1.PLAYING) && (getPlayState3() != PlayState3.PAUSED_OR_REVERSE);
     }
 
     /**
@@ -943,7 +1040,7 @@ public class CdjStatus extends DeviceUpdate {
      * @return true if reverse playback is underway
      */
     public boolean isPlayingBackwards() {
-        return (playState1 == PlayState1.PLAYING) && (playState3 == PlayState3.PAUSED_OR_REVERSE);
+        return (getPlayState1() == PlayState1.PLAYING) && (getPlayState3() == PlayState3.PAUSED_OR_REVERSE);
     }
 
     /**
@@ -952,7 +1049,7 @@ public class CdjStatus extends DeviceUpdate {
      * @return true if forward playback in vinyl mode is underway
      */
     public boolean isPlayingVinylMode() {
-        return playState3 == PlayState3.FORWARD_VINYL;
+        return getPlayState3() == PlayState3.FORWARD_VINYL;
     }
 
     /**
@@ -961,7 +1058,7 @@ public class CdjStatus extends DeviceUpdate {
      * @return true if forward playback in CDJ mode is underway
      */
     public boolean isPlayingCdjMode() {
-        return playState3 == PlayState3.FORWARD_CDJ;
+        return getPlayState3() == PlayState3.FORWARD_CDJ;
     }
 
     /**
@@ -1001,7 +1098,7 @@ public class CdjStatus extends DeviceUpdate {
      * its role as the tempo master.
      */
     public int getSyncNumber() {
-        return (int)Util.bytesToNumber(packetBytes, 0x84, 4);
+        return syncNumber;
     }
 
     /**
@@ -1016,10 +1113,7 @@ public class CdjStatus extends DeviceUpdate {
      */
     @SuppressWarnings("WeakerAccess")
     public int getBeatNumber() {
-        long result = Util.bytesToNumber(packetBytes, 160, 4);
-        if (result != 0xffffffffL) {
-            return (int) result;
-        } return -1;
+        return beatNumber;
     }
 
     /**
@@ -1089,10 +1183,10 @@ public class CdjStatus extends DeviceUpdate {
     public String toString() {
         return "CdjStatus[device:" + deviceNumber + ", name:" + deviceName +
                 ", address:" + address.getHostAddress() + ", timestamp:" + timestamp + ", busy? " + isBusy() +
-                ", pitch:" + String.format("%+.2f%%", Util.pitchToPercentage(pitch)) +
+                ", pitch:" + String.format("%+.2f%%", Util.pitchToPercentage(getPitch())) +
                 ", rekordboxId:" + getRekordboxId() + ", from player:" + getTrackSourcePlayer() +
                 ", in slot:" + getTrackSourceSlot() + ", track type:" + getTrackType() +
-                ", track:" + getTrackNumber() + ", track BPM:" + String.format("%.1f", bpm / 100.0) +
+                ", track:" + getTrackNumber() + ", track BPM:" + String.format("%.1f", getBpm() / 100.0) +
                 ", effective BPM:" + String.format("%.1f", getEffectiveTempo()) +
                 ", beat:" + getBeatNumber() + ", beatWithinBar:" + getBeatWithinBar() +
                 ", isBeatWithinBarMeaningful? " + isBeatWithinBarMeaningful() + ", cue: " + formatCueCountdown() +
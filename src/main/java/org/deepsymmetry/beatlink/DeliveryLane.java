@@ -0,0 +1,362 @@
+package org.deepsymmetry.beatlink;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * <p>Delivers updates to a single listener on its own thread, so that a listener which is slow to return cannot add
+ * latency for the other listeners registered with the same class. Lanes are created when a listener is registered
+ * with an overflow policy, for example by {@link VirtualCdj#addUpdateListener(DeviceUpdateListener, OverflowPolicy, int)}
+ * or {@link BeatFinder#addBeatListener(BeatListener, OverflowPolicy, int)}, and shut down when it is removed.</p>
+ *
+ * <p>Each lane has a bounded queue which is filled by the packet receiver thread and drained by the lane's own
+ * thread. What happens when the listener falls far enough behind that the queue fills up is determined by the
+ * lane's {@link OverflowPolicy}. The lane keeps track of how far behind its listener is running, which can be
+ * checked using {@link #getLatestLag()} and {@link #getMaximumLag()}.</p>
+ *
+ * <p>Updates which would otherwise be reused when the {@link VirtualCdj} is in flyweight mode are copied before
+ * being queued, so listeners in a lane can safely hold on to them.</p>
+ *
+ * @param <T> the type of update delivered by the lane
+ *
+ * @author James Elliott
+ * @since 0.6.3
+ */
+@SuppressWarnings("WeakerAccess")
+public abstract class DeliveryLane<T extends DeviceUpdate> {
+
+    private static final Logger logger = LoggerFactory.getLogger(DeliveryLane.class);
+
+    /**
+     * Determines what happens when an update arrives for a lane whose queue is already full.
+     */
+    public enum OverflowPolicy {
+        /**
+         * The oldest update waiting in the queue is discarded to make room for the new one.
+         */
+        DROP_OLDEST,
+
+        /**
+         * Only the most recent update from each device is kept; a new update from a device replaces any which is
+         * still waiting to be delivered. The queue can never hold more than one update per device, so the
+         * capacity is ignored. This is a good choice for listeners which only care about the current state of
+         * each device, such as user interfaces.
+         */
+        COALESCE_LATEST_PER_DEVICE
+    }
+
+    /**
+     * Holds an update waiting to be delivered, along with the time at which it was queued so lag can be measured.
+     *
+     * @param <T> the type of update
+     */
+    private static final class Pending<T> {
+        final T update;
+        final long queued;
+
+        Pending(T update) {
+            this.update = update;
+            queued = System.nanoTime();
+        }
+    }
+
+    /**
+     * How this lane deals with a full queue.
+     */
+    private final OverflowPolicy policy;
+
+    /**
+     * The largest number of updates that can be waiting for delivery.
+     */
+    private final int capacity;
+
+    /**
+     * The updates waiting for delivery, unless we are coalescing updates by device.
+     */
+    private final ConcurrentLinkedQueue<Pending<T>> queue = new ConcurrentLinkedQueue<Pending<T>>();
+
+    /**
+     * When coalescing updates by device, holds the device numbers which have updates waiting for delivery, in the
+     * order in which they first became pending.
+     */
+    private final ConcurrentLinkedQueue<Integer> pendingDevices = new ConcurrentLinkedQueue<Integer>();
+
+    /**
+     * When coalescing updates by device, holds the most recent update waiting for delivery from each device number.
+     */
+    private final AtomicReferenceArray<Pending<T>> latestByDevice = new AtomicReferenceArray<Pending<T>>(256);
+
+    /**
+     * How many updates are waiting for delivery.
+     */
+    private final AtomicInteger size = new AtomicInteger(0);
+
+    /**
+     * How many updates have been discarded or replaced before they could be delivered.
+     */
+    private final AtomicLong dropped = new AtomicLong(0);
+
+    /**
+     * How many nanoseconds the most recently delivered update spent waiting for delivery.
+     */
+    private final AtomicLong latestLag = new AtomicLong(0);
+
+    /**
+     * The largest number of nanoseconds any update has spent waiting for delivery.
+     */
+    private final AtomicLong maximumLag = new AtomicLong(0);
+
+    /**
+     * Set once the lane has been shut down.
+     */
+    private final AtomicBoolean closed = new AtomicBoolean(false);
+
+    /**
+     * Held by the lane's thread while it delivers an update, so that {@link #awaitDelivery()} can wait for a delivery
+     * which was already underway when the lane was closed.
+     */
+    private final Object deliveryLock = new Object();
+
+    /**
+     * The thread which delivers updates to the listener.
+     */
+    private final Thread consumer;
+
+    /**
+     * Create and start a delivery lane.
+     *
+     * @param description identifies the lane in the name of its thread
+     * @param policy determines what happens when the queue is full
+     * @param capacity the largest number of updates that can be waiting for delivery
+     *
+     * @throws IllegalArgumentException if {@code policy} is {@code null} or {@code capacity} is not positive
+     */
+    DeliveryLane(String description, OverflowPolicy policy, int capacity) {
+        if (policy == null) {
+            throw new IllegalArgumentException("policy must not be null");
+        }
+        if (capacity < 1) {
+            throw new IllegalArgumentException("capacity must be positive");
+        }
+        this.policy = policy;
+        this.capacity = capacity;
+        consumer = new Thread(null, new Runnable() {
+            @Override
+            public void run() {
+                consume();
+            }
+        }, "beat-link DeliveryLane " + description);
+        consumer.setDaemon(true);
+        consumer.start();
+    }
+
+    /**
+     * Deliver an update to the listener served by this lane. Called on the lane's own thread.
+     *
+     * @param update the update to be delivered
+     */
+    abstract void deliver(T update);
+
+    /**
+     * Make sure an update will remain valid while it waits in the queue.
+     *
+     * @param update an update which has just been received
+     *
+     * @return the update, or a copy if it belongs to the flyweight pool of the {@link VirtualCdj}
+     */
+    @SuppressWarnings("unchecked")
+    private T stable(T update) {
+        return (T) update.detach();
+    }
+
+    /**
+     * Queue an update for delivery to the listener, applying the overflow policy if the queue is full. Called on
+     * the packet receiver thread.
+     *
+     * @param update the update to be delivered
+     */
+    void offer(T update) {
+        if (closed.get()) {
+            return;
+        }
+        final Pending<T> pending = new Pending<T>(stable(update));
+        switch (policy) {
+            case COALESCE_LATEST_PER_DEVICE:
+                final int device = update.getDeviceNumber() & 0xff;
+                if (latestByDevice.getAndSet(device, pending) == null) {
+                    size.incrementAndGet();
+                    pendingDevices.offer(device);
+                } else {
+                    dropped.incrementAndGet();
+                }
+                break;
+
+            case DROP_OLDEST:
+                while (size.get() >= capacity && queue.poll() != null) {
+                    size.decrementAndGet();
+                    dropped.incrementAndGet();
+                }
+                size.incrementAndGet();
+                queue.offer(pending);
+                break;
+        }
+        LockSupport.unpark(consumer);
+    }
+
+    /**
+     * Take the next update waiting for delivery, if there is one.
+     *
+     * @return the oldest pending update, or {@code null} if there are none
+     */
+    private Pending<T> poll() {
+        if (policy == OverflowPolicy.COALESCE_LATEST_PER_DEVICE) {
+            final Integer device = pendingDevices.poll();
+            if (device == null) {
+                return null;
+            }
+            size.decrementAndGet();
+            return latestByDevice.getAndSet(device, null);
+        }
+        final Pending<T> result = queue.poll();
+        if (result != null) {
+            size.decrementAndGet();
+        }
+        return result;
+    }
+
+    /**
+     * The main loop of the lane's thread, which delivers updates as they arrive until the lane is closed.
+     */
+    private void consume() {
+        while (!closed.get()) {
+            final Pending<T> pending = poll();
+            if (pending == null) {
+                LockSupport.park(this);
+            } else {
+                final long lag = System.nanoTime() - pending.queued;
+                latestLag.set(lag);
+                long max = maximumLag.get();
+                while (lag > max && !maximumLag.compareAndSet(max, lag)) {
+                    max = maximumLag.get();
+                }
+                synchronized (deliveryLock) {
+                    if (closed.get()) {
+                        break;  // The listener has been removed since we took the update from the queue.
+                    }
+                    try {
+                        deliver(pending.update);
+                    } catch (Throwable t) {
+                        logger.warn("Problem delivering update to listener", t);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Shut down the lane, discarding any updates that have not yet been delivered. This should be called while
+     * holding the lock used to remove the listener, so no new updates can reach it once it has been removed. A
+     * delivery which was already underway may still be running; use {@link #awaitDelivery()}, without holding
+     * that lock, to wait for it.
+     */
+    void close() {
+        if (closed.compareAndSet(false, true)) {
+            LockSupport.unpark(consumer);
+            queue.clear();
+            pendingDevices.clear();
+            size.set(0);
+        }
+    }
+
+    /**
+     * Wait for any delivery that was underway when the lane was closed to finish, so that the listener is not
+     * called after it has been removed. Does nothing if called by the listener itself, on the lane's own thread.
+     */
+    void awaitDelivery() {
+        if (Thread.currentThread() != consumer) {
+            //noinspection EmptySynchronizedStatement
+            synchronized (deliveryLock) {
+                // Nothing to do, we just needed to know that the lane's thread was not delivering.
+            }
+        }
+    }
+
+    /**
+     * Check how the lane deals with a full queue.
+     *
+     * @return the overflow policy in effect
+     */
+    public OverflowPolicy getPolicy() {
+        return policy;
+    }
+
+    /**
+     * Check the largest number of updates that can be waiting for delivery. This is ignored by the
+     * {@link OverflowPolicy#COALESCE_LATEST_PER_DEVICE} policy.
+     *
+     * @return the queue capacity
+     */
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Check how many updates are currently waiting for delivery.
+     *
+     * @return the number of updates in the queue
+     */
+    public int getQueueDepth() {
+        return size.get();
+    }
+
+    /**
+     * Check how many updates were never delivered because the queue was full, or because they were replaced by a
+     * newer update from the same device.
+     *
+     * @return the number of updates that have been dropped since the lane was created
+     */
+    public long getDroppedCount() {
+        return dropped.get();
+    }
+
+    /**
+     * Check how far behind the listener is running.
+     *
+     * @return the number of nanoseconds the most recently delivered update spent waiting in the queue
+     */
+    public long getLatestLag() {
+        return latestLag.get();
+    }
+
+    /**
+     * Check how far behind the listener has ever fallen.
+     *
+     * @return the largest number of nanoseconds any update has spent waiting in the queue
+     */
+    public long getMaximumLag() {
+        return maximumLag.get();
+    }
+
+    /**
+     * Check whether the lane is still delivering updates.
+     *
+     * @return {@code true} until the listener is removed
+     */
+    public boolean isOpen() {
+        return !closed.get();
+    }
+
+    @Override
+    public String toString() {
+        return "DeliveryLane[policy:" + policy + ", capacity:" + capacity + ", queueDepth:" + getQueueDepth() +
+                ", dropped:" + getDroppedCount() + ", latestLag:" + getLatestLag() + ", maximumLag:" + getMaximumLag() +
+                ", open:" + isOpen() + "]";
+    }
+}
@@ -2,8 +2,9 @@ package org.deepsymmetry.beatlink;
 
 import java.io.IOException;
 import java.net.*;
+import java.nio.channels.DatagramChannel;
 import java.util.*;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.*;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
 
@@ -35,9 +36,9 @@ public class DeviceFinder extends LifecycleParticipant {
     public static final int MAXIMUM_AGE = 10000;
 
     /**
-     * The socket used to listen for announcement packets while we are active.
+     * The channel used to listen for announcement packets while we are active.
      */
-    private final AtomicReference<DatagramSocket> socket = new AtomicReference<DatagramSocket>(null);
+    private final AtomicReference<DatagramChannel> channel = new AtomicReference<DatagramChannel>(null);
 
     /**
      * Track when we started listening for announcement packets.
@@ -57,7 +58,7 @@ public class DeviceFinder extends LifecycleParticipant {
      * @return {@code true} if our socket is open and monitoring for DJ Link device announcements on the network
      */
     public boolean isRunning() {
-        return socket.get() != null;
+        return channel.get() != null;
     }
 
     /**
@@ -172,84 +173,137 @@ public class DeviceFinder extends LifecycleParticipant {
     }
 
     /**
-     * Start listening for device announcements and keeping track of the DJ Link devices visible on the network.
-     * If already listening, has no effect.
+     * Process a packet that has been received on the announcement port.
      *
-     * @throws SocketException if the socket to listen on port 50000 cannot be created
+     * @param kind the type of packet that was received
+     * @param packet the packet content
      */
-    public synchronized void start() throws SocketException {
+    private void handlePacket(Util.PacketType kind, DatagramPacket packet) {
+        if (kind == Util.PacketType.DEVICE_KEEP_ALIVE) {
+            // Looks like the kind of packet we need
+            if (packet.getLength() < 54) {
+                logger.warn("Ignoring too-short " + kind.name + " packet; expected 54 bytes, but only got " +
+                        packet.getLength() + ".");
+            } else {
+                if (packet.getLength() > 54) {
+                    logger.warn("Processing too-long " + kind.name + " packet; expected 54 bytes, but got " +
+                            packet.getLength() + ".");
+                }
+                DeviceAnnouncement announcement = new DeviceAnnouncement(packet);
+                final boolean foundNewDevice = isDeviceNew(announcement);
+                updateDevices(announcement);
+                if (foundNewDevice) {
+                    deliverFoundAnnouncement(announcement);
+                }
+                if (VirtualCdj.getInstance().isRunning() &&
+                        announcement.getDeviceNumber() == VirtualCdj.getInstance().getDeviceNumber()) {
+                    // Someone is using the same device number as we are! Try to defend it.
+                    VirtualCdj.getInstance().defendDeviceNumber(announcement.getAddress());
+                }
+            }
+        } else if (kind == Util.PacketType.DEVICE_HELLO) {
+            logger.debug("Received device hello packet.");
+        } else {
+            VirtualCdj.getInstance().handleSpecialAnnouncementPacket(kind, packet);
+        }
+    }
 
-        if (!isRunning()) {
-            socket.set(new DatagramSocket(ANNOUNCEMENT_PORT));
-            startTime.set(System.currentTimeMillis());
-            deliverLifecycleAnnouncement(logger, true);
+    /**
+     * Processes announcement packets and expires vanished devices on a thread of its own, in the order the packets
+     * arrived, so that this work (and anything it triggers, such as defending our device number) never holds up the
+     * {@link PacketReceiver} thread, which is also receiving beats and status updates on the other ports.
+     */
+    private final ThreadPoolExecutor announcementProcessor = createAnnouncementProcessor();
+
+    /**
+     * Set up the executor which processes announcement packets, with a single thread that goes away when no
+     * packets have arrived for a minute.
+     *
+     * @return the executor
+     */
+    private static ThreadPoolExecutor createAnnouncementProcessor() {
+        final ThreadPoolExecutor result = new ThreadPoolExecutor(1, 1, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+                    @Override
+                    public Thread newThread(Runnable r) {
+                        final Thread thread = new Thread(r, "beat-link DeviceFinder announcement processor");
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
+        result.allowCoreThreadTimeOut(true);
+        return result;
+    }
+
+    /**
+     * Receives the packets which arrive on our channel, on the {@link PacketReceiver} thread, and hands them and the
+     * periodic check for devices that have vanished to the {@link #announcementProcessor}.
+     */
+    private final PacketReceiver.Handler packetHandler = new PacketReceiver.Handler() {
+        @Override
+        boolean accepts(InetAddress address) {
+            return !ignoredAddresses.contains(address);
+        }
 
-            final byte[] buffer = new byte[512];
-            final DatagramPacket packet = new DatagramPacket(buffer, buffer.length);
-            Thread receiver = new Thread(null, new Runnable() {
+        @Override
+        void received(final Util.PacketType kind, DatagramPacket packet) {
+            // The receiver reuses the packet as soon as we return, so give the processor a copy.
+            final byte[] data = Arrays.copyOfRange(packet.getData(), packet.getOffset(), packet.getOffset() + packet.getLength());
+            final DatagramPacket copy = new DatagramPacket(data, data.length, packet.getAddress(), packet.getPort());
+            announcementProcessor.execute(new Runnable() {
                 @Override
                 public void run() {
-                    boolean received;
-                    while (isRunning()) {
+                    if (isRunning()) {
                         try {
-                            if (getCurrentDevices().isEmpty()) {
-                                socket.get().setSoTimeout(60000);  // We have no devices to check for timeout; block for a whole minute to check for shutdown
-                            } else {
-                                socket.get().setSoTimeout(1000);  // Check every second to see if a device has vanished
-                            }
-                            socket.get().receive(packet);
-                            received = !ignoredAddresses.contains(packet.getAddress());
-                        } catch (SocketTimeoutException ste) {
-                            received = false;
-                        } catch (IOException e) {
-                            // Don't log a warning if the exception was due to the socket closing at shutdown.
-                            if (isRunning()) {
-                                // We did not expect to have a problem; log a warning and shut down.
-                                logger.warn("Problem reading from DeviceAnnouncement socket, stopping", e);
-                                stop();
-                            }
-                            received = false;
-                        }
-                        try {
-                            if (received) {
-                                final Util.PacketType kind = Util.validateHeader(packet, ANNOUNCEMENT_PORT);
-                                if (kind == Util.PacketType.DEVICE_KEEP_ALIVE) {
-                                    // Looks like the kind of packet we need
-                                    if (packet.getLength() < 54) {
-                                        logger.warn("Ignoring too-short " + kind.name + " packet; expected 54 bytes, but only got " +
-                                                packet.getLength() + ".");
-                                    } else {
-                                        if (packet.getLength() > 54) {
-                                            logger.warn("Processing too-long " + kind.name + " packet; expected 54 bytes, but got " +
-                                                    packet.getLength() + ".");
-                                        }
-                                        DeviceAnnouncement announcement = new DeviceAnnouncement(packet);
-                                        final boolean foundNewDevice = isDeviceNew(announcement);
-                                        updateDevices(announcement);
-                                        if (foundNewDevice) {
-                                            deliverFoundAnnouncement(announcement);
-                                        }
-                                        if (VirtualCdj.getInstance().isRunning() &&
-                                                announcement.getDeviceNumber() == VirtualCdj.getInstance().getDeviceNumber()) {
-                                            // Someone is using the same device number as we are! Try to defend it.
-                                            VirtualCdj.getInstance().defendDeviceNumber(announcement.getAddress());
-                                        }
-                                    }
-                                } else if (kind == Util.PacketType.DEVICE_HELLO) {
-                                    logger.debug("Received device hello packet.");
-                                } else if (kind != null) {
-                                    VirtualCdj.getInstance().handleSpecialAnnouncementPacket(kind, packet);
-                                }
-                            }
+                            handlePacket(kind, copy);
                             expireDevices();
                         } catch (Throwable t) {
                             logger.warn("Problem processing DeviceAnnouncement packet", t);
                         }
                     }
                 }
-            }, "beat-link DeviceFinder receiver");
-            receiver.setDaemon(true);
-            receiver.start();
+            });
+        }
+
+        @Override
+        void idle() {
+            if (isRunning()) {
+                announcementProcessor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (isRunning()) {
+                            expireDevices();  // Check every second to see if a device has vanished.
+                        }
+                    }
+                });
+            }
+        }
+
+        @Override
+        void failed(IOException e) {
+            // Don't log a warning if the exception was due to the channel closing at shutdown.
+            if (isRunning()) {
+                // We did not expect to have a problem; log a warning and shut down.
+                logger.warn("Problem reading from DeviceAnnouncement channel, stopping", e);
+                stop();
+            }
+        }
+    };
+
+    /**
+     * Start listening for device announcements and keeping track of the DJ Link devices visible on the network.
+     * If already listening, has no effect.
+     *
+     * @throws SocketException if the socket to listen on port 50000 cannot be created
+     */
+    public synchronized void start() throws SocketException {
+
+        if (!isRunning()) {
+            final DatagramChannel newChannel = PacketReceiver.openChannel(new InetSocketAddress(ANNOUNCEMENT_PORT));
+            PacketReceiver.getInstance().register(newChannel, ANNOUNCEMENT_PORT, packetHandler);  // Closes the channel on failure.
+            channel.set(newChannel);
+            startTime.set(System.currentTimeMillis());
+            deliverLifecycleAnnouncement(logger, true);
         }
     }
 
@@ -281,8 +335,7 @@ public class DeviceFinder extends LifecycleParticipant {
     @SuppressWarnings("WeakerAccess")
     public synchronized void stop() {
         if (isRunning()) {
-            socket.get().close();
-            socket.set(null);
+            PacketReceiver.getInstance().unregister(channel.getAndSet(null));
             flush();
             deliverLifecycleAnnouncement(logger, false);
         }
@@ -329,8 +382,8 @@ public class DeviceFinder extends LifecycleParticipant {
     /**
      * Keeps track of the registered device announcement listeners.
      */
-    private final Set<DeviceAnnouncementListener> deviceListeners =
-            Collections.newSetFromMap(new ConcurrentHashMap<DeviceAnnouncementListener, Boolean>());
+    private final ListenerRegistry<DeviceAnnouncementListener> deviceListeners =
+            new ListenerRegistry<DeviceAnnouncementListener>();
     /**
      * Adds the specified device announcement listener to receive device announcements when DJ Link devices
      * are found on or leave the network. If {@code listener} is {@code null} or already present in the list
@@ -369,8 +422,7 @@ public class DeviceFinder extends LifecycleParticipant {
      */
     @SuppressWarnings("WeakerAccess")
     public Set<DeviceAnnouncementListener> getDeviceAnnouncementListeners() {
-        // Make a copy so callers get an immutable snapshot of the current state.
-        return Collections.unmodifiableSet(new HashSet<DeviceAnnouncementListener>(deviceListeners));
+        return deviceListeners.asSet();
     }
 
     /**
@@ -379,7 +431,9 @@ public class DeviceFinder extends LifecycleParticipant {
      * @param announcement the message announcing the new device
      */
     private void deliverFoundAnnouncement(final DeviceAnnouncement announcement) {
-        for (final DeviceAnnouncementListener listener : getDeviceAnnouncementListeners()) {
+        final List<DeviceAnnouncementListener> listeners = deviceListeners.snapshot();
+        for (int i = 0; i < listeners.size(); i++) {
+            final DeviceAnnouncementListener listener = listeners.get(i);
             SwingUtilities.invokeLater(new Runnable() {
                 @Override
                 public void run() {
@@ -399,7 +453,9 @@ public class DeviceFinder extends LifecycleParticipant {
      * @param announcement the last message received from the vanished device
      */
     private void deliverLostAnnouncement(final DeviceAnnouncement announcement) {
-        for (final DeviceAnnouncementListener listener : getDeviceAnnouncementListeners()) {
+        final List<DeviceAnnouncementListener> listeners = deviceListeners.snapshot();
+        for (int i = 0; i < listeners.size(); i++) {
+            final DeviceAnnouncementListener listener = listeners.get(i);
             SwingUtilities.invokeLater(new Runnable() {
                 @Override
                 public void run() {
@@ -13,33 +13,41 @@ public abstract class DeviceUpdate {
     /**
      * The address from which this device update was received.
      */
-    final InetAddress address;
+    InetAddress address;
 
     /**
      * When this update was received.
      */
     @SuppressWarnings("WeakerAccess")
-    final long timestamp;
+    long timestamp;
 
     /**
      * The name of the device sending the update.
      */
-    final String deviceName;
+    String deviceName;
 
     /**
      * The player/device number sending the update.
      */
-    final int deviceNumber;
+    int deviceNumber;
 
     /**
      * The packet data containing the device update.
      */
-    final byte[] packetBytes;
+    byte[] packetBytes;
 
     /**
      * Does this appear to come from a pre-nexus CDJ?
      */
-    final boolean preNexusCdj;
+    boolean preNexusCdj;
+
+    /**
+     * Will be {@code true} if this is a pooled flyweight instance that gets reused for later packets from the
+     * same device, see {@link VirtualCdj#setUseFlyweightUpdates(boolean)}. None of the fields above ever change
+     * for ordinary instances; for pooled ones they are only changed by {@link #rebind(DatagramPacket, String)}
+     * on the thread receiving status packets, while holding the instance's lock.
+     */
+    private final boolean pooled;
 
     /**
      * Constructor sets all the immutable interpreted fields based on the packet content.
@@ -60,6 +68,83 @@ public abstract class DeviceUpdate {
         deviceName = new String(packetBytes, 11, 20).trim();
         preNexusCdj = deviceName.startsWith("CDJ") && deviceName.endsWith("0");
         deviceNumber = Util.unsign(packetBytes[33]);
+        pooled = false;
+    }
+
+    /**
+     * Constructor for pooled flyweight instances, which are not meaningful until they have been bound to a packet
+     * by calling {@link #rebind(DatagramPacket, String)}.
+     */
+    DeviceUpdate() {
+        pooled = true;
+    }
+
+    /**
+     * Constructor used to create an independent, immutable copy of a pooled flyweight instance.
+     *
+     * @param original the update whose content should be copied
+     */
+    DeviceUpdate(DeviceUpdate original) {
+        timestamp = original.timestamp;
+        address = original.address;
+        packetBytes = new byte[original.packetBytes.length];
+        System.arraycopy(original.packetBytes, 0, packetBytes, 0, packetBytes.length);
+        deviceName = original.deviceName;
+        preNexusCdj = original.preNexusCdj;
+        deviceNumber = original.deviceNumber;
+        pooled = false;
+    }
+
+    /**
+     * Point a pooled flyweight instance at a newly received packet. The packet content is copied into the byte
+     * array we already own whenever it is the same size as the previous packet, which is the steady state for
+     * any given device, so no allocation takes place.
+     *
+     * @param packet the device update packet that was received
+     * @param name the interned name of the device that sent the packet
+     *
+     * @return {@code true} if the packet was a different size than the last one bound to this instance, so that
+     *         subclasses know they need to validate the new size
+     */
+    synchronized boolean rebind(DatagramPacket packet, String name) {
+        timestamp = System.nanoTime();
+        address = packet.getAddress();
+        final boolean resized = packetBytes == null || packetBytes.length != packet.getLength();
+        if (resized) {
+            packetBytes = new byte[packet.getLength()];
+        }
+        System.arraycopy(packet.getData(), packet.getOffset(), packetBytes, 0, packetBytes.length);
+        if (!name.equals(deviceName)) {
+            deviceName = name;
+            preNexusCdj = deviceName.startsWith("CDJ") && deviceName.endsWith("0");
+        }
+        deviceNumber = Util.unsign(packetBytes[33]);
+        return resized;
+    }
+
+    /**
+     * Check whether this is a pooled flyweight instance, which will be reused to represent a later packet from the
+     * same device once the pool for that device has cycled around. Pooled updates are only delivered when
+     * {@link VirtualCdj#setUseFlyweightUpdates(boolean)} has been used to turn on that mode. Code that needs to
+     * hold on to a pooled update for longer than it takes to process it should retain a copy, which can be
+     * obtained by calling {@link #detach()}.
+     *
+     * @return {@code true} if the content of this update will be replaced when a later packet arrives
+     */
+    public boolean isPooled() {
+        return pooled;
+    }
+
+    /**
+     * Get a version of this update that is safe to hold on to, or to hand to another thread. Ordinary updates are
+     * immutable, so they are simply returned; pooled flyweight instances (see {@link #isPooled()}) are copied.
+     *
+     * @return an update with the same content which will never change
+     *
+     * @since 0.6.3
+     */
+    public DeviceUpdate detach() {
+        return this;
     }
 
     /**
@@ -0,0 +1,160 @@
+package org.deepsymmetry.beatlink;
+
+import java.net.DatagramPacket;
+
+/**
+ * Supports the flyweight mode of the {@link VirtualCdj}, in which status packets are represented by reusable
+ * {@link CdjStatus} and {@link MixerStatus} instances rather than new objects for each packet. Each device number
+ * gets its own ring of instances, each of which owns a packet buffer that is refilled in place, so once every device
+ * has been heard from, receiving status packets no longer allocates any memory.
+ *
+ * <p>Because the rings are per device, an update remains valid until that same device has sent
+ * {@link #RING_SIZE} more packets, which at the normal rate of five packets per second is well over a second.
+ * Pooled instances are only handed directly to listeners running on the receiving thread; anything that keeps an
+ * update or passes it to another thread uses a copy obtained from {@link DeviceUpdate#detach()}, which locks the
+ * instance so that it cannot be rebound while it is being copied.</p>
+ *
+ * <p>This class is not thread-safe; it is only used by the thread receiving status packets.</p>
+ *
+ * @author James Elliott
+ * @since 0.6.3
+ */
+final class DeviceUpdatePool {
+
+    /**
+     * How many pooled instances are kept for each device, and so how many later packets from the same device will
+     * be received before an instance gets reused.
+     */
+    static final int RING_SIZE = 8;
+
+    /**
+     * The offset within a status packet at which the device name begins.
+     */
+    private static final int NAME_OFFSET = 0x0b;
+
+    /**
+     * The length of the device name within a status packet.
+     */
+    private static final int NAME_LENGTH = 0x14;
+
+    /**
+     * The offset within a status packet at which the device number is found.
+     */
+    private static final int DEVICE_NUMBER_OFFSET = 0x21;
+
+    /**
+     * The rings of pooled player status instances, indexed by device number, created as devices are first seen.
+     */
+    private final CdjStatus[][] cdjRings = new CdjStatus[256][];
+
+    /**
+     * The rings of pooled mixer status instances, indexed by device number, created as devices are first seen.
+     */
+    private final MixerStatus[][] mixerRings = new MixerStatus[256][];
+
+    /**
+     * The position within each device's ring of the instance that was most recently handed out.
+     */
+    private final int[] cursors = new int[256];
+
+    /**
+     * The interned device names, indexed by device number.
+     */
+    private final String[] names = new String[256];
+
+    /**
+     * The raw bytes from which each interned device name was built, so we can tell if it is still valid.
+     */
+    private final byte[][] nameBytes = new byte[256][];
+
+    /**
+     * Find the device name reported in a status packet, reusing the string built for the last packet from the
+     * same device number as long as the name bytes have not changed.
+     *
+     * @param data the packet content
+     * @param offset where the packet starts within {@code data}
+     * @param deviceNumber the device number found in the packet
+     *
+     * @return the interned device name
+     */
+    private String internName(byte[] data, int offset, int deviceNumber) {
+        final byte[] known = nameBytes[deviceNumber];
+        if (known != null) {
+            boolean matches = true;
+            for (int i = 0; i < NAME_LENGTH && matches; i++) {
+                matches = known[i] == data[offset + NAME_OFFSET + i];
+            }
+            if (matches) {
+                return names[deviceNumber];
+            }
+        }
+        final byte[] raw = new byte[NAME_LENGTH];
+        System.arraycopy(data, offset + NAME_OFFSET, raw, 0, NAME_LENGTH);
+        nameBytes[deviceNumber] = raw;
+        names[deviceNumber] = new String(raw).trim();
+        return names[deviceNumber];
+    }
+
+    /**
+     * Advance to the next position in a device's ring.
+     *
+     * @param deviceNumber the device whose ring is being used
+     *
+     * @return the position of the instance that should be used for the new packet
+     */
+    private int advance(int deviceNumber) {
+        final int result = (cursors[deviceNumber] + 1) % RING_SIZE;
+        cursors[deviceNumber] = result;
+        return result;
+    }
+
+    /**
+     * Bind the next pooled player status instance for the device that sent a packet to that packet's content.
+     *
+     * @param packet a CDJ status packet that has just been received
+     *
+     * @return a pooled instance representing the packet
+     *
+     * @throws IllegalArgumentException if the packet is too short to be a CDJ status packet
+     */
+    CdjStatus cdjStatusFor(DatagramPacket packet) {
+        final byte[] data = packet.getData();
+        final int deviceNumber = Util.unsign(data[packet.getOffset() + DEVICE_NUMBER_OFFSET]);
+        CdjStatus[] ring = cdjRings[deviceNumber];
+        if (ring == null) {
+            ring = new CdjStatus[RING_SIZE];
+            for (int i = 0; i < RING_SIZE; i++) {
+                ring[i] = new CdjStatus();
+            }
+            cdjRings[deviceNumber] = ring;
+        }
+        final CdjStatus result = ring[advance(deviceNumber)];
+        result.rebind(packet, internName(data, packet.getOffset(), deviceNumber));
+        return result;
+    }
+
+    /**
+     * Bind the next pooled mixer status instance for the device that sent a packet to that packet's content.
+     *
+     * @param packet a mixer status packet that has just been received
+     *
+     * @return a pooled instance representing the packet
+     *
+     * @throws IllegalArgumentException if the packet is too short to be a mixer status packet
+     */
+    MixerStatus mixerStatusFor(DatagramPacket packet) {
+        final byte[] data = packet.getData();
+        final int deviceNumber = Util.unsign(data[packet.getOffset() + DEVICE_NUMBER_OFFSET]);
+        MixerStatus[] ring = mixerRings[deviceNumber];
+        if (ring == null) {
+            ring = new MixerStatus[RING_SIZE];
+            for (int i = 0; i < RING_SIZE; i++) {
+                ring[i] = new MixerStatus();
+            }
+            mixerRings[deviceNumber] = ring;
+        }
+        final MixerStatus result = ring[advance(deviceNumber)];
+        result.rebind(packet, internName(data, packet.getOffset(), deviceNumber));
+        return result;
+    }
+}
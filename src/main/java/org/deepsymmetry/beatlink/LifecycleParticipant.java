@@ -2,10 +2,8 @@ package org.deepsymmetry.beatlink;
 
 import org.slf4j.Logger;
 
-import java.util.Collections;
-import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
-import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Provides the abstract skeleton for all the classes that can be started and stopped in Beat Link, and for which
@@ -16,8 +14,8 @@ public abstract class LifecycleParticipant {
     /**
      * Keeps track of the registered device announcement listeners.
      */
-    private final Set<LifecycleListener> lifecycleListeners =
-            Collections.newSetFromMap(new ConcurrentHashMap<LifecycleListener, Boolean>());
+    private final ListenerRegistry<LifecycleListener> lifecycleListeners =
+            new ListenerRegistry<LifecycleListener>();
 
     /**
      * <p>Adds the specified life cycle listener to receive announcements when the component starts and stops.
@@ -56,8 +54,7 @@ public abstract class LifecycleParticipant {
      */
     @SuppressWarnings("WeakerAccess")
     public Set<LifecycleListener> getLifecycleListeners() {
-        // Make a copy so the caller gets an immutable snapshot of the current moment in time.
-        return Collections.unmodifiableSet(new HashSet<LifecycleListener>(lifecycleListeners));
+        return lifecycleListeners.asSet();
     }
 
     /**
@@ -67,10 +64,12 @@ public abstract class LifecycleParticipant {
      * @param starting will be {@code true} if the DeviceFinder is starting, {@code false} if it is stopping.
      */
     protected void deliverLifecycleAnnouncement(final Logger logger, final boolean starting) {
-        new Thread(new Runnable() {
+        Scheduler.getInstance().execute(Scheduler.Pool.DELIVERY, "lifecycle announcement delivery", new Runnable() {
             @Override
             public void run() {
-                for (final LifecycleListener listener : getLifecycleListeners()) {
+                final List<LifecycleListener> listeners = lifecycleListeners.snapshot();
+                for (int i = 0; i < listeners.size(); i++) {
+                    final LifecycleListener listener = listeners.get(i);
                     try {
                         if (starting) {
                             listener.started(LifecycleParticipant.this);
@@ -82,7 +81,7 @@ public abstract class LifecycleParticipant {
                     }
                 }
             }
-        }, "Lifecycle announcement delivery").start();
+        });
     }
 
     /**
@@ -0,0 +1,128 @@
+package org.deepsymmetry.beatlink;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * <p>Keeps track of the listeners registered for a particular kind of event, in a way that is optimized for the
+ * fact that events are delivered far more often than listeners come and go. The current listeners are kept in an
+ * immutable list which is replaced, never modified, whenever a listener is added or removed, so delivery code can
+ * walk through {@link #snapshot()} by index without locking and without allocating anything, and is never affected
+ * by listeners being added or removed while it is running.</p>
+ *
+ * <p>An immutable {@link Set} view of each snapshot is built at the same time, so that the public methods which
+ * report the registered listeners can return it without copying.</p>
+ *
+ * @param <T> the type of listener being tracked
+ *
+ * @author James Elliott
+ * @since 0.6.3
+ */
+@SuppressWarnings("WeakerAccess")
+public final class ListenerRegistry<T> {
+
+    /**
+     * The listeners that are currently registered, in an unmodifiable list that supports fast random access.
+     */
+    private volatile List<T> snapshot;
+
+    /**
+     * An immutable set containing the same listeners as {@link #snapshot}.
+     */
+    private volatile Set<T> view;
+
+    /**
+     * Create a registry with no listeners.
+     */
+    public ListenerRegistry() {
+        publish(new LinkedHashSet<T>());
+    }
+
+    /**
+     * Replace the current snapshot and view with ones reflecting a new set of listeners.
+     *
+     * @param listeners the listeners which are now registered
+     */
+    private void publish(LinkedHashSet<T> listeners) {
+        view = Collections.unmodifiableSet(listeners);
+        snapshot = Collections.unmodifiableList(new ArrayList<T>(listeners));
+    }
+
+    /**
+     * Register a listener. If {@code listener} is {@code null} or already registered, nothing happens.
+     *
+     * @param listener the listener to add
+     *
+     * @return {@code true} if the listener was added
+     */
+    public synchronized boolean add(T listener) {
+        if (listener == null || view.contains(listener)) {
+            return false;
+        }
+        final LinkedHashSet<T> listeners = new LinkedHashSet<T>(view);
+        listeners.add(listener);
+        publish(listeners);
+        return true;
+    }
+
+    /**
+     * Unregister a listener. If {@code listener} is {@code null} or not registered, nothing happens.
+     *
+     * @param listener the listener to remove
+     *
+     * @return {@code true} if the listener was removed
+     */
+    public synchronized boolean remove(T listener) {
+        if (listener == null || !view.contains(listener)) {
+            return false;
+        }
+        final LinkedHashSet<T> listeners = new LinkedHashSet<T>(view);
+        listeners.remove(listener);
+        publish(listeners);
+        return true;
+    }
+
+    /**
+     * Check whether a listener is registered.
+     *
+     * @param listener the listener of interest
+     *
+     * @return {@code true} if it is currently registered
+     */
+    public boolean contains(T listener) {
+        return view.contains(listener);
+    }
+
+    /**
+     * Check whether there are any registered listeners.
+     *
+     * @return {@code true} if nobody is listening
+     */
+    public boolean isEmpty() {
+        return snapshot.isEmpty();
+    }
+
+    /**
+     * Get the listeners registered at this moment, for delivering an event to them. The list cannot be modified, and
+     * will not change if listeners are added or removed later. Delivery code should step through it with an index,
+     * rather than an iterator, to avoid allocating anything.
+     *
+     * @return the currently registered listeners
+     */
+    public List<T> snapshot() {
+        return snapshot;
+    }
+
+    /**
+     * Get an immutable set of the listeners registered at this moment. It will not change if listeners are
+     * added or removed later.
+     *
+     * @return the currently registered listeners
+     */
+    public Set<T> asSet() {
+        return view;
+    }
+}
@@ -37,32 +37,41 @@ public class MixerStatus extends DeviceUpdate {
     public static final int MASTER_HAND_OFF = 0x36;
 
     /**
-     * The device playback pitch found in the packet.
+     * The smallest packet size from which we can be constructed. Anything less than this and we are missing
+     * crucial information.
      */
-    private final int pitch;
+    public static final int MINIMUM_PACKET_SIZE = 0x38;
 
     /**
-     * The BPM found in the packet.
+     * Contains the sizes we expect mixer status packets to have so we can log a warning if we get an unusual
+     * one. We will then add the new size to the list so it only gets logged once per run.
      */
-    private final int bpm;
+    private static final Set<Integer> expectedStatusPacketSizes = new HashSet<Integer>(Collections.singletonList(MINIMUM_PACKET_SIZE));
 
     /**
-     * If we are in the process of handing the tempo master role to another device, this will be the device number
-     * of that device, otherwise it will have the value 255.
+     * The pitch found in the packet.
      */
-    private final int handingMasterToDevice;
+    private int pitch;
 
     /**
-     * The smallest packet size from which we can be constructed. Anything less than this and we are missing
-     * crucial information.
+     * The BPM found in the packet.
      */
-    public static final int MINIMUM_PACKET_SIZE = 0x38;
+    private int bpm;
 
     /**
-     * Contains the sizes we expect mixer status packets to have so we can log a warning if we get an unusual
-     * one. We will then add the new size to the list so it only gets logged once per run.
+     * The device number to which the tempo master role is being handed, or 0xff if there is no hand-off underway.
      */
-    private static final Set<Integer> expectedStatusPacketSizes = new HashSet<Integer>(Collections.singletonList(MINIMUM_PACKET_SIZE));
+    private int handingMasterToDevice;
+
+    /**
+     * Interpret the fields of the packet that we have been constructed or bound to, so that the getters do not
+     * need to decode them each time they are called.
+     */
+    private void decode() {
+        pitch = (int)Util.bytesToNumber(packetBytes, 0x28, 4);
+        bpm = (int)Util.bytesToNumber(packetBytes, 0x2e, 2);
+        handingMasterToDevice = Util.unsign(packetBytes[MASTER_HAND_OFF]);
+    }
 
     /**
      * Constructor sets all the immutable interpreted fields based on the packet content.
@@ -72,7 +81,60 @@ public class MixerStatus extends DeviceUpdate {
     @SuppressWarnings("WeakerAccess")
     public MixerStatus(DatagramPacket packet) {
         super(packet, "Mixer update", packet.getLength());
+        validatePacket();
+        decode();
+    }
+
+    /**
+     * Constructor for the pooled flyweight instances handed out by {@link DeviceUpdatePool}, which are not
+     * meaningful until they have been bound to a packet by calling {@link #rebind(DatagramPacket, String)}.
+     */
+    MixerStatus() {
+        super();
+    }
 
+    /**
+     * Constructor used by {@link #detach()} to create an independent, immutable copy of a pooled instance.
+     * The caller must hold the lock on {@code original}, so it cannot be rebound while we copy it.
+     *
+     * @param original the pooled update whose content should be copied
+     */
+    private MixerStatus(MixerStatus original) {
+        super(original);
+        decode();
+    }
+
+    /**
+     * Point a pooled flyweight instance at a newly received packet. Validation of the packet (and the warnings it
+     * might log) is only repeated when the size differs from the last packet we represented. This is synchronized
+     * so that {@link #detach()} can never copy a partially rebound instance.
+     *
+     * @param packet the mixer status packet that was received
+     * @param name the interned name of the device that sent the packet
+     *
+     * @return {@code true} if the packet was a different size than the last one bound to this instance
+     */
+    @Override
+    synchronized boolean rebind(DatagramPacket packet, String name) {
+        if (packet.getLength() < MINIMUM_PACKET_SIZE) {
+            throw new IllegalArgumentException("Unable to bind a MixerStatus object, packet too short: we need " + MINIMUM_PACKET_SIZE +
+                    " bytes and were given only " + packet.getLength());
+        }
+        final boolean resized = super.rebind(packet, name);
+        if (resized) {
+            validatePacket();
+        }
+        decode();
+        return resized;
+    }
+
+    /**
+     * Make sure the packet we are representing is long enough to contain the fields we know how to interpret,
+     * and log a warning if its subtype, size, or reported length is unexpected.
+     *
+     * @throws IllegalArgumentException if the packet is too short
+     */
+    private void validatePacket() {
         if (packetBytes.length < MINIMUM_PACKET_SIZE) {
             throw new IllegalArgumentException("Unable to create a MixerStatus object, packet too short: we need " + MINIMUM_PACKET_SIZE +
                     " bytes and were given only " + packetBytes.length);
@@ -103,10 +165,24 @@ public class MixerStatus extends DeviceUpdate {
             logger.warn("Processing Mixer Status packets with unexpected lengths " + packetBytes.length + ".");
             expectedStatusPacketSizes.add(packetBytes.length);
         }
+    }
 
-        pitch = (int)Util.bytesToNumber(packetBytes, 0x28, 4);
-        bpm = (int)Util.bytesToNumber(packetBytes, 0x2e, 2);
-        handingMasterToDevice = Util.unsign(packetBytes[MASTER_HAND_OFF]);
+    /**
+     * Get a version of this update that is safe to hold on to. Ordinary updates are immutable, so they are simply
+     * returned, but if this is a pooled flyweight instance (see {@link #isPooled()}), an independent copy is made,
+     * since the pooled instance will be reused for a later packet from the mixer. If that has already happened,
+     * the copy reflects the later packet, which is the most recent status of the same mixer.
+     *
+     * @return an update with the same content which will never change
+     */
+    @Override
+    public MixerStatus detach() {
+        if (isPooled()) {
+            synchronized (this) {
+                return new MixerStatus(this);
+            }
+        }
+        return this;
     }
 
     /**
@@ -184,7 +260,7 @@ public class MixerStatus extends DeviceUpdate {
     @Override
     public String toString() {
         return "MixerStatus[device:" + deviceNumber + ", name:" + deviceName + ", address:" + address.getHostAddress() +
-                ", timestamp:" + timestamp + ", BPM:" + String.format("%.1f", bpm / 100.0) +
+                ", timestamp:" + timestamp + ", BPM:" + String.format("%.1f", getBpm() / 100.0) +
                 ", beat within bar:" + getBeatWithinBar() + ", isBeatWithBarMeaningful? " +
                 isBeatWithinBarMeaningful() + ", handingMasterToDevice:" + handingMasterToDevice + "]";
     }
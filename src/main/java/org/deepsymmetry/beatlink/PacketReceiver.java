@@ -0,0 +1,496 @@
+package org.deepsymmetry.beatlink;
+
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.SocketException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * <p>Receives the packets sent to all the DJ Link ports we listen on, using a single thread which waits on a
+ * {@link Selector} for any of the non-blocking {@link DatagramChannel}s registered by the {@link DeviceFinder},
+ * {@link BeatFinder}, and {@link VirtualCdj} to become readable. Each packet is read into a direct buffer, copied
+ * into a reusable {@link DatagramPacket} so the existing parsing code can work with it, identified using
+ * {@link Util#validateHeader(DatagramPacket, int)}, and then handed to the {@link Handler} that registered the
+ * channel.</p>
+ *
+ * <p>This replaces the three separate blocking receiver threads that used to exist, so that there is only one
+ * high-priority thread waking up for network traffic. The price is that handlers all share that thread, so anything
+ * slow that one of them does delays the others; as has always been the case, listeners that are called on the
+ * receiver thread must return quickly, and work that may be slow, such as processing device announcements, is
+ * handed off to other threads.</p>
+ *
+ * <p>The thread is started when the first channel is registered, and stops once the last one is unregistered.</p>
+ *
+ * @author James Elliott
+ * @since 0.6.3
+ */
+final class PacketReceiver {
+
+    private static final Logger logger = LoggerFactory.getLogger(PacketReceiver.class);
+
+    /**
+     * The largest packet we expect to receive. Anything longer will be truncated, as was the case with the
+     * buffers used by the individual receiver threads.
+     */
+    static final int MAX_PACKET_SIZE = 512;
+
+    /**
+     * How often, in milliseconds, handlers are given a chance to do periodic housekeeping even when no packets
+     * are arriving.
+     */
+    static final long IDLE_INTERVAL = 1000;
+
+    /**
+     * How long, in milliseconds, we keep trying to send a packet while the socket's send buffer is full before
+     * giving up on it.
+     */
+    static final long SEND_TIMEOUT = 20;
+
+    /**
+     * How long, in nanoseconds, we wait between attempts to send a packet when the socket's send buffer is full.
+     */
+    private static final long SEND_RETRY_INTERVAL = 100000;
+
+    /**
+     * The most packets we will read from one channel before giving the other channels a turn.
+     */
+    private static final int MAX_PACKETS_PER_TURN = 16;
+
+    /**
+     * The interface implemented by classes that want to process the packets arriving on a channel.
+     */
+    abstract static class Handler {
+
+        /**
+         * Check whether a packet should be processed at all, before any effort is spent identifying it. The
+         * default implementation accepts everything.
+         *
+         * @param address the address from which the packet was sent
+         *
+         * @return {@code true} if the packet should be identified and passed to {@link #received(Util.PacketType, DatagramPacket)}
+         */
+        boolean accepts(InetAddress address) {
+            return true;
+        }
+
+        /**
+         * Process a recognized packet. This is called on the receiver thread, so it must finish quickly. The
+         * packet and its buffer are reused as soon as this returns, so any content which needs to be kept must be
+         * copied.
+         *
+         * @param kind the type of packet that was received
+         * @param packet the packet content and the address it came from
+         */
+        abstract void received(Util.PacketType kind, DatagramPacket packet);
+
+        /**
+         * Called on the receiver thread at least every {@link #IDLE_INTERVAL} milliseconds, to allow periodic
+         * housekeeping. The default implementation does nothing.
+         */
+        void idle() {
+        }
+
+        /**
+         * Called if reading from the channel fails for any reason other than it having been closed. The channel
+         * will no longer be read from, so the handler will generally want to shut down.
+         *
+         * @param e the exception that was encountered
+         */
+        abstract void failed(IOException e);
+    }
+
+    /**
+     * Keeps track of the state needed to read from a registered channel, attached to its selection key.
+     */
+    private static final class Registration {
+
+        /**
+         * The port number used to identify packets received on the channel.
+         */
+        final int port;
+
+        /**
+         * The object which will process packets received on the channel.
+         */
+        final Handler handler;
+
+        /**
+         * The direct buffer into which packets are read.
+         */
+        final ByteBuffer buffer = ByteBuffer.allocateDirect(MAX_PACKET_SIZE);
+
+        /**
+         * The array into which packet content is copied so it can be parsed.
+         */
+        final byte[] bytes = new byte[MAX_PACKET_SIZE];
+
+        /**
+         * The packet that is passed to the handler, updated for each packet received.
+         */
+        final DatagramPacket packet = new DatagramPacket(bytes, bytes.length);
+
+        Registration(int port, Handler handler) {
+            this.port = port;
+            this.handler = handler;
+        }
+    }
+
+    /**
+     * Holds the singleton instance of this class.
+     */
+    private static final PacketReceiver instance = new PacketReceiver();
+
+    /**
+     * Get the singleton instance of this class.
+     *
+     * @return the only instance of this class which exists
+     */
+    static PacketReceiver getInstance() {
+        return instance;
+    }
+
+    /**
+     * Prevent instantiation.
+     */
+    private PacketReceiver() {
+        // Nothing to do.
+    }
+
+    /**
+     * The selector on which the receiver thread waits, when it is running.
+     */
+    private Selector selector;
+
+    /**
+     * The thread which reads and dispatches packets, when it is running.
+     */
+    private Thread receiver;
+
+    /**
+     * How many channels are currently registered; when this drops to zero the receiver thread exits.
+     */
+    private int registered;
+
+    /**
+     * Registrations and cancellations waiting to be performed by the receiver thread, which is the only thread
+     * that can safely change the channels registered with the selector.
+     */
+    private final ConcurrentLinkedQueue<Runnable> pendingChanges = new ConcurrentLinkedQueue<Runnable>();
+
+    /**
+     * Open a non-blocking channel bound to the specified address, which can then be registered to receive packets.
+     * Broadcasting is enabled, to match the behavior of a {@link java.net.DatagramSocket}.
+     *
+     * @param address the local address and port to which the channel should be bound
+     *
+     * @return the channel
+     *
+     * @throws SocketException if there is a problem opening or binding the channel
+     */
+    static DatagramChannel openChannel(InetSocketAddress address) throws SocketException {
+        DatagramChannel channel = null;
+        try {
+            channel = DatagramChannel.open();
+            channel.socket().setBroadcast(true);
+            channel.socket().bind(address);
+            channel.configureBlocking(false);
+            return channel;
+        } catch (IOException e) {
+            if (channel != null) {
+                try {
+                    channel.close();
+                } catch (IOException e2) {
+                    logger.warn("Problem closing channel after failing to open it", e2);
+                }
+            }
+            if (e instanceof SocketException) {
+                throw (SocketException) e;
+            }
+            final SocketException wrapped = new SocketException("Unable to open channel on " + address + ": " + e.getMessage());
+            wrapped.initCause(e);
+            throw wrapped;
+        }
+    }
+
+    /**
+     * Send a packet through a channel opened by {@link #openChannel(InetSocketAddress)}, since the socket
+     * belonging to a non-blocking channel cannot be used to send directly. A non-blocking channel sends nothing
+     * when the socket's send buffer is full, so we keep trying for up to {@link #SEND_TIMEOUT} milliseconds, and
+     * log a warning if the packet has to be dropped.
+     *
+     * @param channel the channel through which the packet should be sent
+     * @param packet the content and destination of the packet
+     *
+     * @return {@code true} if the packet was sent, {@code false} if it was dropped because the buffer stayed full
+     *
+     * @throws IOException if there is a problem sending the packet
+     */
+    static boolean send(DatagramChannel channel, DatagramPacket packet) throws IOException {
+        final ByteBuffer content = ByteBuffer.wrap(packet.getData(), packet.getOffset(), packet.getLength());
+        final SocketAddress destination = packet.getSocketAddress();
+        long deadline = 0;
+        while (channel.send(content, destination) == 0) {
+            final long now = System.nanoTime();
+            if (deadline == 0) {
+                deadline = now + TimeUnit.MILLISECONDS.toNanos(SEND_TIMEOUT);
+            } else if (now - deadline >= 0) {
+                logger.warn("Dropped {} byte packet to {} because the socket send buffer stayed full.",
+                        packet.getLength(), destination);
+                return false;
+            }
+            LockSupport.parkNanos(SEND_RETRY_INTERVAL);
+        }
+        return true;
+    }
+
+    /**
+     * Start receiving packets from a channel, starting the receiver thread if needed.
+     *
+     * @param channel a channel opened by {@link #openChannel(InetSocketAddress)}
+     * @param port the DJ Link port whose packet types should be used to identify packets received on the channel
+     * @param handler the object which will process the packets received
+     *
+     * @throws SocketException if the selector cannot be created, in which case the channel is closed
+     */
+    synchronized void register(final DatagramChannel channel, int port, Handler handler) throws SocketException {
+        if (selector == null) {
+            try {
+                selector = Selector.open();
+            } catch (IOException e) {
+                closeQuietly(channel);
+                final SocketException wrapped = new SocketException("Unable to open selector: " + e.getMessage());
+                wrapped.initCause(e);
+                throw wrapped;
+            }
+            final Selector newSelector = selector;
+            receiver = new Thread(null, new Runnable() {
+                @Override
+                public void run() {
+                    receive(newSelector);
+                }
+            }, "beat-link PacketReceiver");
+            receiver.setDaemon(true);
+            receiver.setPriority(Thread.MAX_PRIORITY);
+            receiver.start();
+        }
+        final Selector currentSelector = selector;
+        final Registration registration = new Registration(port, handler);
+        registered++;
+        pendingChanges.add(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    channel.register(currentSelector, SelectionKey.OP_READ, registration);
+                } catch (ClosedChannelException e) {
+                    logger.debug("Channel was closed before it could be registered.");
+                }
+            }
+        });
+        currentSelector.wakeup();
+    }
+
+    /**
+     * Stop receiving packets from a channel, and close it. Waits briefly for the receiver thread to release the
+     * channel so that its port can be reused immediately.
+     *
+     * @param channel a channel that was previously registered
+     */
+    void unregister(final DatagramChannel channel) {
+        final CountDownLatch released = new CountDownLatch(1);
+        final Selector currentSelector;
+        synchronized (this) {
+            currentSelector = selector;
+            if (currentSelector != null) {
+                registered--;
+                if (Thread.currentThread() == receiver) {
+                    // We are being called by a handler, so we cannot wait for ourselves. The channel will be
+                    // released the next time we select, which happens as soon as the handler returns.
+                    final SelectionKey key = channel.keyFor(currentSelector);
+                    if (key != null) {
+                        key.cancel();
+                    }
+                    closeQuietly(channel);
+                    return;
+                }
+                pendingChanges.add(new Runnable() {
+                    @Override
+                    public void run() {
+                        final SelectionKey key = channel.keyFor(currentSelector);
+                        if (key != null) {
+                            key.cancel();
+                            try {
+                                currentSelector.selectNow();  // Flush the cancelled key so the port is freed on close.
+                            } catch (IOException e) {
+                                logger.warn("Problem releasing channel from selector", e);
+                            }
+                        }
+                        closeQuietly(channel);
+                        released.countDown();
+                    }
+                });
+                currentSelector.wakeup();
+            }
+        }
+        if (currentSelector == null) {
+            closeQuietly(channel);
+        } else {
+            try {
+                if (!released.await(IDLE_INTERVAL, TimeUnit.MILLISECONDS)) {
+                    logger.warn("Timed out waiting for receiver thread to release channel, closing it anyway.");
+                    closeQuietly(channel);
+                }
+            } catch (InterruptedException e) {
+                logger.warn("Interrupted waiting for receiver thread to release channel, closing it anyway.");
+                closeQuietly(channel);
+            }
+        }
+    }
+
+    /**
+     * Close a channel, logging rather than throwing any problem.
+     *
+     * @param channel the channel to close
+     */
+    static void closeQuietly(DatagramChannel channel) {
+        try {
+            channel.close();
+        } catch (IOException e) {
+            logger.warn("Problem closing channel", e);
+        }
+    }
+
+    /**
+     * Perform any registrations and cancellations which have been requested, then check whether there is
+     * anything left to do.
+     *
+     * @param currentSelector the selector our thread is using
+     *
+     * @return {@code true} if channels are still registered and the receiver thread should keep running
+     */
+    private boolean applyPendingChanges(Selector currentSelector) {
+        Runnable change = pendingChanges.poll();
+        while (change != null) {
+            change.run();
+            change = pendingChanges.poll();
+        }
+        synchronized (this) {
+            if (registered == 0 && pendingChanges.isEmpty()) {
+                try {
+                    currentSelector.close();
+                } catch (IOException e) {
+                    logger.warn("Problem closing selector", e);
+                }
+                selector = null;
+                receiver = null;
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * The main loop of the receiver thread, which waits for channels to become readable and dispatches the
+     * packets which arrive.
+     *
+     * @param currentSelector the selector our thread is using
+     */
+    private void receive(Selector currentSelector) {
+        long lastIdle = System.currentTimeMillis();
+        while (applyPendingChanges(currentSelector)) {
+            try {
+                if (currentSelector.selectedKeys().isEmpty()) {
+                    currentSelector.select(IDLE_INTERVAL);
+                } else {
+                    currentSelector.selectNow();  // Still have keys from flushing a cancellation, don't block.
+                }
+            } catch (IOException e) {
+                logger.error("Problem waiting for packets, continuing", e);
+            }
+
+            final Iterator<SelectionKey> keys = currentSelector.selectedKeys().iterator();
+            while (keys.hasNext()) {
+                final SelectionKey key = keys.next();
+                keys.remove();
+                if (key.isValid()) {
+                    drain(key);
+                }
+            }
+
+            final long now = System.currentTimeMillis();
+            if (now - lastIdle >= IDLE_INTERVAL) {
+                lastIdle = now;
+                for (SelectionKey key : currentSelector.keys()) {
+                    if (key.isValid()) {
+                        try {
+                            ((Registration) key.attachment()).handler.idle();
+                        } catch (Throwable t) {
+                            logger.warn("Problem performing packet handler housekeeping", t);
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Read and dispatch the packets waiting on a readable channel.
+     *
+     * @param key the selection key of the channel
+     */
+    private void drain(SelectionKey key) {
+        final DatagramChannel channel = (DatagramChannel) key.channel();
+        final Registration registration = (Registration) key.attachment();
+        for (int i = 0; i < MAX_PACKETS_PER_TURN && key.isValid(); i++) {
+            final SocketAddress sender;
+            try {
+                registration.buffer.clear();
+                sender = channel.receive(registration.buffer);
+            } catch (IOException e) {
+                key.cancel();
+                if (channel.isOpen()) {  // Don't report a problem if the exception was due to closing at shutdown.
+                    try {
+                        registration.handler.failed(e);
+                    } catch (Throwable t) {
+                        logger.warn("Problem reporting packet receive failure", t);
+                    }
+                }
+                return;
+            }
+            if (sender == null) {
+                return;  // Nothing more to read right now.
+            }
+
+            registration.buffer.flip();
+            final int length = registration.buffer.remaining();
+            registration.buffer.get(registration.bytes, 0, length);
+            registration.packet.setData(registration.bytes, 0, length);
+            registration.packet.setSocketAddress(sender);
+
+            try {
+                if (registration.handler.accepts(registration.packet.getAddress())) {
+                    final Util.PacketType kind = Util.validateHeader(registration.packet, registration.port);
+                    if (kind != null) {
+                        registration.handler.received(kind, registration.packet);
+                    }
+                }
+            } catch (Throwable t) {
+                logger.warn("Problem processing packet received on port " + registration.port, t);
+            }
+        }
+    }
+}
@@ -0,0 +1,361 @@
+package org.deepsymmetry.beatlink;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.reflect.Method;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * <p>Runs the short-lived background tasks of all the Beat Link components on a few shared, bounded pools of named
+ * threads, rather than each component starting a new thread for every event. During a busy changeover, when
+ * several players load tracks and mount media at once, this keeps the number of threads under control while still
+ * letting independent work proceed in parallel.</p>
+ *
+ * <p>Tasks are divided into {@link Pool}s by the kind of work they do, so that, for example, a burst of slow
+ * network requests cannot delay lifecycle announcements. Each pool has a maximum number of threads (which can be
+ * changed with {@link #setMaximumThreads(Pool, int)}) and a bounded queue of waiting tasks. If the queue of the
+ * {@link Pool#CPU} pool fills up, the task is run on the thread that submitted it, slowing down the source of the
+ * work rather than losing it. {@link Pool#IO} and {@link Pool#DELIVERY} tasks are usually submitted by the threads
+ * that receive packets from the players, which must never be blocked by slow network requests or listeners, so
+ * when those queues fill up, tasks are instead handed to a single overflow thread for the pool, and a warning is
+ * logged. Idle threads are discarded after a minute. The depth of each queue and the number of busy threads can be
+ * checked to see how well the pools are keeping up.</p>
+ *
+ * <p>When running on Java 21 or later, {@link #setUseVirtualThreads(boolean)} can be used to run {@link Pool#IO}
+ * tasks on virtual threads, which are much cheaper to block in network requests.</p>
+ *
+ * <p>Long-running loops, such as packet receivers and queue handlers, still have threads of their own.</p>
+ *
+ * @author James Elliott
+ * @since 0.6.3
+ */
+@SuppressWarnings("WeakerAccess")
+public class Scheduler {
+
+    private static final Logger logger = LoggerFactory.getLogger(Scheduler.class);
+
+    /**
+     * Identifies the kinds of work the scheduler runs on separate pools.
+     */
+    public enum Pool {
+        /**
+         * Tasks which spend most of their time waiting for the network, such as metadata, art, and waveform
+         * requests, database downloads, and dbserver port queries.
+         */
+        IO("I/O", 16),
+
+        /**
+         * Tasks which spend most of their time computing, such as parsing downloaded databases.
+         */
+        CPU("CPU", Math.max(2, Runtime.getRuntime().availableProcessors())),
+
+        /**
+         * Tasks which deliver events to listeners, such as lifecycle announcements, which need to happen promptly
+         * and should not wait behind slow network requests.
+         */
+        DELIVERY("delivery", 4);
+
+        /**
+         * The name used for the pool's threads.
+         */
+        public final String label;
+
+        /**
+         * The number of threads the pool is allowed to use unless changed.
+         */
+        public final int defaultMaximumThreads;
+
+        Pool(String label, int defaultMaximumThreads) {
+            this.label = label;
+            this.defaultMaximumThreads = defaultMaximumThreads;
+        }
+    }
+
+    /**
+     * The maximum number of tasks that can be waiting for a thread in each pool before they start being run on
+     * the threads that submit them, or the pool's overflow thread.
+     */
+    public static final int QUEUE_CAPACITY = 256;
+
+    /**
+     * The executors which make up the pools.
+     */
+    private final Map<Pool, ThreadPoolExecutor> executors = new EnumMap<Pool, ThreadPoolExecutor>(Pool.class);
+
+    /**
+     * The single-threaded executors with unbounded queues that take the tasks the {@link Pool#IO} and
+     * {@link Pool#DELIVERY} pools have no room for, so the threads submitting them are never blocked.
+     */
+    private final Map<Pool, ThreadPoolExecutor> overflows = new EnumMap<Pool, ThreadPoolExecutor>(Pool.class);
+
+    /**
+     * The thread factories normally used by each pool, so we can return to them if virtual threads are turned off.
+     */
+    private final Map<Pool, ThreadFactory> platformFactories = new EnumMap<Pool, ThreadFactory>(Pool.class);
+
+    /**
+     * Creates virtual threads, if the Java runtime supports them.
+     */
+    private final ThreadFactory virtualFactory = createVirtualFactory();
+
+    /**
+     * Whether {@link Pool#IO} tasks are currently being run on virtual threads.
+     */
+    private volatile boolean useVirtualThreads = false;
+
+    /**
+     * Create a factory for platform threads with names identifying a pool and numbering the threads.
+     *
+     * @param pool the pool whose threads will be created
+     *
+     * @return the thread factory
+     */
+    private static ThreadFactory platformFactory(final Pool pool) {
+        return platformFactory("beat-link " + pool.label + " ");
+    }
+
+    /**
+     * Create a factory for platform threads with names made from a prefix and a number.
+     *
+     * @param prefix the start of the name of each thread
+     *
+     * @return the thread factory
+     */
+    private static ThreadFactory platformFactory(final String prefix) {
+        return new ThreadFactory() {
+            private final AtomicInteger threadCount = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable r) {
+                final Thread result = new Thread(r, prefix + threadCount.incrementAndGet());
+                result.setDaemon(true);
+                return result;
+            }
+        };
+    }
+
+    /**
+     * Look up, through reflection so we can still run on older Java versions, a factory which creates virtual
+     * threads.
+     *
+     * @return the factory, or {@code null} if virtual threads are not available
+     */
+    private static ThreadFactory createVirtualFactory() {
+        try {
+            final Method ofVirtual = Thread.class.getMethod("ofVirtual");
+            final Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+            Object builder = ofVirtual.invoke(null);
+            builder = builderClass.getMethod("name", String.class, long.class).invoke(builder, "beat-link virtual I/O ", 1L);
+            return (ThreadFactory) builderClass.getMethod("factory").invoke(builder);
+        } catch (Exception e) {
+            return null;  // Running on a Java version from before virtual threads were finalized.
+        }
+    }
+
+    /**
+     * Check whether the Java runtime we are using supports virtual threads.
+     *
+     * @return {@code true} if {@link #setUseVirtualThreads(boolean)} can be used to turn them on
+     */
+    public boolean isVirtualThreadSupported() {
+        return virtualFactory != null;
+    }
+
+    /**
+     * Check whether {@link Pool#IO} tasks are being run on virtual threads.
+     *
+     * @return {@code true} if new I/O threads are virtual
+     */
+    public boolean isUsingVirtualThreads() {
+        return useVirtualThreads;
+    }
+
+    /**
+     * Control whether {@link Pool#IO} tasks are run on virtual threads. Threads which are already running continue
+     * to be used until they go idle, and new threads are created in the chosen way. The number of tasks run at
+     * once is still limited by {@link #getMaximumThreads(Pool)}, which it makes sense to raise when using virtual
+     * threads, since they are so much cheaper.
+     *
+     * @param useVirtualThreads {@code true} to create virtual threads for I/O tasks, {@code false} to use platform
+     *                          threads
+     *
+     * @throws IllegalStateException if asked to use virtual threads and the Java runtime does not support them
+     */
+    public synchronized void setUseVirtualThreads(boolean useVirtualThreads) {
+        if (useVirtualThreads && virtualFactory == null) {
+            throw new IllegalStateException("Virtual threads require Java 21 or later.");
+        }
+        this.useVirtualThreads = useVirtualThreads;
+        executors.get(Pool.IO).setThreadFactory(useVirtualThreads? virtualFactory : platformFactories.get(Pool.IO));
+    }
+
+    /**
+     * Run a task on one of the pools. If the pool's queue is full, a {@link Pool#CPU} task is run right away on the
+     * calling thread, while other tasks are queued for the pool's overflow thread. While it runs on a pool thread, the thread's name is extended by the description, to help with debugging.
+     *
+     * @param pool the pool appropriate to the kind of work the task does
+     * @param description a brief description of the task, used to name the thread while it runs
+     * @param task the work to be done
+     */
+    public void execute(Pool pool, final String description, final Runnable task) {
+        executors.get(pool).execute(new Runnable() {
+            @Override
+            public void run() {
+                final Thread thread = Thread.currentThread();
+                final String name = thread.getName();
+                thread.setName(name + ": " + description);
+                try {
+                    task.run();
+                } catch (Throwable t) {
+                    logger.error("Problem running background task " + description, t);
+                } finally {
+                    thread.setName(name);
+                }
+            }
+        });
+    }
+
+    /**
+     * Check how many threads a pool may use.
+     *
+     * @param pool the pool of interest
+     *
+     * @return the maximum number of tasks it will run at once
+     */
+    public int getMaximumThreads(Pool pool) {
+        return executors.get(pool).getMaximumPoolSize();
+    }
+
+    /**
+     * Set how many threads a pool may use.
+     *
+     * @param pool the pool to be configured
+     * @param threads the maximum number of tasks it should run at once, from 1 to 1024
+     *
+     * @throws IllegalArgumentException if {@code threads} is out of range
+     */
+    public synchronized void setMaximumThreads(Pool pool, int threads) {
+        if (threads < 1 || threads > 1024) {
+            throw new IllegalArgumentException("threads must be between 1 and 1024");
+        }
+        final ThreadPoolExecutor executor = executors.get(pool);
+        if (threads > executor.getMaximumPoolSize()) {  // The core size may never exceed the maximum.
+            executor.setMaximumPoolSize(threads);
+            executor.setCorePoolSize(threads);
+        } else {
+            executor.setCorePoolSize(threads);
+            executor.setMaximumPoolSize(threads);
+        }
+    }
+
+    /**
+     * Check how many tasks are waiting for a thread in a pool. If this stays high, the pool is not keeping up.
+     *
+     * @param pool the pool of interest
+     *
+     * @return the number of tasks in its queue, including any waiting for its overflow thread
+     */
+    public int getQueueDepth(Pool pool) {
+        final ThreadPoolExecutor overflow = overflows.get(pool);
+        return executors.get(pool).getQueue().size() + ((overflow == null)? 0 : overflow.getQueue().size());
+    }
+
+    /**
+     * Check how many of a pool's threads are busy running tasks.
+     *
+     * @param pool the pool of interest
+     *
+     * @return the approximate number of tasks currently running
+     */
+    public int getActiveCount(Pool pool) {
+        return executors.get(pool).getActiveCount();
+    }
+
+    /**
+     * Check how many tasks a pool has finished running.
+     *
+     * @param pool the pool of interest
+     *
+     * @return the approximate number of tasks completed since Beat Link was loaded
+     */
+    public long getCompletedTaskCount(Pool pool) {
+        return executors.get(pool).getCompletedTaskCount();
+    }
+
+    /**
+     * Holds the singleton instance of this class.
+     */
+    private static final Scheduler ourInstance = new Scheduler();
+
+    /**
+     * Get the singleton instance of this class.
+     *
+     * @return the only instance of this class which exists
+     */
+    public static Scheduler getInstance() {
+        return ourInstance;
+    }
+
+    /**
+     * Create the handler for tasks that a pool has no room for. {@link Pool#CPU} tasks are run by the thread that
+     * submitted them, to slow it down. Other pools are fed by threads that must not be held up, so their tasks are
+     * handed to an overflow thread instead.
+     *
+     * @param pool the pool whose full queue is to be handled
+     *
+     * @return the handler
+     */
+    private RejectedExecutionHandler overflowHandler(final Pool pool) {
+        if (pool == Pool.CPU) {
+            return new ThreadPoolExecutor.CallerRunsPolicy();
+        }
+        final ThreadPoolExecutor overflow = new ThreadPoolExecutor(1, 1, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(), platformFactory("beat-link " + pool.label + " overflow "));
+        overflow.allowCoreThreadTimeOut(true);
+        overflows.put(pool, overflow);
+        return new RejectedExecutionHandler() {
+            @Override
+            public void rejectedExecution(Runnable r, ThreadPoolExecutor executor) {
+                if (overflow.getQueue().isEmpty()) {  // Only warn at the start of each burst.
+                    logger.warn("Scheduler {} pool is full, running tasks on its overflow thread.", pool.label);
+                }
+                overflow.execute(r);
+            }
+        };
+    }
+
+    /**
+     * Prevent direct instantiation, and set up the pools.
+     */
+    private Scheduler() {
+        for (Pool pool : Pool.values()) {
+            final ThreadFactory factory = platformFactory(pool);
+            platformFactories.put(pool, factory);
+            final ThreadPoolExecutor executor = new ThreadPoolExecutor(pool.defaultMaximumThreads,
+                    pool.defaultMaximumThreads, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(QUEUE_CAPACITY),
+                    factory, overflowHandler(pool));
+            executor.allowCoreThreadTimeOut(true);
+            executors.put(pool, executor);
+        }
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder sb = new StringBuilder("Scheduler[");
+        for (Pool pool : Pool.values()) {
+            if (pool != Pool.IO) {
+                sb.append(", ");
+            }
+            sb.append(pool.label).append(": active:").append(getActiveCount(pool)).append(", queued:")
+                    .append(getQueueDepth(pool));
+        }
+        if (useVirtualThreads) {
+            sb.append(", virtual I/O threads");
+        }
+        return sb.append("]").toString();
+    }
+}
@@ -218,6 +218,45 @@ public class Util {
         PACKET_TYPE_MAP = Collections.unmodifiableMap(scratch);
     }
 
+    /**
+     * Look up the packet types that can be received on a port without boxing the port number, since this happens
+     * for every packet that is received.
+     *
+     * @param port the port on which a packet has been received
+     *
+     * @return the packet types known to be received on that port, indexed by their type byte, or {@code null}
+     */
+    private static Map<Byte, PacketType> packetTypesForPort(int port) {
+        switch (port) {
+            case DeviceFinder.ANNOUNCEMENT_PORT:
+                return ANNOUNCEMENT_PACKET_TYPES;
+
+            case BeatFinder.BEAT_PORT:
+                return BEAT_PACKET_TYPES;
+
+            case VirtualCdj.UPDATE_PORT:
+                return UPDATE_PACKET_TYPES;
+
+            default:
+                return PACKET_TYPE_MAP.get(port);
+        }
+    }
+
+    /**
+     * The packet types received on the announcement port, cached from {@link #PACKET_TYPE_MAP}.
+     */
+    private static final Map<Byte, PacketType> ANNOUNCEMENT_PACKET_TYPES = PACKET_TYPE_MAP.get(DeviceFinder.ANNOUNCEMENT_PORT);
+
+    /**
+     * The packet types received on the beat port, cached from {@link #PACKET_TYPE_MAP}.
+     */
+    private static final Map<Byte, PacketType> BEAT_PACKET_TYPES = PACKET_TYPE_MAP.get(BeatFinder.BEAT_PORT);
+
+    /**
+     * The packet types received on the update port, cached from {@link #PACKET_TYPE_MAP}.
+     */
+    private static final Map<Byte, PacketType> UPDATE_PACKET_TYPES = PACKET_TYPE_MAP.get(VirtualCdj.UPDATE_PORT);
+
     /**
      * Build a standard-format UDP packet for sending to port 50001 or 50002 in the protocol.
      *
@@ -267,12 +306,14 @@ public class Util {
             return null;
         }
 
-        if (!getMagicHeader().equals(ByteBuffer.wrap(data, 0, MAGIC_HEADER.length))) {
-            logger.warn("Packet did not have correct ten-byte header for the Pro DJ Link protocol.");
-            return null;
+        for (int i = 0; i < MAGIC_HEADER.length; i++) {  // Compare in place, this is called for every packet received.
+            if (data[i] != MAGIC_HEADER[i]) {
+                logger.warn("Packet did not have correct ten-byte header for the Pro DJ Link protocol.");
+                return null;
+            }
         }
 
-        final Map<Byte, PacketType> portMap = PACKET_TYPE_MAP.get(port);
+        final Map<Byte, PacketType> portMap = packetTypesForPort(port);
         if (portMap == null) {
             logger.warn("Do not know any Pro DJ Link packets that are received on port " + port + ".");
             return null;
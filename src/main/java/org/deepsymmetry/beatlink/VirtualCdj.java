@@ -3,6 +3,7 @@ package org.deepsymmetry.beatlink;
 import java.io.IOException;
 import java.net.*;
 import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicBoolean;
@@ -40,9 +41,9 @@ public class VirtualCdj extends LifecycleParticipant {
     public static final int MAC_ADDRESS_OFFSET = 38;
 
     /**
-     * The socket used to receive device status packets while we are active.
+     * The channel used to send and receive device status packets while we are active.
      */
-    private final AtomicReference<DatagramSocket> socket = new AtomicReference<DatagramSocket>();
+    private final AtomicReference<DatagramChannel> channel = new AtomicReference<DatagramChannel>();
 
     /**
      * Check whether we are presently posing as a virtual CDJ and receiving device status updates.
@@ -50,7 +51,7 @@ public class VirtualCdj extends LifecycleParticipant {
      * @return true if our socket is open, sending presence announcements, and receiving status packets
      */
     public boolean isRunning() {
-        return socket.get() != null && claimingNumber.get() == 0;
+        return channel.get() != null && claimingNumber.get() == 0;
     }
 
     /**
@@ -61,7 +62,7 @@ public class VirtualCdj extends LifecycleParticipant {
      */
     public InetAddress getLocalAddress() {
         ensureRunning();
-        return socket.get().getLocalAddress();
+        return channel.get().socket().getLocalAddress();
     }
 
     /**
@@ -118,6 +119,51 @@ public class VirtualCdj extends LifecycleParticipant {
         return useStandardPlayerNumber.get();
     }
 
+    /**
+     * Holds the pool of reusable status instances when we are operating in flyweight mode, or {@code null} when
+     * every status packet gets its own newly allocated update object.
+     */
+    private final AtomicReference<DeviceUpdatePool> updatePool = new AtomicReference<DeviceUpdatePool>();
+
+    /**
+     * <p>Controls whether status packets are represented by pooled, reusable {@link CdjStatus} and
+     * {@link MixerStatus} instances rather than a newly allocated object for each packet. Each device gets its own
+     * ring of instances, whose packet buffers are refilled in place, and whose device names are interned, so once
+     * every device has been heard from, receiving and parsing status packets allocates no memory at all. This can
+     * significantly reduce garbage collection pressure when there are many players on the network, or several
+     * applications sharing a JVM.</p>
+     *
+     * <p>The tradeoff is that a pooled update is reused to represent a later packet from the same device once that
+     * device's ring cycles around (after eight more packets, which normally takes well over a second). Pooled
+     * updates are only ever seen by listeners registered without an overflow policy, which are called on the thread
+     * receiving the packets; everything else that hands out status updates, such as {@link #getLatestStatus()},
+     * {@link #getTempoMaster()}, and listeners with their own delivery lanes, makes copies. Listeners which need
+     * to hold on to updates for longer than it takes to process them, or pass them to another thread, must keep
+     * the copy returned by {@link DeviceUpdate#detach()} instead; {@link DeviceUpdate#isPooled()} reports whether
+     * an update is pooled. This mode is off by default.</p>
+     *
+     * @param use {@code true} if status updates should be delivered using pooled flyweight instances
+     */
+    public void setUseFlyweightUpdates(boolean use) {
+        if (use) {
+            updatePool.compareAndSet(null, new DeviceUpdatePool());
+        } else {
+            updatePool.set(null);
+        }
+    }
+
+    /**
+     * Check whether status packets are being represented by pooled, reusable {@link CdjStatus} and
+     * {@link MixerStatus} instances rather than a newly allocated object for each packet.
+     *
+     * @return {@code true} if status updates are being delivered using pooled flyweight instances
+     *
+     * @see #setUseFlyweightUpdates(boolean)
+     */
+    public boolean getUseFlyweightUpdates() {
+        return updatePool.get() != null;
+    }
+
     /**
      * Get the device number that is used when sending presence announcements on the network to pose as a virtual CDJ.
      * This starts out being zero unless you explicitly assign another value, which means that the <code>VirtualCdj</code>
@@ -304,6 +350,9 @@ public class VirtualCdj extends LifecycleParticipant {
      * also have a {@code null} value, as there is no real player that is acting as master; we will instead
      * send tempo and beat updates ourselves.
      *
+     * <p>Even when {@linkplain #setUseFlyweightUpdates(boolean) flyweight updates} are in use, this is an
+     * independent copy of the packet, which is safe to keep.</p>
+     *
      * @return the most recent update from a device which reported itself as the master
      * @throws IllegalStateException if the {@code VirtualCdj} is not active
      */
@@ -314,10 +363,15 @@ public class VirtualCdj extends LifecycleParticipant {
 
     /**
      * Establish a new tempo master, and if it is a change from the existing one, report it to the listeners.
+     * A pooled flyweight packet is copied first, because it is kept until another packet replaces it, which may
+     * be long after its pooled instance has been reused.
      *
      * @param newMaster the packet which caused the change of masters, or {@code null} if there is now no master.
      */
     private void setTempoMaster(DeviceUpdate newMaster) {
+        if (newMaster != null) {
+            newMaster = newMaster.detach();
+        }
         DeviceUpdate oldMaster = tempoMaster.getAndSet(newMaster);
         if ((newMaster == null && oldMaster != null) ||
                 (newMaster != null && ((oldMaster == null) || !newMaster.getAddress().equals(oldMaster.getAddress()) ||
@@ -389,14 +443,9 @@ public class VirtualCdj extends LifecycleParticipant {
      * @param packet the packet received on our update port
      * @return the corresponding {@link DeviceUpdate} subclass, or {@code nil} if the packet was not recognizable
      */
-    private DeviceUpdate buildUpdate(DatagramPacket packet) {
+    private DeviceUpdate buildUpdate(Util.PacketType kind, DatagramPacket packet) {
         final int length = packet.getLength();
-        final Util.PacketType kind = Util.validateHeader(packet, UPDATE_PORT);
-
-        if (kind == null) {
-            logger.warn("Ignoring unrecognized packet sent to update port.");
-            return null;
-        }
+        final DeviceUpdatePool pool = updatePool.get();
 
         switch (kind) {
             case MIXER_STATUS:
@@ -404,7 +453,7 @@ public class VirtualCdj extends LifecycleParticipant {
                     logger.warn("Processing a Mixer Status packet with unexpected length " + length + ", expected 56 bytes.");
                 }
                 if (length >= 56) {
-                    return new MixerStatus(packet);
+                    return (pool == null)? new MixerStatus(packet) : pool.mixerStatusFor(packet);
                 } else {
                     logger.warn("Ignoring too-short Mixer Status packet.");
                     return null;
@@ -412,7 +461,7 @@ public class VirtualCdj extends LifecycleParticipant {
 
             case CDJ_STATUS:
                 if (length >= CdjStatus.MINIMUM_PACKET_SIZE) {
-                    return new CdjStatus(packet);
+                    return (pool == null)? new CdjStatus(packet) : pool.cdjStatusFor(packet);
 
                 } else {
                     logger.warn("Ignoring too-short CDJ Status packet with length " + length + " (we need " + CdjStatus.MINIMUM_PACKET_SIZE +
@@ -445,8 +494,10 @@ public class VirtualCdj extends LifecycleParticipant {
      * and notify any registered listeners, including master listeners if it results in changes to tracked state,
      * such as the current master player and tempo. Also handles the Baroque dance of handing off the tempo master
      * role from or to another device.
+     *
+     * <p>This is package-private so the receive path can be measured by the benchmarks module.</p>
      */
-    private void processUpdate(DeviceUpdate update) {
+    void processUpdate(DeviceUpdate update) {
         updates.put(DeviceReference.getDeviceReference(update), update);
 
         // Keep track of the largest sync number we see.
@@ -654,8 +705,8 @@ public class VirtualCdj extends LifecycleParticipant {
      * @param mixerAddress the address from which we received a mixer device number assignment offer
      */
     private void requestNumberFromMixer(InetAddress mixerAddress) {
-        final DatagramSocket currentSocket = socket.get();
-        if (currentSocket == null) {
+        final DatagramChannel currentChannel = channel.get();
+        if (currentChannel == null) {
             logger.warn("Gave up before sending device number request to mixer.");
             return;  // We've already given up.
         }
@@ -673,7 +724,7 @@ public class VirtualCdj extends LifecycleParticipant {
                     mixerAddress, DeviceFinder.ANNOUNCEMENT_PORT);
             logger.debug("Sending device number request to mixer at address " + announcement.getAddress().getHostAddress() +
                     ", port " + announcement.getPort());
-            currentSocket.send(announcement);
+            PacketReceiver.send(currentChannel, announcement);
         } catch (Exception e) {
             logger.warn("Unable to send device number request to mixer.", e);
         }
@@ -686,8 +737,8 @@ public class VirtualCdj extends LifecycleParticipant {
      *                       device number we are using
      */
     void defendDeviceNumber(InetAddress invaderAddress) {
-        final DatagramSocket currentSocket = socket.get();
-        if (currentSocket == null) {
+        final DatagramChannel currentChannel = channel.get();
+        if (currentChannel == null) {
             logger.warn("Went offline before we could defend our device number.");
             return;
         }
@@ -702,7 +753,7 @@ public class VirtualCdj extends LifecycleParticipant {
                     invaderAddress, DeviceFinder.ANNOUNCEMENT_PORT);
             logger.info("Sending device number defense packet to invader at address " + defense.getAddress().getHostAddress() +
                     ", port " + defense.getPort());
-            currentSocket.send(defense);
+            PacketReceiver.send(currentChannel, defense);
         } catch (Exception e) {
             logger.error("Unable to send device defense packet.", e);
         }
@@ -727,7 +778,7 @@ public class VirtualCdj extends LifecycleParticipant {
                 logger.debug("Sending hello packet " + i);
                 DatagramPacket announcement = new DatagramPacket(helloBytes, helloBytes.length,
                         broadcastAddress.get(), DeviceFinder.ANNOUNCEMENT_PORT);
-                socket.get().send(announcement);
+                PacketReceiver.send(channel.get(), announcement);
                 Thread.sleep(300);
             } catch (Exception e) {
                 logger.warn("Unable to send hello packet to network, failing to go online.", e);
@@ -759,7 +810,7 @@ public class VirtualCdj extends LifecycleParticipant {
                     logger.debug("Sending claim stage 1 packet " + i);
                     DatagramPacket announcement = new DatagramPacket(claimStage1bytes, claimStage1bytes.length,
                             broadcastAddress.get(), DeviceFinder.ANNOUNCEMENT_PORT);
-                    socket.get().send(announcement);
+                    PacketReceiver.send(channel.get(), announcement);
                     //noinspection BusyWait
                     Thread.sleep(300);
                 } catch (Exception e) {
@@ -791,7 +842,7 @@ public class VirtualCdj extends LifecycleParticipant {
                     logger.debug("Sending claim stage 2 packet " + i + " for device " + claimStage2bytes[0x2e]);
                     DatagramPacket announcement = new DatagramPacket(claimStage2bytes, claimStage2bytes.length,
                             broadcastAddress.get(), DeviceFinder.ANNOUNCEMENT_PORT);
-                    socket.get().send(announcement);
+                    PacketReceiver.send(channel.get(), announcement);
                     //noinspection BusyWait
                     Thread.sleep(300);
                 } catch (Exception e) {
@@ -826,7 +877,7 @@ public class VirtualCdj extends LifecycleParticipant {
                     logger.debug("Sending claim stage 3 packet " + i + " for device " + claimStage3bytes[0x24]);
                     DatagramPacket announcement = new DatagramPacket(claimStage3bytes, claimStage3bytes.length,
                             broadcastAddress.get(), DeviceFinder.ANNOUNCEMENT_PORT);
-                    socket.get().send(announcement);
+                    PacketReceiver.send(channel.get(), announcement);
                     //noinspection BusyWait
                     Thread.sleep(300);
                 } catch (Exception e) {
@@ -895,61 +946,58 @@ public class VirtualCdj extends LifecycleParticipant {
         System.arraycopy(matchedAddress.getAddress().getAddress(), 0, keepAliveBytes, 44, 4);
         broadcastAddress.set(matchedAddress.getBroadcast());
 
-        // Open our communication socket.
-        socket.set(new DatagramSocket(UPDATE_PORT, matchedAddress.getAddress()));
+        // Open our communication channel.
+        channel.set(PacketReceiver.openChannel(new InetSocketAddress(matchedAddress.getAddress(), UPDATE_PORT)));
 
         // Inform the DeviceFinder to ignore our own device announcement packets.
-        DeviceFinder.getInstance().addIgnoredAddress(socket.get().getLocalAddress());
+        DeviceFinder.getInstance().addIgnoredAddress(channel.get().socket().getLocalAddress());
 
         // Determine the device number we are supposed to use, and make sure it can be claimed by us.
         if (!claimDeviceNumber()) {
             // We couldn't get a device number, so clean up and report failure.
             logger.warn("Unable to allocate a device number for the Virtual CDJ, giving up.");
-            DeviceFinder.getInstance().removeIgnoredAddress(socket.get().getLocalAddress());
-            socket.get().close();
-            socket.set(null);
+            DeviceFinder.getInstance().removeIgnoredAddress(channel.get().socket().getLocalAddress());
+            PacketReceiver.closeQuietly(channel.getAndSet(null));
             return false;
         }
 
-        // Set up our buffer and packet to receive incoming messages.
-        final byte[] buffer = new byte[512];
-        final DatagramPacket packet = new DatagramPacket(buffer, buffer.length);
+        // Start receiving update packets.
+        final InetAddress localAddress = channel.get().socket().getLocalAddress();  // Look up once, this is not free.
+        try {
+            PacketReceiver.getInstance().register(channel.get(), UPDATE_PORT, new PacketReceiver.Handler() {
+                @Override
+                boolean accepts(InetAddress address) {
+                    return address != localAddress;
+                }
 
-        // Create the update reception thread
-        Thread receiver = new Thread(null, new Runnable() {
-            @Override
-            public void run() {
-                boolean received;
-                while (isRunning()) {
-                    try {
-                        socket.get().receive(packet);
-                        received = true;
-                    } catch (IOException e) {
-                        // Don't log a warning if the exception was due to the socket closing at shutdown.
-                        if (isRunning()) {
-                            // We did not expect to have a problem; log a warning and shut down.
-                            logger.warn("Problem reading from DeviceStatus socket, flushing DeviceFinder due to likely network change and shutting down.", e);
-                            DeviceFinder.getInstance().flush();
-                            stop();
-                        }
-                        received = false;
-                    }
+                @Override
+                void received(Util.PacketType kind, DatagramPacket packet) {
                     try {
-                        if (received && (packet.getAddress() != socket.get().getLocalAddress())) {
-                            DeviceUpdate update = buildUpdate(packet);
-                            if (update != null) {
-                                processUpdate(update);
-                            }
+                        DeviceUpdate update = buildUpdate(kind, packet);
+                        if (update != null) {
+                            processUpdate(update);
                         }
                     } catch (Throwable t) {
                         logger.warn("Problem processing device update packet", t);
                     }
                 }
-            }
-        }, "beat-link VirtualCdj status receiver");
-        receiver.setDaemon(true);
-        receiver.setPriority(Thread.MAX_PRIORITY);
-        receiver.start();
+
+                @Override
+                void failed(IOException e) {
+                    // Don't log a warning if the exception was due to the channel closing at shutdown.
+                    if (isRunning()) {
+                        // We did not expect to have a problem; log a warning and shut down.
+                        logger.warn("Problem reading from DeviceStatus channel, flushing DeviceFinder due to likely network change and shutting down.", e);
+                        DeviceFinder.getInstance().flush();
+                        stop();
+                    }
+                }
+            });
+        } catch (SocketException e) {
+            DeviceFinder.getInstance().removeIgnoredAddress(localAddress);
+            channel.set(null);  // The receiver has already closed it.
+            throw e;
+        }
 
         // Create the thread which announces our participation in the DJ Link network, to request update packets
         Thread announcer = new Thread(null, new Runnable() {
@@ -1072,9 +1120,8 @@ public class VirtualCdj extends LifecycleParticipant {
             } catch (Throwable t) {
                 logger.error("Problem stopping sending status during shutdown", t);
             }
-            DeviceFinder.getInstance().removeIgnoredAddress(socket.get().getLocalAddress());
-            socket.get().close();
-            socket.set(null);
+            DeviceFinder.getInstance().removeIgnoredAddress(channel.get().socket().getLocalAddress());
+            PacketReceiver.getInstance().unregister(channel.getAndSet(null));
             broadcastAddress.set(null);
             updates.clear();
             setTempoMaster(null);
@@ -1091,7 +1138,7 @@ public class VirtualCdj extends LifecycleParticipant {
         try {
             DatagramPacket announcement = new DatagramPacket(keepAliveBytes, keepAliveBytes.length,
                     broadcastAddress, DeviceFinder.ANNOUNCEMENT_PORT);
-            socket.get().send(announcement);
+            PacketReceiver.send(channel.get(), announcement);
             Thread.sleep(getAnnounceInterval());
         } catch (Throwable t) {
             logger.warn("Unable to send announcement packet, flushing DeviceFinder due to likely network change and shutting down.", t);
@@ -1103,7 +1150,10 @@ public class VirtualCdj extends LifecycleParticipant {
     /**
      * Get the most recent status we have seen from all devices that are recent enough to be considered still
      * active on the network.
-
+     *
+     * <p>Even when {@linkplain #setUseFlyweightUpdates(boolean) flyweight updates} are in use, these are
+     * independent copies of the pooled instances, made when this is called, which are safe to keep.</p>
+     *
      * @return the most recent detailed status update received for all active devices
      * @throws IllegalStateException if the {@code VirtualCdj} is not active
      */
@@ -1112,6 +1162,7 @@ public class VirtualCdj extends LifecycleParticipant {
         Set<DeviceUpdate> result = new HashSet<DeviceUpdate>();
         long now = System.currentTimeMillis();
         for (DeviceUpdate update : updates.values()) {
+            update = update.detach();
             if (now - update.getTimestamp() <= DeviceFinder.MAXIMUM_AGE) {
                 result.add(update);
             }
@@ -1128,6 +1179,9 @@ public class VirtualCdj extends LifecycleParticipant {
      * {@link org.deepsymmetry.beatlink.data.TimeFinder#getLatestUpdateFor(int)} instead, because that
      * combines both status updates and beat messages, and so is more likely to be current and definitive.</p>
      *
+     * <p>Even when {@linkplain #setUseFlyweightUpdates(boolean) flyweight updates} are in use, this is an
+     * independent copy of the pooled instance, made when this is called, which is safe to keep.</p>
+     *
      * @param device the update identifying the device for which current status information is desired
      *
      * @return the most recent detailed status update received for that device
@@ -1135,7 +1189,8 @@ public class VirtualCdj extends LifecycleParticipant {
      */
     public DeviceUpdate getLatestStatusFor(DeviceUpdate device) {
         ensureRunning();
-        return updates.get(DeviceReference.getDeviceReference(device));
+        final DeviceUpdate update = updates.get(DeviceReference.getDeviceReference(device));
+        return (update == null)? null : update.detach();
     }
 
     /**
@@ -1146,6 +1201,9 @@ public class VirtualCdj extends LifecycleParticipant {
      * use {@link org.deepsymmetry.beatlink.data.TimeFinder#getLatestUpdateFor(int)} instead, because that
      * combines both status updates and beat messages, and so is more likely to be current and definitive.</p>
      *
+     * <p>Even when {@linkplain #setUseFlyweightUpdates(boolean) flyweight updates} are in use, this is an
+     * independent copy of the pooled instance, made when this is called, which is safe to keep.</p>
+     *
      * @param device the announcement identifying the device for which current status information is desired
      *
      * @return the most recent detailed status update received for that device
@@ -1153,7 +1211,8 @@ public class VirtualCdj extends LifecycleParticipant {
      */
     public DeviceUpdate getLatestStatusFor(DeviceAnnouncement device) {
         ensureRunning();
-        return updates.get(DeviceReference.getDeviceReference(device));
+        final DeviceUpdate update = updates.get(DeviceReference.getDeviceReference(device));
+        return (update == null)? null : update.detach();
     }
 
     /**
@@ -1164,6 +1223,9 @@ public class VirtualCdj extends LifecycleParticipant {
      * use {@link org.deepsymmetry.beatlink.data.TimeFinder#getLatestUpdateFor(int)} instead, because that
      * combines both status updates and beat messages, and so is more likely to be current and definitive.</p>
      *
+     * <p>Even when {@linkplain #setUseFlyweightUpdates(boolean) flyweight updates} are in use, this is an
+     * independent copy of the pooled instance, made when this is called, which is safe to keep.</p>
+     *
      * @param deviceNumber the device number of interest
      *
      * @return the matching detailed status update or null if none have been received
@@ -1172,8 +1234,8 @@ public class VirtualCdj extends LifecycleParticipant {
     public DeviceUpdate getLatestStatusFor(int deviceNumber) {
         ensureRunning();
         for (DeviceUpdate update : updates.values()) {
-            if (update.getDeviceNumber() == deviceNumber) {
-                return update;
+            if (update.getDeviceNumber() == deviceNumber) {  // Pooled instances never change device number.
+                return update.detach();
             }
         }
         return null;
@@ -1182,8 +1244,8 @@ public class VirtualCdj extends LifecycleParticipant {
     /**
      * Keeps track of the registered master listeners.
      */
-    private final Set<MasterListener> masterListeners =
-            Collections.newSetFromMap(new ConcurrentHashMap<MasterListener, Boolean>());
+    private final ListenerRegistry<MasterListener> masterListeners =
+            new ListenerRegistry<MasterListener>();
 
     /**
      * <p>Adds the specified master listener to receive device updates when there are changes related
@@ -1227,8 +1289,7 @@ public class VirtualCdj extends LifecycleParticipant {
      */
     @SuppressWarnings("WeakerAccess")
     public Set<MasterListener> getMasterListeners() {
-        // Make a copy so callers get an immutable snapshot of the current state.
-        return Collections.unmodifiableSet(new HashSet<MasterListener>(masterListeners));
+        return masterListeners.asSet();
     }
 
     /**
@@ -1237,7 +1298,9 @@ public class VirtualCdj extends LifecycleParticipant {
      * @param update the message announcing the new tempo master
      */
     private void deliverMasterChangedAnnouncement(final DeviceUpdate update) {
-        for (final MasterListener listener : getMasterListeners()) {
+        final List<MasterListener> listeners = masterListeners.snapshot();
+        for (int i = 0; i < listeners.size(); i++) {
+            final MasterListener listener = listeners.get(i);
             try {
                 listener.masterChanged(update);
             } catch (Throwable t) {
@@ -1252,7 +1315,9 @@ public class VirtualCdj extends LifecycleParticipant {
      * @param tempo the new master tempo
      */
     private void deliverTempoChangedAnnouncement(final double tempo) {
-        for (final MasterListener listener : getMasterListeners()) {
+        final List<MasterListener> listeners = masterListeners.snapshot();
+        for (int i = 0; i < listeners.size(); i++) {
+            final MasterListener listener = listeners.get(i);
             try {
                 listener.tempoChanged(tempo);
             } catch (Throwable t) {
@@ -1267,7 +1332,9 @@ public class VirtualCdj extends LifecycleParticipant {
      * @param beat the beat sent by the tempo master
      */
     private void deliverBeatAnnouncement(final Beat beat) {
-        for (final MasterListener listener : getMasterListeners()) {
+        final List<MasterListener> listeners = masterListeners.snapshot();
+        for (int i = 0; i < listeners.size(); i++) {
+            final MasterListener listener = listeners.get(i);
             try {
                 listener.newBeat(beat);
             } catch (Throwable t) {
@@ -1279,8 +1346,17 @@ public class VirtualCdj extends LifecycleParticipant {
     /**
      * Keeps track of the registered device update listeners.
      */
-    private final Set<DeviceUpdateListener> updateListeners =
-            Collections.newSetFromMap(new ConcurrentHashMap<DeviceUpdateListener, Boolean>());
+    private final ListenerRegistry<DeviceUpdateListener> updateListeners =
+            new ListenerRegistry<DeviceUpdateListener>();
+
+    /**
+     * Holds what device updates are actually delivered to: the listeners that are called directly, and the
+     * delivery lanes of the ones that were registered with an overflow policy. Keeping the lanes here, rather than
+     * looking them up for each listener, means an update being delivered while a listener is removed can only reach
+     * its closed lane, never the listener itself on the wrong thread.
+     */
+    private final ListenerRegistry<DeviceUpdateListener> updateTargets =
+            new ListenerRegistry<DeviceUpdateListener>();
 
     /**
      * <p>Adds the specified device update listener to receive device updates whenever they come in.
@@ -1294,17 +1370,91 @@ public class VirtualCdj extends LifecycleParticipant {
      *
      * <p>Even if you are not interacting with user interface objects, any code in the listener method
      * <em>must</em> finish quickly, or it will add latency for other listeners, and device updates will back up.
-     * If you want to perform lengthy processing of any sort, do so on another thread.</p>
+     * If you want to perform lengthy processing of any sort, do so on another thread, or register the listener
+     * using {@link #addUpdateListener(DeviceUpdateListener, DeliveryLane.OverflowPolicy, int)} so it gets one.</p>
      *
      * @param listener the device update listener to add
      */
     @SuppressWarnings("SameParameterValue")
-    public void addUpdateListener(DeviceUpdateListener listener) {
-        if (listener != null) {
+    public synchronized void addUpdateListener(DeviceUpdateListener listener) {
+        if (updateListeners.add(listener)) {
+            updateTargets.add(listener);
+        }
+    }
+
+    /**
+     * A delivery lane for a device update listener which was registered with an overflow policy. It is itself
+     * registered as an update target, and queues the updates it receives for delivery to the listener.
+     */
+    private static final class UpdateLane extends DeliveryLane<DeviceUpdate> implements DeviceUpdateListener {
+
+        /**
+         * The listener to which the lane delivers updates.
+         */
+        private final DeviceUpdateListener listener;
+
+        UpdateLane(DeviceUpdateListener listener, DeliveryLane.OverflowPolicy policy, int capacity) {
+            super("update listener", policy, capacity);
+            this.listener = listener;
+        }
+
+        @Override
+        public void received(DeviceUpdate update) {
+            offer(update);
+        }
+
+        @Override
+        void deliver(DeviceUpdate update) {
+            listener.received(update);
+        }
+    }
+
+    /**
+     * Keeps track of the delivery lanes of update listeners that were registered with an overflow policy.
+     */
+    private final Map<DeviceUpdateListener, UpdateLane> updateLanes =
+            new ConcurrentHashMap<DeviceUpdateListener, UpdateLane>();
+
+    /**
+     * <p>Adds the specified device update listener to receive device updates on its own thread, rather than the
+     * thread that is receiving them from the network. This means a listener which is slow to return will not add
+     * latency for other listeners, at the cost of a small delay for this one. If {@code listener} is {@code null}
+     * or already present in the list of registered listeners, no exception is thrown and no action is
+     * performed.</p>
+     *
+     * <p>If the listener falls behind by {@code capacity} updates, {@code policy} determines what happens to new
+     * ones. How far behind it is running can be monitored through the lane returned by
+     * {@link #getUpdateListenerLane(DeviceUpdateListener)}.</p>
+     *
+     * @param listener the device update listener to add
+     * @param policy what to do with new updates when the listener has fallen too far behind
+     * @param capacity how many updates can be waiting for delivery to the listener
+     *
+     * @throws IllegalArgumentException if {@code policy} is {@code null} or {@code capacity} is not positive
+     */
+    public synchronized void addUpdateListener(final DeviceUpdateListener listener,
+                                               DeliveryLane.OverflowPolicy policy, int capacity) {
+        if (listener != null && !updateListeners.contains(listener)) {
+            final UpdateLane lane = new UpdateLane(listener, policy, capacity);
+            updateLanes.put(listener, lane);
             updateListeners.add(listener);
+            updateTargets.add(lane);
         }
     }
 
+    /**
+     * Find the delivery lane of a device update listener which was registered with an overflow policy, so that
+     * its lag can be checked.
+     *
+     * @param listener a registered device update listener
+     *
+     * @return the lane delivering updates to that listener, or {@code null} if it is not registered, or is being
+     *         called directly on the thread receiving updates
+     */
+    public DeliveryLane<DeviceUpdate> getUpdateListenerLane(DeviceUpdateListener listener) {
+        return updateLanes.get(listener);
+    }
+
     /**
      * Removes the specified device update listener so it no longer receives device updates when they come in.
      * If {@code listener} is {@code null} or not present
@@ -1313,8 +1463,21 @@ public class VirtualCdj extends LifecycleParticipant {
      * @param listener the device update listener to remove
      */
     public void removeUpdateListener(DeviceUpdateListener listener) {
-        if (listener != null) {
-            updateListeners.remove(listener);
+        final UpdateLane lane;
+        synchronized (this) {
+            if (!updateListeners.remove(listener)) {
+                return;
+            }
+            lane = updateLanes.remove(listener);
+            if (lane == null) {
+                updateTargets.remove(listener);
+            } else {
+                lane.close();
+                updateTargets.remove(lane);
+            }
+        }
+        if (lane != null) {
+            lane.awaitDelivery();
         }
     }
 
@@ -1324,8 +1487,7 @@ public class VirtualCdj extends LifecycleParticipant {
      * @return the currently registered update listeners
      */
     public Set<DeviceUpdateListener> getUpdateListeners() {
-        // Make a copy so callers get an immutable snapshot of the current state.
-        return Collections.unmodifiableSet(new HashSet<DeviceUpdateListener>(updateListeners));
+        return updateListeners.asSet();
     }
 
     /**
@@ -1334,7 +1496,9 @@ public class VirtualCdj extends LifecycleParticipant {
      * @param update the device update that has just arrived
      */
     private void deliverDeviceUpdate(final DeviceUpdate update) {
-        for (DeviceUpdateListener listener : getUpdateListeners()) {
+        final List<DeviceUpdateListener> listeners = updateTargets.snapshot();
+        for (int i = 0; i < listeners.size(); i++) {
+            final DeviceUpdateListener listener = listeners.get(i);
             try {
                 listener.received(update);
             } catch (Throwable t) {
@@ -1346,8 +1510,8 @@ public class VirtualCdj extends LifecycleParticipant {
     /**
      * Keeps track of the registered media details listeners.
      */
-    private final Set<MediaDetailsListener> detailsListeners =
-            Collections.newSetFromMap(new ConcurrentHashMap<MediaDetailsListener, Boolean>());
+    private final ListenerRegistry<MediaDetailsListener> detailsListeners =
+            new ListenerRegistry<MediaDetailsListener>();
 
     /**
      * <p>Adds the specified media details listener to receive detail responses whenever they come in.
@@ -1390,8 +1554,7 @@ public class VirtualCdj extends LifecycleParticipant {
      * @return the currently registered details listeners
      */
     public Set<MediaDetailsListener> getMediaDetailsListeners() {
-        // Make a copy so callers get an immutable snapshot of the current state.
-        return Collections.unmodifiableSet(new HashSet<MediaDetailsListener>(detailsListeners));
+        return detailsListeners.asSet();
     }
 
     /**
@@ -1400,7 +1563,9 @@ public class VirtualCdj extends LifecycleParticipant {
      * @param details the response that has just arrived
      */
     private void deliverMediaDetailsUpdate(final MediaDetails details) {
-        for (MediaDetailsListener listener : getMediaDetailsListeners()) {
+        final List<MediaDetailsListener> listeners = detailsListeners.snapshot();
+        for (int i = 0; i < listeners.size(); i++) {
+            final MediaDetailsListener listener = listeners.get(i);
             try {
                 listener.detailsAvailable(details);
             } catch (Throwable t) {
@@ -1426,7 +1591,7 @@ public class VirtualCdj extends LifecycleParticipant {
                 ByteBuffer.wrap(payload));
         packet.setAddress(destination);
         packet.setPort(port);
-        socket.get().send(packet);
+        PacketReceiver.send(channel.get(), packet);
     }
 
     /**
@@ -2405,7 +2570,7 @@ public class VirtualCdj extends LifecycleParticipant {
         for (DeviceAnnouncement device : DeviceFinder.getInstance().getCurrentDevices()) {
             packet.setAddress(device.getAddress());
             try {
-                socket.get().send(packet);
+                PacketReceiver.send(channel.get(), packet);
             } catch (IOException e) {
                 logger.warn("Unable to send status packet to " + device, e);
             }
@@ -2461,7 +2626,7 @@ public class VirtualCdj extends LifecycleParticipant {
             public void becomeMaster() {
                 logger.debug("Received packet telling us to become master.");
                 if (isSendingStatus()) {
-                    new Thread(new Runnable() {
+                    Scheduler.getInstance().execute(Scheduler.Pool.IO, "becoming tempo master", new Runnable() {
                         @Override
                         public void run() {
                             try {
@@ -2470,7 +2635,7 @@ public class VirtualCdj extends LifecycleParticipant {
                                 logger.error("Problem becoming tempo master in response to sync command packet", t);
                             }
                         }
-                    }).start();
+                    });
                 } else {
                     logger.warn("Ignoring sync command to become tempo master, since we are not sending status packets.");
                 }
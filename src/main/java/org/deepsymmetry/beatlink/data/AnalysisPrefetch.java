@@ -0,0 +1,147 @@
+package org.deepsymmetry.beatlink.data;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Represents a background download of track analysis files started by one of the {@link CrateDigger} prefetch
+ * methods, such as {@link CrateDigger#prefetchPlaylist(SlotReference, int)}. It can be used to follow the progress
+ * of the download, wait for it to finish, or cancel it.
+ *
+ * @author James Elliott
+ * @since 0.6.3
+ */
+@SuppressWarnings("WeakerAccess")
+public class AnalysisPrefetch {
+
+    /**
+     * The media slot from which analysis files are being downloaded.
+     */
+    public final SlotReference slot;
+
+    /**
+     * The rekordbox IDs of the tracks whose analysis files are being downloaded, in the order they will be processed.
+     */
+    public final List<Integer> trackIds;
+
+    /**
+     * Counts the tracks that have been processed so far.
+     */
+    private final AtomicInteger completed = new AtomicInteger(0);
+
+    /**
+     * Set when the prefetch should stop early.
+     */
+    private final AtomicBoolean cancelled = new AtomicBoolean(false);
+
+    /**
+     * Released when the prefetch is cancelled, to wake up any workers waiting for their turn to download.
+     */
+    private final CountDownLatch cancelSignal = new CountDownLatch(1);
+
+    /**
+     * Released when the prefetch has stopped, whether or not it finished.
+     */
+    private final CountDownLatch finished = new CountDownLatch(1);
+
+    /**
+     * Constructor sets the fields that describe the work to be done.
+     *
+     * @param slot the media slot from which analysis files are being downloaded
+     * @param trackIds the rekordbox IDs of the tracks whose analysis files are being downloaded
+     */
+    AnalysisPrefetch(SlotReference slot, List<Integer> trackIds) {
+        this.slot = slot;
+        this.trackIds = Collections.unmodifiableList(trackIds);
+    }
+
+    /**
+     * Record that another track has been processed.
+     */
+    void trackCompleted() {
+        completed.incrementAndGet();
+    }
+
+    /**
+     * Record that the prefetch has stopped.
+     */
+    void finish() {
+        finished.countDown();
+    }
+
+    /**
+     * Check how many of the tracks have been processed so far. A track counts as processed once its analysis files
+     * have been downloaded, or found to already be available, or could not be downloaded.
+     *
+     * @return the number of tracks whose analysis files are no longer waiting to be fetched
+     */
+    public int getCompletedCount() {
+        return completed.get();
+    }
+
+    /**
+     * Wait for part of the prefetch's share of the bandwidth limit to become available, giving up early if the
+     * prefetch is cancelled.
+     *
+     * @param nanoseconds how long to wait
+     *
+     * @return {@code true} if the prefetch was cancelled before the time was up
+     *
+     * @throws InterruptedException if the thread is interrupted while waiting
+     */
+    boolean awaitCancel(long nanoseconds) throws InterruptedException {
+        return nanoseconds > 0? cancelSignal.await(nanoseconds, TimeUnit.NANOSECONDS) : isCancelled();
+    }
+
+    /**
+     * Ask the prefetch to stop. Workers waiting for their turn under the bandwidth limit stop right away; a file
+     * which is already being downloaded is allowed to finish.
+     */
+    public void cancel() {
+        cancelled.set(true);
+        cancelSignal.countDown();
+    }
+
+    /**
+     * Check whether {@link #cancel()} has been called.
+     *
+     * @return {@code true} if the prefetch has been asked to stop
+     */
+    public boolean isCancelled() {
+        return cancelled.get();
+    }
+
+    /**
+     * Check whether the prefetch has stopped, because it finished, was cancelled, or because the media it was
+     * downloading from was unmounted.
+     *
+     * @return {@code true} if no more files will be downloaded
+     */
+    public boolean isDone() {
+        return finished.getCount() == 0;
+    }
+
+    /**
+     * Wait for the prefetch to stop.
+     *
+     * @param timeout the longest amount of time to wait
+     * @param unit the units in which {@code timeout} is expressed
+     *
+     * @return {@code true} if the prefetch stopped, {@code false} if the time ran out first
+     *
+     * @throws InterruptedException if the thread is interrupted while waiting
+     */
+    public boolean await(long timeout, TimeUnit unit) throws InterruptedException {
+        return finished.await(timeout, unit);
+    }
+
+    @Override
+    public String toString() {
+        return "AnalysisPrefetch[slot:" + slot + ", tracks:" + trackIds.size() + ", completed:" + completed.get() +
+                ", cancelled:" + cancelled.get() + ", done:" + isDone() + "]";
+    }
+}
@@ -9,7 +9,9 @@ import org.slf4j.LoggerFactory;
 import javax.swing.*;
 import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Future;
 import java.util.concurrent.LinkedBlockingDeque;
 import java.util.concurrent.atomic.AtomicBoolean;
 
@@ -345,6 +347,50 @@ public class ArtFinder extends LifecycleParticipant {
         return artwork;
     }
 
+    /**
+     * Start finding the album art for the track a player has loaded, in the background, returning right away. Since
+     * the artwork ID comes from the track metadata, this is typically called when an async metadata request has
+     * completed. The request is cancelled if the player unloads the track, or loads a different one, before it
+     * finishes.
+     *
+     * @param status a status update from the player whose loaded track's art is desired
+     * @param metadata the metadata of the track loaded in that player
+     *
+     * @return the request, which will provide the same result as {@link #requestArtworkFrom(DataReference, CdjStatus.TrackType)}
+     */
+    public AsyncRequest<AlbumArt> requestArtworkAsync(final CdjStatus status, final TrackMetadata metadata) {
+        final DataReference track = AsyncRequests.loadedTrack(status);
+        if (track == null || metadata == null || metadata.getArtworkId() == 0) {
+            return AsyncRequests.<AlbumArt>completed(null);
+        }
+        final DataReference artReference = new DataReference(metadata.trackReference.player,
+                metadata.trackReference.slot, metadata.getArtworkId());
+        final CdjStatus.TrackType trackType = metadata.trackType;
+        return AsyncRequests.submit(status.getDeviceNumber(), track, new Callable<AlbumArt>() {
+            @Override
+            public AlbumArt call() {
+                return requestArtworkFrom(artReference, trackType);
+            }
+        });
+    }
+
+    /**
+     * Start finding some album art in the background, returning right away.
+     *
+     * @param artReference uniquely identifies the desired artwork
+     * @param trackType the kind of track that owns the artwork
+     *
+     * @return the request, which will provide the same result as {@link #requestArtworkFrom(DataReference, CdjStatus.TrackType)}
+     */
+    public AsyncRequest<AlbumArt> requestArtworkAsync(final DataReference artReference, final CdjStatus.TrackType trackType) {
+        return AsyncRequests.submit(0, null, new Callable<AlbumArt>() {
+            @Override
+            public AlbumArt call() {
+                return requestArtworkFrom(artReference, trackType);
+            }
+        });
+    }
+
     /**
      * Request the artwork with a particular artwork ID, given a connection to a player that has already been set up.
      *
@@ -359,13 +405,45 @@ public class ArtFinder extends LifecycleParticipant {
      */
     AlbumArt getArtwork(int artworkId, SlotReference slot, CdjStatus.TrackType trackType, Client client)
             throws IOException {
+        return receiveArtwork(requestArtwork(artworkId, slot, trackType, client), artworkId, slot);
+    }
 
-        // Send the artwork request
-        Message response = client.simpleRequest(Message.KnownType.ALBUM_ART_REQ, Message.KnownType.ALBUM_ART,
+    /**
+     * Sends a pipelined request for the artwork with a specific ID, so it can travel to the player along with other
+     * requests about the same track. The response must be passed to
+     * {@link #receiveArtwork(Future, int, SlotReference)} while the client is still held.
+     *
+     * @param artworkId identifies the album art to retrieve
+     * @param slot the slot identifier from which the associated track was loaded
+     * @param trackType the kind of track that owns the artwork
+     * @param client the dbserver client that is communicating with the appropriate player
+     *
+     * @return the future through which the response will arrive
+     *
+     * @throws IOException if there is a problem communicating with the player
+     */
+    Future<Message> requestArtwork(int artworkId, SlotReference slot, CdjStatus.TrackType trackType, Client client)
+            throws IOException {
+        return client.pipelinedRequest(Message.KnownType.ALBUM_ART_REQ, Message.KnownType.ALBUM_ART,
                 client.buildRMST(Message.MenuIdentifier.DATA, slot.slot, trackType), new NumberField(artworkId));
+    }
 
+    /**
+     * Builds the artwork from the response to
+     * {@link #requestArtwork(int, SlotReference, CdjStatus.TrackType, Client)}.
+     *
+     * @param response the response to the artwork request
+     * @param artworkId identifies the album art that was requested
+     * @param slot the slot identifier from which the associated track was loaded
+     *
+     * @return the track's artwork
+     *
+     * @throws IOException if there was a problem communicating with the player
+     */
+    AlbumArt receiveArtwork(Future<Message> response, int artworkId, SlotReference slot) throws IOException {
         // Create an image from the response bytes
-        return new AlbumArt(new DataReference(slot, artworkId), ((BinaryField)response.arguments.get(3)).getValue());
+        return new AlbumArt(new DataReference(slot, artworkId),
+                ((BinaryField) MetadataFinder.awaitResponse(response).arguments.get(3)).getValue());
     }
 
     /**
@@ -395,8 +473,8 @@ public class ArtFinder extends LifecycleParticipant {
     /**
      * Keeps track of the registered track metadata update listeners.
      */
-    private final Set<AlbumArtListener> artListeners =
-            Collections.newSetFromMap(new ConcurrentHashMap<AlbumArtListener, Boolean>());
+    private final ListenerRegistry<AlbumArtListener> artListeners =
+            new ListenerRegistry<AlbumArtListener>();
 
     /**
      * <p>Adds the specified album art listener to receive updates when the album art for a player changes.
@@ -440,17 +518,18 @@ public class ArtFinder extends LifecycleParticipant {
      */
     @SuppressWarnings("WeakerAccess")
     public Set<AlbumArtListener> getAlbumArtListeners() {
-        // Make a copy so callers get an immutable snapshot of the current state.
-        return Collections.unmodifiableSet(new HashSet<AlbumArtListener>(artListeners));
+        return artListeners.asSet();
     }
 
     /**
      * Send an album art update announcement to all registered listeners.
      */
     private void deliverAlbumArtUpdate(int player, AlbumArt art) {
-        if (!getAlbumArtListeners().isEmpty()) {
+        if (!artListeners.isEmpty()) {
             final AlbumArtUpdate update = new AlbumArtUpdate(player, art);
-            for (final AlbumArtListener listener : getAlbumArtListeners()) {
+            final List<AlbumArtListener> listeners = artListeners.snapshot();
+            for (int i = 0; i < listeners.size(); i++) {
+                final AlbumArtListener listener = listeners.get(i);
                 try {
                     listener.albumArtChanged(update);
 
@@ -489,7 +568,7 @@ public class ArtFinder extends LifecycleParticipant {
                 if (activeRequests.add(update.player)) {
                     clearDeck(update);  // We won't know what it is until our request completes.
                     // We had to make sure we were not already asking for this track.
-                    new Thread(new Runnable() {
+                    Scheduler.getInstance().execute(Scheduler.Pool.IO, "album art request", new Runnable() {
                         @Override
                         public void run() {
                             try {
@@ -503,7 +582,7 @@ public class ArtFinder extends LifecycleParticipant {
                                 activeRequests.remove(update.player);
                             }
                         }
-                    }).start();
+                    });
                 }
             }
         }
@@ -0,0 +1,152 @@
+package org.deepsymmetry.beatlink.data;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+/**
+ * <p>A request for track data which is being performed in the background by one of the finders, on a thread pool
+ * they share, so that callers do not need to tie up threads of their own waiting for players to respond.</p>
+ *
+ * <p>This is a {@link java.util.concurrent.Future}, so the result can be waited for if that is convenient, but the
+ * more useful approach is to register an {@link AsyncRequestListener}, which will be told when the result is ready.
+ * That listener can then start the next request, for example asking for album art once track metadata has arrived.</p>
+ *
+ * <p>Requests made on behalf of a particular deck, using the variants of the async methods that take a
+ * {@link org.deepsymmetry.beatlink.CdjStatus}, are cancelled automatically if that deck unloads the track, or loads a
+ * different one, before the result arrives, so long as the {@link MetadataFinder} is running.</p>
+ *
+ * @param <T> the type of value being requested
+ *
+ * @author James Elliott
+ * @since 0.6.3
+ */
+public class AsyncRequest<T> extends FutureTask<T> {
+
+    private static final Logger logger = LoggerFactory.getLogger(AsyncRequest.class);
+
+    /**
+     * The player number of the deck on whose behalf this request was made, or 0 if it is not tied to a deck.
+     */
+    public final int player;
+
+    /**
+     * The track that was loaded in the deck on whose behalf this request was made, or {@code null} if it is not
+     * tied to a deck.
+     */
+    public final DataReference track;
+
+    /**
+     * The listeners waiting to hear about the outcome of the request, or {@code null} once they have been told.
+     */
+    private List<AsyncRequestListener<? super T>> listeners = new LinkedList<AsyncRequestListener<? super T>>();
+
+    /**
+     * Create a request which has not yet been submitted for execution.
+     *
+     * @param player the player number of the deck on whose behalf this request is made, or 0
+     * @param track the track loaded in that deck, or {@code null} if not tied to a deck
+     * @param task does the actual work of obtaining the value
+     */
+    AsyncRequest(int player, DataReference track, Callable<T> task) {
+        super(task);
+        this.player = player;
+        this.track = track;
+    }
+
+    /**
+     * Arrange to be told when this request has finished. If it already has, the listener is called right away, on
+     * the calling thread.
+     *
+     * @param listener the listener to be informed of the result
+     */
+    public void addRequestListener(AsyncRequestListener<? super T> listener) {
+        if (listener == null) {
+            return;
+        }
+        synchronized (this) {
+            if (listeners != null) {
+                listeners.add(listener);
+                return;
+            }
+        }
+        deliverOutcome(listener);
+    }
+
+    /**
+     * Called by {@link FutureTask} when the request has finished for any reason; tells the listeners.
+     */
+    @Override
+    protected void done() {
+        AsyncRequests.finished(this);
+        final List<AsyncRequestListener<? super T>> toInform;
+        synchronized (this) {
+            toInform = listeners;
+            listeners = null;
+        }
+        for (AsyncRequestListener<? super T> listener : toInform) {
+            deliverOutcome(listener);
+        }
+    }
+
+    /**
+     * Report the outcome of this finished request to a listener.
+     *
+     * @param listener the listener to be informed
+     */
+    private void deliverOutcome(AsyncRequestListener<? super T> listener) {
+        final T result;
+        try {
+            result = get();
+        } catch (CancellationException e) {
+            deliverFailure(listener, e);
+            return;
+        } catch (ExecutionException e) {
+            deliverFailure(listener, e.getCause());
+            return;
+        } catch (InterruptedException e) {
+            deliverFailure(listener, e);  // Can't happen, we are done, but just in case.
+            return;
+        }
+        try {
+            listener.requestCompleted(result);
+        } catch (Throwable t) {
+            logger.warn("Problem delivering async request result to listener", t);
+        }
+    }
+
+    /**
+     * Report the failure of this request to a listener.
+     *
+     * @param listener the listener to be informed
+     * @param cause the reason the request failed
+     */
+    private void deliverFailure(AsyncRequestListener<? super T> listener, Throwable cause) {
+        try {
+            listener.requestFailed(cause);
+        } catch (Throwable t) {
+            logger.warn("Problem delivering async request failure to listener", t);
+        }
+    }
+
+    /**
+     * Used when the request could not even be started, because the shared executor is too far behind.
+     *
+     * @param cause the reason it was rejected
+     */
+    void reject(Throwable cause) {
+        setException(cause);
+    }
+
+    @Override
+    public String toString() {
+        return "AsyncRequest[player:" + player + ", track:" + track + ", done:" + isDone() +
+                ", cancelled:" + isCancelled() + "]";
+    }
+}
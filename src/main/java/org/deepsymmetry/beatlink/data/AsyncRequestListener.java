@@ -0,0 +1,37 @@
+package org.deepsymmetry.beatlink.data;
+
+/**
+ * <p>The listener interface for finding out when an {@link AsyncRequest} is finished, so that its result can be
+ * used without a thread having to wait for it.</p>
+ *
+ * <p>Classes that want to use the result of a request, for example to ask for album art once the metadata of a
+ * track has arrived, can implement this interface and pass the implementing instance to
+ * {@link AsyncRequest#addRequestListener(AsyncRequestListener)}. Exactly one of the methods will be called,
+ * once, on the thread that performed the request, or on the thread adding the listener if the request had
+ * already finished. They must return quickly, and user interface code must arrange to do its work on the
+ * event dispatch thread.</p>
+ *
+ * @param <T> the type of value being requested
+ *
+ * @author James Elliott
+ * @since 0.6.3
+ */
+public interface AsyncRequestListener<T> {
+
+    /**
+     * Called when the request has finished normally.
+     *
+     * @param result the value that was obtained, which may be {@code null} if none was available, just as with the
+     *               corresponding blocking request method
+     */
+    void requestCompleted(T result);
+
+    /**
+     * Called when the request could not be completed.
+     *
+     * @param cause the problem that was encountered, which will be a
+     *              {@link java.util.concurrent.CancellationException} if the request was cancelled, including
+     *              when the deck it was made for unloaded its track
+     */
+    void requestFailed(Throwable cause);
+}
@@ -0,0 +1,176 @@
+package org.deepsymmetry.beatlink.data;
+
+import org.deepsymmetry.beatlink.CdjStatus;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs the {@link AsyncRequest}s made of all the finders on a single bounded pool of threads, and keeps track of
+ * which deck each was made for, so they can be cancelled when the deck moves on to something else.
+ *
+ * @author James Elliott
+ * @since 0.6.3
+ */
+final class AsyncRequests {
+
+    private static final Logger logger = LoggerFactory.getLogger(AsyncRequests.class);
+
+    /**
+     * The maximum number of requests that will be performed at once. Requests for the same player also have to
+     * share the connections the {@link org.deepsymmetry.beatlink.dbserver.ConnectionManager} has open to it.
+     */
+    static final int THREADS = 8;
+
+    /**
+     * The maximum number of requests that can be waiting for a thread. Any more will fail right away with a
+     * {@link RejectedExecutionException}, since something must be badly wrong for so many to have piled up.
+     */
+    static final int QUEUE_CAPACITY = 256;
+
+    /**
+     * Used to number the request threads.
+     */
+    private static final AtomicInteger threadCount = new AtomicInteger();
+
+    /**
+     * Performs the requests.
+     */
+    private static final ThreadPoolExecutor executor = new ThreadPoolExecutor(THREADS, THREADS, 60, TimeUnit.SECONDS,
+            new LinkedBlockingQueue<Runnable>(QUEUE_CAPACITY),
+            new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                    final Thread result = new Thread(r, "beat-link async request " + threadCount.incrementAndGet());
+                    result.setDaemon(true);
+                    return result;
+                }
+            },
+            new RejectedExecutionHandler() {
+                @Override
+                public void rejectedExecution(Runnable r, ThreadPoolExecutor executor) {
+                    ((AsyncRequest<?>) r).reject(new RejectedExecutionException("Too many async requests are waiting"));
+                }
+            });
+
+    static {
+        executor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Keeps track of the unfinished requests made on behalf of each deck, keyed by player number.
+     */
+    private static final Map<Integer, Set<AsyncRequest<?>>> byDeck = new ConcurrentHashMap<Integer, Set<AsyncRequest<?>>>();
+
+    /**
+     * Prevent instantiation.
+     */
+    private AsyncRequests() {
+        // Nothing to do.
+    }
+
+    /**
+     * Start performing a request in the background.
+     *
+     * @param player the player number of the deck on whose behalf the request is made, or 0 if it is not tied to one
+     * @param track the track loaded in that deck, or {@code null} if not tied to a deck
+     * @param task does the actual work of obtaining the value
+     * @param <T> the type of value being requested
+     *
+     * @return the request, through which the result can be obtained
+     */
+    static <T> AsyncRequest<T> submit(int player, DataReference track, Callable<T> task) {
+        final AsyncRequest<T> request = new AsyncRequest<T>(player, track, task);
+        if (track != null) {
+            Set<AsyncRequest<?>> requests = byDeck.get(player);
+            if (requests == null) {
+                synchronized (byDeck) {
+                    requests = byDeck.get(player);
+                    if (requests == null) {
+                        requests = Collections.newSetFromMap(new ConcurrentHashMap<AsyncRequest<?>, Boolean>());
+                        byDeck.put(player, requests);
+                    }
+                }
+            }
+            requests.add(request);
+        }
+        executor.execute(request);
+        return request;
+    }
+
+    /**
+     * Create a request whose answer is already known, so callers get the same kind of result whether or not any
+     * work was needed.
+     *
+     * @param value the result of the request
+     * @param <T> the type of value being requested
+     *
+     * @return a finished request
+     */
+    static <T> AsyncRequest<T> completed(final T value) {
+        final AsyncRequest<T> request = new AsyncRequest<T>(0, null, new Callable<T>() {
+            @Override
+            public T call() {
+                return value;
+            }
+        });
+        request.run();
+        return request;
+    }
+
+    /**
+     * Called when a request has finished, so we can stop tracking it.
+     *
+     * @param request the request which finished
+     */
+    static void finished(AsyncRequest<?> request) {
+        if (request.track != null) {
+            final Set<AsyncRequest<?>> requests = byDeck.get(request.player);
+            if (requests != null) {
+                requests.remove(request);
+            }
+        }
+    }
+
+    /**
+     * Cancel any requests made on behalf of a deck which no longer has the track they were made for.
+     *
+     * @param player the player number of the deck
+     * @param loaded the track that the deck now has loaded, or {@code null} if none
+     */
+    static void cancelObsolete(int player, DataReference loaded) {
+        final Set<AsyncRequest<?>> requests = byDeck.get(player);
+        if (requests == null || requests.isEmpty()) {
+            return;
+        }
+        for (AsyncRequest<?> request : requests) {
+            if (!request.track.equals(loaded)) {
+                logger.debug("Cancelling {} because player {} now has {} loaded", request, player, loaded);
+                request.cancel(true);
+            }
+        }
+    }
+
+    /**
+     * Figure out which track a player has loaded, if any.
+     *
+     * @param status a status update from the player
+     *
+     * @return the track loaded in its deck, or {@code null} if there is none that we could request data about
+     */
+    static DataReference loadedTrack(CdjStatus status) {
+        if (status.getTrackSourceSlot() == CdjStatus.TrackSourceSlot.NO_TRACK ||
+                status.getTrackSourceSlot() == CdjStatus.TrackSourceSlot.UNKNOWN ||
+                status.getTrackType() == CdjStatus.TrackType.NO_TRACK ||
+                status.getTrackType() == CdjStatus.TrackType.UNKNOWN ||
+                status.getRekordboxId() == 0) {
+            return null;
+        }
+        return new DataReference(status.getTrackSourcePlayer(), status.getTrackSourceSlot(), status.getRekordboxId());
+    }
+}
@@ -9,8 +9,16 @@ import java.nio.ByteBuffer;
 import java.util.Arrays;
 
 /**
- * Provides information about each beat in a track: the number of milliseconds after the start of the track that
- * the beat occurs, and where the beat falls within a measure.
+ * <p>Provides information about each beat in a track: the number of milliseconds after the start of the track that
+ * the beat occurs, and where the beat falls within a measure.</p>
+ *
+ * <p>Most tracks have a constant tempo for long stretches, in which the beats are evenly spaced. So rather than
+ * storing the time of every beat, the grid is divided into segments of constant tempo, each of which records the
+ * time of its first beat and the average interval between its beats. The time of any beat can then be calculated,
+ * and each beat only needs to store how far (because of rounding, or small adjustments to the grid) it falls from
+ * that calculated time. This is packed into a single {@code int} with the beat's position within its bar, so a
+ * beat occupies a quarter of the memory it used to. It also means that finding the beat at a particular time is
+ * simple arithmetic, rather than a binary search over all the beats.</p>
  *
  * @author James Elliott
  */
@@ -50,19 +58,48 @@ public class BeatGrid {
     public final int beatCount;
 
     /**
-     * Holds the reported musical count of each beat.
+     * The number of fractional bits in the fixed-point beat intervals of the tempo segments.
+     */
+    private static final int INTERVAL_FRACTION_BITS = 16;
+
+    /**
+     * The furthest a beat can be from the time calculated for it by its segment, in milliseconds, since the
+     * difference is packed into the upper half of an {@code int}. A beat that is further away starts a new segment.
+     */
+    private static final int MAX_RESIDUAL = Short.MAX_VALUE;
+
+    /**
+     * Holds the reported musical count of each beat in the lower 16 bits, and the difference in milliseconds between
+     * its reported start time and the time calculated from its segment, as a signed value in the upper 16 bits.
+     */
+    private int[] packedBeats;
+
+    /**
+     * Holds the zero-based index of the first beat in each segment of constant tempo.
      */
-    private final int[] beatWithinBarValues;
+    private int[] segmentStarts;
 
     /**
-     * Holds the reported tempo of each beat.
+     * Holds the start time in milliseconds of the first beat in each segment.
      */
-    private final int[] bpmValues;
+    private long[] segmentTimes;
 
     /**
-     * Holds the reported start time of each beat in milliseconds.
+     * Holds the average interval between the beats of each segment, in milliseconds with
+     * {@link #INTERVAL_FRACTION_BITS} fractional bits.
      */
-    private final long[] timeWithinTrackValues;
+    private long[] segmentIntervals;
+
+    /**
+     * Holds the reciprocal of each segment's interval, as beats per millisecond with 32 fractional bits, so that
+     * finding a beat can multiply rather than divide. Zero for segments with only one beat.
+     */
+    private long[] segmentRates;
+
+    /**
+     * Holds the reported tempo of the beats in each segment.
+     */
+    private int[] segmentBpms;
 
     /**
      * Constructor for when reading from the network.
@@ -86,9 +123,9 @@ public class BeatGrid {
         final byte[] gridBytes = new byte[rawData.remaining()];
         rawData.get(gridBytes);
         beatCount = Math.max(0, (gridBytes.length - 20) / 16);  // Handle the case of an empty beat grid
-        beatWithinBarValues = new int[beatCount];
-        bpmValues = new int[beatCount];
-        timeWithinTrackValues = new long[beatCount];
+        final int[] beatWithinBarValues = new int[beatCount];
+        final int[] bpmValues = new int[beatCount];
+        final long[] timeWithinTrackValues = new long[beatCount];
         for (int beatNumber = 0; beatNumber < beatCount; beatNumber++) {
             final int base = 20 + beatNumber * 16;  // Data for the current beat starts here
             // For some reason, unlike nearly every other number in the protocol, beat timings are little-endian
@@ -96,6 +133,7 @@ public class BeatGrid {
             bpmValues[beatNumber] = (int)Util.bytesToNumberLittleEndian(gridBytes, base + 2, 2);
             timeWithinTrackValues[beatNumber] = Util.bytesToNumberLittleEndian(gridBytes, base + 4, 4);
         }
+        buildSegments(beatWithinBarValues, bpmValues, timeWithinTrackValues);
     }
 
     /**
@@ -125,15 +163,16 @@ public class BeatGrid {
         rawData = null;
         RekordboxAnlz.BeatGridTag tag = findTag(anlzFile);
         beatCount = (int)tag.lenBeats();
-        beatWithinBarValues = new int[beatCount];
-        bpmValues = new int[beatCount];
-        timeWithinTrackValues = new long[beatCount];
+        final int[] beatWithinBarValues = new int[beatCount];
+        final int[] bpmValues = new int[beatCount];
+        final long[] timeWithinTrackValues = new long[beatCount];
         for (int beatNumber = 0; beatNumber < beatCount; beatNumber++) {
             RekordboxAnlz.BeatGridBeat beat = tag.beats().get(beatNumber);
             beatWithinBarValues[beatNumber] = beat.beatNumber();
             bpmValues[beatNumber] = beat.tempo();
             timeWithinTrackValues[beatNumber] = beat.time();
         }
+        buildSegments(beatWithinBarValues, bpmValues, timeWithinTrackValues);
     }
 
     /**
@@ -148,15 +187,130 @@ public class BeatGrid {
         dataReference = reference;
         rawData = null;
         beatCount = beatWithinBarValues.length;
-        if (beatCount != timeWithinTrackValues.length) {
+        if (beatCount != timeWithinTrackValues.length || beatCount != bpmValues.length) {
             throw new IllegalArgumentException("Arrays must contain the same number of beats.");
         }
-        this.beatWithinBarValues = new int[beatCount];
-        System.arraycopy(beatWithinBarValues, 0, this.beatWithinBarValues, 0, beatCount);
-        this.bpmValues = new int[beatCount];
-        System.arraycopy(bpmValues, 0, this.bpmValues, 0, beatCount);
-        this.timeWithinTrackValues = new long[beatCount];
-        System.arraycopy(timeWithinTrackValues, 0, this.timeWithinTrackValues, 0, beatCount);
+        for (int i = 0; i < beatCount; i++) {
+            if (beatWithinBarValues[i] < 0 || beatWithinBarValues[i] > 0xffff) {
+                throw new IllegalArgumentException("Beat within bar values must fit in 16 bits.");
+            }
+        }
+        buildSegments(beatWithinBarValues, bpmValues, timeWithinTrackValues);  // Copies what it needs.
+    }
+
+    /**
+     * Divide the beats into segments of constant tempo, and pack what remains to be recorded about each beat.
+     * A new segment is started whenever the tempo changes, or a beat is too far from the time that the current
+     * segment would calculate for it. The interval of each segment is the average distance between the beats in
+     * the run of constant tempo it belongs to.
+     *
+     * @param beatWithinBarValues the musical time on which each beat in the grid falls
+     * @param bpmValues the tempo of the track at each beat, as beats per minute multiplied by 100
+     * @param timeWithinTrackValues the time, in milliseconds, at which each beat occurs in the track
+     */
+    private void buildSegments(int[] beatWithinBarValues, int[] bpmValues, long[] timeWithinTrackValues) {
+        final int[] starts = new int[beatCount];
+        final long[] times = new long[beatCount];
+        final long[] intervals = new long[beatCount];
+        final int[] bpms = new int[beatCount];
+        int segments = 0;
+        packedBeats = new int[beatCount];
+
+        int runStart = 0;
+        while (runStart < beatCount) {
+            int runEnd = runStart + 1;
+            while (runEnd < beatCount && bpmValues[runEnd] == bpmValues[runStart]) {
+                ++runEnd;
+            }
+            int start = runStart;
+            while (start < runEnd) {
+                final long interval = (runEnd - 1 > start)?
+                        ((timeWithinTrackValues[runEnd - 1] - timeWithinTrackValues[start]) << INTERVAL_FRACTION_BITS) /
+                                (runEnd - 1 - start) : 0;
+                int end = start;
+                while (end < runEnd) {
+                    final long residual = timeWithinTrackValues[end] -
+                            calculateTime(timeWithinTrackValues[start], interval, end - start);
+                    if (Math.abs(residual) > MAX_RESIDUAL && end > start) {
+                        break;  // Start a new segment here.
+                    }
+                    packedBeats[end] = (int)(residual << 16) | (beatWithinBarValues[end] & 0xffff);
+                    ++end;
+                }
+                starts[segments] = start;
+                times[segments] = timeWithinTrackValues[start];
+                intervals[segments] = interval;
+                bpms[segments] = bpmValues[start];
+                ++segments;
+                start = end;
+            }
+            runStart = runEnd;
+        }
+
+        segmentStarts = Arrays.copyOf(starts, segments);
+        segmentTimes = Arrays.copyOf(times, segments);
+        segmentIntervals = Arrays.copyOf(intervals, segments);
+        segmentBpms = Arrays.copyOf(bpms, segments);
+        segmentRates = new long[segments];
+        for (int i = 0; i < segments; i++) {
+            if (segmentIntervals[i] > 0) {
+                segmentRates[i] = (1L << (32 + INTERVAL_FRACTION_BITS)) / segmentIntervals[i];
+            }
+        }
+    }
+
+    /**
+     * Calculate the time at which a beat would fall if the beats of a segment were perfectly evenly spaced.
+     *
+     * @param startTime the time of the first beat in the segment
+     * @param interval the fixed-point interval between beats in the segment
+     * @param beatsIntoSegment how many beats after the first beat of the segment the desired beat is
+     *
+     * @return the calculated time of the beat, in milliseconds
+     */
+    private static long calculateTime(long startTime, long interval, int beatsIntoSegment) {
+        return startTime + ((beatsIntoSegment * interval) >> INTERVAL_FRACTION_BITS);
+    }
+
+    /**
+     * Find the segment containing a beat.
+     *
+     * @param offset the zero-based index of the beat
+     *
+     * @return the index of the segment which contains it
+     */
+    private int segmentContaining(int offset) {
+        if (segmentStarts.length == 1) {
+            return 0;  // The common case, a constant tempo throughout.
+        }
+        final int found = Arrays.binarySearch(segmentStarts, offset);
+        return (found >= 0)? found : -(found + 2);
+    }
+
+    /**
+     * Look up the start time of a beat, given its zero-based index, without any bounds checking.
+     *
+     * @param offset the zero-based index of the beat
+     *
+     * @return the number of milliseconds into the track at which the beat occurs
+     */
+    private long timeAt(int offset) {
+        final int segment = segmentContaining(offset);
+        return calculateTime(segmentTimes[segment], segmentIntervals[segment], offset - segmentStarts[segment]) +
+                (packedBeats[offset] >> 16);
+    }
+
+    /**
+     * Check how many segments of constant tempo the beat grid has been divided into. Tracks with a constant
+     * tempo will usually have just one; tempo changes, and beats which have been moved a long way from where
+     * the tempo would put them, start new ones.
+     *
+     * @return the number of segments, which is zero only if the grid has no beats
+     *
+     * @since 0.6.3
+     */
+    public int getSegmentCount() {
+        return segmentStarts.length;
     }
 
     /**
@@ -192,7 +346,7 @@ public class BeatGrid {
         if (beatNumber == 0) {
             return 0;
         }
-        return timeWithinTrackValues[beatOffset(beatNumber)];
+        return timeAt(beatOffset(beatNumber));
     }
 
     /**
@@ -207,7 +361,7 @@ public class BeatGrid {
      * @throws IllegalArgumentException if {@code number} is less than 1 or greater than {@code beatCount}
      */
     public int getBeatWithinBar(int beatNumber) {
-        return beatWithinBarValues[beatOffset(beatNumber)];
+        return packedBeats[beatOffset(beatNumber)] & 0xffff;
     }
 
     /**
@@ -219,11 +373,13 @@ public class BeatGrid {
      * @return the track BPM at the specified beat number to two decimal places multiplied by 100
      */
     public int getBpm(int beatNumber) {
-        return bpmValues[beatOffset(beatNumber)];
+        return segmentBpms[segmentContaining(beatOffset(beatNumber))];
     }
 
     /**
-     * Finds the beat in which the specified track position falls.
+     * Finds the beat in which the specified track position falls. Within a segment of constant tempo this is
+     * calculated directly from the segment's interval, and then adjusted by a beat if the beat it lands near was
+     * moved slightly from its calculated time; only a grid whose beats are far from evenly spaced needs a search.
      *
      * @param milliseconds how long the track has been playing
      *
@@ -231,14 +387,56 @@ public class BeatGrid {
      */
     @SuppressWarnings("WeakerAccess")
     public int findBeatAtTime(long milliseconds) {
-        int found = Arrays.binarySearch(timeWithinTrackValues, milliseconds);
-        if (found >= 0) {  // An exact match, just change 0-based array index to 1-based beat number
-            return found + 1;
-        } else if (found == -1) {  // We are before the first beat
-            return found;
-        } else {  // We are after some beat, report its beat number
-            return -(found + 1);
+        if (beatCount == 0 || milliseconds < timeAt(0)) {
+            return -1;  // We are before the first beat
+        }
+
+        // Find the segment in which the time falls.
+        int segment = 0;
+        if (segmentTimes.length > 1) {
+            final int found = Arrays.binarySearch(segmentTimes, milliseconds);
+            segment = (found >= 0)? found : Math.max(0, -(found + 2));
+        }
+
+        // Estimate the beat from the segment's tempo.
+        final int segmentStart = segmentStarts[segment];
+        final int segmentEnd = (segment + 1 < segmentStarts.length)? segmentStarts[segment + 1] : beatCount;
+        final long estimate = segmentStart + (((milliseconds - segmentTimes[segment]) * segmentRates[segment]) >> 32);
+        int offset = (int)Math.max(segmentStart, Math.min(segmentEnd - 1, estimate));
+
+        // Correct the estimate for beats which are not exactly where the tempo would put them.
+        for (int steps = 0; steps < 4; steps++) {
+            if (timeAt(offset) > milliseconds) {
+                --offset;
+            } else if (offset + 1 < beatCount && timeAt(offset + 1) <= milliseconds) {
+                ++offset;
+            } else {
+                return offset + 1;  // Change 0-based array index to 1-based beat number.
+            }
+        }
+        return searchBeatAtTime(milliseconds);
+    }
+
+    /**
+     * Finds the beat in which the specified track position falls by binary search, for the rare case where the
+     * estimate made by {@link #findBeatAtTime(long)} is more than a few beats away.
+     *
+     * @param milliseconds how long the track has been playing, which must not be before the first beat
+     *
+     * @return the beat number represented by that time
+     */
+    private int searchBeatAtTime(long milliseconds) {
+        int low = 0;
+        int high = beatCount - 1;
+        while (low < high) {  // Find the last beat which starts no later than the time.
+            final int middle = (low + high + 1) >>> 1;
+            if (timeAt(middle) <= milliseconds) {
+                low = middle;
+            } else {
+                high = middle - 1;
+            }
         }
+        return low + 1;
     }
 
 
@@ -11,7 +11,9 @@ import org.slf4j.LoggerFactory;
 import javax.swing.*;
 import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Future;
 import java.util.concurrent.LinkedBlockingDeque;
 import java.util.concurrent.atomic.AtomicBoolean;
 
@@ -230,10 +232,19 @@ public class BeatGridFinder extends LifecycleParticipant {
      */
     private BeatGrid requestBeatGridInternal(final DataReference trackReference, final boolean failIfPassive) {
 
-        // First check if we are using cached data for this slot
+        // First check if we have already obtained it recently.
+        final TrackDataCache dataCache = TrackDataCache.getInstance();
+        final BeatGrid cached = dataCache.get(TrackDataCache.Kind.BEAT_GRID, trackReference);
+        if (cached != null) {
+            return cached;
+        }
+
+        // Then check if we are using cached data for this slot
         @SuppressWarnings("deprecation") MetadataCache cache = MetadataFinder.getInstance().getMetadataCache(SlotReference.getSlotReference(trackReference));
         if (cache != null) {
-            return cache.getBeatGrid(null, trackReference);
+            final BeatGrid result = cache.getBeatGrid(null, trackReference);
+            dataCache.put(TrackDataCache.Kind.BEAT_GRID, trackReference, result);
+            return result;
         }
 
         // Then see if any registered metadata providers can offer it to us.
@@ -241,6 +252,7 @@ public class BeatGridFinder extends LifecycleParticipant {
         if (sourceDetails !=  null) {
             final BeatGrid provided = MetadataFinder.getInstance().allMetadataProviders.getBeatGrid(sourceDetails, trackReference);
             if (provided != null) {
+                dataCache.put(TrackDataCache.Kind.BEAT_GRID, trackReference, provided);
                 return provided;
             }
         }
@@ -260,7 +272,9 @@ public class BeatGridFinder extends LifecycleParticipant {
         };
 
         try {
-            return ConnectionManager.getInstance().invokeWithClientSession(trackReference.player, task, "requesting beat grid");
+            final BeatGrid result = ConnectionManager.getInstance().invokeWithClientSession(trackReference.player, task, "requesting beat grid");
+            dataCache.put(TrackDataCache.Kind.BEAT_GRID, trackReference, result);
+            return result;
         } catch (Exception e) {
             logger.error("Problem requesting beat grid, returning null", e);
         }
@@ -284,6 +298,43 @@ public class BeatGridFinder extends LifecycleParticipant {
         return requestBeatGridInternal(track, false);
     }
 
+    /**
+     * Start finding the beat grid for the track a player has loaded, in the background, returning right away.
+     * The request is cancelled if the player unloads the track, or loads a different one, before it finishes.
+     *
+     * @param status a status update from the player whose loaded track's beat grid is desired
+     *
+     * @return the request, which will provide the same result as {@link #requestBeatGridFrom(DataReference)}
+     */
+    public AsyncRequest<BeatGrid> requestBeatGridAsync(final CdjStatus status) {
+        final DataReference track = AsyncRequests.loadedTrack(status);
+        if (track == null) {
+            return AsyncRequests.<BeatGrid>completed(null);
+        }
+        return AsyncRequests.submit(status.getDeviceNumber(), track, new Callable<BeatGrid>() {
+            @Override
+            public BeatGrid call() {
+                return requestBeatGridFrom(track);
+            }
+        });
+    }
+
+    /**
+     * Start finding the beat grid of a track in the background, returning right away.
+     *
+     * @param track uniquely identifies the track whose beat grid is desired
+     *
+     * @return the request, which will provide the same result as {@link #requestBeatGridFrom(DataReference)}
+     */
+    public AsyncRequest<BeatGrid> requestBeatGridAsync(final DataReference track) {
+        return AsyncRequests.submit(0, null, new Callable<BeatGrid>() {
+            @Override
+            public BeatGrid call() {
+                return requestBeatGridFrom(track);
+            }
+        });
+    }
+
     /**
      * Requests the beat grid for a specific track ID, given a connection to a player that has already been set up.
 
@@ -297,8 +348,41 @@ public class BeatGridFinder extends LifecycleParticipant {
      */
     BeatGrid getBeatGrid(int rekordboxId, SlotReference slot, Client client)
             throws IOException {
-        Message response = client.simpleRequest(Message.KnownType.BEAT_GRID_REQ, null,
+        return receiveBeatGrid(requestBeatGrid(rekordboxId, slot, client), rekordboxId, slot);
+    }
+
+    /**
+     * Sends a pipelined request for the beat grid of a specific track ID, so it can travel to the player along with
+     * other requests about the same track. The response must be passed to
+     * {@link #receiveBeatGrid(Future, int, SlotReference)} while the client is still held.
+     *
+     * @param rekordboxId the track of interest
+     * @param slot identifies the media slot we are querying
+     * @param client the dbserver client that is communicating with the appropriate player
+     *
+     * @return the future through which the response will arrive
+     *
+     * @throws IOException if there is a communication problem
+     */
+    Future<Message> requestBeatGrid(int rekordboxId, SlotReference slot, Client client)
+            throws IOException {
+        return client.pipelinedRequest(Message.KnownType.BEAT_GRID_REQ, null,
                 client.buildRMST(Message.MenuIdentifier.DATA, slot.slot), new NumberField(rekordboxId));
+    }
+
+    /**
+     * Builds the beat grid from the response to {@link #requestBeatGrid(int, SlotReference, Client)}.
+     *
+     * @param pending the response to the beat grid request
+     * @param rekordboxId the track of interest
+     * @param slot identifies the media slot we are querying
+     *
+     * @return the retrieved beat grid, or {@code null} if there was none available
+     *
+     * @throws IOException if there was a communication problem
+     */
+    BeatGrid receiveBeatGrid(Future<Message> pending, int rekordboxId, SlotReference slot) throws IOException {
+        final Message response = MetadataFinder.awaitResponse(pending);
         if (response.knownType == Message.KnownType.BEAT_GRID) {
             return new BeatGrid(new DataReference(slot, rekordboxId), response);
         }
@@ -314,8 +398,8 @@ public class BeatGridFinder extends LifecycleParticipant {
     /**
      * Keeps track of the registered beat grid listeners.
      */
-    private final Set<BeatGridListener> beatGridListeners =
-            Collections.newSetFromMap(new ConcurrentHashMap<BeatGridListener, Boolean>());
+    private final ListenerRegistry<BeatGridListener> beatGridListeners =
+            new ListenerRegistry<BeatGridListener>();
 
     /**
      * <p>Adds the specified beat grid listener to receive updates when the beat grid information for a player changes.
@@ -359,8 +443,7 @@ public class BeatGridFinder extends LifecycleParticipant {
      */
     @SuppressWarnings("WeakerAccess")
     public Set<BeatGridListener> getBeatGridListeners() {
-        // Make a copy so callers get an immutable snapshot of the current state.
-        return Collections.unmodifiableSet(new HashSet<BeatGridListener>(beatGridListeners));
+        return beatGridListeners.asSet();
     }
 
     /**
@@ -370,9 +453,11 @@ public class BeatGridFinder extends LifecycleParticipant {
      * @param beatGrid the new beat grid associated with that player, if any
      */
     private void deliverBeatGridUpdate(int player, BeatGrid beatGrid) {
-        if (!getBeatGridListeners().isEmpty()) {
+        if (!beatGridListeners.isEmpty()) {
             final BeatGridUpdate update = new BeatGridUpdate(player, beatGrid);
-            for (final BeatGridListener listener : getBeatGridListeners()) {
+            final List<BeatGridListener> listeners = beatGridListeners.snapshot();
+            for (int i = 0; i < listeners.size(); i++) {
+                final BeatGridListener listener = listeners.get(i);
                 try {
                     listener.beatGridChanged(update);
 
@@ -409,7 +494,7 @@ public class BeatGridFinder extends LifecycleParticipant {
                 if (activeRequests.add(update.player)) {  // We had to make sure we were not already asking for this track.
                     clearDeck(update);  // We won't know what it is until our request completes.
 
-                    new Thread(new Runnable() {
+                    Scheduler.getInstance().execute(Scheduler.Pool.IO, "beat grid request", new Runnable() {
                         @Override
                         public void run() {
                             try {
@@ -423,7 +508,7 @@ public class BeatGridFinder extends LifecycleParticipant {
                                 activeRequests.remove(update.player);
                             }
                         }
-                    }, "Beat Grid request").start();
+                    });
                 }
             }
         }
@@ -0,0 +1,413 @@
+package org.deepsymmetry.beatlink.data;
+
+import org.deepsymmetry.beatlink.CdjStatus;
+import org.deepsymmetry.beatlink.MediaDetails;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * <p>A compact summary of a metadata cache file, which is all that is needed to decide whether the cache matches
+ * media that has just been mounted, so auto-attachment does not have to open every candidate file.</p>
+ *
+ * <p>It records the playlist and track count the cache was created from, the details of the source media (if the
+ * cache has them), and signatures of a sample of its tracks. The sample is chosen by scrambling the rekordbox IDs
+ * and keeping the tracks with the lowest scrambled values, so caches created from the same media sample the same
+ * tracks, and a single track fetched from a player can be checked against all of them. Because the sample holds the
+ * lowest values, it also tells us which tracks the cache cannot contain, which rules out an all-tracks cache when
+ * the player has one of them.</p>
+ *
+ * <p>Fingerprints are stored next to the cache file they describe, in a file whose name has {@code .fingerprint}
+ * added to it, and are also kept in memory. Either copy is ignored if the size or modification time of the cache
+ * file has changed since it was made, and a new one is computed.</p>
+ *
+ * @author James Elliott
+ * @since 0.6.3
+ */
+@SuppressWarnings("deprecation")
+final class CacheFingerprint {
+
+    private static final Logger logger = LoggerFactory.getLogger(CacheFingerprint.class);
+
+    /**
+     * The bytes at the start of every fingerprint file, which identify its format.
+     */
+    private static final byte[] MAGIC = {'B', 'L', 'T', 'M', 'C', 'f', 'p', '1'};
+
+    /**
+     * The maximum number of tracks whose signatures are recorded.
+     */
+    static final int SAMPLE_SIZE = 32;
+
+    /**
+     * The possible outcomes of comparing a track fetched from a player with a fingerprint.
+     */
+    enum Verdict {
+        /**
+         * The cache holds the same track.
+         */
+        MATCH,
+        /**
+         * The cache cannot have been created from the media the track came from.
+         */
+        MISMATCH,
+        /**
+         * The track is not in the sample, so the fingerprint cannot tell.
+         */
+        UNKNOWN
+    }
+
+    /**
+     * The fingerprints we have already read or computed, keyed by the cache file they describe.
+     */
+    private static final Map<File, CacheFingerprint> fingerprints = new ConcurrentHashMap<File, CacheFingerprint>();
+
+    /**
+     * The size of the cache file when the fingerprint was made.
+     */
+    private final long fileLength;
+
+    /**
+     * The modification time of the cache file when the fingerprint was made.
+     */
+    private final long fileModified;
+
+    /**
+     * The ID of the playlist that was used to create the cache, or 0 if it is an all-tracks cache.
+     */
+    final int sourcePlaylist;
+
+    /**
+     * The number of tracks that were in the playlist or media when the cache was created.
+     */
+    final int trackCount;
+
+    /**
+     * The details about the media from which the cache was created, or {@code null} if it did not record them.
+     */
+    final MediaDetails sourceMedia;
+
+    /**
+     * The rekordbox IDs of the sampled tracks, in increasing order.
+     */
+    private final int[] sampleIds;
+
+    /**
+     * The signatures of the sampled tracks, in the same order as {@link #sampleIds}.
+     */
+    private final long[] sampleSignatures;
+
+    /**
+     * The largest scrambled ID in the sample; any track with a scrambled ID no larger than this which is not in the
+     * sample is not in the cache. If the sample holds every track, this is {@link Long#MAX_VALUE}.
+     */
+    private final long sampleLimit;
+
+    /**
+     * Name the file in which the fingerprint of a cache is stored.
+     *
+     * @param cache the metadata cache file
+     *
+     * @return the fingerprint file that goes with it
+     */
+    static File fingerprintFile(File cache) {
+        return new File(cache.getPath() + ".fingerprint");
+    }
+
+    /**
+     * Scramble a rekordbox ID so that the sample is spread evenly over the tracks, even though IDs are usually
+     * assigned sequentially. This is the finalizer of the SplitMix64 generator, so every ID scrambles to a different
+     * value.
+     *
+     * @param id the rekordbox ID of a track
+     *
+     * @return the scrambled value, which is never negative
+     */
+    static long scramble(int id) {
+        long z = id + 0x9e3779b97f4a7c15L;
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return (z ^ (z >>> 31)) >>> 1;  // Drop the top bit so we can compare them as positive longs.
+    }
+
+    /**
+     * Calculate a signature for a track which will be the same whether its metadata came from a player or a cache
+     * file, and almost certainly different for any other track.
+     *
+     * @param track the metadata of the track
+     *
+     * @return the signature
+     */
+    static long signature(TrackMetadata track) {
+        long result = track.getTitle().hashCode();
+        result = 31 * result + label(track.getArtist());
+        result = 31 * result + label(track.getAlbum());
+        result = 31 * result + label(track.getGenre());
+        result = 31 * result + label(track.getKey());
+        result = 31 * result + ((track.getComment() == null)? 0 : track.getComment().hashCode());
+        result = 31 * result + ((track.getDateAdded() == null)? 0 : track.getDateAdded().hashCode());
+        result = 31 * result + track.getDuration();
+        result = 31 * result + track.getTempo();
+        result = 31 * result + track.getRating();
+        result = 31 * result + track.getArtworkId();
+        return result;
+    }
+
+    /**
+     * Helper for {@link #signature(TrackMetadata)} which hashes an optional searchable item.
+     *
+     * @param item the item, which may be {@code null}
+     *
+     * @return a hash of its ID and label
+     */
+    private static long label(SearchableItem item) {
+        if (item == null) {
+            return 0;
+        }
+        return item.id * 31L + ((item.label == null)? 0 : item.label.hashCode());
+    }
+
+    /**
+     * Get the fingerprint of a metadata cache file, reading it from memory or the fingerprint file if possible, and
+     * otherwise computing it from the cache file and saving it for next time.
+     *
+     * @param cache the metadata cache file
+     *
+     * @return its fingerprint
+     *
+     * @throws IOException if the cache file cannot be read
+     */
+    static CacheFingerprint forFile(File cache) throws IOException {
+        final long length = cache.length();
+        final long modified = cache.lastModified();
+        CacheFingerprint result = fingerprints.get(cache);
+        if (result != null && result.describes(length, modified)) {
+            return result;
+        }
+        final File sidecar = fingerprintFile(cache);
+        if (sidecar.exists()) {
+            try {
+                result = read(sidecar);
+                if (result.describes(length, modified)) {
+                    fingerprints.put(cache, result);
+                    return result;
+                }
+            } catch (IOException e) {
+                logger.warn("Ignoring unreadable metadata cache fingerprint " + sidecar, e);
+            }
+        }
+        result = compute(cache, length, modified);
+        fingerprints.put(cache, result);
+        try {
+            result.write(sidecar);
+        } catch (IOException e) {
+            logger.info("Unable to save fingerprint of metadata cache {}, it will be kept only in memory: {}", cache, e.getMessage());
+        }
+        return result;
+    }
+
+    /**
+     * Create a fingerprint.
+     */
+    private CacheFingerprint(long fileLength, long fileModified, int sourcePlaylist, int trackCount,
+                             MediaDetails sourceMedia, int[] sampleIds, long[] sampleSignatures, long sampleLimit) {
+        this.fileLength = fileLength;
+        this.fileModified = fileModified;
+        this.sourcePlaylist = sourcePlaylist;
+        this.trackCount = trackCount;
+        this.sourceMedia = sourceMedia;
+        this.sampleIds = sampleIds;
+        this.sampleSignatures = sampleSignatures;
+        this.sampleLimit = sampleLimit;
+    }
+
+    /**
+     * Check whether this fingerprint was made from the current version of its cache file.
+     *
+     * @param length the size of the cache file
+     * @param modified the modification time of the cache file
+     *
+     * @return {@code true} if the file appears not to have changed since the fingerprint was made
+     */
+    private boolean describes(long length, long modified) {
+        return length == fileLength && modified == fileModified;
+    }
+
+    /**
+     * Open a metadata cache file and calculate its fingerprint.
+     *
+     * @param cache the metadata cache file
+     * @param length the size of the file
+     * @param modified the modification time of the file
+     *
+     * @return the fingerprint
+     *
+     * @throws IOException if there is a problem reading the file
+     */
+    private static CacheFingerprint compute(File cache, long length, long modified) throws IOException {
+        final MetadataCache opened = new MetadataCache(cache);
+        try {
+            final List<Integer> ids = new ArrayList<Integer>(opened.getTrackIds());
+            Collections.sort(ids, new Comparator<Integer>() {
+                @Override
+                public int compare(Integer o1, Integer o2) {
+                    final long s1 = scramble(o1);
+                    final long s2 = scramble(o2);
+                    return (s1 < s2)? -1 : ((s1 == s2)? 0 : 1);
+                }
+            });
+            final List<Integer> sample = new ArrayList<Integer>(ids.subList(0, Math.min(SAMPLE_SIZE, ids.size())));
+            final long limit = (sample.size() == ids.size())? Long.MAX_VALUE :
+                    scramble(sample.get(sample.size() - 1));
+            Collections.sort(sample);
+            final int[] sampleIds = new int[sample.size()];
+            final long[] signatures = new long[sample.size()];
+            for (int i = 0; i < sampleIds.length; i++) {
+                sampleIds[i] = sample.get(i);
+                final TrackMetadata track = opened.getTrackMetadata(null,
+                        new DataReference(0, CdjStatus.TrackSourceSlot.USB_SLOT, sampleIds[i]));
+                if (track == null) {
+                    throw new IOException("Unable to read metadata for track " + sampleIds[i] + " from " + cache);
+                }
+                signatures[i] = signature(track);
+            }
+            return new CacheFingerprint(length, modified, opened.sourcePlaylist, opened.trackCount, opened.sourceMedia,
+                    sampleIds, signatures, limit);
+        } finally {
+            opened.close();
+        }
+    }
+
+    /**
+     * Read a fingerprint file.
+     *
+     * @param file the fingerprint file
+     *
+     * @return the fingerprint it holds
+     *
+     * @throws IOException if there is a problem reading the file, or it is not a fingerprint
+     */
+    private static CacheFingerprint read(File file) throws IOException {
+        final DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+        try {
+            final byte[] magic = new byte[MAGIC.length];
+            in.readFully(magic);
+            if (!Arrays.equals(magic, MAGIC)) {
+                throw new IOException("File does not contain a metadata cache fingerprint: " + file);
+            }
+            final long length = in.readLong();
+            final long modified = in.readLong();
+            final int playlist = in.readInt();
+            final int count = in.readInt();
+            final int detailsLength = in.readInt();
+            MediaDetails details = null;
+            if (detailsLength > 0) {
+                final byte[] detailBytes = new byte[detailsLength];
+                in.readFully(detailBytes);
+                details = new MediaDetails(detailBytes, detailBytes.length);
+            }
+            final long limit = in.readLong();
+            final int samples = in.readInt();
+            if (samples < 0 || samples > SAMPLE_SIZE) {
+                throw new IOException("Metadata cache fingerprint has an impossible sample size: " + samples);
+            }
+            final int[] ids = new int[samples];
+            final long[] signatures = new long[samples];
+            for (int i = 0; i < samples; i++) {
+                ids[i] = in.readInt();
+                signatures[i] = in.readLong();
+            }
+            return new CacheFingerprint(length, modified, playlist, count, details, ids, signatures, limit);
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Save the fingerprint next to its cache file, writing to a temporary file first so that a fingerprint file is
+     * never seen half-written.
+     *
+     * @param file the fingerprint file
+     *
+     * @throws IOException if there is a problem writing
+     */
+    private void write(File file) throws IOException {
+        final File temp = new File(file.getPath() + ".tmp");
+        final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)));
+        try {
+            out.write(MAGIC);
+            out.writeLong(fileLength);
+            out.writeLong(fileModified);
+            out.writeInt(sourcePlaylist);
+            out.writeInt(trackCount);
+            if (sourceMedia == null) {
+                out.writeInt(0);
+            } else {
+                final ByteBuffer raw = sourceMedia.getRawBytes();
+                final byte[] detailBytes = new byte[raw.remaining()];
+                raw.get(detailBytes);
+                out.writeInt(detailBytes.length);
+                out.write(detailBytes);
+            }
+            out.writeLong(sampleLimit);
+            out.writeInt(sampleIds.length);
+            for (int i = 0; i < sampleIds.length; i++) {
+                out.writeInt(sampleIds[i]);
+                out.writeLong(sampleSignatures[i]);
+            }
+        } finally {
+            out.close();
+        }
+        if ((file.exists() && !file.delete()) || !temp.renameTo(file)) {
+            if (!temp.delete()) {
+                logger.warn("Unable to delete temporary metadata cache fingerprint {}", temp);
+            }
+            throw new IOException("Unable to replace metadata cache fingerprint " + file);
+        }
+    }
+
+    /**
+     * Get the IDs of the tracks in the sample.
+     *
+     * @return the rekordbox IDs whose signatures were recorded, in increasing order
+     */
+    int[] getSampleIds() {
+        return sampleIds.clone();
+    }
+
+    /**
+     * Check whether the sample includes a track.
+     *
+     * @param id the rekordbox ID of the track
+     *
+     * @return {@code true} if its signature was recorded
+     */
+    boolean sampled(int id) {
+        return Arrays.binarySearch(sampleIds, id) >= 0;
+    }
+
+    /**
+     * Compare a track obtained from a player with this fingerprint.
+     *
+     * @param id the rekordbox ID that was requested
+     * @param track the metadata the player returned, or {@code null} if it has no track with that ID
+     *
+     * @return whether the cache can have been created from the media that the track came from
+     */
+    Verdict compare(int id, TrackMetadata track) {
+        final int index = Arrays.binarySearch(sampleIds, id);
+        if (index >= 0) {
+            return (track != null && signature(track) == sampleSignatures[index])? Verdict.MATCH : Verdict.MISMATCH;
+        }
+        if (sourcePlaylist == 0 && scramble(id) <= sampleLimit && track != null) {
+            // The track would have been in the sample if it were in the cache. A playlist cache only holds some of
+            // the tracks on the media, so there a missing track tells us nothing.
+            return Verdict.MISMATCH;
+        }
+        return Verdict.UNKNOWN;
+    }
+}
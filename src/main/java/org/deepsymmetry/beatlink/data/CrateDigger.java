@@ -13,9 +13,13 @@ import java.io.File;
 import java.io.IOException;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * <p>Uses the <a href="https://github.com/Deep-Symmetry/crate-digger#crate-digger">Crate Digger</a> library to
@@ -84,7 +88,7 @@ public class CrateDigger {
     private final LifecycleListener lifecycleListener = new LifecycleListener() {
         @Override
         public void started(final LifecycleParticipant sender) {
-            new Thread(new Runnable() {
+            Scheduler.getInstance().execute(Scheduler.Pool.IO, "starting CrateDigger", new Runnable() {
                 @Override
                 public void run() {
                     try {
@@ -94,7 +98,7 @@ public class CrateDigger {
                         logger.error("Problem starting the CrateDigger in response to a lifecycle event.", t);
                     }
                 }
-            }).start();
+            });
         }
 
         @Override
@@ -138,6 +142,7 @@ public class CrateDigger {
         @Override
         public void mediaUnmounted(SlotReference slot) {
             mediaWithHiddenPioneerFolder.remove(slot);
+            mediaKeys.remove(slot);
             DeviceAnnouncement player = DeviceFinder.getInstance().getLatestAnnouncementFrom(slot.player);
             if (player == null) {
                 logger.info("Received an unmount for a player we can't find, it must have left network.");
@@ -152,14 +157,14 @@ public class CrateDigger {
             final Database database = databases.remove(slot);
             if (database != null) {
                 deliverDatabaseUpdate(slot, database, false);
-                try {
-                    database.close();
-                } catch (IOException e) {
-                    logger.error("Problem closing parsed rekordbox database export.", e);
-                }
-                //noinspection ResultOfMethodCallIgnored
-                database.sourceFile.delete();
+                closeDatabase(database);
+                discardDatabaseFile(database.sourceFile);
             }
+            final DeferredExport export = deferredExports.remove(slot);
+            if (export != null) {
+                discardDatabaseFile(export.file);
+            }
+            discardSnapshot(snapshots.remove(slot));
             final String prefix = slotPrefix(slot);
             File[] files = downloadDirectory.listFiles();
             if (files != null) {
@@ -194,7 +199,126 @@ public class CrateDigger {
     /**
      * Holds the local databases we have fetched for mounted media, so we can use them to respond to metadata requests.
      */
-    private final Map<SlotReference, Database> databases = new ConcurrentHashMap<SlotReference, Database>();
+    private final ConcurrentMap<SlotReference, Database> databases = new ConcurrentHashMap<SlotReference, Database>();
+
+    /**
+     * Holds the compact snapshots of the databases for mounted media, which we use to find track analysis files
+     * without going through the parsed database structures. When the same export has been seen before, its snapshot
+     * is used in place of the parsed database until something needs the full database.
+     */
+    private final ConcurrentMap<SlotReference, DatabaseSnapshot> snapshots =
+            new ConcurrentHashMap<SlotReference, DatabaseSnapshot>();
+
+    /**
+     * Holds the exports of mounted media which we found valid snapshots for, and so have not yet parsed. Each is
+     * parsed and moved to {@link #databases} the first time {@link #findDatabase(SlotReference)} is asked for it.
+     */
+    private final ConcurrentMap<SlotReference, DeferredExport> deferredExports =
+            new ConcurrentHashMap<SlotReference, DeferredExport>();
+
+    /**
+     * Holds the {@link MediaDetails#hashKey()} of the media mounted in each slot for which we are fetching or have
+     * fetched a database, so files downloaded from it can be found in the persistent download cache.
+     */
+    private final Map<SlotReference, String> mediaKeys = new ConcurrentHashMap<SlotReference, String>();
+
+    /**
+     * Holds the download cache files underlying the analysis files we have parsed and not yet closed, which are
+     * pinned so the cache does not evict them while they are open. Keys are compared by identity, since the parsed
+     * structs do not override {@code equals()}.
+     */
+    private final Map<RekordboxAnlz, File> openAnalysis = new ConcurrentHashMap<RekordboxAnlz, File>();
+
+    /**
+     * The default size limit of the persistent download cache, one gigabyte.
+     */
+    public static final long DEFAULT_DOWNLOAD_CACHE_SIZE_LIMIT = 1024L * 1024L * 1024L;
+
+    /**
+     * The persistent download cache, if one has been configured.
+     */
+    private final AtomicReference<DownloadCache> downloadCache = new AtomicReference<DownloadCache>();
+
+    /**
+     * The size limit to use for the persistent download cache.
+     */
+    private final AtomicLong downloadCacheSizeLimit = new AtomicLong(DEFAULT_DOWNLOAD_CACHE_SIZE_LIMIT);
+
+    /**
+     * <p>Set up a persistent folder in which to keep the database exports and track analysis files we download, so
+     * that the next time the same media is mounted (even after Beat Link has been restarted) they can be used
+     * without downloading them again. Files are found by the {@link MediaDetails#hashKey()} of the media they came
+     * from, their path, and details that change when they are rewritten (such as the media's free space for the
+     * database export, and the track's size, duration, and tempo for analysis files). The least recently used files
+     * are deleted when the folder grows past {@link #getDownloadCacheSizeLimit()}. Only files the cache created
+     * itself (whose names are SHA-1 hashes) are ever counted or deleted; anything else in the folder is left
+     * alone, although it is still best to give the cache a folder of its own.</p>
+     *
+     * <p>By default there is no such folder, and downloaded files are deleted when their media is unmounted.</p>
+     *
+     * @param directory the folder in which downloaded files should be kept, or {@code null} to stop keeping them
+     *
+     * @throws IOException if the folder does not exist and can't be created
+     *
+     * @since 0.6.3
+     */
+    public synchronized void setDownloadCacheDirectory(File directory) throws IOException {
+        if (directory == null) {
+            downloadCache.set(null);
+        } else {
+            final DownloadCache current = downloadCache.get();
+            if (current == null || !current.directory.equals(directory)) {
+                downloadCache.set(new DownloadCache(directory, downloadCacheSizeLimit.get()));
+            }
+        }
+    }
+
+    /**
+     * Check where downloaded database exports and track analysis files are being kept between mounts.
+     *
+     * @return the persistent download cache folder, or {@code null} if none has been configured
+     *
+     * @since 0.6.3
+     */
+    public File getDownloadCacheDirectory() {
+        final DownloadCache cache = downloadCache.get();
+        if (cache == null) {
+            return null;
+        }
+        return cache.directory;
+    }
+
+    /**
+     * Set the largest number of bytes the files in the persistent download cache may occupy. If the cache is
+     * already larger than this, the least recently used files are deleted right away.
+     *
+     * @param bytes the size limit for the download cache
+     *
+     * @throws IllegalArgumentException if {@code bytes} is negative
+     *
+     * @since 0.6.3
+     */
+    public synchronized void setDownloadCacheSizeLimit(long bytes) {
+        if (bytes < 0) {
+            throw new IllegalArgumentException("bytes cannot be negative");
+        }
+        downloadCacheSizeLimit.set(bytes);
+        final DownloadCache cache = downloadCache.get();
+        if (cache != null) {
+            cache.setSizeLimit(bytes);
+        }
+    }
+
+    /**
+     * Check the largest number of bytes the files in the persistent download cache may occupy.
+     *
+     * @return the size limit for the download cache
+     *
+     * @since 0.6.3
+     */
+    public long getDownloadCacheSizeLimit() {
+        return downloadCacheSizeLimit.get();
+    }
 
     /**
      * Return the filesystem path needed to mount the NFS filesystem associated with a particular media slot.
@@ -225,7 +349,8 @@ public class CrateDigger {
 
     /**
      * Helper method to call the {@link FileFetcher} with the right arguments to get a file for a particular slot. Also
-     * arranges for the file to be deleted when we are shutting down in case we fail to clean it up ourselves.
+     * arranges for the file to be deleted when we are shutting down in case we fail to clean it up ourselves, unless
+     * it is being downloaded into the persistent download cache, which manages its own files.
      *
      * @param slot the slot from which a file is desired
      * @param path the path to the file within the slot's mounted filesystem
@@ -234,18 +359,24 @@ public class CrateDigger {
      * @throws IOException if there is a problem fetching the file
      */
     private void fetchFile(SlotReference slot, String path, File destination) throws IOException {
-        destination.deleteOnExit();
+        final DownloadCache cache = downloadCache.get();
+        if (cache == null || !cache.holds(destination)) {
+            destination.deleteOnExit();
+        }
         final DeviceAnnouncement player = DeviceFinder.getInstance().getLatestAnnouncementFrom(slot.player);
         if (player == null) {
             throw new IOException("Cannot fetch file from player that is not found on the network; slot: " + slot);
         }
         int triesMade = 0;
+        final long started = System.nanoTime();
         if (path.startsWith("PIONEER/") && mediaWithHiddenPioneerFolder.contains(slot)) {
             path = "." + path;  // We are dealing with HFS+ media, so skip the first, failed attempt to read it.
         }
         while (triesMade < getRetryLimit()) {
             try {
                 FileFetcher.getInstance().fetch(player.getAddress(), mountPath(slot.slot), path, destination);
+                deliverFetchThroughput(slot, path, destination.length(),
+                        Math.max(1, System.nanoTime() - started), triesMade + 1);
                 return;
             } catch (IOException e) {
                 if (path.startsWith("PIONEER/") &&
@@ -271,6 +402,181 @@ public class CrateDigger {
         }
     }
 
+    /**
+     * Get the local copy of a file from a player slot. If a persistent download cache has been configured and
+     * we can identify the file, the copy in the cache is returned, downloading it there first if we don't have it.
+     * Otherwise, the file is downloaded to the specified destination, as usual.
+     *
+     * @param slot the slot from which a file is desired
+     * @param path the path to the file within the slot's mounted filesystem
+     * @param key identifies the content of the file in the download cache, or {@code null} if we can't
+     * @param destination where to write the file contents if it is not being cached
+     * @param pin {@code true} if a file returned from the download cache should be pinned there, in which case the
+     *            caller must eventually pass it to {@link DownloadCache#unpin(File)}
+     *
+     * @return the local file holding the contents, which will either be in the download cache or {@code destination}
+     *
+     * @throws IOException if there is a problem fetching the file
+     */
+    private File obtainFile(SlotReference slot, String path, String key, File destination, boolean pin)
+            throws IOException {
+        final DownloadCache cache = downloadCache.get();
+        if (cache == null || key == null) {
+            fetchFile(slot, path, destination);
+            return destination;
+        }
+        final File cached = cache.lookup(key, pin);
+        if (cached != null) {
+            logger.debug("Found {} from slot {} in download cache.", path, slot);
+            return cached;
+        }
+        final File partial = cache.createPartialFile(key);
+        try {
+            fetchFile(slot, path, partial);
+        } catch (IOException e) {
+            //noinspection ResultOfMethodCallIgnored
+            partial.delete();
+            throw e;
+        }
+        return cache.commit(key, partial, pin);
+    }
+
+    /**
+     * Build the key that identifies a track analysis file in the persistent download cache. The path of an analysis
+     * file does not change when a track is re-analyzed, so we include the details of the track that are most likely
+     * to change if it is: its file size, duration, and tempo.
+     *
+     * @param track the track whose analysis file is of interest
+     * @param path the path of the analysis file within the slot's mounted filesystem
+     *
+     * @return the key, or {@code null} if we don't know enough about the media or track to identify the file
+     */
+    private String analysisKey(DataReference track, String path) {
+        final String mediaKey = mediaKeys.get(track.getSlotReference());
+        if (mediaKey == null) {
+            return null;
+        }
+        final DatabaseSnapshot snapshot = snapshots.get(track.getSlotReference());
+        if (snapshot != null && snapshot.hasTrack(track.rekordboxId)) {
+            return mediaKey + "\n" + path + "\n" + snapshot.getFileSize(track.rekordboxId) + ":" +
+                    snapshot.getDuration(track.rekordboxId) + ":" + snapshot.getTempo(track.rekordboxId);
+        }
+        final Database database = databases.get(track.getSlotReference());
+        final RekordboxPdb.TrackRow trackRow = (database == null)? null : database.trackIndex.get((long) track.rekordboxId);
+        if (trackRow == null) {
+            return null;
+        }
+        return mediaKey + "\n" + path + "\n" + trackRow.fileSize() + ":" + trackRow.duration() + ":" + trackRow.tempo();
+    }
+
+    /**
+     * Clean up the source file of a database we are done with. Files we downloaded just for this mount are deleted,
+     * while ones kept in the persistent download cache are released so they can be evicted if necessary.
+     *
+     * @param file the database export which is no longer needed
+     */
+    private void discardDatabaseFile(File file) {
+        final DownloadCache cache = downloadCache.get();
+        if (cache != null && cache.holds(file)) {
+            cache.unpin(file);
+        } else if (downloadDirectory.equals(file.getParentFile())) {
+            //noinspection ResultOfMethodCallIgnored
+            file.delete();
+        }
+    }
+
+    /**
+     * Close a parsed database we are done with, logging any problem.
+     *
+     * @param database the database which is no longer needed
+     */
+    private void closeDatabase(Database database) {
+        try {
+            database.close();
+        } catch (IOException e) {
+            logger.error("Problem closing parsed rekordbox database export.", e);
+        }
+    }
+
+    /**
+     * Release the file of a database snapshot we are done with, so it can be evicted from the persistent download
+     * cache if necessary.
+     *
+     * @param snapshot the snapshot which is no longer needed, or {@code null} if there was none
+     */
+    private void discardSnapshot(DatabaseSnapshot snapshot) {
+        if (snapshot != null) {
+            final DownloadCache cache = downloadCache.get();
+            if (cache != null && cache.holds(snapshot.file)) {
+                cache.unpin(snapshot.file);
+            }
+        }
+    }
+
+    /**
+     * Open the snapshot of a database export that we have seen before, if the persistent download cache has one.
+     *
+     * @param cache the download cache holding the export
+     * @param exportKey the key under which the export is stored in the download cache
+     * @param exportFile the downloaded export
+     * @param checksum the CRC-32 checksum of the export
+     *
+     * @return the snapshot, or {@code null} if we don't have a valid one
+     */
+    private DatabaseSnapshot openCachedSnapshot(DownloadCache cache, String exportKey, File exportFile, long checksum) {
+        final File file = cache.lookup(exportKey + SNAPSHOT_KEY_SUFFIX);
+        if (file == null) {
+            return null;
+        }
+        try {
+            final DatabaseSnapshot snapshot = DatabaseSnapshot.open(file, exportFile.length(), checksum);
+            if (snapshot != null) {
+                cache.pin(file);  // Keep it around as long as the snapshot is in use.
+                return snapshot;
+            }
+            logger.warn("Discarding database snapshot {} which does not match its export.", file);
+        } catch (IOException e) {
+            logger.warn("Problem opening database snapshot " + file + ", discarding it.", e);
+        }
+        cache.discard(file);
+        return null;
+    }
+
+    /**
+     * Write and open a snapshot of a database export that has just been parsed and is being kept in the persistent
+     * download cache. The snapshot is kept there too, to be found by
+     * {@link #openCachedSnapshot(DownloadCache, String, File, long)} the next time the same export is mounted.
+     *
+     * @param cache the download cache holding the export
+     * @param exportKey the key under which the export is stored in the download cache
+     * @param database the parsed export
+     * @param checksum the CRC-32 checksum of the export
+     *
+     * @return the snapshot
+     *
+     * @throws IOException if there is a problem writing or reading the snapshot
+     */
+    private DatabaseSnapshot createSnapshot(DownloadCache cache, String exportKey, Database database, long checksum)
+            throws IOException {
+        final long exportLength = database.sourceFile.length();
+        final String key = exportKey + SNAPSHOT_KEY_SUFFIX;
+        final File partial = cache.createPartialFile(key);
+        try {
+            DatabaseSnapshot.write(database, exportLength, checksum, partial);
+        } catch (IOException e) {
+            //noinspection ResultOfMethodCallIgnored
+            partial.delete();
+            throw e;
+        }
+        final File file = cache.commit(key, partial);
+        cache.pin(file);
+        final DatabaseSnapshot snapshot = DatabaseSnapshot.open(file, exportLength, checksum);
+        if (snapshot == null) {
+            throw new IOException("Database snapshot " + file + " could not be read back after writing it.");
+        }
+        return snapshot;
+    }
+
     /**
      * Format the filename prefix that will be used to store files downloaded from a particular player slot.
      * This allows them all to be cleaned up when that slot is unmounted or the player goes away.
@@ -310,45 +616,240 @@ public class CrateDigger {
             if (isRunning() && details.mediaType == CdjStatus.TrackType.REKORDBOX &&
                     details.slotReference.slot != CdjStatus.TrackSourceSlot.COLLECTION &&  // We always use dbserver to talk to rekordbox.
                     !databases.containsKey(details.slotReference) &&
+                    !deferredExports.containsKey(details.slotReference) &&
                     activeRequests.add(details.slotReference)) {
-                new Thread(new Runnable() {
+                mediaKeys.put(details.slotReference, details.hashKey());
+                Scheduler.getInstance().execute(Scheduler.Pool.IO, "fetching rekordbox database", new Runnable() {
                     @Override
                     public void run() {
                         File file = null;
+                        boolean parsing = false;
                         try {
                             file = new File(downloadDirectory, slotPrefix(details.slotReference) + "export.pdb");
                             logger.info("Fetching rekordbox export.pdb from player " + details.slotReference.player +
                                     ", slot " + details.slotReference.slot);
                             long started = System.nanoTime();
-                            fetchFile(details.slotReference, "PIONEER/rekordbox/export.pdb", file);
+                            // The export is rewritten whenever anything is added to the media, which changes its free space.
+                            final String exportPath = "PIONEER/rekordbox/export.pdb";
+                            final String key = details.hashKey() + "\n" + exportPath + "\n" + details.freeSpace + ":" +
+                                    details.trackCount + ":" + details.playlistCount;
+                            // If cached, keep it pinned as long as the database is open.
+                            file = obtainFile(details.slotReference, exportPath, key, file, true);
                             long duration = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started);
                             logger.info("Finished fetching export.pdb from player " + details.slotReference.player +
                                     ", slot " + details.slotReference.slot + "; received " +
                                     humanReadableByteCount(file.length(), true) + " in " + duration + "ms, " +
-                                    humanReadableByteCount(file.length() * 1000 / duration, true) + "/s.");
-                            started = System.nanoTime();
-                            Database database = new Database(file);
-                            duration = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started);
-                            logger.info("Parsing database took " + duration + "ms, " +
-                                            (database.trackIndex.size() * 1000 / duration) + " tracks/s");
-                            databases.put(details.slotReference, database);
-                            deliverDatabaseUpdate(details.slotReference, database, true);
+                                    humanReadableByteCount(file.length() * 1000 / Math.max(1, duration), true) + "/s.");
+                            final File exportFile = file;
+                            Scheduler.getInstance().execute(Scheduler.Pool.CPU, "parsing rekordbox database", new Runnable() {
+                                @Override
+                                public void run() {
+                                    parseDatabase(details, key, exportFile);
+                                }
+                            });
+                            parsing = true;
                         } catch (Throwable t) {
-                            logger.error("Problem fetching rekordbox database for media " + details +
-                                    ", will not offer metadata for it.", t);
-                            if (file != null) {
-                                //noinspection ResultOfMethodCallIgnored
-                                file.delete();
-                            }
+                            abandonDatabase(details, file, t);
                         } finally {
-                            activeRequests.remove(details.slotReference);
+                            if (!parsing) {
+                                activeRequests.remove(details.slotReference);
+                            }
                         }
                     }
-                }).start();
+                });
             }
         }
     };
 
+    /**
+     * Added to the download cache key of a database export to form the key of its snapshot.
+     */
+    private static final String SNAPSHOT_KEY_SUFFIX = "\ncolumns";
+
+    /**
+     * Parse a database export which has just been downloaded, and make it available. This is kept separate from
+     * the download so that it can run on a {@link Scheduler.Pool#CPU} thread, leaving the {@link Scheduler.Pool#IO}
+     * threads free for other network requests. A snapshot of the database is only used when the export is being kept
+     * in the persistent download cache, because only then can it be reused the next time the media is mounted. When
+     * we already have a valid snapshot, the export is not parsed here at all; that waits until something asks
+     * {@link #findDatabase(SlotReference)} for it.
+     *
+     * @param details the media from which the export was downloaded
+     * @param key the key under which the export is stored in the download cache
+     * @param file the downloaded export
+     */
+    private void parseDatabase(MediaDetails details, String key, File file) {
+        try {
+            final DownloadCache cache = downloadCache.get();
+            final boolean cached = cache != null && cache.holds(file);
+            final long checksum = cached? DatabaseSnapshot.checksum(file) : 0;
+            final DatabaseSnapshot snapshot = cached? openCachedSnapshot(cache, key, file, checksum) : null;
+            if (snapshot != null) {
+                logger.info("Using cached database snapshot {} for player {}, slot {}; deferring database parse.",
+                        snapshot, details.slotReference.player, details.slotReference.slot);
+                if (publish(deferredExports, details, new DeferredExport(details, file))) {
+                    if (!publish(snapshots, details, snapshot)) {
+                        discardSnapshot(snapshot);
+                    }
+                } else {
+                    discardDatabaseFile(file);
+                    discardSnapshot(snapshot);
+                }
+                return;
+            }
+            if (!isMounted(details)) {
+                discardDatabaseFile(file);
+                return;
+            }
+            final Database database = parseExport(file);
+            if (cached) {
+                try {
+                    final DatabaseSnapshot created = createSnapshot(cache, key, database, checksum);
+                    if (!publish(snapshots, details, created)) {
+                        discardSnapshot(created);
+                    }
+                } catch (IOException e) {
+                    logger.warn("Problem creating database snapshot, using parsed database directly.", e);
+                }
+            }
+            if (publish(databases, details, database)) {
+                deliverDatabaseUpdate(details.slotReference, database, true);
+            } else {
+                closeDatabase(database);
+                discardDatabaseFile(file);
+            }
+        } catch (Throwable t) {
+            abandonDatabase(details, file, t);
+        } finally {
+            activeRequests.remove(details.slotReference);
+        }
+    }
+
+    /**
+     * Parse a database export, logging how long it took.
+     *
+     * @param file the downloaded export
+     *
+     * @return the parsed database
+     *
+     * @throws IOException if there is a problem reading the export
+     */
+    private Database parseExport(File file) throws IOException {
+        final long started = System.nanoTime();
+        final Database database = new Database(file);
+        final long duration = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started);
+        logger.info("Parsing database took " + duration + "ms, " +
+                (database.trackIndex.size() * 1000 / Math.max(1, duration)) + " tracks/s");
+        return database;
+    }
+
+    /**
+     * Check whether the media from which we obtained a database export is still mounted.
+     *
+     * @param details the media whose export we have been working with
+     *
+     * @return {@code true} if the media has not been unmounted or replaced since we learned about it
+     */
+    private boolean isMounted(MediaDetails details) {
+        return details.hashKey().equals(mediaKeys.get(details.slotReference));
+    }
+
+    /**
+     * Make something we have built for a media slot available, unless the media has been unmounted in the meantime.
+     * We check after storing the value, so that either we notice the unmount or {@link #mountListener} finds and
+     * cleans up the value; if the value is removed here, the caller is responsible for cleaning it up.
+     *
+     * @param map where values for mounted media are kept
+     * @param details the media for which the value was built
+     * @param value the value to make available
+     * @param <T> the type of value being published
+     *
+     * @return {@code false} if the media has been unmounted and the caller needs to discard the value
+     */
+    private <T> boolean publish(ConcurrentMap<SlotReference, T> map, MediaDetails details, T value) {
+        map.put(details.slotReference, value);
+        return isMounted(details) || !map.remove(details.slotReference, value);
+    }
+
+    /**
+     * Keeps track of a database export which has not been parsed because we had a valid snapshot for it, so it can
+     * be parsed the first time it is needed.
+     */
+    private final class DeferredExport {
+
+        /**
+         * The media from which the export was downloaded.
+         */
+        final MediaDetails details;
+
+        /**
+         * The downloaded export.
+         */
+        final File file;
+
+        /**
+         * The database, once it has been parsed.
+         */
+        private Database database;
+
+        DeferredExport(MediaDetails details, File file) {
+            this.details = details;
+            this.file = file;
+        }
+
+        /**
+         * Parse the export, if that has not already been done, and move it to {@link #databases}.
+         *
+         * @return the parsed database, or {@code null} if it could not be parsed or the media has been unmounted
+         */
+        synchronized Database parse() {
+            if (database == null && deferredExports.get(details.slotReference) == this) {
+                try {
+                    final Database parsed = parseExport(file);
+                    if (!deferredExports.remove(details.slotReference, this)) {
+                        closeDatabase(parsed);  // Unmounted while we were parsing, the file has been released.
+                        return null;
+                    }
+                    if (publish(databases, details, parsed)) {
+                        database = parsed;
+                        deliverDatabaseUpdate(details.slotReference, parsed, true);
+                    } else {
+                        closeDatabase(parsed);
+                        discardDatabaseFile(file);
+                    }
+                } catch (Throwable t) {
+                    if (deferredExports.remove(details.slotReference, this)) {
+                        abandonDatabase(details, file, t);
+                    }
+                }
+            }
+            return database;
+        }
+    }
+
+    /**
+     * Clean up after failing to download or parse a database export.
+     *
+     * @param details the media whose database we were trying to obtain
+     * @param file the downloaded export, or {@code null} if we had not gotten that far
+     * @param t the problem which occurred
+     */
+    private void abandonDatabase(MediaDetails details, File file, Throwable t) {
+        discardSnapshot(snapshots.remove(details.slotReference));
+        logger.error("Problem fetching rekordbox database for media " + details +
+                ", will not offer metadata for it.", t);
+        if (file != null) {
+            final DownloadCache cache = downloadCache.get();
+            if (cache != null && cache.holds(file)) {
+                cache.unpin(file);
+                cache.discard(file);  // Even though it was cached, it may well be corrupt.
+            } else {
+                //noinspection ResultOfMethodCallIgnored
+                file.delete();
+            }
+        }
+    }
+
     /**
      * Find the database we have downloaded and parsed that can provide information about the supplied data
      * reference, if any.
@@ -359,60 +860,169 @@ public class CrateDigger {
      */
     @SuppressWarnings("WeakerAccess")
     public Database findDatabase(DataReference reference) {
-        return databases.get(reference.getSlotReference());
+        return findDatabase(reference.getSlotReference());
     }
 
     /**
      * Find the database we have downloaded and parsed that can provide information about the supplied slot
-     * reference, if any.
+     * reference, if any. If the export was not parsed when it was downloaded because we had a
+     * {@linkplain #findDatabaseSnapshot(SlotReference) snapshot} of it, it is parsed now, so this call can take
+     * some time.
      *
      * @param slot identifies the slot from which data is desired
      *
      * @return the appropriate rekordbox extract to start from in finding that data, if we have one
      */
     public Database findDatabase(SlotReference slot) {
-        return databases.get(slot);
+        final Database database = databases.get(slot);
+        if (database != null) {
+            return database;
+        }
+        final DeferredExport export = deferredExports.get(slot);
+        return (export == null)? databases.get(slot) : export.parse();
     }
 
     /**
-     * Find the analysis file for the specified track, downloading it from the player if we have not already done so.
-     * Be sure to call {@code _io().close()} when you are done using the returned struct.
+     * Find the compact snapshot of the database for the supplied slot reference, if any. Snapshots are only made
+     * when a {@linkplain #setDownloadCacheDirectory(File) download cache} is in use. When media whose database
+     * export has been seen before is mounted, the full database is not parsed until it is first needed, so this is
+     * available immediately while {@link #findDatabase(SlotReference)} will have to wait for the parse.
+     *
+     * @param slot identifies the slot from which data is desired
+     *
+     * @return the snapshot of the slot's rekordbox database export, if we have one
+     *
+     * @since 0.6.3
+     */
+    public DatabaseSnapshot findDatabaseSnapshot(SlotReference slot) {
+        return snapshots.get(slot);
+    }
+
+    /**
+     * Check whether we know enough about the media holding a track to find its analysis files.
+     *
+     * @param track the track whose analysis is desired
+     *
+     * @return {@code true} if we have a snapshot or parsed database for the track's slot
+     */
+    private boolean canFindAnalysis(DataReference track) {
+        return canFindAnalysis(track.getSlotReference());
+    }
+
+    /**
+     * Check whether we know enough about the media in a slot to find the analysis files of its tracks.
+     *
+     * @param slot the slot whose tracks' analysis is desired
+     *
+     * @return {@code true} if we have a snapshot or parsed database for the slot
+     */
+    private boolean canFindAnalysis(SlotReference slot) {
+        return snapshots.containsKey(slot) || databases.containsKey(slot);
+    }
+
+    /**
+     * Look up the path of a track's basic analysis file within its media's mounted filesystem, preferring the
+     * snapshot of the database so the parsed structures are not needed.
      *
      * @param track the track whose analysis file is desired
-     * @param database the parsed database export from which the analysis path can be determined
      *
-     * @return the parsed file containing the track analysis
+     * @return the path of the .DAT analysis file, or {@code null} if we can't find the track
+     */
+    private String analyzePath(DataReference track) {
+        final DatabaseSnapshot snapshot = snapshots.get(track.getSlotReference());
+        if (snapshot != null) {
+            final String path = snapshot.getAnalyzePath(track.rekordboxId);
+            if (path != null) {
+                return path;
+            }
+        }
+        final Database database = databases.get(track.getSlotReference());
+        final RekordboxPdb.TrackRow trackRow = (database == null)? null : database.trackIndex.get((long) track.rekordboxId);
+        return (trackRow == null)? null : Database.getText(trackRow.analyzePath());
+    }
+
+    /**
+     * Figure out the path of a track's analysis file within its media's mounted filesystem.
+     *
+     * @param analyzePath the path of the basic analysis file, as recorded in the database
+     * @param extended {@code true} for the extended (.EXT) analysis file, {@code false} for the basic (.DAT) one
+     *
+     * @return the path from which the analysis file can be fetched
+     */
+    private String analysisPath(String analyzePath, boolean extended) {
+        if (extended) {
+            return analyzePath.replaceAll("\\.DAT$", ".EXT");
+        }
+        return analyzePath;
+    }
+
+    /**
+     * Figure out where a track's analysis file is downloaded when it is not being kept in the download cache.
+     *
+     * @param track the track whose analysis file is desired
+     * @param extended {@code true} for the extended (.EXT) analysis file, {@code false} for the basic (.DAT) one
+     *
+     * @return the location in our download directory for the file
+     */
+    private File analysisDownloadFile(DataReference track, boolean extended) {
+        return new File(downloadDirectory, slotPrefix(track.getSlotReference()) +
+                "track-" + track.rekordboxId + (extended? "-anlz.ext" : "-anlz.dat"));
+    }
+
+    /**
+     * Check whether a track's analysis file is already available locally, so it could be used without contacting
+     * the player.
+     *
+     * @param track the track whose analysis file is of interest
+     * @param analyzePath the path of the track's basic analysis file, as recorded in the database
+     * @param extended {@code true} for the extended (.EXT) analysis file, {@code false} for the basic (.DAT) one
+     *
+     * @return {@code true} if the file has already been downloaded
+     */
+    private boolean isAnalysisLocal(DataReference track, String analyzePath, boolean extended) {
+        if (analysisDownloadFile(track, extended).canRead()) {
+            return true;
+        }
+        final DownloadCache cache = downloadCache.get();
+        final String key = analysisKey(track, analysisPath(analyzePath, extended));
+        return cache != null && key != null && cache.contains(key);
+    }
+
+    /**
+     * Find the local copy of an analysis file for the specified track, downloading it from the player if we have not
+     * already done so.
+     *
+     * @param track the track whose analysis file is desired
+     * @param extended {@code true} for the extended (.EXT) analysis file, {@code false} for the basic (.DAT) one
+     * @param pin {@code true} if a file returned from the download cache should be pinned there until the caller
+     *            passes it to {@link DownloadCache#unpin(File)}
+     *
+     * @return the downloaded file, or {@code null} if it could not be obtained
      */
-    private RekordboxAnlz findTrackAnalysis(DataReference track, Database database) {
+    private File findAnalysisFile(DataReference track, boolean extended, boolean pin) {
+        final String description = extended? "extended analysis file" : "analysis file";
         File file = null;
         try {
-            RekordboxPdb.TrackRow trackRow = database.trackIndex.get((long) track.rekordboxId);
-            if (trackRow != null) {
-                file = new File(downloadDirectory, slotPrefix(track.getSlotReference()) +
-                        "track-" + track.rekordboxId + "-anlz.dat");
+            final String analyzePath = analyzePath(track);
+            if (analyzePath != null) {
+                file = analysisDownloadFile(track, extended);
                 final String filePath = file.getCanonicalPath();
-                final String analyzePath = Database.getText(trackRow.analyzePath());
+                final String path = analysisPath(analyzePath, extended);
                 try {
                     synchronized (Util.allocateNamedLock(filePath)) {
                         if (file.canRead()) {  // We have already downloaded it.
-                            return new RekordboxAnlz(new RandomAccessFileKaitaiStream(filePath));
+                            return file;
                         }
-                        file.deleteOnExit();  // Prepare to download it.
-                        fetchFile(track.getSlotReference(), analyzePath, file);
-                        return new RekordboxAnlz(new RandomAccessFileKaitaiStream(filePath));
+                        return obtainFile(track.getSlotReference(), path, analysisKey(track, path), file, pin);
                     }
-                } catch (Exception e) {  // We can give a more specific error including the file path.
-                    logger.error("Problem parsing analysis file " + analyzePath + " for track " + track + " from database " + database, e);
-                    //noinspection ResultOfMethodCallIgnored
-                    file.delete();
                 } finally {
                     Util.freeNamedLock(filePath);
                 }
             } else {
-                logger.warn("Unable to find track " + track + " in database " + database);
+                logger.warn("Unable to find track " + track + " in database for slot " + track.getSlotReference());
             }
         } catch (Exception e) {
-            logger.error("Problem fetching analysis file for track " + track + " from database " + database, e);
+            logger.error("Problem fetching " + description + " for track " + track, e);
             if (file != null) {
                 //noinspection ResultOfMethodCallIgnored
                 file.delete();
@@ -421,53 +1031,446 @@ public class CrateDigger {
         return null;
     }
 
+    /**
+     * Find and parse an analysis file for the specified track, downloading it from the player if we have not already
+     * done so. Be sure to call {@link #closeAnalysis(RekordboxAnlz)} when you are done using the returned struct.
+     *
+     * @param track the track whose analysis file is desired
+     * @param extended {@code true} for the extended (.EXT) analysis file, {@code false} for the basic (.DAT) one
+     *
+     * @return the parsed file containing the track analysis
+     */
+    private RekordboxAnlz parseAnalysis(DataReference track, boolean extended) {
+        final File file = findAnalysisFile(track, extended, true);
+        if (file != null) {
+            final DownloadCache cache = downloadCache.get();
+            final boolean cached = cache != null && cache.holds(file);
+            try {
+                final RekordboxAnlz result = new RekordboxAnlz(new RandomAccessFileKaitaiStream(file.getCanonicalPath()));
+                if (cached) {
+                    openAnalysis.put(result, file);  // Keep it pinned until the struct is closed.
+                }
+                return result;
+            } catch (Exception e) {  // We can give a more specific error including the file path.
+                logger.error("Problem parsing " + (extended? "extended analysis file " : "analysis file ") + file +
+                        " for track " + track, e);
+                if (cached) {  // Don't keep a corrupt copy in the download cache either.
+                    cache.unpin(file);
+                    cache.discard(file);
+                } else {
+                    //noinspection ResultOfMethodCallIgnored
+                    file.delete();  // Don't keep a corrupt copy.
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Close an analysis file returned by {@link #parseAnalysis(DataReference, boolean)}, and if it came from the
+     * persistent download cache, allow the cache to evict it again.
+     *
+     * @param file the parsed analysis file we are done with
+     *
+     * @throws IOException if there is a problem closing the file
+     */
+    private void closeAnalysis(RekordboxAnlz file) throws IOException {
+        try {
+            file._io().close();
+        } finally {
+            final File cached = openAnalysis.remove(file);
+            final DownloadCache cache = downloadCache.get();
+            if (cached != null && cache != null && cache.holds(cached)) {
+                cache.unpin(cached);
+            }
+        }
+    }
+
+    /**
+     * Find the analysis file for the specified track, downloading it from the player if we have not already done so.
+     * Be sure to call {@link #closeAnalysis(RekordboxAnlz)} when you are done using the returned struct.
+     *
+     * @param track the track whose analysis file is desired
+     *
+     * @return the parsed file containing the track analysis
+     */
+    private RekordboxAnlz findTrackAnalysis(DataReference track) {
+        return parseAnalysis(track, false);
+    }
+
     /**
      * Find the extended analysis file for the specified track, downloading it from the player if we have not already
-     * done so. Be sure to call {@code _io().close()} when you are done using the returned struct.
+     * done so. Be sure to call {@link #closeAnalysis(RekordboxAnlz)} when you are done using the returned struct.
      *
      * @param track the track whose extended analysis file is desired
-     * @param database the parsed database export from which the analysis path can be determined
      *
      * @return the parsed file containing the track analysis
      */
-    private RekordboxAnlz findExtendedAnalysis(DataReference track, Database database) {
-        File file = null;
-        try {
-            RekordboxPdb.TrackRow trackRow = database.trackIndex.get((long) track.rekordboxId);
-            if (trackRow != null) {
-                file = new File(downloadDirectory, slotPrefix(track.getSlotReference()) +
-                        "track-" + track.rekordboxId + "-anlz.ext");
-                final String filePath = file.getCanonicalPath();
-                final String analyzePath = Database.getText(trackRow.analyzePath());
-                final String extendedPath = analyzePath.replaceAll("\\.DAT$", ".EXT");
-                try {
-                    synchronized (Util.allocateNamedLock(filePath)) {
-                        if (file.canRead()) {  // We have already downloaded it.
-                            return new RekordboxAnlz(new RandomAccessFileKaitaiStream(filePath));
+    private RekordboxAnlz findExtendedAnalysis(DataReference track) {
+        return parseAnalysis(track, true);
+    }
+
+    /**
+     * The default limit on how fast analysis files are prefetched, in bytes per second.
+     */
+    public static final long DEFAULT_PREFETCH_BANDWIDTH_LIMIT = 1000000;
+
+    /**
+     * How many bytes per second may be downloaded by prefetching, or zero if unlimited.
+     */
+    private final AtomicLong prefetchBandwidthLimit = new AtomicLong(DEFAULT_PREFETCH_BANDWIDTH_LIMIT);
+
+    /**
+     * Guards {@link #nextPrefetchAllowed}.
+     */
+    private final Object prefetchPacingLock = new Object();
+
+    /**
+     * The {@link System#nanoTime()} value before which no prefetch download should start, shared by all prefetches
+     * so that running several at once does not multiply the bandwidth they use.
+     */
+    private long nextPrefetchAllowed = System.nanoTime();
+
+    /**
+     * How big we expect the basic and extended analysis files to be, so bandwidth can be reserved before they are
+     * downloaded. We can't know the size of a file before fetching it, so these start with typical values and then
+     * follow the sizes of the files we actually download.
+     */
+    private final AtomicLongArray expectedAnalysisSize = new AtomicLongArray(new long[] {8000, 200000});
+
+    /**
+     * Check how fast analysis files may be downloaded by prefetching, so that it does not compete too much with the
+     * players and with requests for tracks that are actually being loaded.
+     *
+     * @return the prefetch bandwidth limit in bytes per second, or zero if there is no limit
+     *
+     * @since 0.6.3
+     */
+    public long getPrefetchBandwidthLimit() {
+        return prefetchBandwidthLimit.get();
+    }
+
+    /**
+     * Set how fast analysis files may be downloaded by prefetching. This is shared by all prefetches in progress.
+     *
+     * @param bytesPerSecond the prefetch bandwidth limit, or zero for no limit
+     *
+     * @throws IllegalArgumentException if {@code bytesPerSecond} is negative
+     *
+     * @since 0.6.3
+     */
+    public void setPrefetchBandwidthLimit(long bytesPerSecond) {
+        if (bytesPerSecond < 0) {
+            throw new IllegalArgumentException("bytesPerSecond cannot be negative");
+        }
+        prefetchBandwidthLimit.set(bytesPerSecond);
+    }
+
+    /**
+     * Before a prefetch downloads a file, reserve the time it will take at the bandwidth limit, and wait until the
+     * downloads reserved ahead of it should have finished, so that the average rate of prefetch downloads stays
+     * within the limit no matter how many are running at once.
+     *
+     * @param prefetch the prefetch which wants to download a file
+     * @param bytes how big we expect the file to be
+     *
+     * @return the number of bytes reserved, which must be passed to {@link #settlePrefetch(long, long)} once the
+     *         actual size of the file is known, or -1 if the prefetch was cancelled while waiting
+     *
+     * @throws InterruptedException if the thread is interrupted while waiting
+     */
+    private long reservePrefetch(AnalysisPrefetch prefetch, long bytes) throws InterruptedException {
+        final long limit = prefetchBandwidthLimit.get();
+        if (limit <= 0) {
+            return 0;
+        }
+        final long delay;
+        synchronized (prefetchPacingLock) {
+            final long now = System.nanoTime();
+            final long start = Math.max(now, nextPrefetchAllowed);
+            nextPrefetchAllowed = start + bytes * 1000000000L / limit;
+            delay = start - now;
+        }
+        if (prefetch.awaitCancel(delay)) {
+            settlePrefetch(bytes, 0);  // Give back the time we are not going to use.
+            return -1;
+        }
+        return bytes;
+    }
+
+    /**
+     * Correct the time reserved for a prefetch download once we know how big the file actually was.
+     *
+     * @param reserved the number of bytes reserved by {@link #reservePrefetch(AnalysisPrefetch, long)}
+     * @param bytes the number of bytes actually downloaded
+     */
+    private void settlePrefetch(long reserved, long bytes) {
+        final long limit = prefetchBandwidthLimit.get();
+        if (limit > 0 && reserved != bytes) {
+            synchronized (prefetchPacingLock) {
+                nextPrefetchAllowed += (bytes - reserved) * 1000000000L / limit;
+            }
+        }
+    }
+
+    /**
+     * The default number of tracks whose analysis files a prefetch downloads at the same time.
+     */
+    public static final int DEFAULT_PREFETCH_PIPELINE_DEPTH = 4;
+
+    /**
+     * How many tracks a prefetch works on at the same time.
+     */
+    private final AtomicInteger prefetchPipelineDepth = new AtomicInteger(DEFAULT_PREFETCH_PIPELINE_DEPTH);
+
+    /**
+     * Check how many tracks a prefetch works on at the same time. Keeping several downloads outstanding hides
+     * the round-trip latency of each NFS request, which dominates when analysis files are small and the network is
+     * busy.
+     *
+     * @return the number of tracks whose analysis files are downloaded at once by each prefetch
+     *
+     * @since 0.6.3
+     */
+    public int getPrefetchPipelineDepth() {
+        return prefetchPipelineDepth.get();
+    }
+
+    /**
+     * Set how many tracks a prefetch works on at the same time. This affects prefetches started after the call.
+     * The total bandwidth used is still governed by {@link #setPrefetchBandwidthLimit(long)}.
+     *
+     * @param depth the number of tracks whose analysis files should be downloaded at once, from 1 to 16
+     *
+     * @throws IllegalArgumentException if {@code depth} is out of range
+     *
+     * @since 0.6.3
+     */
+    public void setPrefetchPipelineDepth(int depth) {
+        if (depth < 1 || depth > 16) {
+            throw new IllegalArgumentException("depth must be between 1 and 16");
+        }
+        prefetchPipelineDepth.set(depth);
+    }
+
+    /**
+     * <p>Start downloading the analysis files of the specified tracks in the background, so that when they are loaded
+     * their beat grids, cue lists, and waveforms can be read from local disk rather than fetched from the player while
+     * the DJ waits. Tracks are started in the order given, up to {@link #getPrefetchPipelineDepth()} at a time, at
+     * low priority, within the limit set by {@link #setPrefetchBandwidthLimit(long)}. Files which are already
+     * available are skipped. Each file gets the usual number of {@linkplain #setRetryLimit(int) attempts}; a track
+     * whose files still cannot be downloaded is skipped, and counted as processed, without holding up the
+     * others.</p>
+     *
+     * <p>The downloaded files live wherever files fetched on demand do, so they persist across mounts if a
+     * {@linkplain #setDownloadCacheDirectory(File) download cache} has been configured. The prefetch stops if the
+     * media is unmounted.</p>
+     *
+     * @param slot the media slot holding the tracks
+     * @param trackIds the rekordbox IDs of the tracks whose analysis files should be downloaded
+     *
+     * @return an object which can be used to follow or cancel the prefetch
+     *
+     * @throws IllegalStateException if we do not have a database or database snapshot for the slot
+     *
+     * @since 0.6.3
+     */
+    public AnalysisPrefetch prefetchAnalysis(final SlotReference slot, List<Integer> trackIds) {
+        final String mediaKey = mediaKeys.get(slot);
+        if (mediaKey == null || !canFindAnalysis(slot)) {
+            throw new IllegalStateException("No rekordbox database is available for slot " + slot);
+        }
+        final AnalysisPrefetch prefetch = new AnalysisPrefetch(slot, new ArrayList<Integer>(trackIds));
+        final AtomicInteger nextTrack = new AtomicInteger(0);
+        final int depth = Math.max(1, Math.min(prefetchPipelineDepth.get(), prefetch.trackIds.size()));
+        final AtomicInteger activeWorkers = new AtomicInteger(depth);
+        for (int i = 0; i < depth; i++) {
+            final Thread thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        int index;
+                        while ((index = nextTrack.getAndIncrement()) < prefetch.trackIds.size()) {
+                            if (prefetch.isCancelled() || !mediaKey.equals(mediaKeys.get(slot))) {
+                                break;  // Stopped, or the media was unmounted.
+                            }
+                            prefetchTrack(prefetch, new DataReference(slot, prefetch.trackIds.get(index)));
+                            prefetch.trackCompleted();
                         }
-                        file.deleteOnExit();  // Prepare to download it.
+                    } catch (InterruptedException e) {
+                        logger.info("Analysis prefetch interrupted; stopping {}", prefetch);
+                        prefetch.cancel();  // Have the other workers stop too.
+                    } catch (Throwable t) {
+                        logger.error("Problem prefetching analysis files, stopping " + prefetch, t);
+                        prefetch.cancel();
+                    } finally {
+                        if (activeWorkers.decrementAndGet() == 0) {
+                            prefetch.finish();
+                        }
+                    }
+                }
+            }, "beat-link CrateDigger analysis prefetch");
+            thread.setDaemon(true);
+            thread.setPriority(Thread.MIN_PRIORITY);
+            thread.start();
+        }
+        return prefetch;
+    }
 
-                        fetchFile(track.getSlotReference(), extendedPath, file);
-                        return new RekordboxAnlz(new RandomAccessFileKaitaiStream(filePath));
+    /**
+     * Download both analysis files for a single track, if they are not already available, pacing the downloads
+     * to honor the prefetch bandwidth limit.
+     *
+     * @param prefetch the prefetch which is downloading the track's files
+     * @param track the track whose analysis files should be downloaded
+     *
+     * @throws InterruptedException if the thread is interrupted while pacing
+     */
+    private void prefetchTrack(AnalysisPrefetch prefetch, DataReference track) throws InterruptedException {
+        final String analyzePath = analyzePath(track);
+        if (analyzePath == null) {
+            return;  // Nothing we can do for a track we don't know about.
+        }
+        for (boolean extended : new boolean[] {false, true}) {
+            if (!isAnalysisLocal(track, analyzePath, extended)) {
+                final int kind = extended? 1 : 0;
+                final long reserved = reservePrefetch(prefetch, expectedAnalysisSize.get(kind));
+                if (reserved < 0) {
+                    return;  // Cancelled while waiting for our turn.
+                }
+                final File file = findAnalysisFile(track, extended, false);
+                final long bytes = (file == null)? 0 : file.length();
+                settlePrefetch(reserved, bytes);
+                if (bytes > 0) {
+                    expectedAnalysisSize.set(kind, (expectedAnalysisSize.get(kind) * 3 + bytes) / 4);
+                }
+            }
+        }
+    }
+
+    /**
+     * Start downloading the analysis files of all the tracks in a playlist in the background, as described in
+     * {@link #prefetchAnalysis(SlotReference, List)}.
+     *
+     * @param slot the media slot holding the playlist
+     * @param playlistId the playlist whose tracks should have their analysis files downloaded, or 0 for all tracks
+     *
+     * @return an object which can be used to follow or cancel the prefetch
+     *
+     * @throws IllegalStateException if we do not have a database for the slot
+     * @throws IllegalArgumentException if there is no such playlist
+     *
+     * @since 0.6.3
+     */
+    public AnalysisPrefetch prefetchPlaylist(SlotReference slot, int playlistId) {
+        final List<Integer> trackIds = new ArrayList<Integer>();
+        final DatabaseSnapshot snapshot = snapshots.get(slot);
+        if (playlistId == 0 && snapshot != null) {  // No need to parse the full database just to list all tracks.
+            for (int id : snapshot.getTrackIds()) {
+                trackIds.add(id);
+            }
+            return prefetchAnalysis(slot, trackIds);
+        }
+        final Database database = findDatabase(slot);
+        if (database == null) {
+            throw new IllegalStateException("No rekordbox database is available for slot " + slot);
+        }
+        if (playlistId == 0) {
+            for (Long id : new TreeSet<Long>(database.trackIndex.keySet())) {
+                trackIds.add(id.intValue());
+            }
+        } else {
+            final List<Long> entries = database.playlistIndex.get((long) playlistId);
+            if (entries == null) {
+                throw new IllegalArgumentException("No playlist with ID " + playlistId + " in slot " + slot);
+            }
+            for (Long id : entries) {
+                trackIds.add(id.intValue());
+            }
+        }
+        return prefetchAnalysis(slot, trackIds);
+    }
+
+    /**
+     * Start downloading, in the background, the analysis files of the tracks that are most likely to be loaded next:
+     * those near any track currently loaded in a player, within any playlist that contains it. The closest tracks are
+     * fetched first. One prefetch is started for each media slot that loaded tracks came from, as described in
+     * {@link #prefetchAnalysis(SlotReference, List)}.
+     *
+     * @param distance how many positions before and after each loaded track in a playlist should be fetched
+     *
+     * @return the prefetches that were started, which can be used to follow or cancel them
+     *
+     * @throws IllegalStateException if the {@link MetadataFinder} is not running
+     * @throws IllegalArgumentException if {@code distance} is negative
+     *
+     * @since 0.6.3
+     */
+    public List<AnalysisPrefetch> prefetchAroundLoadedTracks(int distance) {
+        if (distance < 0) {
+            throw new IllegalArgumentException("distance cannot be negative");
+        }
+        final Map<SlotReference, Map<Integer, Integer>> neighbors = new HashMap<SlotReference, Map<Integer, Integer>>();
+        for (TrackMetadata loaded : MetadataFinder.getInstance().getLoadedTracks().values()) {
+            final SlotReference slot = loaded.trackReference.getSlotReference();
+            final Database database = findDatabase(slot);
+            if (database == null) {
+                continue;
+            }
+            Map<Integer, Integer> closest = neighbors.get(slot);  // Track ID to smallest distance from a loaded track.
+            if (closest == null) {
+                closest = new HashMap<Integer, Integer>();
+                neighbors.put(slot, closest);
+            }
+            final long loadedId = loaded.trackReference.rekordboxId;
+            for (List<Long> playlist : database.playlistIndex.values()) {
+                for (int position = indexOf(playlist, loadedId, 0); position >= 0;
+                     position = indexOf(playlist, loadedId, position + 1)) {
+                    final int end = Math.min(playlist.size() - 1, position + distance);
+                    for (int i = Math.max(0, position - distance); i <= end; i++) {
+                        final int id = playlist.get(i).intValue();
+                        final int away = Math.abs(i - position);
+                        final Integer known = closest.get(id);
+                        if (known == null || known > away) {
+                            closest.put(id, away);
+                        }
                     }
-                } catch (Exception e) {  // We can give a more specific error including the file path.
-                    logger.error("Problem parsing extended analysis file " + extendedPath + " for track " + track + " from database " + database, e);
-                    //noinspection ResultOfMethodCallIgnored
-                    file.delete();
-                } finally {
-                    Util.freeNamedLock(filePath);
                 }
-            } else {
-                logger.warn("Unable to find track " + track + " in database " + database);
             }
-        } catch (Exception e) {
-            logger.error("Problem fetching extended analysis file for track " + track + " from database " + database, e);
-            if (file != null) {
-                //noinspection ResultOfMethodCallIgnored
-                file.delete();
+        }
+        final List<AnalysisPrefetch> result = new ArrayList<AnalysisPrefetch>();
+        for (Map.Entry<SlotReference, Map<Integer, Integer>> entry : neighbors.entrySet()) {
+            final Map<Integer, Integer> closest = entry.getValue();
+            final List<Integer> trackIds = new ArrayList<Integer>(closest.keySet());
+            Collections.sort(trackIds, new Comparator<Integer>() {
+                @Override
+                public int compare(Integer id1, Integer id2) {
+                    return closest.get(id1) - closest.get(id2);
+                }
+            });
+            if (!trackIds.isEmpty()) {
+                result.add(prefetchAnalysis(entry.getKey(), trackIds));
             }
         }
-        return null;
+        return Collections.unmodifiableList(result);
+    }
+
+    /**
+     * Find the next occurrence of a track in a playlist at or after a given position.
+     *
+     * @param playlist the track IDs in the playlist
+     * @param id the track of interest
+     * @param from the first position to check
+     *
+     * @return the position at which the track next appears, or -1 if it does not
+     */
+    private static int indexOf(List<Long> playlist, long id, int from) {
+        for (int i = from; i < playlist.size(); i++) {
+            if (playlist.get(i) == id) {
+                return i;
+            }
+        }
+        return -1;
     }
 
     /**
@@ -524,19 +1527,18 @@ public class CrateDigger {
 
         @Override
         public BeatGrid getBeatGrid(MediaDetails sourceMedia, DataReference track) {
-            Database database = findDatabase(track);
-            if (database != null) {
+            if (canFindAnalysis(track)) {
                 try {
-                    RekordboxAnlz file = findTrackAnalysis(track, database);
+                    RekordboxAnlz file = findTrackAnalysis(track);
                     if (file != null) {
                         try {
                             return new BeatGrid(track, file);
                         } finally {
-                            file._io().close();
+                            closeAnalysis(file);
                         }
                     }
                 } catch (Exception e) {
-                    logger.error("Problem fetching beat grid for track " + track + " from database " + database, e);
+                    logger.error("Problem fetching beat grid for track " + track, e);
                 }
             }
             return null;
@@ -544,23 +1546,22 @@ public class CrateDigger {
 
         @Override
         public CueList getCueList(MediaDetails sourceMedia, DataReference track) {
-            Database database = findDatabase(track);
-            if (database != null) {
+            if (canFindAnalysis(track)) {
                 try {
                     // Try the extended file first, because it can contain both nxs2-style commented cues and basic cues
-                    RekordboxAnlz file = findExtendedAnalysis(track, database);
+                    RekordboxAnlz file = findExtendedAnalysis(track);
                     if (file ==  null) {  // No extended analysis found, fall back to the basic one
-                        file = findTrackAnalysis(track, database);
+                        file = findTrackAnalysis(track);
                     }
                     if (file != null) {
                         try {
                             return new CueList(file);
                         } finally {
-                            file._io().close();
+                            closeAnalysis(file);
                         }
                     }
                 } catch (Exception e) {
-                    logger.error("Problem fetching cue list for track " + track + " from database " + database, e);
+                    logger.error("Problem fetching cue list for track " + track, e);
                 }
             }
             return null;
@@ -568,33 +1569,32 @@ public class CrateDigger {
 
         @Override
         public WaveformPreview getWaveformPreview(MediaDetails sourceMedia, DataReference track) {
-            Database database = findDatabase(track);
-            if (database != null) {
+            if (canFindAnalysis(track)) {
                 try {
-                    RekordboxAnlz file = findExtendedAnalysis(track, database);  // Look for color preview first
+                    RekordboxAnlz file = findExtendedAnalysis(track);  // Look for color preview first
                     if (file != null) {
                         try {
                             return new WaveformPreview(track, file);
                         } finally {
-                            file._io().close();
+                            closeAnalysis(file);
                         }
                     }
                 } catch (IllegalStateException e) {
                     logger.info("No color preview waveform found, checking for blue version.");
                 } catch (Exception e) {
-                    logger.error("Problem fetching color waveform preview for track " + track + " from database " + database, e);
+                    logger.error("Problem fetching color waveform preview for track " + track, e);
                 }
                 try {
-                    RekordboxAnlz file = findTrackAnalysis(track, database);
+                    RekordboxAnlz file = findTrackAnalysis(track);
                     if (file != null) {
                         try {
                             return new WaveformPreview(track, file);
                         } finally {
-                            file._io().close();
+                            closeAnalysis(file);
                         }
                     }
                 } catch (Exception e) {
-                    logger.error("Problem fetching waveform preview for track " + track + " from database " + database, e);
+                    logger.error("Problem fetching waveform preview for track " + track, e);
                 }
             }
             return null;
@@ -602,19 +1602,18 @@ public class CrateDigger {
 
         @Override
         public WaveformDetail getWaveformDetail(MediaDetails sourceMedia, DataReference track) {
-            Database database = findDatabase(track);
-            if (database != null) {
+            if (canFindAnalysis(track)) {
                 try {
-                    RekordboxAnlz file = findExtendedAnalysis(track, database);
+                    RekordboxAnlz file = findExtendedAnalysis(track);
                     if (file != null) {
                         try {
                             return new WaveformDetail(track, file);
                         } finally {
-                            file._io().close();
+                            closeAnalysis(file);
                         }
                     }
                 } catch (Exception e) {
-                    logger.error("Problem fetching waveform preview for track " + track + " from database " + database, e);
+                    logger.error("Problem fetching waveform preview for track " + track, e);
                 }
             }
             return null;
@@ -651,10 +1650,17 @@ public class CrateDigger {
             running.set(false);
             MetadataFinder.getInstance().removeMetadataProvider(metadataProvider);
             for (Database database : databases.values()) {
-                //noinspection ResultOfMethodCallIgnored
-                database.sourceFile.delete();
+                discardDatabaseFile(database.sourceFile);
             }
             databases.clear();
+            for (DeferredExport export : deferredExports.values()) {
+                discardDatabaseFile(export.file);
+            }
+            deferredExports.clear();
+            for (DatabaseSnapshot snapshot : snapshots.values()) {
+                discardSnapshot(snapshot);
+            }
+            snapshots.clear();
         }
     }
 
@@ -704,8 +1710,8 @@ public class CrateDigger {
     /**
      * Keeps track of the registered database listeners.
      */
-    private final Set<DatabaseListener> dbListeners =
-            Collections.newSetFromMap(new ConcurrentHashMap<DatabaseListener, Boolean>());
+    private final ListenerRegistry<DatabaseListener> dbListeners =
+            new ListenerRegistry<DatabaseListener>();
 
     /**
      * Adds the specified database listener to receive updates when a rekordbox database has been obtained for a
@@ -745,8 +1751,7 @@ public class CrateDigger {
 
     @SuppressWarnings("WeakerAccess")
     public Set<DatabaseListener> getDatabaseListeners() {
-        // Make a copy so callers get an immutable snapshot of the current state.
-        return Collections.unmodifiableSet(new HashSet<DatabaseListener>(dbListeners));
+        return dbListeners.asSet();
     }
 
     /**
@@ -757,7 +1762,9 @@ public class CrateDigger {
      * @param available if {@code} true, the database is newly available, otherwise it is no longer relevant
      */
     private void deliverDatabaseUpdate(SlotReference slot, Database database, boolean available) {
-        for (final DatabaseListener listener : getDatabaseListeners()) {
+        final List<DatabaseListener> listeners = dbListeners.snapshot();
+        for (int i = 0; i < listeners.size(); i++) {
+            final DatabaseListener listener = listeners.get(i);
             try {
                 if (available) {
                     listener.databaseMounted(slot, database);
@@ -770,6 +1777,78 @@ public class CrateDigger {
         }
     }
 
+    /**
+     * Keeps track of the registered fetch throughput listeners.
+     */
+    private final ListenerRegistry<FetchThroughputListener> fetchThroughputListeners =
+            new ListenerRegistry<FetchThroughputListener>();
+
+    /**
+     * Adds the specified fetch throughput listener to receive a report each time a file has been downloaded from
+     * a player. If {@code listener} is {@code null} or already present in the set of registered listeners, no
+     * exception is thrown and no action is performed.
+     *
+     * @param listener the fetch throughput listener to add
+     *
+     * @since 0.6.3
+     */
+    public void addFetchThroughputListener(FetchThroughputListener listener) {
+        if (listener != null) {
+            fetchThroughputListeners.add(listener);
+        }
+    }
+
+    /**
+     * Removes the specified fetch throughput listener so that it no longer receives download reports. If
+     * {@code listener} is {@code null} or not present in the set of registered listeners, no exception is thrown
+     * and no action is performed.
+     *
+     * @param listener the fetch throughput listener to remove
+     *
+     * @since 0.6.3
+     */
+    public void removeFetchThroughputListener(FetchThroughputListener listener) {
+        if (listener != null) {
+            fetchThroughputListeners.remove(listener);
+        }
+    }
+
+    /**
+     * Get the set of fetch throughput listeners that have been registered.
+     *
+     * @return the currently registered fetch throughput listeners
+     *
+     * @since 0.6.3
+     */
+    @SuppressWarnings("WeakerAccess")
+    public Set<FetchThroughputListener> getFetchThroughputListeners() {
+        return fetchThroughputListeners.asSet();
+    }
+
+    /**
+     * Report a completed download to all registered fetch throughput listeners.
+     *
+     * @param slot the media slot from which the file was downloaded
+     * @param path the path of the file within the slot's mounted filesystem
+     * @param bytes the size of the file
+     * @param nanoseconds how long the download took
+     * @param attempts how many attempts were needed
+     */
+    private void deliverFetchThroughput(SlotReference slot, String path, long bytes, long nanoseconds, int attempts) {
+        if (fetchThroughputListeners.isEmpty()) {
+            return;
+        }
+        final List<FetchThroughputListener> listeners = fetchThroughputListeners.snapshot();
+        for (int i = 0; i < listeners.size(); i++) {
+            final FetchThroughputListener listener = listeners.get(i);
+            try {
+                listener.fileFetched(slot, path, bytes, nanoseconds, attempts);
+            } catch (Throwable t) {
+                logger.warn("Problem delivering fetch throughput report to listener", t);
+            }
+        }
+    }
+
 
     /**
      * Prevent direct instantiation, create a temporary directory for our file downloads,
@@ -94,8 +94,7 @@ public class CueList {
      * @return the cue whose start time is closest to the specified time but not after it
      */
     public Entry findEntryBefore(long milliseconds) {
-        final Entry target = new Entry(Util.timeToHalfFrameRounded(milliseconds), "", 0);
-        int index = Collections.binarySearch(entries, target, TIME_ONLY_COMPARATOR);
+        int index = Arrays.binarySearch(positions, Util.timeToHalfFrameRounded(milliseconds));
         if (index >= 0) {  // An exact match
             return entries.get(index);
         }
@@ -122,22 +121,161 @@ public class CueList {
      * @return the cue whose start time is closest to the specified time but not before it
      */
     public Entry findEntryAfter(long milliseconds) {
-        final Entry target = new Entry(Util.timeToHalfFrameRounded(milliseconds), "", 0);
-        int index = Collections.binarySearch(entries, target, TIME_ONLY_COMPARATOR);
-        if (index >= 0) {
+        final int index = findEntryIndexAfter(milliseconds);
+        if (index < entries.size()) {
             return entries.get(index);
         }
 
-        // The exact time was not found, so convert the result to the index where the time would be inserted.
-        index = -(index + 1);
-        if (index < entries.size()) {  // If there is a value where we should insert this time, that's what we should return.
-            return entries.get(index);
+        // There was no cue at or after the desired time.
+        return null;
+    }
+
+    /**
+     * Returns the index within {@link #entries} of the first entry whose track position is not before the specified
+     * number of milliseconds, so that entries in a range of time can be visited without examining the ones before it.
+     * All times are rounded to half frame units, because that is the resolution at which cues are stored.
+     *
+     * @param milliseconds the time of interest within the track
+     * @return the index of the earliest cue at or after the specified time, or the size of the list if there is none
+     *
+     * @since 0.6.3
+     */
+    public int findEntryIndexAfter(long milliseconds) {
+        final long position = Util.timeToHalfFrameRounded(milliseconds);
+        int low = 0;
+        int high = positions.length;
+        while (low < high) {
+            final int middle = (low + high) >>> 1;
+            if (positions[middle] < position) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
         }
+        return low;
+    }
 
-        // There was no cue at or after the desired time.
+    /**
+     * Returns the loop which is playing at the specified number of milliseconds into the track, if any. If loops
+     * overlap, the one which started most recently is returned. A loop contains the times from its start up to,
+     * but not including, its end.
+     *
+     * All times are rounded to half frame units, because that is the resolution at which cues are stored.
+     *
+     * @param milliseconds the time of interest within the track
+     * @return the loop entry whose range includes the specified time, or {@code null} if there is none
+     *
+     * @since 0.6.3
+     */
+    public Entry findLoopContaining(long milliseconds) {
+        final long position = Util.timeToHalfFrameRounded(milliseconds);
+        // Because loop ends are checked against a running maximum, we can stop as soon as no earlier loop reaches us.
+        for (int i = lastLoopStartingBy(position); i >= 0 && loopFurthestEnds[i] > position; i--) {
+            if (loopEnds[i] > position) {
+                return entries.get(loops[i]);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns the loops which overlap a range of time within the track, for example the portion of a waveform which
+     * needs to be drawn. All times are rounded to half frame units, because that is the resolution at which cues
+     * are stored.
+     *
+     * @param startMilliseconds the beginning of the time range of interest
+     * @param endMilliseconds the end of the time range of interest
+     * @return the loop entries which include any part of the range, sorted by position
+     *
+     * @since 0.6.3
+     */
+    public List<Entry> findLoopsOverlapping(long startMilliseconds, long endMilliseconds) {
+        final long start = Util.timeToHalfFrameRounded(startMilliseconds);
+        int i = lastLoopStartingBy(Util.timeToHalfFrameRounded(endMilliseconds));
+        if (i < 0 || loopFurthestEnds[i] < start) {
+            return Collections.emptyList();  // The common case when drawing, nothing to allocate.
+        }
+        final List<Entry> result = new ArrayList<Entry>();
+        for (; i >= 0 && loopFurthestEnds[i] >= start; i--) {
+            if (loopEnds[i] >= start) {
+                result.add(entries.get(loops[i]));
+            }
+        }
+        Collections.reverse(result);
+        return Collections.unmodifiableList(result);
+    }
+
+    /**
+     * Finds the position of the last loop that starts at or before the specified half-frame.
+     *
+     * @param position the half-frame of interest
+     * @return the index into {@link #loops} of the latest loop starting no later than that, or -1 if there is none
+     */
+    private int lastLoopStartingBy(long position) {
+        int low = 0;
+        int high = loops.length;
+        while (low < high) {
+            final int middle = (low + high) >>> 1;
+            if (positions[loops[middle]] <= position) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low - 1;
+    }
+
+    /**
+     * Returns the earliest entry that falls within a given number of beats of the specified beat, for example to
+     * recognize the cue that a player has probably jumped to. The beat on which each entry falls is calculated once
+     * for a given beat grid and then remembered, so repeated lookups against the same track are cheap.
+     *
+     * @param beatGrid the beat grid of the track to which this cue list belongs
+     * @param beatNumber the beat of interest
+     * @param tolerance how many beats away from that beat an entry may fall and still be returned
+     * @return the first cue list entry within range of the specified beat, or {@code null} if there is none
+     *
+     * @since 0.6.3
+     */
+    public Entry findEntryNearBeat(BeatGrid beatGrid, int beatNumber, int tolerance) {
+        final int[] beats = beatsFor(beatGrid);
+        final int lowest = beatNumber - tolerance;
+        int low = 0;
+        int high = beats.length;
+        while (low < high) {
+            final int middle = (low + high) >>> 1;
+            if (beats[middle] < lowest) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        if (low < beats.length && beats[low] <= beatNumber + tolerance) {
+            return entries.get(low);
+        }
         return null;
     }
 
+    /**
+     * Look up, and calculate if necessary, the beat on which each entry falls in a particular beat grid. Since the
+     * entries are sorted by time, the resulting beat numbers are in non-decreasing order.
+     *
+     * @param beatGrid the beat grid of the track to which this cue list belongs
+     * @return the beat number of each entry in {@link #entries}
+     */
+    private int[] beatsFor(BeatGrid beatGrid) {
+        final EntryBeats cached = entryBeats;
+        if (cached != null && cached.beatGrid == beatGrid) {
+            return cached.beats;
+        }
+        final int[] beats = new int[entries.size()];
+        for (int i = 0; i < beats.length; i++) {
+            beats[i] = beatGrid.findBeatAtTime(entries.get(i).cueTime);
+        }
+        entryBeats = new EntryBeats(beatGrid, beats);
+        return beats;
+    }
+
     /**
      * Breaks out information about each entry in the cue list.
      */
@@ -394,6 +532,76 @@ public class CueList {
      */
     public final List<Entry> entries;
 
+    /**
+     * Holds the position of each entry, in half-frames, in the same order as {@link #entries}, so lookups by
+     * time can binary search a primitive array.
+     */
+    private long[] positions;
+
+    /**
+     * Holds the indices within {@link #entries} of the entries which are loops, in order of their start positions.
+     */
+    private int[] loops;
+
+    /**
+     * Holds the end position, in half-frames, of each loop in {@link #loops}.
+     */
+    private long[] loopEnds;
+
+    /**
+     * Holds the furthest end position, in half-frames, reached by any loop up to and including the corresponding
+     * element of {@link #loops}. This never decreases, which allows searches for loops containing a position to stop
+     * looking backwards as soon as it falls short of that position.
+     */
+    private long[] loopFurthestEnds;
+
+    /**
+     * Pairs a beat grid with the beat on which each of our entries falls within it.
+     */
+    private static class EntryBeats {
+        final BeatGrid beatGrid;
+        final int[] beats;
+
+        EntryBeats(BeatGrid beatGrid, int[] beats) {
+            this.beatGrid = beatGrid;
+            this.beats = beats;
+        }
+    }
+
+    /**
+     * Remembers the beats of our entries within the beat grid most recently used to look them up.
+     */
+    private volatile EntryBeats entryBeats;
+
+    /**
+     * Builds the primitive arrays that support searching the entries without examining each one, after they have
+     * been sorted.
+     */
+    private void buildIndex() {
+        positions = new long[entries.size()];
+        int loopCount = 0;
+        for (int i = 0; i < positions.length; i++) {
+            positions[i] = entries.get(i).cuePosition;
+            if (entries.get(i).isLoop) {
+                ++loopCount;
+            }
+        }
+        loops = new int[loopCount];
+        loopEnds = new long[loopCount];
+        loopFurthestEnds = new long[loopCount];
+        int loop = 0;
+        for (int i = 0; i < positions.length; i++) {
+            final Entry entry = entries.get(i);
+            if (entry.isLoop) {
+                loops[loop] = i;
+                loopEnds[loop] = entry.loopPosition;
+                loopFurthestEnds[loop] = (loop == 0)? entry.loopPosition :
+                        Math.max(loopFurthestEnds[loop - 1], entry.loopPosition);
+                ++loop;
+            }
+        }
+    }
+
     /**
      * A comparator for sorting or searching entries that considers only their position within the track, and
      * not whether they are a hot cue.
@@ -656,6 +864,7 @@ public class CueList {
         entries = sortEntries(mutableEntries);
         rawTags = Collections.unmodifiableList(tagBuffers);
         rawExtendedTags = Collections.unmodifiableList(extendedTagBuffers);
+        buildIndex();
     }
 
     /**
@@ -692,6 +901,21 @@ public class CueList {
             }
         }
         entries = sortEntries(mutableEntries);
+        buildIndex();
+    }
+
+    /**
+     * Constructor for assembling a cue list from entries which have already been created, without any raw data
+     * behind them.
+     *
+     * @param entries the cue list entries, in any order
+     */
+    CueList(Entry... entries) {
+        rawMessage = null;
+        rawTags = Collections.emptyList();
+        rawExtendedTags = Collections.emptyList();
+        this.entries = sortEntries(new ArrayList<Entry>(Arrays.asList(entries)));
+        buildIndex();
     }
 
     /**
@@ -708,6 +932,7 @@ public class CueList {
         } else {
             entries = parseNxs2Entries(message);
         }
+        buildIndex();
     }
 
     /**
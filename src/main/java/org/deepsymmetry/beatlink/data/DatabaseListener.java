@@ -20,7 +20,9 @@ import org.deepsymmetry.cratedigger.Database;
 public interface DatabaseListener {
     /**
      * <p>Invoked whenever a rekordbox database has been successfully retrieved and parsed from a slot, so it can be
-     * used locally to obtain metadata about the tracks in that slot.</p>
+     * used locally to obtain metadata about the tracks in that slot. When {@link CrateDigger} has a
+     * {@linkplain CrateDigger#findDatabaseSnapshot(SlotReference) snapshot} of the database, it is not parsed until
+     * it is first needed, so this is not called until then.</p>
      *
      * <p>To reduce latency, updates are delivered to listeners directly on the thread that is receiving packets
      * from the network, so if you want to interact with user interface objects in this method, you need to use
@@ -0,0 +1,683 @@
+package org.deepsymmetry.beatlink.data;
+
+import org.deepsymmetry.cratedigger.Database;
+import org.deepsymmetry.cratedigger.pdb.RekordboxPdb;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.*;
+import java.util.zip.CRC32;
+
+/**
+ * <p>A compact, read-only copy of the parts of a parsed rekordbox database export that Beat Link uses most: the
+ * rows of the track table, the names of artists, albums, and genres, artwork paths, and an index of tracks by title.
+ * It is stored as a file of primitive columns and a table of strings which is memory-mapped rather than read, so it
+ * is available almost immediately and takes up very little heap, however large the collection.</p>
+ *
+ * <p>When it has a {@linkplain CrateDigger#setDownloadCacheDirectory(File) download cache}, the {@link CrateDigger}
+ * writes a snapshot after parsing each database export, and when the same export is mounted again, opens it while
+ * the full {@link Database} is still being parsed. Each snapshot records the size
+ * and CRC-32 checksum of the export it was built from, and is only used with an identical export.</p>
+ *
+ * <p>Rekordbox IDs are looked up by binary search over the sorted ID column; methods return {@code null}, zero, or
+ * -1 (as described for each) when asked about an ID that is not present.</p>
+ *
+ * @author James Elliott
+ * @since 0.6.3
+ */
+@SuppressWarnings("WeakerAccess")
+public class DatabaseSnapshot {
+
+    /**
+     * Identifies a file as a database snapshot in the format we understand.
+     */
+    private static final byte[] MAGIC = {'B', 'L', 'T', 'D', 'B', 'c', '0', '1'};
+
+    /**
+     * The size of the header: the magic bytes, the export length and checksum, and six counts.
+     */
+    private static final int HEADER_SIZE = 8 + 8 + 8 + 6 * 4;
+
+    /**
+     * The number of integer columns in the track table: ID, title, artist, album, genre, artwork, duration, tempo,
+     * and analysis path. They are followed by a column of {@code long} file sizes, and then the title order.
+     */
+    private static final int TRACK_INT_COLUMNS = 9;
+
+    /**
+     * The offsets of the integer columns in the track table, in units of the track count times four bytes.
+     */
+    private static final int TRACK_ID = 0;
+    private static final int TRACK_TITLE = 1;
+    private static final int TRACK_ARTIST = 2;
+    private static final int TRACK_ALBUM = 3;
+    private static final int TRACK_GENRE = 4;
+    private static final int TRACK_ARTWORK = 5;
+    private static final int TRACK_DURATION = 6;
+    private static final int TRACK_TEMPO = 7;
+    private static final int TRACK_ANALYZE_PATH = 8;
+
+    /**
+     * The file from which the snapshot was mapped.
+     */
+    final File file;
+
+    /**
+     * The mapped contents of the snapshot file.
+     */
+    private final ByteBuffer buffer;
+
+    /**
+     * The number of tracks in the snapshot.
+     */
+    private final int trackCount;
+
+    /**
+     * Where the column of track file sizes starts.
+     */
+    private final int fileSizeBase;
+
+    /**
+     * Where the list of track positions in title order starts.
+     */
+    private final int titleOrderBase;
+
+    /**
+     * The name tables for artists, albums, genres, and artwork paths, in that order.
+     */
+    private final NameTable artists;
+    private final NameTable albums;
+    private final NameTable genres;
+    private final NameTable artwork;
+
+    /**
+     * Where the offsets of the strings start; there is one more offset than there are strings.
+     */
+    private final int stringOffsetBase;
+
+    /**
+     * Where the UTF-8 bytes of the strings start.
+     */
+    private final int stringBase;
+
+    /**
+     * Describes where a table pairing sorted IDs with string indices is found in the snapshot.
+     */
+    private static class NameTable {
+        /**
+         * The number of rows in the table.
+         */
+        final int count;
+
+        /**
+         * Where the column of sorted IDs starts; the column of string indices follows it.
+         */
+        final int base;
+
+        NameTable(int count, int base) {
+            this.count = count;
+            this.base = base;
+        }
+
+        /**
+         * Find where the table ends.
+         *
+         * @return the position just past the column of string indices
+         */
+        int end() {
+            return base + count * 8;
+        }
+    }
+
+    /**
+     * Open a snapshot file, checking that it was built from the database export we are about to use.
+     *
+     * @param file the snapshot file
+     * @param exportLength the size of the export.pdb file
+     * @param exportChecksum the CRC-32 checksum of the export.pdb file
+     *
+     * @return the opened snapshot, or {@code null} if the file is not a valid snapshot of that export
+     *
+     * @throws IOException if there is a problem reading the file
+     */
+    static DatabaseSnapshot open(File file, long exportLength, long exportChecksum) throws IOException {
+        final RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            final long size = raf.length();
+            if (size < HEADER_SIZE || size > Integer.MAX_VALUE) {
+                return null;
+            }
+            final MappedByteBuffer mapped = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, size);
+            final byte[] magic = new byte[MAGIC.length];
+            mapped.get(magic);
+            if (!Arrays.equals(magic, MAGIC) || mapped.getLong(8) != exportLength ||
+                    mapped.getLong(16) != exportChecksum) {
+                return null;
+            }
+            final DatabaseSnapshot snapshot = new DatabaseSnapshot(file, mapped);
+            if (snapshot.stringBase > size ||
+                    snapshot.stringBase + mapped.getInt(snapshot.stringBase - 4) != size) {
+                return null;  // Truncated or otherwise damaged.
+            }
+            return snapshot;
+        } finally {
+            raf.close();  // The mapping remains valid after the file is closed.
+        }
+    }
+
+    /**
+     * Work out where everything is, given a buffer whose header has already been validated.
+     *
+     * @param file the file from which the snapshot was mapped
+     * @param buffer the mapped snapshot file
+     */
+    private DatabaseSnapshot(File file, ByteBuffer buffer) {
+        this.file = file;
+        this.buffer = buffer;
+        trackCount = buffer.getInt(24);
+        fileSizeBase = HEADER_SIZE + trackCount * 4 * TRACK_INT_COLUMNS;
+        titleOrderBase = fileSizeBase + trackCount * 8;
+        artists = new NameTable(buffer.getInt(28), titleOrderBase + trackCount * 4);
+        albums = new NameTable(buffer.getInt(32), artists.end());
+        genres = new NameTable(buffer.getInt(36), albums.end());
+        artwork = new NameTable(buffer.getInt(40), genres.end());
+        stringOffsetBase = artwork.end();
+        stringBase = stringOffsetBase + (buffer.getInt(44) + 1) * 4;
+    }
+
+    /**
+     * Calculate the checksum used to make sure a snapshot matches an export file.
+     *
+     * @param file the export.pdb file
+     *
+     * @return the CRC-32 checksum of the file's contents
+     *
+     * @throws IOException if there is a problem reading the file
+     */
+    static long checksum(File file) throws IOException {
+        final CRC32 crc = new CRC32();
+        final InputStream in = new BufferedInputStream(new FileInputStream(file), 65536);
+        try {
+            final byte[] chunk = new byte[65536];
+            int count;
+            while ((count = in.read(chunk)) > 0) {
+                crc.update(chunk, 0, count);
+            }
+        } finally {
+            in.close();
+        }
+        return crc.getValue();
+    }
+
+    /**
+     * Collects the distinct strings that will be written to a snapshot, assigning each an index.
+     */
+    private static class StringTable {
+        final List<String> strings = new ArrayList<String>();
+        final Map<String, Integer> indices = new HashMap<String, Integer>();
+
+        int indexOf(String s) {
+            final String value = (s == null)? "" : s;
+            Integer index = indices.get(value);
+            if (index == null) {
+                index = strings.size();
+                strings.add(value);
+                indices.put(value, index);
+            }
+            return index;
+        }
+    }
+
+    /**
+     * Write a snapshot of a parsed database export.
+     *
+     * @param database the parsed export
+     * @param exportLength the size of the export.pdb file
+     * @param exportChecksum the CRC-32 checksum of the export.pdb file, as calculated by {@link #checksum(File)}
+     * @param file where the snapshot should be written
+     *
+     * @throws IOException if there is a problem writing the file
+     */
+    static void write(Database database, long exportLength, long exportChecksum, File file) throws IOException {
+        final StringTable strings = new StringTable();
+        final long[] ids = sortedIds(database.trackIndex.keySet());
+        final int[][] columns = new int[TRACK_INT_COLUMNS][ids.length];
+        final long[] fileSizes = new long[ids.length];
+        for (int i = 0; i < ids.length; i++) {
+            final RekordboxPdb.TrackRow row = database.trackIndex.get(ids[i]);
+            columns[TRACK_ID][i] = (int) ids[i];
+            columns[TRACK_TITLE][i] = strings.indexOf(Database.getText(row.title()));
+            columns[TRACK_ARTIST][i] = (int) row.artistId();
+            columns[TRACK_ALBUM][i] = (int) row.albumId();
+            columns[TRACK_GENRE][i] = (int) row.genreId();
+            columns[TRACK_ARTWORK][i] = (int) row.artworkId();
+            columns[TRACK_DURATION][i] = row.duration();
+            columns[TRACK_TEMPO][i] = (int) row.tempo();
+            columns[TRACK_ANALYZE_PATH][i] = strings.indexOf(Database.getText(row.analyzePath()));
+            fileSizes[i] = row.fileSize();
+        }
+
+        // Sort the track positions by title, ignoring case, for prefix searches.
+        final Integer[] titleOrder = new Integer[ids.length];
+        for (int i = 0; i < titleOrder.length; i++) {
+            titleOrder[i] = i;
+        }
+        Arrays.sort(titleOrder, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer i1, Integer i2) {
+                return String.CASE_INSENSITIVE_ORDER.compare(strings.strings.get(columns[TRACK_TITLE][i1]),
+                        strings.strings.get(columns[TRACK_TITLE][i2]));
+            }
+        });
+
+        final long[] artistIds = sortedIds(database.artistIndex.keySet());
+        final int[] artistNames = new int[artistIds.length];
+        for (int i = 0; i < artistIds.length; i++) {
+            artistNames[i] = strings.indexOf(Database.getText(database.artistIndex.get(artistIds[i]).name()));
+        }
+        final long[] albumIds = sortedIds(database.albumIndex.keySet());
+        final int[] albumNames = new int[albumIds.length];
+        for (int i = 0; i < albumIds.length; i++) {
+            albumNames[i] = strings.indexOf(Database.getText(database.albumIndex.get(albumIds[i]).name()));
+        }
+        final long[] genreIds = sortedIds(database.genreIndex.keySet());
+        final int[] genreNames = new int[genreIds.length];
+        for (int i = 0; i < genreIds.length; i++) {
+            genreNames[i] = strings.indexOf(Database.getText(database.genreIndex.get(genreIds[i]).name()));
+        }
+        final long[] artworkIds = sortedIds(database.artworkIndex.keySet());
+        final int[] artworkPaths = new int[artworkIds.length];
+        for (int i = 0; i < artworkIds.length; i++) {
+            artworkPaths[i] = strings.indexOf(Database.getText(database.artworkIndex.get(artworkIds[i]).path()));
+        }
+
+        final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 65536));
+        try {
+            out.write(MAGIC);
+            out.writeLong(exportLength);
+            out.writeLong(exportChecksum);
+            out.writeInt(ids.length);
+            out.writeInt(artistIds.length);
+            out.writeInt(albumIds.length);
+            out.writeInt(genreIds.length);
+            out.writeInt(artworkIds.length);
+            out.writeInt(strings.strings.size());
+            for (int[] column : columns) {
+                for (int value : column) {
+                    out.writeInt(value);
+                }
+            }
+            for (long size : fileSizes) {
+                out.writeLong(size);
+            }
+            for (Integer position : titleOrder) {
+                out.writeInt(position);
+            }
+            writeNameTable(out, artistIds, artistNames);
+            writeNameTable(out, albumIds, albumNames);
+            writeNameTable(out, genreIds, genreNames);
+            writeNameTable(out, artworkIds, artworkPaths);
+            final List<byte[]> encoded = new ArrayList<byte[]>(strings.strings.size());
+            int offset = 0;
+            out.writeInt(offset);
+            for (String s : strings.strings) {
+                final byte[] bytes = s.getBytes("UTF-8");
+                encoded.add(bytes);
+                offset += bytes.length;
+                out.writeInt(offset);
+            }
+            for (byte[] bytes : encoded) {
+                out.write(bytes);
+            }
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * Sort the keys of one of the database indices.
+     *
+     * @param keys the IDs found in the index
+     *
+     * @return the IDs in ascending order
+     */
+    private static long[] sortedIds(Set<Long> keys) {
+        final long[] result = new long[keys.size()];
+        int i = 0;
+        for (Long key : keys) {
+            result[i++] = key;
+        }
+        Arrays.sort(result);
+        return result;
+    }
+
+    /**
+     * Write a table pairing sorted IDs with string indices.
+     *
+     * @param out where the snapshot is being written
+     * @param ids the sorted IDs
+     * @param names the index of the string corresponding to each ID
+     *
+     * @throws IOException if there is a problem writing
+     */
+    private static void writeNameTable(DataOutputStream out, long[] ids, int[] names) throws IOException {
+        for (long id : ids) {
+            out.writeInt((int) id);
+        }
+        for (int name : names) {
+            out.writeInt(name);
+        }
+    }
+
+    /**
+     * Find the position of an ID in a sorted column of IDs.
+     *
+     * @param base where the column starts
+     * @param count how many IDs are in the column
+     * @param id the ID to look for
+     *
+     * @return the position of the ID within the column, or -1 if it is not present
+     */
+    private int search(int base, int count, int id) {
+        int low = 0;
+        int high = count - 1;
+        while (low <= high) {
+            final int middle = (low + high) >>> 1;
+            final int value = buffer.getInt(base + middle * 4);
+            if (value < id) {
+                low = middle + 1;
+            } else if (value > id) {
+                high = middle - 1;
+            } else {
+                return middle;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Read one of the strings in the snapshot.
+     *
+     * @param index the index of the string
+     *
+     * @return the string
+     */
+    private String string(int index) {
+        final int start = buffer.getInt(stringOffsetBase + index * 4);
+        final int end = buffer.getInt(stringOffsetBase + index * 4 + 4);
+        final byte[] bytes = new byte[end - start];
+        final ByteBuffer view = buffer.duplicate();
+        view.position(stringBase + start);
+        view.get(bytes);
+        try {
+            return new String(bytes, "UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException("Unable to work with UTF-8 string encoding.", e);
+        }
+    }
+
+    /**
+     * Look up a name in one of the name tables.
+     *
+     * @param table the table to search
+     * @param id the ID whose name is desired
+     *
+     * @return the name, or {@code null} if the ID is not in the table
+     */
+    private String name(NameTable table, int id) {
+        final int position = search(table.base, table.count, id);
+        if (position < 0) {
+            return null;
+        }
+        return string(buffer.getInt(table.base + table.count * 4 + position * 4));
+    }
+
+    /**
+     * Read an integer column of the track table for a particular track.
+     *
+     * @param column which column is desired
+     * @param trackId the rekordbox ID of the track
+     * @param missing the value to return if there is no such track
+     *
+     * @return the value of the column for the track
+     */
+    private int trackInt(int column, int trackId, int missing) {
+        final int position = search(HEADER_SIZE, trackCount, trackId);
+        if (position < 0) {
+            return missing;
+        }
+        return buffer.getInt(HEADER_SIZE + (column * trackCount + position) * 4);
+    }
+
+    /**
+     * Get the number of tracks in the snapshot.
+     *
+     * @return how many rows the track table has
+     */
+    public int getTrackCount() {
+        return trackCount;
+    }
+
+    /**
+     * Check whether a track is present in the snapshot.
+     *
+     * @param trackId the rekordbox ID of the track
+     *
+     * @return {@code true} if the track table has a row for it
+     */
+    public boolean hasTrack(int trackId) {
+        return search(HEADER_SIZE, trackCount, trackId) >= 0;
+    }
+
+    /**
+     * Get the rekordbox IDs of all the tracks.
+     *
+     * @return the track IDs, in ascending order
+     */
+    public int[] getTrackIds() {
+        final int[] result = new int[trackCount];
+        for (int i = 0; i < trackCount; i++) {
+            result[i] = buffer.getInt(HEADER_SIZE + i * 4);
+        }
+        return result;
+    }
+
+    /**
+     * Get the title of a track.
+     *
+     * @param trackId the rekordbox ID of the track
+     *
+     * @return the title, or {@code null} if there is no such track
+     */
+    public String getTitle(int trackId) {
+        final int index = trackInt(TRACK_TITLE, trackId, -1);
+        return (index < 0)? null : string(index);
+    }
+
+    /**
+     * Get the artist ID of a track.
+     *
+     * @param trackId the rekordbox ID of the track
+     *
+     * @return the ID of the track's artist, or 0 if there is none
+     */
+    public int getArtistId(int trackId) {
+        return trackInt(TRACK_ARTIST, trackId, 0);
+    }
+
+    /**
+     * Get the album ID of a track.
+     *
+     * @param trackId the rekordbox ID of the track
+     *
+     * @return the ID of the track's album, or 0 if there is none
+     */
+    public int getAlbumId(int trackId) {
+        return trackInt(TRACK_ALBUM, trackId, 0);
+    }
+
+    /**
+     * Get the genre ID of a track.
+     *
+     * @param trackId the rekordbox ID of the track
+     *
+     * @return the ID of the track's genre, or 0 if there is none
+     */
+    public int getGenreId(int trackId) {
+        return trackInt(TRACK_GENRE, trackId, 0);
+    }
+
+    /**
+     * Get the artwork ID of a track.
+     *
+     * @param trackId the rekordbox ID of the track
+     *
+     * @return the ID of the track's artwork, or 0 if there is none
+     */
+    public int getArtworkId(int trackId) {
+        return trackInt(TRACK_ARTWORK, trackId, 0);
+    }
+
+    /**
+     * Get the duration of a track.
+     *
+     * @param trackId the rekordbox ID of the track
+     *
+     * @return the length of the track in seconds, or 0 if there is no such track
+     */
+    public int getDuration(int trackId) {
+        return trackInt(TRACK_DURATION, trackId, 0);
+    }
+
+    /**
+     * Get the tempo of a track.
+     *
+     * @param trackId the rekordbox ID of the track
+     *
+     * @return the track's tempo, in beats per minute times 100, or 0 if there is no such track
+     */
+    public int getTempo(int trackId) {
+        return trackInt(TRACK_TEMPO, trackId, 0);
+    }
+
+    /**
+     * Get the path of a track's analysis file on its media.
+     *
+     * @param trackId the rekordbox ID of the track
+     *
+     * @return the path of the basic (.DAT) analysis file, or {@code null} if there is no such track
+     */
+    public String getAnalyzePath(int trackId) {
+        final int index = trackInt(TRACK_ANALYZE_PATH, trackId, -1);
+        return (index < 0)? null : string(index);
+    }
+
+    /**
+     * Get the size of a track's audio file.
+     *
+     * @param trackId the rekordbox ID of the track
+     *
+     * @return the number of bytes in the audio file, or -1 if there is no such track
+     */
+    public long getFileSize(int trackId) {
+        final int position = search(HEADER_SIZE, trackCount, trackId);
+        if (position < 0) {
+            return -1;
+        }
+        return buffer.getLong(fileSizeBase + position * 8);
+    }
+
+    /**
+     * Get the name of an artist.
+     *
+     * @param artistId the rekordbox ID of the artist
+     *
+     * @return the artist's name, or {@code null} if there is no such artist
+     */
+    public String getArtistName(int artistId) {
+        return name(artists, artistId);
+    }
+
+    /**
+     * Get the name of an album.
+     *
+     * @param albumId the rekordbox ID of the album
+     *
+     * @return the album's name, or {@code null} if there is no such album
+     */
+    public String getAlbumName(int albumId) {
+        return name(albums, albumId);
+    }
+
+    /**
+     * Get the name of a genre.
+     *
+     * @param genreId the rekordbox ID of the genre
+     *
+     * @return the genre's name, or {@code null} if there is no such genre
+     */
+    public String getGenreName(int genreId) {
+        return name(genres, genreId);
+    }
+
+    /**
+     * Get the path of an artwork image on the media.
+     *
+     * @param artworkId the rekordbox ID of the artwork
+     *
+     * @return the path of the image file, or {@code null} if there is no such artwork
+     */
+    public String getArtworkPath(int artworkId) {
+        return name(artwork, artworkId);
+    }
+
+    /**
+     * Get the title of the track at a position in the title order.
+     *
+     * @param rank the position in the title order
+     *
+     * @return the title of the track found there
+     */
+    private String titleAtRank(int rank) {
+        final int position = buffer.getInt(titleOrderBase + rank * 4);
+        return string(buffer.getInt(HEADER_SIZE + (TRACK_TITLE * trackCount + position) * 4));
+    }
+
+    /**
+     * Find the tracks whose titles start with the specified text, ignoring case.
+     *
+     * @param prefix the beginning of the titles of interest
+     *
+     * @return the rekordbox IDs of the matching tracks, in order by title
+     */
+    public List<Integer> findTracksByTitle(String prefix) {
+        // Find the first title that does not sort before the prefix.
+        int low = 0;
+        int high = trackCount;
+        while (low < high) {
+            final int middle = (low + high) >>> 1;
+            if (String.CASE_INSENSITIVE_ORDER.compare(titleAtRank(middle), prefix) < 0) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        final List<Integer> result = new ArrayList<Integer>();
+        for (int rank = low; rank < trackCount; rank++) {
+            final String title = titleAtRank(rank);
+            if (!title.regionMatches(true, 0, prefix, 0, prefix.length())) {
+                break;
+            }
+            result.add(buffer.getInt(HEADER_SIZE + buffer.getInt(titleOrderBase + rank * 4) * 4));
+        }
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return "DatabaseSnapshot[tracks:" + trackCount + ", artists:" + artists.count + ", albums:" + albums.count +
+                ", genres:" + genres.count + ", artwork:" + artwork.count + "]";
+    }
+}
@@ -0,0 +1,409 @@
+package org.deepsymmetry.beatlink.data;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.regex.Pattern;
+
+/**
+ * <p>A persistent folder of files downloaded by the {@link CrateDigger}, which survives unmounts, the loss of
+ * players, and restarts, so that media which has been seen before does not need to have its database export and
+ * track analysis files downloaded again.</p>
+ *
+ * <p>Each file is stored under a name derived from the SHA-1 hash of a key describing what it holds: the
+ * {@link org.deepsymmetry.beatlink.MediaDetails#hashKey()} of the media it came from, its path on that media, and
+ * whatever information we have that would change if the file were rewritten. If any of that changes, the key changes
+ * and a fresh copy is downloaded, while the stale one eventually ages out.</p>
+ *
+ * <p>The total size of the folder is kept under a limit by deleting the least recently used files. The order of use
+ * is recorded in the files' modification times, so it carries over from one run to the next.</p>
+ *
+ * @author James Elliott
+ * @since 0.6.3
+ */
+class DownloadCache {
+
+    private static final Logger logger = LoggerFactory.getLogger(DownloadCache.class);
+
+    /**
+     * The extension of files which are still being downloaded. Any left over from an earlier run are discarded.
+     */
+    private static final String PARTIAL_EXTENSION = ".part";
+
+    /**
+     * Matches the names of the files we store, as produced by {@link #nameFor(String)}. Anything else that happens
+     * to be in the folder belongs to someone else, and is never counted or deleted.
+     */
+    private static final Pattern CACHED_NAME = Pattern.compile("[0-9a-f]{40}");
+
+    /**
+     * Matches the names of the partial files created by {@link #createPartialFile(String)}.
+     */
+    private static final Pattern PARTIAL_NAME = Pattern.compile("[0-9a-f]{40}-.*\\.part");
+
+    /**
+     * The folder holding the cached files.
+     */
+    final File directory;
+
+    /**
+     * The largest number of bytes we will let the cached files occupy.
+     */
+    private long sizeLimit;
+
+    /**
+     * The size of each cached file, indexed by file name, in order from least to most recently used.
+     */
+    private final LinkedHashMap<String, Long> entries = new LinkedHashMap<String, Long>(64, 0.75f, true);
+
+    /**
+     * The total size of the files in {@link #entries}.
+     */
+    private long totalSize;
+
+    /**
+     * The names of files that are in use in a way that means they must not be deleted, such as the source files
+     * of open databases, along with how many times each has been pinned, since the same file can be in use by more
+     * than one slot at once.
+     */
+    private final Map<String, Integer> pinned = new HashMap<String, Integer>();
+
+    /**
+     * The names of files which have been {@linkplain #discard(File) discarded} while they were still pinned, and so
+     * will be deleted once the last pin is released.
+     */
+    private final Set<String> discarded = new HashSet<String>();
+
+    /**
+     * Open (creating if necessary) a download cache folder, and take inventory of the files already in it.
+     *
+     * @param directory the folder in which to keep downloaded files
+     * @param sizeLimit the largest number of bytes the cached files may occupy
+     *
+     * @throws IOException if the folder can't be created
+     */
+    DownloadCache(File directory, long sizeLimit) throws IOException {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Unable to create download cache directory " + directory);
+        }
+        this.directory = directory;
+        this.sizeLimit = sizeLimit;
+        final File[] files = directory.listFiles();
+        if (files != null) {
+            Arrays.sort(files, new Comparator<File>() {
+                @Override
+                public int compare(File file1, File file2) {
+                    final long modified1 = file1.lastModified();
+                    final long modified2 = file2.lastModified();
+                    return (modified1 < modified2)? -1 : ((modified1 == modified2)? 0 : 1);
+                }
+            });
+            for (File file : files) {
+                if (!file.isFile()) {
+                    continue;
+                }
+                if (PARTIAL_NAME.matcher(file.getName()).matches()) {
+                    //noinspection ResultOfMethodCallIgnored
+                    file.delete();  // Left over from an interrupted download.
+                } else if (CACHED_NAME.matcher(file.getName()).matches()) {
+                    entries.put(file.getName(), file.length());
+                    totalSize += file.length();
+                }
+            }
+        }
+        logger.info("Opened download cache {} holding {} files, {}.", directory, entries.size(),
+                CrateDigger.humanReadableByteCount(totalSize, true));
+        evict();
+    }
+
+    /**
+     * Calculate the file name under which the file described by a key is stored.
+     *
+     * @param key identifies the content of the file
+     *
+     * @return the hex representation of the SHA-1 hash of the key
+     */
+    static String nameFor(String key) {
+        try {
+            final byte[] result = MessageDigest.getInstance("SHA1").digest(key.getBytes("UTF-8"));
+            StringBuilder hex = new StringBuilder(result.length * 2);
+            for (byte aResult : result) {
+                hex.append(Integer.toString((aResult & 0xff) + 0x100, 16).substring(1));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("Unable to obtain SHA-1 MessageDigest instance for naming cached files.", e);
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException("Unable to work with UTF-8 string encoding for naming cached files.", e);
+        }
+    }
+
+    /**
+     * Look for a file in the cache, and if it is there, record that it has just been used.
+     *
+     * @param key identifies the content of the file
+     *
+     * @return the cached file, or {@code null} if we don't have it
+     */
+    synchronized File lookup(String key) {
+        return lookup(key, false);
+    }
+
+    /**
+     * Look for a file in the cache, and if it is there, record that it has just been used, optionally
+     * {@linkplain #pin(File) pinning} it so that it cannot be evicted before the caller is done with it.
+     *
+     * @param key identifies the content of the file
+     * @param pin if {@code true}, the file is pinned before it is returned, and the caller must unpin it
+     *
+     * @return the cached file, or {@code null} if we don't have it
+     */
+    synchronized File lookup(String key, boolean pin) {
+        final String name = nameFor(key);
+        final Long size = entries.get(name);  // Moves it to the most recently used end.
+        if (size == null) {
+            return null;
+        }
+        final File file = new File(directory, name);
+        if (!file.canRead()) {  // Someone has cleaned up behind our backs.
+            entries.remove(name);
+            totalSize -= size;
+            return null;
+        }
+        //noinspection ResultOfMethodCallIgnored
+        file.setLastModified(System.currentTimeMillis());
+        if (pin) {
+            addPin(name);
+        }
+        return file;
+    }
+
+    /**
+     * Check whether a file is in the cache, without counting that as a use of it.
+     *
+     * @param key identifies the content of the file
+     *
+     * @return {@code true} if we have the file
+     */
+    synchronized boolean contains(String key) {
+        return entries.containsKey(nameFor(key));
+    }
+
+    /**
+     * Create a file into which the file described by a key can be downloaded before it is added to the cache.
+     *
+     * @param key identifies the content that will be downloaded
+     *
+     * @return a new empty file in the cache folder
+     *
+     * @throws IOException if the file can't be created
+     */
+    File createPartialFile(String key) throws IOException {
+        return File.createTempFile(nameFor(key) + "-", PARTIAL_EXTENSION, directory);
+    }
+
+    /**
+     * Add a completely downloaded file to the cache, and delete the least recently used files if that takes the
+     * cache over its size limit.
+     *
+     * @param key identifies the content of the file
+     * @param partial the file that was returned by {@link #createPartialFile(String)} and has been downloaded into
+     *
+     * @return the file's location in the cache
+     *
+     * @throws IOException if the file could not be moved into place
+     */
+    synchronized File commit(String key, File partial) throws IOException {
+        return commit(key, partial, false);
+    }
+
+    /**
+     * Add a completely downloaded file to the cache, optionally {@linkplain #pin(File) pinning} it so that it cannot
+     * be evicted before the caller is done with it, and delete the least recently used files if that takes the
+     * cache over its size limit.
+     *
+     * @param key identifies the content of the file
+     * @param partial the file that was returned by {@link #createPartialFile(String)} and has been downloaded into
+     * @param pin if {@code true}, the file is left pinned when it is returned, and the caller must unpin it
+     *
+     * @return the file's location in the cache
+     *
+     * @throws IOException if the file could not be moved into place
+     */
+    synchronized File commit(String key, File partial, boolean pin) throws IOException {
+        final String name = nameFor(key);
+        discarded.remove(name);  // Whatever was discarded under this name is being replaced.
+        final File file = new File(directory, name);
+        final Long formerSize = entries.remove(name);
+        if (formerSize != null) {
+            totalSize -= formerSize;
+        }
+        if (file.exists() && !file.delete()) {
+            //noinspection ResultOfMethodCallIgnored
+            partial.delete();
+            throw new IOException("Unable to replace cached file " + file);
+        }
+        if (!partial.renameTo(file)) {
+            //noinspection ResultOfMethodCallIgnored
+            partial.delete();
+            throw new IOException("Unable to move downloaded file " + partial + " into cache as " + file);
+        }
+        entries.put(name, file.length());
+        totalSize += file.length();
+        addPin(name);  // Don't let the file we are about to return be the one we evict.
+        try {
+            evict();
+        } finally {
+            if (!pin) {
+                removePin(name);
+            }
+        }
+        return file;
+    }
+
+    /**
+     * Remove a file from the cache because it has turned out to be unusable, for example because it could not be
+     * parsed. If it is still pinned, it is forgotten right away so it will not be found again, but not deleted until
+     * the last pin is released.
+     *
+     * @param file the cached file
+     */
+    synchronized void discard(File file) {
+        final String name = file.getName();
+        final Long size = entries.remove(name);
+        if (size != null) {
+            totalSize -= size;
+        }
+        if (pinned.containsKey(name)) {
+            discarded.add(name);
+        } else if (!file.delete() && file.exists()) {
+            logger.warn("Unable to delete discarded file {} from download cache.", file);
+        }
+    }
+
+    /**
+     * Protect a cached file from eviction while it is in use, for example as the source of an open database.
+     * Each call should be balanced by a call to {@link #unpin(File)}.
+     *
+     * @param file the cached file
+     */
+    synchronized void pin(File file) {
+        addPin(file.getName());
+    }
+
+    /**
+     * Balance a call to {@link #pin(File)}. Once every pin of the file has been balanced, it can be evicted again,
+     * and will be if the cache has grown past its size limit in the meantime.
+     *
+     * @param file the cached file
+     */
+    synchronized void unpin(File file) {
+        if (removePin(file.getName())) {
+            if (discarded.remove(file.getName()) && !file.delete() && file.exists()) {
+                logger.warn("Unable to delete discarded file {} from download cache.", file);
+            }
+            evict();
+        }
+    }
+
+    /**
+     * Count another use of a file that must not be evicted.
+     *
+     * @param name the name of the cached file
+     */
+    private void addPin(String name) {
+        final Integer count = pinned.get(name);
+        pinned.put(name, (count == null)? 1 : count + 1);
+    }
+
+    /**
+     * Count the end of one use of a file that must not be evicted.
+     *
+     * @param name the name of the cached file
+     *
+     * @return {@code true} if that was the last use, so the file may now be evicted
+     */
+    private boolean removePin(String name) {
+        final Integer count = pinned.get(name);
+        if (count == null) {
+            return false;
+        }
+        if (count > 1) {
+            pinned.put(name, count - 1);
+            return false;
+        }
+        pinned.remove(name);
+        return true;
+    }
+
+    /**
+     * Check whether a file is stored in this cache, so that code which would normally delete a downloaded file
+     * when it is done with it knows to leave it alone.
+     *
+     * @param file the file of interest
+     *
+     * @return {@code true} if the file lives in our folder
+     */
+    boolean holds(File file) {
+        return directory.equals(file.getParentFile());
+    }
+
+    /**
+     * Check the largest number of bytes the cached files may occupy.
+     *
+     * @return the size limit of the cache
+     */
+    synchronized long getSizeLimit() {
+        return sizeLimit;
+    }
+
+    /**
+     * Change the largest number of bytes the cached files may occupy, deleting files if needed to honor it.
+     *
+     * @param sizeLimit the new size limit of the cache
+     */
+    synchronized void setSizeLimit(long sizeLimit) {
+        this.sizeLimit = sizeLimit;
+        evict();
+    }
+
+    /**
+     * Check the total size of the files currently in the cache.
+     *
+     * @return the number of bytes occupied by cached files
+     */
+    synchronized long getTotalSize() {
+        return totalSize;
+    }
+
+    /**
+     * Delete the least recently used files that are not pinned until the cache is within its size limit.
+     */
+    private void evict() {
+        final Iterator<Map.Entry<String, Long>> iterator = entries.entrySet().iterator();
+        while (totalSize > sizeLimit && iterator.hasNext()) {
+            final Map.Entry<String, Long> entry = iterator.next();
+            if (!pinned.containsKey(entry.getKey())) {
+                final File file = new File(directory, entry.getKey());
+                if (file.delete() || !file.exists()) {
+                    iterator.remove();
+                    totalSize -= entry.getValue();
+                } else {
+                    logger.warn("Unable to evict file {} from download cache, will try again later.", file);
+                }
+            }
+        }
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "DownloadCache[directory:" + directory + ", files:" + entries.size() + ", totalSize:" + totalSize +
+                ", sizeLimit:" + sizeLimit + "]";
+    }
+}
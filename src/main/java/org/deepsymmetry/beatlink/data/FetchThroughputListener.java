@@ -0,0 +1,36 @@
+package org.deepsymmetry.beatlink.data;
+
+/**
+ * <p>The listener interface for receiving reports of how quickly {@link CrateDigger} is downloading files from the
+ * NFS servers in players, for example to display transfer rates or to notice a congested network.</p>
+ *
+ * <p>Classes that are interested in download performance can implement this interface, and then pass the
+ * implementing instance to {@link CrateDigger#addFetchThroughputListener(FetchThroughputListener)}. Then, each time
+ * a file has been completely downloaded, {@link #fileFetched(SlotReference, String, long, long, int)} will be
+ * called.</p>
+ *
+ * @author James Elliott
+ * @since 0.6.3
+ */
+@SuppressWarnings("WeakerAccess")
+public interface FetchThroughputListener {
+    /**
+     * <p>Invoked whenever a file has been downloaded from a player. The achieved throughput is
+     * {@code bytes * 1000000000 / nanoseconds} bytes per second; because several files can be downloaded at once,
+     * the throughput of the network as a whole may be higher. Small files can arrive in well under a millisecond,
+     * which is why the duration is reported in nanoseconds.</p>
+     *
+     * <p>This is called on the thread that downloaded the file, which may be one that is waiting to deliver
+     * metadata, so it <em>must</em> finish quickly. If you want to interact with user interface objects, use
+     * <code><a href="http://docs.oracle.com/javase/8/docs/api/javax/swing/SwingUtilities.html#invokeLater-java.lang.Runnable-">javax.swing.SwingUtilities.invokeLater(Runnable)</a></code>
+     * to do so on the Event Dispatch Thread.</p>
+     *
+     * @param slot the media slot from which the file was downloaded
+     * @param path the path of the file within the slot's mounted filesystem
+     * @param bytes the size of the file
+     * @param nanoseconds how long the download took, including any failed attempts and the pauses between them;
+     *                    always at least 1
+     * @param attempts how many attempts were needed; 1 if the first succeeded
+     */
+    void fileFetched(SlotReference slot, String path, long bytes, long nanoseconds, int attempts);
+}
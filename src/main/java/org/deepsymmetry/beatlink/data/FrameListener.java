@@ -0,0 +1,31 @@
+package org.deepsymmetry.beatlink.data;
+
+/**
+ * <p>The listener interface for receiving a steady stream of coherent snapshots of where all players have reached,
+ * for example to animate user interface elements or to drive lighting or video at a fixed frame rate.</p>
+ *
+ * <p>Classes that want to be told about each frame can implement this interface, and then pass the implementing
+ * instance to {@link TimeFinder#addFrameListener(FrameListener)}. Then, {@link #frameReady(FrameSnapshot)} will be
+ * called at the rate configured by {@link TimeFinder#setFrameRate(int)}, with positions calculated for the same
+ * instant for every player.</p>
+ *
+ * @author James Elliott
+ * @since 0.6.3
+ */
+@SuppressWarnings("WeakerAccess")
+public interface FrameListener {
+    /**
+     * <p>Called once per frame with the positions of all players at that moment.</p>
+     *
+     * <p>Frames are delivered to all listeners on a single shared thread, so if you want to interact with user
+     * interface objects in this method, you need to use
+     * <code><a href="http://docs.oracle.com/javase/8/docs/api/javax/swing/SwingUtilities.html#invokeLater-java.lang.Runnable-">javax.swing.SwingUtilities.invokeLater(Runnable)</a></code>
+     * to do so on the Event Dispatch Thread.
+     *
+     * Any code in this method <em>must</em> finish quickly, or it will delay the frame for every other listener.
+     * If you want to perform lengthy processing of any sort, do so on another thread.</p>
+     *
+     * @param snapshot the interpolated positions of all players for this frame
+     */
+    void frameReady(FrameSnapshot snapshot);
+}
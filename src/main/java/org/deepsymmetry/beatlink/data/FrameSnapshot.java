@@ -0,0 +1,207 @@
+package org.deepsymmetry.beatlink.data;
+
+/**
+ * <p>An immutable picture of where every player is within its track at a single instant, produced once per frame by
+ * the {@link TimeFinder} frame clock. Because all positions are interpolated for the same moment in one pass, every
+ * component and listener that looks at the same snapshot agrees on where each player is, and none of them need to
+ * repeat the interpolation themselves.</p>
+ *
+ * <p>Positions are only included for players numbered below 16, which includes all CDJs. For any player whose
+ * position is not known, {@link #getTimeFor(int)} returns -1 and the other methods return zero or {@code false}.</p>
+ *
+ * @author James Elliott
+ * @since 0.6.3
+ */
+@SuppressWarnings("WeakerAccess")
+public class FrameSnapshot {
+
+    /**
+     * How many elements of the values array are used by each player.
+     */
+    static final int STRIDE = 6;
+
+    /**
+     * The offsets of the values for each player. The time and beat are stored directly, the phases and pitch as the
+     * raw bits of a {@code double}, and the playing state as 1 or 0.
+     */
+    static final int TIME = 0;
+    static final int BEAT = 1;
+    static final int BEAT_PHASE = 2;
+    static final int BAR_PHASE = 3;
+    static final int PITCH = 4;
+    static final int PLAYING = 5;
+
+    /**
+     * The values of a snapshot in which no player's position is known. It is never modified, so it is shared by
+     * every such snapshot rather than allocated for each frame.
+     */
+    static final long[] NO_POSITIONS = unknownPositions();
+
+    /**
+     * Create the values array for a snapshot in which no player's position is known yet.
+     *
+     * @return an array with room for every player, marking all of their positions as unknown
+     */
+    static long[] unknownPositions() {
+        final long[] result = new long[PositionSlots.CAPACITY * STRIDE];
+        for (int player = 0; player < PositionSlots.CAPACITY; player++) {
+            result[player * STRIDE + TIME] = -1;
+        }
+        return result;
+    }
+
+    /**
+     * The {@link System#nanoTime()} value for which the positions were calculated.
+     */
+    private final long timestamp;
+
+    /**
+     * Counts the frames produced by the frame clock, so consumers can tell whether they have seen a snapshot before.
+     */
+    private final long frameNumber;
+
+    /**
+     * The values for each player, {@link #STRIDE} elements per player, indexed by player number. Keeping them in a
+     * single array means each frame allocates only that and the snapshot itself.
+     */
+    private final long[] values;
+
+    /**
+     * Constructor used by the {@link TimeFinder}, which hands over an array that it will not touch again.
+     *
+     * @param timestamp the {@link System#nanoTime()} value for which the positions were calculated
+     * @param frameNumber which frame this is
+     * @param values the position, beat, phases, pitch, and playing state of each player, laid out as described by
+     *               {@link #STRIDE}, with a time of -1 for players whose position is unknown
+     */
+    FrameSnapshot(long timestamp, long frameNumber, long[] values) {
+        this.timestamp = timestamp;
+        this.frameNumber = frameNumber;
+        this.values = values;
+    }
+
+    /**
+     * Check whether a player number falls within the range covered by snapshots.
+     *
+     * @param player the player number of interest
+     * @return {@code true} if the array has values for that player
+     */
+    private boolean covers(int player) {
+        return player >= 0 && player < values.length / STRIDE;
+    }
+
+    /**
+     * Look up one of the values recorded for a player.
+     *
+     * @param player the player number of interest
+     * @param offset which of the player's values is wanted
+     * @return the value
+     */
+    private long value(int player, int offset) {
+        return values[player * STRIDE + offset];
+    }
+
+    /**
+     * Get the moment for which this snapshot was calculated.
+     *
+     * @return the {@link System#nanoTime()} value at which the positions were interpolated
+     */
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    /**
+     * Get the number of this frame. Frames produced by the frame clock are numbered consecutively; snapshots
+     * calculated on demand when the clock is not running are numbered zero.
+     *
+     * @return the frame number
+     */
+    public long getFrameNumber() {
+        return frameNumber;
+    }
+
+    /**
+     * Check whether we know where the specified player is.
+     *
+     * @param player the player number of interest
+     * @return {@code true} if the snapshot includes a position for that player
+     */
+    public boolean isKnown(int player) {
+        return covers(player) && value(player, TIME) >= 0;
+    }
+
+    /**
+     * Get the position the specified player had reached at the moment of the snapshot.
+     *
+     * @param player the player number of interest
+     * @return the milliseconds into the track the player had reached, or -1 if we don't know
+     */
+    public long getTimeFor(int player) {
+        return covers(player)? value(player, TIME) : -1;
+    }
+
+    /**
+     * Get the beat the specified player had reached at the moment of the snapshot.
+     *
+     * @param player the player number of interest
+     * @return the beat number within the track, or -1 if the player is before the first beat
+     */
+    public int getBeatNumber(int player) {
+        return isKnown(player)? (int) value(player, BEAT) : 0;
+    }
+
+    /**
+     * Get how far the specified player had progressed through its current beat at the moment of the snapshot.
+     *
+     * @param player the player number of interest
+     * @return a value from 0.0 (at the beat) up to, but not including, 1.0 (the next beat)
+     */
+    public double getBeatPhase(int player) {
+        return isKnown(player)? Double.longBitsToDouble(value(player, BEAT_PHASE)) : 0.0;
+    }
+
+    /**
+     * Get how far the specified player had progressed through its current bar at the moment of the snapshot.
+     *
+     * @param player the player number of interest
+     * @return a value from 0.0 (at the down beat) up to, but not including, 1.0 (the next down beat)
+     */
+    public double getBarPhase(int player) {
+        return isKnown(player)? Double.longBitsToDouble(value(player, BAR_PHASE)) : 0.0;
+    }
+
+    /**
+     * Get the playback pitch of the specified player at the moment of the snapshot.
+     *
+     * @param player the player number of interest
+     * @return the playback speed, where 1.0 is normal speed
+     */
+    public double getPitch(int player) {
+        return isKnown(player)? Double.longBitsToDouble(value(player, PITCH)) : 0.0;
+    }
+
+    /**
+     * Check whether the specified player was playing at the moment of the snapshot.
+     *
+     * @param player the player number of interest
+     * @return {@code true} if the player was playing a track
+     */
+    public boolean isPlaying(int player) {
+        return isKnown(player) && value(player, PLAYING) != 0;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("FrameSnapshot[timestamp:").append(timestamp);
+        sb.append(", frameNumber:").append(frameNumber);
+        for (int player = 0; player < values.length / STRIDE; player++) {
+            if (isKnown(player)) {
+                sb.append(", player ").append(player).append(":[time:").append(getTimeFor(player));
+                sb.append(", beat:").append(getBeatNumber(player)).append(", beatPhase:");
+                sb.append(String.format("%.2f", getBeatPhase(player))).append(", playing:").append(isPlaying(player));
+                sb.append("]");
+            }
+        }
+        return sb.append("]").toString();
+    }
+}
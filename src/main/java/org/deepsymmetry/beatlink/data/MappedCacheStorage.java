@@ -0,0 +1,818 @@
+package org.deepsymmetry.beatlink.data;
+
+import org.deepsymmetry.beatlink.MediaDetails;
+import org.deepsymmetry.beatlink.Util;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.*;
+
+/**
+ * <p>Reads metadata cache files in the indexed format, which are memory-mapped so that entries can be located with a
+ * single hash table probe and read straight out of the mapping, without being inflated or copied. Entries are
+ * returned as read-only slices of the mapping, which stay valid as long as anything refers to them, even after the
+ * cache has been closed. This is safe because a cache file is never rewritten in place: the {@link Writer} builds a
+ * new file alongside it and renames that over the old one, so existing mappings keep seeing the old contents.</p>
+ *
+ * <p>The file starts with a fixed-size header, followed by the entries, each of which is a four-byte length and
+ * then that many bytes of content. The content is stored exactly as it was in the ZIP format, only uncompressed.
+ * After the entries comes the index, an open-addressed hash table of fixed-size slots that map an entry type and
+ * ID to the offset of the entry. Since a single mapping can only cover two gigabytes, the file is mapped in
+ * one-gigabyte chunks, and the writer makes sure that no entry, and not the index, straddles a chunk boundary.
+ * All numbers are big-endian.</p>
+ *
+ * @author James Elliott
+ * @since 0.6.3
+ */
+class MappedCacheStorage implements MetadataCacheStorage {
+
+    private static final Logger logger = LoggerFactory.getLogger(MappedCacheStorage.class);
+
+    /**
+     * The bytes at the start of every indexed metadata cache file, which identify its format.
+     */
+    private static final byte[] MAGIC = {'B', 'L', 'T', 'M', 'C', 'v', '0', '2'};
+
+    /**
+     * The size of the header, which holds the magic bytes, source playlist ID, track count, and the locations of
+     * the index and the entries which are not track data.
+     */
+    private static final int HEADER_SIZE = 64;
+
+    /**
+     * The size of each slot in the index: a four-byte ID, a four-byte type code (zero for an empty slot), and an
+     * eight-byte offset.
+     */
+    private static final int SLOT_SIZE = 16;
+
+    /**
+     * The size of the chunks in which the file is mapped.
+     */
+    private static final long CHUNK_SIZE = 1L << 30;
+
+    /**
+     * Offsets of the header fields.
+     */
+    private static final int SOURCE_PLAYLIST_OFFSET = 8;
+    private static final int TRACK_COUNT_OFFSET = 12;
+    private static final int INDEX_OFFSET_OFFSET = 16;
+    private static final int INDEX_SLOTS_OFFSET = 24;
+    private static final int DETAILS_OFFSET_OFFSET = 32;
+    private static final int TRACK_IDS_OFFSET_OFFSET = 40;
+
+    /**
+     * The bytes at the start of every journal of a cache being written, which identify its format.
+     */
+    private static final byte[] JOURNAL_MAGIC = {'B', 'L', 'T', 'M', 'C', 'j', '0', '1'};
+
+    /**
+     * Journal record tags: an entry that was written, the media details that were written, and a checkpoint, which
+     * promises that everything recorded before it has been written in full.
+     */
+    private static final int JOURNAL_ENTRY = 'E';
+    private static final int JOURNAL_DETAILS = 'D';
+    private static final int JOURNAL_CHECKPOINT = 'C';
+
+    /**
+     * The path name of the file.
+     */
+    private final String name;
+
+    /**
+     * The mappings of the file, one per chunk, or {@code null} once the cache has been closed.
+     */
+    private volatile MappedByteBuffer[] chunks;
+
+    /**
+     * The region of the mapping that holds the index.
+     */
+    private final ByteBuffer index;
+
+    /**
+     * The number of slots in the index, which is a power of two.
+     */
+    private final int indexSlots;
+
+    /**
+     * Holds the ID of the playlist that was used to create the cache, or 0 of it is an all-tracks cache.
+     */
+    private final int sourcePlaylist;
+
+    /**
+     * Holds the number of tracks contained in the cache.
+     */
+    private final int trackCount;
+
+    /**
+     * The offset of the entry holding the raw bytes of the media details, or zero if there are none.
+     */
+    private final long detailsOffset;
+
+    /**
+     * The offset of the entry holding the IDs of the tracks in the cache, in the order they were added.
+     */
+    private final long trackIdsOffset;
+
+    /**
+     * Check whether a file is an indexed metadata cache, by looking for the magic bytes at its start.
+     *
+     * @param file the file to be checked
+     *
+     * @return {@code true} if the file should be opened with this class
+     *
+     * @throws IOException if there is a problem reading the file
+     */
+    static boolean isIndexedCache(File file) throws IOException {
+        final RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            if (raf.length() < HEADER_SIZE) {
+                return false;
+            }
+            final byte[] start = new byte[MAGIC.length];
+            raf.readFully(start);
+            return Arrays.equals(start, MAGIC);
+        } finally {
+            raf.close();
+        }
+    }
+
+    /**
+     * Map the specified file and prepare to serve its contents as a cache.
+     *
+     * @param file the metadata cache file to be served
+     *
+     * @throws IOException if there is a problem reading the file, or if it does not have the right content
+     */
+    MappedCacheStorage(File file) throws IOException {
+        name = file.getPath();
+        final RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            final FileChannel channel = raf.getChannel();
+            final long size = channel.size();
+            if (size < HEADER_SIZE) {
+                throw new IOException("File is too short to be an indexed Beat Link metadata cache: " + file);
+            }
+            final MappedByteBuffer[] mapped = new MappedByteBuffer[(int) ((size + CHUNK_SIZE - 1) / CHUNK_SIZE)];
+            for (int i = 0; i < mapped.length; i++) {
+                final long start = i * CHUNK_SIZE;
+                mapped[i] = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(CHUNK_SIZE, size - start));
+            }
+            chunks = mapped;  // The mappings remain valid after the channel is closed.
+        } finally {
+            raf.close();
+        }
+
+        final ByteBuffer header = chunks[0];
+        for (int i = 0; i < MAGIC.length; i++) {
+            if (header.get(i) != MAGIC[i]) {
+                throw new IOException("File does not contain an indexed Beat Link metadata cache: " + file);
+            }
+        }
+        sourcePlaylist = header.getInt(SOURCE_PLAYLIST_OFFSET);
+        trackCount = header.getInt(TRACK_COUNT_OFFSET);
+        indexSlots = header.getInt(INDEX_SLOTS_OFFSET);
+        detailsOffset = header.getLong(DETAILS_OFFSET_OFFSET);
+        trackIdsOffset = header.getLong(TRACK_IDS_OFFSET_OFFSET);
+        if (indexSlots <= 0 || Integer.bitCount(indexSlots) != 1) {
+            throw new IOException("Metadata cache file " + file + " has an invalid index size: " + indexSlots);
+        }
+        index = region(chunks, header.getLong(INDEX_OFFSET_OFFSET), indexSlots * SLOT_SIZE);
+    }
+
+    /**
+     * Find a region of the file within its mappings.
+     *
+     * @param mapped the mappings of the file
+     * @param offset where the region starts within the file
+     * @param length the number of bytes in the region
+     *
+     * @return a buffer covering exactly that region
+     *
+     * @throws IOException if the region is not within a single chunk of the file
+     */
+    private static ByteBuffer region(MappedByteBuffer[] mapped, long offset, int length) throws IOException {
+        final int chunk = (int) (offset / CHUNK_SIZE);
+        final int start = (int) (offset % CHUNK_SIZE);
+        if (offset < 0 || chunk >= mapped.length || length < 0 || start + (long) length > mapped[chunk].capacity()) {
+            throw new IOException("Metadata cache region of " + length + " bytes at offset " + offset +
+                    " lies outside the file");
+        }
+        final ByteBuffer result = mapped[chunk].duplicate();
+        result.position(start);
+        result.limit(start + length);
+        return result.slice();
+    }
+
+    /**
+     * Get the content of the entry stored at a particular offset.
+     *
+     * @param offset the location of the length which precedes the entry content
+     *
+     * @return a buffer covering the content of the entry
+     *
+     * @throws IOException if the cache has been closed, or the entry is not valid
+     */
+    private ByteBuffer entryAt(long offset) throws IOException {
+        final MappedByteBuffer[] mapped = chunks;
+        if (mapped == null) {
+            throw new IOException("Metadata cache " + name + " has been closed");
+        }
+        final int length = region(mapped, offset, 4).getInt(0);
+        return region(mapped, offset + 4, length);
+    }
+
+    /**
+     * Calculate the index slot at which to start looking for an entry.
+     *
+     * @param typeCode the code identifying the type of entry, which is never zero
+     * @param id the ID of the entry
+     * @param slots the number of slots in the index, a power of two
+     *
+     * @return the first slot to be probed
+     */
+    private static int firstSlot(int typeCode, int id, int slots) {
+        int hash = id * 0x9e3779b9 + typeCode * 0x85ebca6b;
+        hash ^= (hash >>> 16);
+        return hash & (slots - 1);
+    }
+
+    /**
+     * Calculate the code that identifies an entry type in the index, reserving zero for empty slots.
+     *
+     * @param type the entry type
+     *
+     * @return the code stored in the index for entries of that type
+     */
+    private static int typeCode(EntryType type) {
+        return type.ordinal() + 1;
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public int getSourcePlaylist() {
+        return sourcePlaylist;
+    }
+
+    @Override
+    public int getTrackCount() {
+        return trackCount;
+    }
+
+    @Override
+    public MediaDetails getSourceMedia() throws IOException {
+        if (detailsOffset == 0) {
+            return null;
+        }
+        final ByteBuffer entry = entryAt(detailsOffset);
+        final byte[] detailBytes = new byte[entry.remaining()];
+        entry.get(detailBytes);
+        return new MediaDetails(detailBytes, detailBytes.length);
+    }
+
+    @Override
+    public List<Integer> getTrackIds() {
+        try {
+            final ByteBuffer entry = entryAt(trackIdsOffset);
+            final List<Integer> results = new ArrayList<Integer>(entry.remaining() / 4);
+            while (entry.remaining() >= 4) {
+                results.add(entry.getInt());
+            }
+            return Collections.unmodifiableList(results);
+        } catch (IOException e) {
+            throw new IllegalStateException("Unable to read track IDs from metadata cache " + name, e);
+        }
+    }
+
+    @Override
+    public ByteBuffer getEntry(EntryType type, int id) throws IOException {
+        final int code = typeCode(type);
+        int slot = firstSlot(code, id, indexSlots);
+        for (int probes = 0; probes < indexSlots; probes++) {
+            final int base = slot * SLOT_SIZE;
+            final int slotCode = index.getInt(base + 4);
+            if (slotCode == 0) {
+                return null;  // Reached an empty slot, so the entry is not present.
+            }
+            if (slotCode == code && index.getInt(base) == id) {
+                return entryAt(index.getLong(base + 8)).asReadOnlyBuffer();
+            }
+            slot = (slot + 1) & (indexSlots - 1);
+        }
+        return null;
+    }
+
+    @Override
+    public void close() {
+        chunks = null;  // The mappings are released when the garbage collector finds nothing else refers to them.
+    }
+
+    /**
+     * Names the file in which a metadata cache is built before it is renamed into place.
+     *
+     * @param cache the metadata cache file being written
+     *
+     * @return the partial file which holds the entries written so far
+     */
+    static File partialFile(File cache) {
+        return new File(cache.getPath() + ".part");
+    }
+
+    /**
+     * Writes a metadata cache file in the indexed format. Entries are written to a partial file as they are added,
+     * and the index and header are written when the writer is closed, at which point the partial file is renamed to
+     * replace the cache file. So the cache file itself is never modified in place, and caches that have already
+     * mapped an earlier version of it keep working.
+     *
+     * If the writer is given a journal file, it records where each entry was written there, and when
+     * {@link #checkpoint()} is called it makes sure those records reach the journal. If the writer is not closed,
+     * for example because the program was interrupted, a new writer given the same files picks up the entries that
+     * had been written as of the last checkpoint, so the work of fetching them does not need to be repeated. The
+     * journal is deleted once the cache is closed.
+     *
+     * Writers are not thread-safe; threads sharing one must synchronize on it.
+     */
+    static class Writer {
+
+        /**
+         * The channel to which the file is being written.
+         */
+        private final FileChannel channel;
+
+        /**
+         * The partial file being written.
+         */
+        private final RandomAccessFile raf;
+
+        /**
+         * The cache file that will be replaced once writing is complete.
+         */
+        private final File file;
+
+        /**
+         * The partial file in which the entries are written until then.
+         */
+        private final File partial;
+
+        /**
+         * The playlist the cache was created from, or zero for all tracks.
+         */
+        private final int sourcePlaylist;
+
+        /**
+         * The number of tracks in that playlist or the whole media.
+         */
+        private final int trackCount;
+
+        /**
+         * Where the next entry will be written.
+         */
+        private long position = HEADER_SIZE;
+
+        /**
+         * The type codes of the entries written so far.
+         */
+        private final List<Integer> types = new ArrayList<Integer>();
+
+        /**
+         * The IDs of the entries written so far.
+         */
+        private final List<Integer> ids = new ArrayList<Integer>();
+
+        /**
+         * The offsets of the entries written so far.
+         */
+        private final List<Long> offsets = new ArrayList<Long>();
+
+        /**
+         * The IDs of the tracks whose metadata has been written, in order.
+         */
+        private final List<Integer> trackIds = new ArrayList<Integer>();
+
+        /**
+         * Combines the type code and ID of each entry written so far, to quickly tell whether one is present.
+         */
+        private final Set<Long> keys = new HashSet<Long>();
+
+        /**
+         * Where the media details were written, if they have been.
+         */
+        private long detailsOffset = 0;
+
+        /**
+         * The file in which progress is being journaled, or {@code null} if it is not.
+         */
+        private final File journalFile;
+
+        /**
+         * The stream recording progress to the journal, or {@code null} if there is no journal.
+         */
+        private DataOutputStream journal;
+
+        /**
+         * The number of tracks which were already in the file when it was opened, because they were written before
+         * an interrupted attempt to create the cache.
+         */
+        private int resumedTrackCount;
+
+        /**
+         * Prepare to write a new cache file, which will replace any existing one when the writer is closed.
+         *
+         * @param file the file to be written
+         * @param sourcePlaylist the playlist the cache is being created from, or zero for all tracks
+         * @param trackCount the number of tracks in that playlist, or on the media
+         *
+         * @throws IOException if there is a problem creating the partial file
+         */
+        Writer(File file, int sourcePlaylist, int trackCount) throws IOException {
+            this(file, sourcePlaylist, trackCount, null, null);
+        }
+
+        /**
+         * Prepare to write entries to a file, journaling progress so that an interrupted attempt can be resumed. If
+         * the journal exists, was created with the same {@code identity}, and matches the content of the partial
+         * file, the entries written before its last checkpoint are kept, and any written after that are discarded.
+         * Otherwise the partial file is started over.
+         *
+         * @param file the file to be written
+         * @param sourcePlaylist the playlist the cache is being created from, or zero for all tracks
+         * @param trackCount the number of tracks in that playlist, or on the media
+         * @param journalFile the file in which to journal progress, or {@code null} to keep no journal
+         * @param identity describes the cache being created, so a journal left by an attempt to create a different
+         *                 one is not mistakenly resumed
+         *
+         * @throws IOException if there is a problem creating the partial file or the journal
+         */
+        Writer(File file, int sourcePlaylist, int trackCount, File journalFile, String identity) throws IOException {
+            this.file = file;
+            partial = partialFile(file);
+            raf = new RandomAccessFile(partial, "rw");
+            channel = raf.getChannel();
+            this.sourcePlaylist = sourcePlaylist;
+            this.trackCount = trackCount;
+            this.journalFile = journalFile;
+            try {
+                if (journalFile == null || !journalFile.exists() || !replayJournal(identity)) {
+                    raf.setLength(0);
+                    position = HEADER_SIZE;
+                }
+                if (journalFile != null) {
+                    startJournal(identity);
+                }
+            } catch (IOException e) {
+                abandon();
+                throw e;
+            }
+        }
+
+        /**
+         * Recover the entries recorded in the journal up to its last checkpoint, and discard anything written to the
+         * file after that.
+         *
+         * @param identity the description of the cache being created, which must match the one in the journal
+         *
+         * @return {@code true} if the journal could be used, {@code false} if the file needs to be started over
+         *
+         * @throws IOException if there is a problem reading either file
+         */
+        private boolean replayJournal(String identity) throws IOException {
+            final List<Integer> pendingTypes = new ArrayList<Integer>();
+            final List<Integer> pendingIds = new ArrayList<Integer>();
+            final List<Long> pendingOffsets = new ArrayList<Long>();
+            long pendingDetails = 0;
+            long checkpoint = -1;
+            final DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(journalFile)));
+            try {
+                final byte[] magic = new byte[JOURNAL_MAGIC.length];
+                in.readFully(magic);
+                if (!Arrays.equals(magic, JOURNAL_MAGIC) || !in.readUTF().equals(identity)) {
+                    logger.info("Ignoring journal {} left by an attempt to create a different metadata cache", journalFile);
+                    return false;
+                }
+                while (true) {
+                    final int tag = in.read();
+                    if (tag == JOURNAL_ENTRY) {
+                        pendingTypes.add(in.readInt());
+                        pendingIds.add(in.readInt());
+                        pendingOffsets.add(in.readLong());
+                    } else if (tag == JOURNAL_DETAILS) {
+                        pendingDetails = in.readLong();
+                    } else if (tag == JOURNAL_CHECKPOINT) {
+                        final long end = in.readLong();
+                        if (end > raf.length()) {
+                            break;  // The file did not keep everything the journal says was written.
+                        }
+                        for (int i = 0; i < pendingTypes.size(); i++) {
+                            record(pendingTypes.get(i), pendingIds.get(i), pendingOffsets.get(i));
+                        }
+                        pendingTypes.clear();
+                        pendingIds.clear();
+                        pendingOffsets.clear();
+                        detailsOffset = pendingDetails;
+                        checkpoint = end;
+                    } else {
+                        break;  // The end of the journal, or a record that was only partly written.
+                    }
+                }
+            } catch (EOFException e) {
+                // The last record was only partly written, so we stop at the checkpoint before it.
+            } finally {
+                in.close();
+            }
+            if (checkpoint < HEADER_SIZE) {
+                types.clear();
+                ids.clear();
+                offsets.clear();
+                trackIds.clear();
+                keys.clear();
+                detailsOffset = 0;
+                return false;
+            }
+            raf.setLength(checkpoint);
+            position = checkpoint;
+            resumedTrackCount = trackIds.size();
+            logger.info("Resuming creation of metadata cache {} with {} tracks already written", journalFile, resumedTrackCount);
+            return true;
+        }
+
+        /**
+         * Create a fresh journal which describes the entries that are already in the file, so that records left after
+         * the last checkpoint of an earlier journal are not mistaken for new ones.
+         *
+         * @param identity the description of the cache being created
+         *
+         * @throws IOException if there is a problem writing the journal
+         */
+        private void startJournal(String identity) throws IOException {
+            journal = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(journalFile)));
+            journal.write(JOURNAL_MAGIC);
+            journal.writeUTF(identity);
+            if (detailsOffset != 0) {
+                journal.write(JOURNAL_DETAILS);
+                journal.writeLong(detailsOffset);
+            }
+            for (int i = 0; i < types.size(); i++) {
+                journalEntry(types.get(i), ids.get(i), offsets.get(i));
+            }
+            checkpoint();
+        }
+
+        /**
+         * Record an entry in the journal, if there is one.
+         *
+         * @param type the type code of the entry
+         * @param id the ID of the entry
+         * @param offset where it was written
+         *
+         * @throws IOException if there is a problem writing the journal
+         */
+        private void journalEntry(int type, int id, long offset) throws IOException {
+            if (journal != null) {
+                journal.write(JOURNAL_ENTRY);
+                journal.writeInt(type);
+                journal.writeInt(id);
+                journal.writeLong(offset);
+            }
+        }
+
+        /**
+         * Remember an entry that has been written, so it is included in the index.
+         *
+         * @param type the type code of the entry
+         * @param id the ID of the entry
+         * @param offset where it was written
+         */
+        private void record(int type, int id, long offset) {
+            types.add(type);
+            ids.add(id);
+            offsets.add(offset);
+            keys.add(((long) type << 32) | (id & 0xffffffffL));
+            if (type == typeCode(EntryType.METADATA)) {
+                trackIds.add(id);
+            }
+        }
+
+        /**
+         * Write a length-prefixed entry at the end of the file, starting a new chunk first if it would otherwise
+         * straddle a chunk boundary.
+         *
+         * @param content the content of the entry
+         *
+         * @return the offset at which the entry was written
+         *
+         * @throws IOException if there is a problem writing, or the entry is too big for a chunk
+         */
+        private long append(ByteBuffer content) throws IOException {
+            final long size = 4L + content.remaining();
+            if (size > CHUNK_SIZE) {
+                throw new IOException("Metadata cache entry of " + size + " bytes is too large");
+            }
+            if ((position % CHUNK_SIZE) + size > CHUNK_SIZE) {
+                position = ((position / CHUNK_SIZE) + 1) * CHUNK_SIZE;  // Leave the rest of this chunk empty.
+            }
+            final long result = position;
+            final ByteBuffer length = ByteBuffer.allocate(4);
+            length.putInt(content.remaining()).flip();
+            channel.position(position);
+            Util.writeFully(length, channel);
+            Util.writeFully(content, channel);
+            position += size;
+            return result;
+        }
+
+        /**
+         * Record the details of the media from which the cache is being created.
+         *
+         * @param details the raw bytes of the media details
+         *
+         * @throws IOException if there is a problem writing
+         */
+        void addMediaDetails(ByteBuffer details) throws IOException {
+            detailsOffset = append(details);
+            if (journal != null) {
+                journal.write(JOURNAL_DETAILS);
+                journal.writeLong(detailsOffset);
+            }
+        }
+
+        /**
+         * Check whether the media details have been written, perhaps before an interrupted attempt was resumed.
+         *
+         * @return {@code true} if {@link #addMediaDetails(ByteBuffer)} does not need to be called
+         */
+        boolean hasMediaDetails() {
+            return detailsOffset != 0;
+        }
+
+        /**
+         * Add an entry to the cache. Track metadata entries also add the track to the list returned by
+         * {@link MappedCacheStorage#getTrackIds()}.
+         *
+         * @param type the kind of entry
+         * @param id the rekordbox ID of the track, or the artwork ID for album art
+         * @param content the content of the entry
+         *
+         * @throws IOException if there is a problem writing
+         */
+        void addEntry(EntryType type, int id, ByteBuffer content) throws IOException {
+            final long offset = append(content);
+            record(typeCode(type), id, offset);
+            journalEntry(typeCode(type), id, offset);
+        }
+
+        /**
+         * Check whether an entry has been written, perhaps before an interrupted attempt was resumed.
+         *
+         * @param type the kind of entry
+         * @param id the rekordbox ID of the track, or the artwork ID for album art
+         *
+         * @return {@code true} if the entry is already in the file
+         */
+        boolean hasEntry(EntryType type, int id) {
+            return keys.contains(((long) typeCode(type) << 32) | (id & 0xffffffffL));
+        }
+
+        /**
+         * Check how many tracks were kept from an interrupted attempt to create the cache.
+         *
+         * @return the number of tracks whose metadata was in the file when this writer opened it
+         */
+        int getResumedTrackCount() {
+            return resumedTrackCount;
+        }
+
+        /**
+         * Mark that every entry added so far is complete, so that if this writer is abandoned, a new one given the
+         * same journal will keep them. Entries added after the last checkpoint are discarded when resuming, so this
+         * should be called when a track and all its related entries have been added. Does nothing if there is no
+         * journal.
+         *
+         * @throws IOException if there is a problem writing the journal
+         */
+        void checkpoint() throws IOException {
+            if (journal != null) {
+                channel.force(false);  // The entries must be on disk before the journal promises they are.
+                journal.write(JOURNAL_CHECKPOINT);
+                journal.writeLong(position);
+                journal.flush();
+            }
+        }
+
+        /**
+         * Write the list of track IDs, the index, and the header, close the partial file, and rename it to replace
+         * the cache file.
+         *
+         * @throws IOException if there is a problem writing, or the cache file could not be replaced
+         */
+        void close() throws IOException {
+            try {
+                final ByteBuffer trackIdBytes = ByteBuffer.allocate(trackIds.size() * 4);
+                for (int id : trackIds) {
+                    trackIdBytes.putInt(id);
+                }
+                trackIdBytes.flip();
+                final long trackIdsOffset = append(trackIdBytes);
+
+                int slots = 16;
+                while (slots < types.size() * 2) {
+                    slots *= 2;
+                }
+                final ByteBuffer table = ByteBuffer.allocate(slots * SLOT_SIZE);
+                for (int i = 0; i < types.size(); i++) {
+                    int slot = firstSlot(types.get(i), ids.get(i), slots);
+                    while (true) {
+                        final int base = slot * SLOT_SIZE;
+                        final int existing = table.getInt(base + 4);
+                        if (existing == 0) {
+                            table.putInt(base, ids.get(i));
+                            table.putInt(base + 4, types.get(i));
+                            table.putLong(base + 8, offsets.get(i));
+                            break;
+                        }
+                        if (existing == types.get(i) && table.getInt(base) == ids.get(i)) {
+                            break;  // A duplicate entry; the first one wins.
+                        }
+                        slot = (slot + 1) & (slots - 1);
+                    }
+                }
+                // The index is written as an entry so that it gets the same chunk alignment; it starts after the length.
+                final long indexOffset = append(table) + 4;
+
+                final ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+                header.put(MAGIC);
+                header.putInt(SOURCE_PLAYLIST_OFFSET, sourcePlaylist);
+                header.putInt(TRACK_COUNT_OFFSET, trackCount);
+                header.putLong(INDEX_OFFSET_OFFSET, indexOffset);
+                header.putInt(INDEX_SLOTS_OFFSET, slots);
+                header.putLong(DETAILS_OFFSET_OFFSET, detailsOffset);
+                header.putLong(TRACK_IDS_OFFSET_OFFSET, trackIdsOffset);
+                header.clear();
+                channel.position(0);
+                Util.writeFully(header, channel);
+                channel.force(false);
+            } finally {
+                raf.close();
+                closeJournal();
+            }
+            // Renaming replaces the file atomically where the platform allows it; otherwise remove the old one first.
+            if (!partial.renameTo(file) && (!file.delete() || !partial.renameTo(file))) {
+                throw new IOException("Unable to move completed metadata cache " + partial + " into place as " + file);
+            }
+            if (journalFile != null && !journalFile.delete()) {
+                logger.warn("Unable to delete journal of completed metadata cache, {}", journalFile);
+            }
+        }
+
+        /**
+         * Close the journal stream, if there is one, leaving the file in place.
+         */
+        private void closeJournal() {
+            if (journal != null) {
+                try {
+                    journal.close();
+                } catch (IOException e) {
+                    logger.warn("Problem closing metadata cache journal", e);
+                }
+                journal = null;
+            }
+        }
+
+        /**
+         * Give up on writing the file, leaving any existing cache file untouched. If there is a journal, it and the
+         * partial file are left in place so the attempt can be resumed; otherwise the partial file is deleted.
+         */
+        void abandon() {
+            final boolean resumable = journal != null;
+            closeJournal();
+            try {
+                raf.close();
+            } catch (IOException e) {
+                logger.warn("Problem closing abandoned metadata cache file", e);
+            }
+            if (!resumable && !partial.delete()) {
+                logger.warn("Unable to delete partial metadata cache file, {}", partial);
+            }
+        }
+
+        /**
+         * Give up on writing the file for good, deleting the partial file and the journal, if any, so that the
+         * attempt will not be resumed. Any existing cache file is left untouched.
+         */
+        void discard() {
+            abandon();
+            if (partial.exists() && !partial.delete()) {
+                logger.warn("Unable to delete partial metadata cache file, {}", partial);
+            }
+            if (journalFile != null && journalFile.exists() && !journalFile.delete()) {
+                logger.warn("Unable to delete metadata cache journal, {}", journalFile);
+            }
+        }
+    }
+}
@@ -2,11 +2,14 @@ package org.deepsymmetry.beatlink.data;
 
 import org.deepsymmetry.beatlink.CdjStatus;
 import org.deepsymmetry.beatlink.MediaDetails;
-import org.deepsymmetry.beatlink.Util;
+import org.deepsymmetry.beatlink.Scheduler;
 import org.deepsymmetry.beatlink.dbserver.Client;
 import org.deepsymmetry.beatlink.dbserver.ConnectionManager;
 import org.deepsymmetry.beatlink.dbserver.Message;
 import org.deepsymmetry.beatlink.dbserver.NumberField;
+import org.deepsymmetry.beatlink.dbserver.StringField;
+import org.deepsymmetry.cratedigger.Database;
+import org.deepsymmetry.cratedigger.pdb.RekordboxPdb;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -18,14 +21,16 @@ import java.util.*;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicLong;
-import java.util.zip.ZipEntry;
-import java.util.zip.ZipFile;
-import java.util.zip.ZipOutputStream;
 
 /**
- * A ZIP-file based cache of all the kinds of track metadata that we need, so we can operate with full functionality
+ * A file-based cache of all the kinds of track metadata that we need, so we can operate with full functionality
  * even when metadata requests are difficult or impossible because four CDJs are all using the same media.
  *
+ * Caches are now created in an indexed format which is memory-mapped, so looking up an entry takes a single probe
+ * of a hash table, and the entry is copied straight from the mapping. Caches in the original ZIP format, which had
+ * to find entries by name and inflate them on each use, can still be used, and can be converted to the new format
+ * by {@link #convertMetadataCache(File, File)}.
+ *
  * Although this class implements {@link MetadataProvider}, it should <em>not</em> be passed to
  * {@link MetadataFinder#addMetadataProvider(MetadataProvider)} because there is all kinds of special handling
  * needed to deal in a backwards-compatible way with older cache files that do not store media details. Instead,
@@ -44,9 +49,9 @@ public class MetadataCache implements MetadataProvider {
     private static final Logger logger = LoggerFactory.getLogger(MetadataCache.class);
 
     /**
-     * The file that contains our cached information.
+     * Reads the entries of the file that contains our cached information.
      */
-    private final ZipFile zipFile;
+    private final MetadataCacheStorage storage;
 
 
     /**
@@ -66,29 +71,28 @@ public class MetadataCache implements MetadataProvider {
     public final MediaDetails sourceMedia;
 
     /**
-     * Open the specified ZIP file and prepare to serve its contents as a cache. When you are finished with the cache,
-     * be sure to call its {@link #close()} method to free up system resources.
+     * Open the specified metadata cache file, in either the indexed or the original ZIP format, and prepare to serve
+     * its contents as a cache. When you are finished with the cache, be sure to call its {@link #close()} method to
+     * free up system resources.
      *
      * @param file the metadata cache file to be served.
      *
      * @throws IOException if there is a problem reading the file, or if it does not have the right content
      */
     public MetadataCache(File file) throws IOException {
-        zipFile = new ZipFile(file, ZipFile.OPEN_READ);
-        String tag = getCacheFormatEntry();
-        if (tag == null || !tag.startsWith(CACHE_FORMAT_IDENTIFIER)) {
-            try {
-                zipFile.close();
-            } catch (Exception e) {
-                logger.error("Problem re-closing newly opened candidate metadata cache", e);
-            }
-            throw new IOException("File does not contain a Beat Link metadata cache: " + file +
-                    " (looking for format identifier \"" + CACHE_FORMAT_IDENTIFIER + "\", found: " + tag);
+        if (MappedCacheStorage.isIndexedCache(file)) {
+            storage = new MappedCacheStorage(file);
+        } else {
+            storage = new ZipCacheStorage(file);
+        }
+        sourcePlaylist = storage.getSourcePlaylist();
+        trackCount = storage.getTrackCount();
+        try {
+            sourceMedia = storage.getSourceMedia();
+        } catch (IOException e) {
+            storage.close();
+            throw e;
         }
-        String[] pieces = tag.split(":");
-        sourcePlaylist = Integer.parseInt(pieces[1]);
-        trackCount = Integer.parseInt(pieces[2]);
-        sourceMedia = getCacheMediaDetails();
     }
 
     /**
@@ -98,7 +102,7 @@ public class MetadataCache implements MetadataProvider {
      * @throws IOException if there is a problem closing the cache
      */
     public void close() throws IOException {
-        zipFile.close();
+        storage.close();
     }
 
     /**
@@ -107,395 +111,36 @@ public class MetadataCache implements MetadataProvider {
      * @return the path name of the metadata cache file.
      */
     public String getName() {
-        return zipFile.getName();
+        return storage.getName();
     }
 
     /**
-     * The comment string used to identify a ZIP file as one of our metadata caches.
+     * The comment string used to identify a ZIP file as one of our metadata caches in the original format.
      */
     @SuppressWarnings("WeakerAccess")
     public static final String CACHE_FORMAT_IDENTIFIER = "BeatLink Metadata Cache version 1";
 
-    /**
-     * The root under which all zip file entries will be created in our cache metadata files.
-     */
-    private static final String CACHE_PREFIX = "BLTMetaCache/";
-
-    /**
-     * The file entry whose content will be the cache format identifier.
-     */
-    private static final String CACHE_FORMAT_ENTRY = CACHE_PREFIX + "version";
-
-    /**
-     * The file entry whose content will be the details about the source media, if available.
-     */
-    private static final String CACHE_DETAILS_ENTRY = CACHE_PREFIX + "mediaDetails";
-
-    /**
-     * The prefix for cache file entries that will store track metadata.
-     */
-    private static final String CACHE_METADATA_ENTRY_PREFIX = CACHE_PREFIX + "metadata/";
-
-    /**
-     * The prefix for cache file entries that will store album art.
-     */
-    private static final String CACHE_ART_ENTRY_PREFIX = CACHE_PREFIX + "artwork/";
-
-    /**
-     * The prefix for cache file entries that will store beat grids.
-     */
-    private static final String CACHE_BEAT_GRID_ENTRY_PREFIX = CACHE_PREFIX + "beatGrid/";
-
-    /**
-     * The prefix for cache file entries that will store beat grids.
-     */
-    private static final String CACHE_CUE_LIST_ENTRY_PREFIX = CACHE_PREFIX + "cueList/";
-
-    /**
-     * The prefix for cache file entries that will store waveform previews.
-     */
-    private static final String CACHE_WAVEFORM_PREVIEW_ENTRY_PREFIX = CACHE_PREFIX + "wavePrev/";
-
-    /**
-     * The prefix for cache file entries that will store waveform previews.
-     */
-    private static final String CACHE_WAVEFORM_DETAIL_ENTRY_PREFIX = CACHE_PREFIX + "waveform/";
-
     /**
      * Used to mark the end of the metadata items in each cache entry, just like when reading from the server.
      */
-    private static final Message MENU_FOOTER_MESSAGE = new Message(0, Message.KnownType.MENU_FOOTER);
-
-    /**
-     * Names the appropriate zip file entry for caching a track's metadata.
-     *
-     * @param rekordboxId the id of the track being cached or looked up
-     *
-     * @return the name of the entry where that track's metadata should be stored
-     */
-    static String getMetadataEntryName(int rekordboxId) {
-        return CACHE_METADATA_ENTRY_PREFIX + rekordboxId;
-    }
-
-    /**
-     * Names the appropriate zip file entry for caching album art.
-     *
-     * @param artworkId the database ID of the artwork being cached or looked up
-     *
-     * @return the name of entry where that artwork should be stored
-     */
-    static String getArtworkEntryName(int artworkId) {
-        return CACHE_ART_ENTRY_PREFIX + artworkId + ".jpg";
-    }
-
-    /**
-     * Names the appropriate zip file entry for caching a track's beat grid.
-     *
-     * @param rekordboxId the id of the track being cached or looked up
-     *
-     * @return the name of the entry where that track's beat grid should be stored
-     */
-    static String getBeatGridEntryName(int rekordboxId) {
-        return CACHE_BEAT_GRID_ENTRY_PREFIX + rekordboxId;
-    }
-
-    /**
-     * Names the appropriate zip file entry for caching a track's cue list.
-     *
-     * @param rekordboxId the id of the track being cached or looked up
-     *
-     * @return the name of the entry where that track's cue list should be stored
-     */
-    static String getCueListEntryName(int rekordboxId) {
-        return CACHE_CUE_LIST_ENTRY_PREFIX + rekordboxId;
-    }
-
-    /**
-     * Names the appropriate zip file entry for caching a track's waveform preview.
-     *
-     * @param rekordboxId the id of the track being cached or looked up
-     *
-     * @return the name of the entry where that track's waveform preview should be stored
-     */
-    static String getWaveformPreviewEntryName(int rekordboxId) {
-        return CACHE_WAVEFORM_PREVIEW_ENTRY_PREFIX + rekordboxId;
-    }
+    static final Message MENU_FOOTER_MESSAGE = new Message(0, Message.KnownType.MENU_FOOTER);
 
     /**
-     * Names the appropriate zip file entry for caching a track's waveform detail.
+     * Encode messages the way they are sent over the network, for storing in a cache file.
      *
-     * @param rekordboxId the id of the track being cached or looked up
+     * @param messages the messages to be encoded
      *
-     * @return the name of the entry where that track's waveform detail should be stored
-     */
-    static String getWaveformDetailEntryName(int rekordboxId) {
-        return CACHE_WAVEFORM_DETAIL_ENTRY_PREFIX + rekordboxId;
-    }
-
-    /**
-     * Finish the process of copying a list of tracks to a metadata cache, once they have been listed. This code
-     * is shared between the implementations that work with the full track list and with playlists, and invoked
-     * by the {@link MetadataFinder}.
+     * @return a buffer holding the encoded messages
      *
-     * @param trackListEntries the list of menu items identifying which tracks need to be copied to the metadata
-     *                         cache
-     * @param playlistId the id of playlist being cached, or 0 of all tracks are being cached
-     * @param client the connection to the dbserver on the player whose metadata is being cached
-     * @param slot the slot in which the media to be cached can be found
-     * @param cache the file into which the metadata cache should be written
-     * @param listener will be informed after each track is added to the cache file being created and offered
-     *                 the opportunity to cancel the process
-     *
-     * @throws IOException if there is a problem communicating with the player or writing the cache file.
-     * @throws TimeoutException if we are unable to lock the client for menu operations
+     * @throws IOException if there is a problem encoding them
      */
-    static void copyTracksToCache(List<Message> trackListEntries, int playlistId, Client client, SlotReference slot,
-                                  File cache, MetadataCacheCreationListener listener)
-            throws IOException, TimeoutException {
-        FileOutputStream fos = null;
-        BufferedOutputStream bos = null;
-        ZipOutputStream zos = null;
-        WritableByteChannel channel = null;
-        final Set<Integer> tracksAdded = new HashSet<Integer>();
-        final Set<Integer> artworkAdded = new HashSet<Integer>();
-        try {
-            fos = new FileOutputStream(cache);
-            bos = new BufferedOutputStream(fos);
-            zos = new ZipOutputStream(bos);
-            zos.setMethod(ZipOutputStream.DEFLATED);
-
-            addCacheFormatEntry(trackListEntries, playlistId, zos);
-            channel = Channels.newChannel(zos);
-            addCacheDetailsEntry(slot, zos, channel);
-
-            // Write the actual metadata entries
-            final int totalToCopy = trackListEntries.size();
-            TrackMetadata lastTrackAdded = null;
-            int tracksCopied = 0;
-
-            for (Message entry : trackListEntries) {
-                if (entry.getMenuItemType() == Message.MenuItemType.UNKNOWN) {
-                    logger.warn("Encountered unrecognized track list entry item type: {}", entry);
-                }
-
-                int rekordboxId = (int)((NumberField)entry.arguments.get(1)).getValue();
-                if (!tracksAdded.contains(rekordboxId)) {  // Ignore extra copies of a track present on a playlist.
-                    lastTrackAdded = copyTrackToCache(client, slot, zos, channel, artworkAdded, rekordboxId);
-                    tracksAdded.add(rekordboxId);
-                }
-
-                if (listener != null) {
-                    if (!listener.cacheCreationContinuing(lastTrackAdded, ++tracksCopied, totalToCopy)) {
-                        logger.info("Track metadata cache creation canceled by listener");
-                        if (!cache.delete()) {
-                            logger.warn("Unable to delete metadata cache file, {}", cache);
-                        }
-                        return;
-                    }
-                }
-
-                Thread.sleep(getCachePauseInterval());
-            }
-        } catch (InterruptedException e) {
-            logger.warn("Interrupted while building metadata cache file, aborting", e);
-            if (!cache.delete()) {
-                logger.warn("Unable to delete metadata cache file, {}", cache);
-            }
-        } finally {
-            try {
-                if (channel != null) {
-                    channel.close();
-                }
-            } catch (Exception e) {
-                logger.error("Problem closing byte channel for writing to metadata cache", e);
-            }
-            try {
-                if (zos != null) {
-                    zos.close();
-                }
-            } catch (Exception e) {
-                logger.error("Problem closing Zip Output Stream of metadata cache", e);
-            }
-            try {
-                if (bos != null) {
-                    bos.close();
-                }
-            } catch (Exception e) {
-                logger.error("Problem closing Buffered Output Stream of metadata cache", e);
-            }
-            try {
-                if (fos != null) {
-                    fos.close();
-                }
-            } catch (Exception e) {
-                logger.error("Problem closing File Output Stream of metadata cache", e);
-            }
-        }
-    }
-
-    /**
-     * Add a marker so we can recognize this as a metadata archive. I would use the ZipFile comment, but
-     * that is not available until Java 7, and Beat Link is supposed to be backwards compatible with Java 6.
-     * Since we are doing this anyway, we can also provide information about the nature of the cache, and
-     * how many metadata entries it contains, which is useful for auto-attachment.
-     *
-     * @param trackListEntries the tracks contained in the cache, so we can record the number
-     * @param playlistId the playlist contained in the cache, or 0 if it is all tracks from the media
-     * @param zos the stream to which the ZipFile is being written
-     *
-     * @throws IOException if there is a problem creating the format entry
-     */
-    private static void addCacheFormatEntry(List<Message> trackListEntries, int playlistId, ZipOutputStream zos) throws IOException {
-        // Add a marker so we can recognize this as a metadata archive. I would use the ZipFile comment, but
-        // that is not available until Java 7, and Beat Link is supposed to be backwards compatible with Java 6.
-        // Since we are doing this anyway, we can also provide information about the nature of the cache, and
-        // how many metadata entries it contains, which is useful for auto-attachment.
-        zos.putNextEntry(new ZipEntry(CACHE_FORMAT_ENTRY));
-        String formatEntry = CACHE_FORMAT_IDENTIFIER + ":" + playlistId + ":" + trackListEntries.size();
-        zos.write(formatEntry.getBytes("UTF-8"));
-    }
-
-    /**
-     * Record the details of the media being cached, to make it easier to recognize, now that we have access to that
-     * information.
-     *
-     * @param slot the slot from which a metadata cache is being created
-     * @param zos the stream to which the ZipFile is being written
-     * @param channel the low-level channel to which the cache is being written
-     *
-     * @throws IOException if there is a problem writing the media details entry
-     */
-    private static void addCacheDetailsEntry(SlotReference slot, ZipOutputStream zos, WritableByteChannel channel) throws IOException {
-        // Record the details of the media being cached, to make it easier to recognize now that we can.
-        MediaDetails details = MetadataFinder.getInstance().getMediaDetailsFor(slot);
-        if (details != null) {
-            zos.putNextEntry(new ZipEntry(CACHE_DETAILS_ENTRY));
-            Util.writeFully(details.getRawBytes(), channel);
-        }
-    }
-
-    /**
-     * Copy a single track's metadata and related objects to a cache file being created.
-     *
-     * @param client the connection to the database server from which the art can be obtained
-     * @param slot the player slot from which the art is being copied
-     * @param zos the stream to which the cache is being written
-     * @param channel the low-level channel to which the cache is being written
-     * @param artworkAdded collects the artwork that has already been added to the cache, to avoid duplicates
-     * @param rekordboxId the database ID of the track to be cached
-     *
-     * @return the track metadata object that was written to the cache, or {@code null} if it could not be found
-     *
-     * @throws IOException if there is a problem communicating with the player or writing to the cache file
-     * @throws InterruptedException if the thread is interrupted while trying to lock the client for menu operations
-     * @throws TimeoutException if we are unable to lock the client for menu operations
-     */
-    private static TrackMetadata copyTrackToCache(Client client, SlotReference slot, ZipOutputStream zos,
-                                                  WritableByteChannel channel, Set<Integer> artworkAdded, int rekordboxId)
-            throws IOException, TimeoutException, InterruptedException {
-
-        final TrackMetadata track = MetadataFinder.getInstance().queryMetadata(new DataReference(slot, rekordboxId), CdjStatus.TrackType.REKORDBOX, client);
-        if (track != null) {
-            logger.debug("Adding metadata with ID {}", track.trackReference.rekordboxId);
-            zos.putNextEntry(new ZipEntry(getMetadataEntryName(track.trackReference.rekordboxId)));
-            for (Message metadataItem : track.rawItems) {
-                metadataItem.write(channel);
-            }
-            MENU_FOOTER_MESSAGE.write(channel);  // So we know to stop reading
-        } else {
-            logger.warn("Unable to retrieve metadata with ID {}", rekordboxId);
-            return null;
-        }
-
-        if (track.getArtworkId() != 0 && !artworkAdded.contains(track.getArtworkId())) {
-            logger.debug("Adding artwork with ID {}", track.getArtworkId());
-            zos.putNextEntry(new ZipEntry(getArtworkEntryName(track.getArtworkId())));
-            final AlbumArt art = ArtFinder.getInstance().getArtwork(track.getArtworkId(), slot, CdjStatus.TrackType.REKORDBOX, client);
-            if (art != null) {
-                Util.writeFully(art.getRawBytes(), channel);
-                artworkAdded.add(track.getArtworkId());
-            }
-        }
-
-        final BeatGrid beatGrid = BeatGridFinder.getInstance().getBeatGrid(rekordboxId, slot, client);
-        if (beatGrid != null) {
-            logger.debug("Adding beat grid with ID {}", rekordboxId);
-            zos.putNextEntry(new ZipEntry(getBeatGridEntryName(rekordboxId)));
-            Util.writeFully(beatGrid.getRawData(), channel);
-        }
-
-        final CueList cueList = MetadataFinder.getInstance().getCueList(rekordboxId, slot.slot, client);
-        if (cueList != null) {
-            logger.debug("Adding cue list entry with ID {}", rekordboxId);
-            zos.putNextEntry(new ZipEntry((getCueListEntryName(rekordboxId))));
-            cueList.rawMessage.write(channel);
-        }
-
-        final WaveformPreview preview = WaveformFinder.getInstance().getWaveformPreview(rekordboxId, slot, client);
-        if (preview != null) {
-            logger.debug("Adding waveform preview entry with ID {}", rekordboxId);
-            zos.putNextEntry(new ZipEntry((getWaveformPreviewEntryName(rekordboxId))));
-            preview.rawMessage.write(channel);
-        }
-
-        final WaveformDetail detail = WaveformFinder.getInstance().getWaveformDetail(rekordboxId, slot, client);
-        if (detail != null) {
-            logger.debug("Adding waveform detail entry with ID {}", rekordboxId);
-            zos.putNextEntry(new ZipEntry((getWaveformDetailEntryName(rekordboxId))));
-            detail.rawMessage.write(channel);
-        }
-
-        return track;
-    }
-
-    /**
-     * Find and read the cache format entry in a metadata cache file.
-     *
-     * @return the content of the format entry, or {@code null} if none was found
-     *
-     * @throws IOException if there is a problem reading the file
-     */
-    private String getCacheFormatEntry() throws IOException {
-        ZipEntry zipEntry = zipFile.getEntry(CACHE_FORMAT_ENTRY);
-        InputStream is = zipFile.getInputStream(zipEntry);
-        try {
-            Scanner s = new Scanner(is, "UTF-8").useDelimiter("\\A");
-            String tag = null;
-            if (s.hasNext()) tag = s.next();
-            return tag;
-        } finally {
-            is.close();
-        }
-    }
-
-    /**
-     * Retrieves the details about the media from which a metadata cache was created, if available. This will only
-     * return a non-{@code null} value for caches created by Beat Link 0.4.1 or later.
-     *
-     * @return the details about the media from which the cache was created or {@code null} if unknown
-     *
-     * @throws IOException if there is a problem reading the file
-     *
-     * @since 0.4.1
-     */
-    private MediaDetails getCacheMediaDetails() throws IOException {
-        ZipEntry zipEntry = zipFile.getEntry(CACHE_DETAILS_ENTRY);
-        if (zipEntry == null) {
-            return null;  // No details available.
-        }
-        InputStream is = zipFile.getInputStream(zipEntry);
-        try {
-            DataInputStream dis = new DataInputStream(is);
-            try {
-                byte[] detailBytes = new byte[(int)zipEntry.getSize()];
-                dis.readFully(detailBytes);
-                return new MediaDetails(detailBytes, detailBytes.length);
-            } finally {
-                dis.close();
-            }
-        } finally {
-            is.close();
+    static ByteBuffer encode(Message... messages) throws IOException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final WritableByteChannel channel = Channels.newChannel(bytes);
+        for (Message message : messages) {
+            message.write(channel);
         }
+        return ByteBuffer.wrap(bytes.toByteArray());
     }
 
     /**
@@ -504,19 +149,7 @@ public class MetadataCache implements MetadataProvider {
      * @return a list containing the rekordbox ID for each track present in the cache, in the order they appear
      */
     public List<Integer> getTrackIds() {
-        ArrayList<Integer> results = new ArrayList<Integer>(trackCount);
-        Enumeration<? extends ZipEntry> entries = zipFile.entries();
-        while (entries.hasMoreElements()) {
-            ZipEntry entry = entries.nextElement();
-            if (entry.getName().startsWith(CACHE_METADATA_ENTRY_PREFIX)) {
-                String idPart = entry.getName().substring(CACHE_METADATA_ENTRY_PREFIX.length());
-                if (idPart.length() > 0) {
-                    results.add(Integer.valueOf(idPart));
-                }
-            }
-        }
-
-        return Collections.unmodifiableList(results);
+        return storage.getTrackIds();
     }
 
     @Override
@@ -529,102 +162,59 @@ public class MetadataCache implements MetadataProvider {
 
     @Override
     public TrackMetadata getTrackMetadata(MediaDetails sourceMedia, DataReference track) {
-        ZipEntry entry = zipFile.getEntry(getMetadataEntryName(track.rekordboxId));
-        if (entry != null) {
-            DataInputStream is = null;
-            try {
-                is = new DataInputStream(zipFile.getInputStream(entry));
+        try {
+            final ByteBuffer entry = storage.getEntry(MetadataCacheStorage.EntryType.METADATA, track.rekordboxId);
+            if (entry != null) {
                 List<Message> items = new LinkedList<Message>();
-                Message current = Message.read(is);
+                Message current = Message.read(entry);
                 while (current.messageType.getValue() == Message.KnownType.MENU_ITEM.protocolValue) {
                     items.add(current);
-                    current = Message.read(is);
+                    current = Message.read(entry);
                 }
                 return new TrackMetadata(track, CdjStatus.TrackType.REKORDBOX, items, getCueList(sourceMedia, track));
-            } catch (IOException e) {
-                logger.error("Problem reading metadata from cache file, returning null", e);
-            } finally {
-                if (is != null) {
-                    try {
-                        is.close();
-                    } catch (Exception e) {
-                        logger.error("Problem closing ZipFile input stream for reading metadata entry", e);
-                    }
-                }
             }
+        } catch (IOException e) {
+            logger.error("Problem reading metadata from cache file, returning null", e);
         }
-        return null;    }
+        return null;
+    }
 
     @Override
     public AlbumArt getAlbumArt(@SuppressWarnings("unused") MediaDetails sourceMedia, DataReference art) {
-        ZipEntry entry = zipFile.getEntry(getArtworkEntryName(art.rekordboxId));
-        if (entry != null) {
-            DataInputStream is = null;
-            try {
-                is = new DataInputStream(zipFile.getInputStream(entry));
-                byte[] imageBytes = new byte[(int)entry.getSize()];
-                is.readFully(imageBytes);
-                return new AlbumArt(art, ByteBuffer.wrap(imageBytes).asReadOnlyBuffer());
-            } catch (IOException e) {
-                logger.error("Problem reading artwork from cache file, returning null", e);
-            } finally {
-                if (is != null) {
-                    try {
-                        is.close();
-                    } catch (Exception e) {
-                        logger.error("Problem closing ZipFile input stream for reading artwork entry", e);
-                    }
-                }
+        try {
+            final ByteBuffer entry = storage.getEntry(MetadataCacheStorage.EntryType.ARTWORK, art.rekordboxId);
+            if (entry != null) {
+                return new AlbumArt(art, entry);
             }
+        } catch (IOException e) {
+            logger.error("Problem reading artwork from cache file, returning null", e);
         }
-        return null;    }
+        return null;
+    }
 
     @SuppressWarnings("unused")
     @Override
     public BeatGrid getBeatGrid(MediaDetails sourceMedia, DataReference track) {
-        ZipEntry entry = zipFile.getEntry(getBeatGridEntryName(track.rekordboxId));
-        if (entry != null) {
-            DataInputStream is = null;
-            try {
-                is = new DataInputStream(zipFile.getInputStream(entry));
-                byte[] gridBytes = new byte[(int)entry.getSize()];
-                is.readFully(gridBytes);
-                return new BeatGrid(track, ByteBuffer.wrap(gridBytes).asReadOnlyBuffer());
-            } catch (IOException e) {
-                logger.error("Problem reading beat grid from cache file, returning null", e);
-            } finally {
-                if (is != null) {
-                    try {
-                        is.close();
-                    } catch (Exception e) {
-                        logger.error("Problem closing ZipFile input stream for reading beat grid entry", e);
-                    }
-                }
+        try {
+            final ByteBuffer entry = storage.getEntry(MetadataCacheStorage.EntryType.BEAT_GRID, track.rekordboxId);
+            if (entry != null) {
+                return new BeatGrid(track, entry);
             }
+        } catch (IOException e) {
+            logger.error("Problem reading beat grid from cache file, returning null", e);
         }
         return null;
     }
 
     @Override
     public CueList getCueList(@SuppressWarnings("unused") MediaDetails sourceMedia, DataReference track) {
-        ZipEntry entry = zipFile.getEntry(getCueListEntryName(track.rekordboxId));
-        if (entry != null) {
-            DataInputStream is = null;
-            try {
-                is = new DataInputStream(zipFile.getInputStream(entry));
-                Message message = Message.read(is);
-                return new CueList(message);
-            } catch (IOException e) {
-                logger.error("Problem reading cue list from cache file, returning null", e);
-            } finally {
-                if (is != null) {
-                    try {
-                        is.close();
-                    } catch (Exception e) {
-                        logger.error("Problem closing ZipFile input stream for reading cue list", e);
-                    }
-                }
+        try {
+            final ByteBuffer entry = storage.getEntry(MetadataCacheStorage.EntryType.CUE_LIST, track.rekordboxId);
+            if (entry != null) {
+                return new CueList(Message.read(entry));
             }
+        } catch (IOException e) {
+            logger.error("Problem reading cue list from cache file, returning null", e);
         }
         return null;
     }
@@ -632,60 +222,127 @@ public class MetadataCache implements MetadataProvider {
     @SuppressWarnings("unused")
     @Override
     public WaveformPreview getWaveformPreview(MediaDetails sourceMedia, DataReference track) {
-        ZipEntry entry = zipFile.getEntry(getWaveformPreviewEntryName(track.rekordboxId));
-        if (entry != null) {
-            DataInputStream is = null;
-            try {
-                is = new DataInputStream(zipFile.getInputStream(entry));
-                Message message = Message.read(is);
-                return new WaveformPreview(track, message);
-            } catch (IOException e) {
-                logger.error("Problem reading waveform preview from cache file, returning null", e);
-            } finally {
-                if (is != null) {
-                    try {
-                        is.close();
-                    } catch (Exception e) {
-                        logger.error("Problem closing ZipFile input stream for waveform preview", e);
-                    }
-                }
+        try {
+            final ByteBuffer entry = storage.getEntry(MetadataCacheStorage.EntryType.WAVEFORM_PREVIEW, track.rekordboxId);
+            if (entry != null) {
+                return new WaveformPreview(track, Message.read(entry));
             }
+        } catch (IOException e) {
+            logger.error("Problem reading waveform preview from cache file, returning null", e);
         }
         return null;
     }
 
     @Override
     public WaveformDetail getWaveformDetail(@SuppressWarnings("unused") MediaDetails sourceMedia, DataReference track) {
-        ZipEntry entry = zipFile.getEntry(getWaveformDetailEntryName(track.rekordboxId));
-        if (entry != null) {
-            DataInputStream is = null;
-            try {
-                is = new DataInputStream(zipFile.getInputStream(entry));
-                Message message = Message.read(is);
-                return new WaveformDetail(track, message);
-            } catch (IOException e) {
-                logger.error("Problem reading waveform detail from cache file, returning null", e);
-            } finally {
-                if (is != null) {
-                    try {
-                        is.close();
-                    } catch (Exception e) {
-                        logger.error("Problem closing ZipFile input stream for waveform detail", e);
-                    }
-                }
+        try {
+            final ByteBuffer entry = storage.getEntry(MetadataCacheStorage.EntryType.WAVEFORM_DETAIL, track.rekordboxId);
+            if (entry != null) {
+                return new WaveformDetail(track, Message.read(entry));
             }
+        } catch (IOException e) {
+            logger.error("Problem reading waveform detail from cache file, returning null", e);
         }
         return null;
     }
 
+    /**
+     * Converts a metadata cache file to the current indexed format, for example one created in the original ZIP
+     * format by an older version of Beat Link. The entries are copied as they are, without needing to talk to any
+     * players. Any previous contents of the destination file will be replaced.
+     *
+     * @param source the metadata cache file to be converted
+     * @param destination the file into which the converted metadata cache should be written, which must not be
+     *                    {@code source}
+     *
+     * @throws IllegalArgumentException if {@code destination} is {@code source}
+     * @throws IOException if there is a problem reading the source file or writing the destination
+     *
+     * @since 0.6.3
+     */
+    public static void convertMetadataCache(File source, File destination) throws IOException {
+        if (source.getCanonicalFile().equals(destination.getCanonicalFile())) {
+            throw new IllegalArgumentException("A metadata cache must be converted into a different file");
+        }
+        final MetadataCache cache = new MetadataCache(source);
+        boolean complete = false;
+        final MappedCacheStorage.Writer writer = new MappedCacheStorage.Writer(destination, cache.sourcePlaylist, cache.trackCount);
+        try {
+            if (cache.sourceMedia != null) {
+                writer.addMediaDetails(cache.sourceMedia.getRawBytes());
+            }
+            for (int rekordboxId : cache.getTrackIds()) {
+                if (!copyTrackEntries(cache, writer, rekordboxId)) {
+                    throw new IOException("Unable to read metadata for track " + rekordboxId + " from " + source);
+                }
+            }
+            writer.close();
+            complete = true;
+        } finally {
+            cache.close();
+            if (!complete) {
+                writer.abandon();
+            }
+        }
+    }
+
+    /**
+     * Copy all the entries for a track from one metadata cache to a new file, along with its album art if that has
+     * not already been copied.
+     *
+     * @param cache the cache being copied from
+     * @param writer the writer of the new file
+     * @param rekordboxId the database ID of the track
+     *
+     * @return {@code true} if the track was copied, {@code false} if its metadata was not found in {@code cache}
+     *
+     * @throws IOException if there is a problem reading or writing the entries
+     */
+    static boolean copyTrackEntries(MetadataCache cache, MappedCacheStorage.Writer writer, int rekordboxId)
+            throws IOException {
+        final DataReference reference = new DataReference(0, CdjStatus.TrackSourceSlot.USB_SLOT, rekordboxId);
+        final TrackMetadata track = cache.getTrackMetadata(null, reference);
+        if (track == null) {
+            return false;
+        }
+        copyEntry(cache, writer, MetadataCacheStorage.EntryType.METADATA, rekordboxId);
+        if (track.getArtworkId() != 0 && !writer.hasEntry(MetadataCacheStorage.EntryType.ARTWORK, track.getArtworkId())) {
+            copyEntry(cache, writer, MetadataCacheStorage.EntryType.ARTWORK, track.getArtworkId());
+        }
+        copyEntry(cache, writer, MetadataCacheStorage.EntryType.BEAT_GRID, rekordboxId);
+        copyEntry(cache, writer, MetadataCacheStorage.EntryType.CUE_LIST, rekordboxId);
+        copyEntry(cache, writer, MetadataCacheStorage.EntryType.WAVEFORM_PREVIEW, rekordboxId);
+        copyEntry(cache, writer, MetadataCacheStorage.EntryType.WAVEFORM_DETAIL, rekordboxId);
+        return true;
+    }
+
+    /**
+     * Copy an entry, if it exists, from a metadata cache to a new file.
+     *
+     * @param cache the cache being copied from
+     * @param writer the writer of the new file
+     * @param type the kind of entry to copy
+     * @param id the rekordbox ID of the track, or the artwork ID for album art
+     *
+     * @throws IOException if there is a problem reading or writing the entry
+     */
+    private static void copyEntry(MetadataCache cache, MappedCacheStorage.Writer writer, MetadataCacheStorage.EntryType type,
+                                  int id) throws IOException {
+        final ByteBuffer entry = cache.storage.getEntry(type, id);
+        if (entry != null) {
+            writer.addEntry(type, id, entry);
+        }
+    }
+
 
     /*
      * Methods for creating metadata caches.
      */
 
     /**
-     * Creates a metadata cache archive file of all tracks in the specified slot on the specified player. Any
-     * previous contents of the specified file will be replaced.
+     * Creates a metadata cache file of all tracks in the specified slot on the specified player. Any
+     * previous contents of the specified file will be replaced, unless they are the result of an interrupted
+     * attempt to create the same cache, in which case that attempt is resumed.
      *
      * @param slot the slot in which the media to be cached can be found
      * @param playlistId the id of playlist to be cached, or 0 of all tracks should be cached
@@ -698,37 +355,48 @@ public class MetadataCache implements MetadataProvider {
     }
 
     /**
-     * How long should we pause between requesting metadata entries while building a cache to give the player
-     * a chance to perform its other tasks.
+     * The shortest time we pause between requesting metadata entries while building a cache to give the player
+     * a chance to perform its other tasks. The pause grows beyond this when the player is responding slowly.
      */
-    private static final AtomicLong cachePauseInterval = new AtomicLong(50);
+    private static final AtomicLong cachePauseInterval = new AtomicLong(0);
 
     /**
-     * Set how long to pause between requesting metadata entries while building a cache to give the player
-     * a chance to perform its other tasks.
+     * Set the shortest time to pause between requesting metadata entries while building a cache to give the player
+     * a chance to perform its other tasks. Each connection used to build the cache pauses for a time based on how
+     * long the player has recently been taking to respond, growing as the player slows down, but never less than
+     * this. Before version 0.6.3 this was a fixed pause with a default of 50 milliseconds; now the default is zero.
      *
-     * @param milliseconds the delay to add between each track that gets added to the metadata cache
+     * @param milliseconds the minimum delay to add between each track that gets added to the metadata cache
      */
     public static void setCachePauseInterval(long milliseconds) {
         cachePauseInterval.set(milliseconds);
     }
 
     /**
-     * Check how long we pause between requesting metadata entries while building a cache to give the player
-     * a chance to perform its other tasks.
+     * Check the shortest time we pause between requesting metadata entries while building a cache to give the
+     * player a chance to perform its other tasks.
      *
-     * @return the delay to add between each track that gets added to the metadata cache
+     * @return the minimum delay to add between each track that gets added to the metadata cache
      */
     public static long getCachePauseInterval() {
         return cachePauseInterval.get();
     }
 
     /**
-     * Creates a metadata cache archive file of all tracks in the specified slot on the specified player. Any
+     * Creates a metadata cache file of all tracks in the specified slot on the specified player. Any
      * previous contents of the specified file will be replaced. If a non-{@code null} {@code listener} is
      * supplied, its {@link MetadataCacheCreationListener#cacheCreationContinuing(TrackMetadata, int, int)} method
      * will be called after each track is added to the cache, allowing it to display progress updates to the user,
-     * and to continue or cancel the process by returning {@code true} or {@code false}.
+     * and to continue or cancel the process by returning {@code true} or {@code false}. If it also implements
+     * {@link MetadataCacheThroughputListener}, it will be told about once a second how quickly tracks are being added.
+     *
+     * Tracks are fetched over several connections at once when possible, including connections to other players
+     * which have the same media mounted. The cache is built in a partial file next to the cache file, whose name has
+     * {@code .part} added to it, and progress is recorded in a journal file whose name has {@code .journal} added to
+     * it. The partial file only replaces the cache file once it is complete. If the process is interrupted, or fails
+     * because a player stops responding, the partial file and its journal are kept, and calling this method again
+     * with the same arguments picks up where the earlier attempt stopped. If the listener cancels the process, both
+     * files are deleted.
      *
      * Because this takes a huge amount of time relative to CDJ status updates, it can only be performed while
      * the MetadataFinder is in passive mode.
@@ -745,25 +413,137 @@ public class MetadataCache implements MetadataProvider {
     public static void createMetadataCache(final SlotReference slot, final int playlistId,
                                     final File cache, final MetadataCacheCreationListener listener)
             throws Exception {
-        ConnectionManager.ClientTask<Object> task = new ConnectionManager.ClientTask<Object>() {
-            @SuppressWarnings("SameReturnValue")
+        MetadataCacheCreator.create(trackIds(listTracks(slot, playlistId)), playlistId, slot, cache, listener);
+    }
+
+    /**
+     * Ask a player for the list of tracks in a playlist, or all the tracks on its media.
+     *
+     * @param slot the slot in which the media can be found
+     * @param playlistId the id of playlist to be listed, or 0 for all tracks
+     *
+     * @return the menu items identifying the tracks
+     *
+     * @throws Exception if there is a problem communicating with the player
+     */
+    private static List<Message> listTracks(final SlotReference slot, final int playlistId) throws Exception {
+        ConnectionManager.ClientTask<List<Message>> task = new ConnectionManager.ClientTask<List<Message>>() {
             @Override
-            public Object useClient(Client client) throws Exception {
-                final List<Message> trackList;
+            public List<Message> useClient(Client client) throws Exception {
                 if (playlistId == 0) {
-                    trackList = MetadataFinder.getInstance().getFullTrackList(slot.slot, client, 0);
+                    return MetadataFinder.getInstance().getFullTrackList(slot.slot, client, 0);
                 } else {
-                    trackList = MetadataFinder.getInstance().getPlaylistItems(slot.slot, 0, playlistId, false, client);
+                    return MetadataFinder.getInstance().getPlaylistItems(slot.slot, 0, playlistId, false, client);
                 }
-                MetadataCache.copyTracksToCache(trackList, playlistId, client, slot, cache, listener);
-                return null;
             }
         };
+        return ConnectionManager.getInstance().invokeWithClientSession(slot.player, task, "listing tracks for metadata cache");
+    }
+
+    /**
+     * Extract the rekordbox IDs from a list of track menu items.
+     *
+     * @param trackListEntries the menu items identifying tracks
+     *
+     * @return the rekordbox ID of each, in the same order
+     */
+    private static List<Integer> trackIds(List<Message> trackListEntries) {
+        final List<Integer> result = new ArrayList<Integer>(trackListEntries.size());
+        for (Message entry : trackListEntries) {
+            if (entry.getMenuItemType() == Message.MenuItemType.UNKNOWN) {
+                logger.warn("Encountered unrecognized track list entry item type: {}", entry);
+            }
+            result.add((int)((NumberField)entry.arguments.get(1)).getValue());
+        }
+        return result;
+    }
 
-        if (cache.exists() && !cache.delete()) {
-            logger.warn("Unable to delete cache file, {}", cache);
+    /**
+     * Creates a new generation of a metadata cache file for media that has changed since the cache was created,
+     * for example because tracks were added to it, or to the playlist the cache was created from. Rather than
+     * fetching every track again, this compares what is on the media now to what is in the existing cache, copies
+     * the entries of tracks which are unchanged straight from the existing file, fetches only the tracks which are
+     * new or seem to have been modified, and leaves out tracks which are no longer present.
+     *
+     * If {@link CrateDigger} has obtained the rekordbox database from the media, the list of tracks and the
+     * details used to recognize modified ones (title, artwork, duration and tempo) are read from it; otherwise the
+     * track list is requested from the player, and tracks whose title or artwork has changed are fetched again.
+     *
+     * Apart from that, this works just like {@link #createMetadataCache(SlotReference, int, File,
+     * MetadataCacheCreationListener)}, including resuming an interrupted attempt; the listener is told about all the
+     * tracks in the new generation, starting with the ones which were copied. The existing file is not changed, so
+     * it can be detached and replaced by the new one once this returns.
+     *
+     * @param slot the slot in which the media can be found
+     * @param existing the metadata cache file created from an earlier state of that media
+     * @param destination the file into which the new generation should be written, which must not be {@code existing}
+     * @param listener will be informed after each track is added to the cache file being created and offered
+     *                 the opportunity to cancel the process
+     *
+     * @throws IllegalArgumentException if {@code destination} is {@code existing}, or the existing cache was created
+     *                                  from different media than is in the slot
+     * @throws Exception if there is a problem communicating with the player, or reading or writing the cache files
+     *
+     * @since 0.6.3
+     */
+    public static void updateMetadataCache(SlotReference slot, File existing, File destination,
+                                           MetadataCacheCreationListener listener) throws Exception {
+        if (existing.getCanonicalFile().equals(destination.getCanonicalFile())) {
+            throw new IllegalArgumentException("A new generation of a metadata cache must be written to a different file");
+        }
+        final MetadataCache base = new MetadataCache(existing);
+        try {
+            final MediaDetails details = MetadataFinder.getInstance().getMediaDetailsFor(slot);
+            if (base.sourceMedia != null && details != null && !base.sourceMedia.hashKey().equals(details.hashKey())) {
+                throw new IllegalArgumentException("Cache was created for different media (" + base.sourceMedia.hashKey() +
+                        ") than is in the slot (" + details.hashKey() + ").");
+            }
+            final int playlistId = base.sourcePlaylist;
+            final List<Integer> trackIds;
+            final Set<Integer> unchanged = new HashSet<Integer>();
+            final Database database = CrateDigger.getInstance().findDatabase(slot);
+            if (database != null) {
+                trackIds = new ArrayList<Integer>();
+                if (playlistId == 0) {
+                    for (Long id : new TreeSet<Long>(database.trackIndex.keySet())) {
+                        trackIds.add(id.intValue());
+                    }
+                } else {
+                    final List<Long> entries = database.playlistIndex.get((long) playlistId);
+                    if (entries == null) {
+                        throw new IOException("Playlist " + playlistId + " is no longer present on the media");
+                    }
+                    for (Long id : entries) {
+                        trackIds.add(id.intValue());
+                    }
+                }
+                for (int id : trackIds) {
+                    final RekordboxPdb.TrackRow row = database.trackIndex.get((long) id);
+                    final TrackMetadata cached = base.getTrackMetadata(null, new DataReference(slot, id));
+                    if (row != null && cached != null && cached.getTitle().equals(Database.getText(row.title())) &&
+                            cached.getArtworkId() == row.artworkId() && cached.getDuration() == row.duration() &&
+                            cached.getTempo() == row.tempo()) {
+                        unchanged.add(id);
+                    }
+                }
+            } else {
+                final List<Message> trackList = listTracks(slot, playlistId);
+                trackIds = trackIds(trackList);
+                for (Message entry : trackList) {
+                    final int id = (int)((NumberField)entry.arguments.get(1)).getValue();
+                    final TrackMetadata cached = base.getTrackMetadata(null, new DataReference(slot, id));
+                    if (cached != null && cached.getTitle().equals(((StringField)entry.arguments.get(3)).getValue()) &&
+                            cached.getArtworkId() == ((NumberField)entry.arguments.get(8)).getValue()) {
+                        unchanged.add(id);
+                    }
+                }
+            }
+            logger.info("Updating metadata cache {}: {} tracks now present, {} unchanged, {} in the existing cache",
+                    existing, trackIds.size(), unchanged.size(), base.trackCount);
+            MetadataCacheCreator.update(trackIds, playlistId, slot, destination, listener, base, unchanged);
+        } finally {
+            base.close();
         }
-        ConnectionManager.getInstance().invokeWithClientSession(slot.player, task, "building metadata cache");
     }
 
 
@@ -791,7 +571,7 @@ public class MetadataCache implements MetadataProvider {
             return;
         }
 
-        new Thread(new Runnable() {
+        Scheduler.getInstance().execute(Scheduler.Pool.IO, "metadata cache auto-attach", new Runnable() {
             @Override
             public void run() {
                 try {
@@ -799,24 +579,24 @@ public class MetadataCache implements MetadataProvider {
                     final MediaDetails details = MetadataFinder.getInstance().getMediaDetailsFor(slot);
                     if (details != null && details.mediaType == CdjStatus.TrackType.REKORDBOX) {
                         // First stage attempt: See if we can match based on stored media details, which is both more reliable and
-                        // less disruptive than trying to sample the player database to compare entries.
-                        boolean attached = false;
+                        // less disruptive than trying to sample the player database to compare entries. The fingerprints
+                        // let us do this without opening any cache but the one we attach.
                         for (File file : MetadataFinder.getInstance().getAutoAttachCacheFiles()) {
-                            final MetadataCache cache = new MetadataCache(file);
+                            final CacheFingerprint fingerprint;
                             try {
-                                if (cache.sourceMedia != null && cache.sourceMedia.hashKey().equals(details.hashKey())) {
-                                    // We found a solid match, no need to probe tracks.
-                                    final boolean changed = cache.sourceMedia.hasChanged(details);
-                                    logger.info("Auto-attaching metadata cache " + cache.getName() + " to slot " + slot +
-                                            " based on media details " + (changed? "(changed since created)!" : "(unchanged)."));
-                                    MetadataFinder.getInstance().attachMetadataCacheInternal(slot, cache);
-                                    attached = true;
-                                    return;
-                                }
-                            } finally {
-                                if (!attached) {
-                                    cache.close();
-                                }
+                                fingerprint = CacheFingerprint.forFile(file);
+                            } catch (IOException e) {
+                                logger.error("Unable to fingerprint metadata cache file " + file + ", skipping", e);
+                                continue;
+                            }
+                            if (fingerprint.sourceMedia != null && fingerprint.sourceMedia.hashKey().equals(details.hashKey())) {
+                                // We found a solid match, no need to probe tracks.
+                                final boolean changed = fingerprint.sourceMedia.hasChanged(details);
+                                final MetadataCache cache = new MetadataCache(file);
+                                logger.info("Auto-attaching metadata cache " + cache.getName() + " to slot " + slot +
+                                        " based on media details " + (changed? "(changed since created)!" : "(unchanged)."));
+                                MetadataFinder.getInstance().attachMetadataCacheInternal(slot, cache);
+                                return;
                             }
                         }
 
@@ -835,13 +615,16 @@ public class MetadataCache implements MetadataProvider {
                 }
 
             }
-        }, "Metadata cache file auto-attachment attempt").start();
+        });
     }
 
     /**
      * Second stage of the auto-attach process, once we have obtained a connection to the database server for the
-     * media slot we are checking our automatic metadata cache files against. Probes the metadata offered by that
-     * sever to see if it matches any of the available caches, and if so, attaches that cache file.
+     * media slot we are checking our automatic metadata cache files against. Compares the fingerprints of the
+     * available caches with what that server offers: first the number of tracks, then the metadata of tracks which
+     * the fingerprints have sampled. The first cache to match as many of them as configured by
+     * {@link MetadataFinder#getAutoAttachProbeCount()} is attached. Only if that is more tracks than a fingerprint
+     * samples do we fall back to opening the remaining caches and probing a random sample of tracks.
      *
      * @param slot identifies the media slot we are checking for automatic cache matches
      * @param client the dbserver client that is communicating with the appropriate player
@@ -853,113 +636,206 @@ public class MetadataCache implements MetadataProvider {
     private static void tryAutoAttachingWithConnection(SlotReference slot, Client client) throws IOException, InterruptedException, TimeoutException {
         // Keeps track of the files we might be able to auto-attach, grouped and sorted by the playlist they
         // were created from, where playlist 0 means all tracks.
-        final Map<Integer, LinkedList<MetadataCache>> candidateGroups = gatherCandidateAttachmentGroups();
-        MetadataCache match = null;  // We will close any non-matched files from the candidateGroups in our finally clause,
-        // but we will leave this one open because we are returning it.
-        try {
-            // Set up a menu request to process each group.
-            for (Map.Entry<Integer,LinkedList<MetadataCache>> entry : candidateGroups.entrySet()) {
-                final LinkedList<MetadataCache> candidates;
-                ArrayList<Integer> tracksToSample;
-                if (client.tryLockingForMenuOperations(MetadataFinder.MENU_TIMEOUT, TimeUnit.SECONDS)) {
-                    try {
-                        final int playlistId = entry.getKey();
-                        candidates = entry.getValue();
-                        final long count = getTrackCount(slot.slot, client, playlistId);
-                        if (count == Message.NO_MENU_RESULTS_AVAILABLE || count == 0) {
-                            // No tracks available to match this set of candidates.
-                            for (final MetadataCache candidate : candidates) {
-                                candidate.close();
-                            }
-                            candidates.clear();
-                        }
+        final Map<Integer, Map<File, CacheFingerprint>> candidateGroups = gatherCandidateAttachmentGroups();
+        for (Map.Entry<Integer, Map<File, CacheFingerprint>> entry : candidateGroups.entrySet()) {
+            final int playlistId = entry.getKey();
+            final Map<File, CacheFingerprint> candidates = entry.getValue();
+            final long count;
+            if (client.tryLockingForMenuOperations(MetadataFinder.MENU_TIMEOUT, TimeUnit.SECONDS)) {
+                try {
+                    count = getTrackCount(slot.slot, client, playlistId);
+                } finally {
+                    client.unlockForMenuOperations();
+                }
+            } else {
+                throw new TimeoutException("Unable to lock player for menu operations.");
+            }
+            if (count == Message.NO_MENU_RESULTS_AVAILABLE || count == 0) {
+                continue;  // No tracks available to match this set of candidates.
+            }
+
+            // Filter out any candidates with the wrong number of tracks.
+            final Iterator<CacheFingerprint> candidateIterator = candidates.values().iterator();
+            while (candidateIterator.hasNext()) {
+                if (candidateIterator.next().trackCount != count) {
+                    candidateIterator.remove();
+                }
+            }
 
-                        // Filter out any candidates with the wrong number of tracks.
-                        final Iterator<MetadataCache> candidateIterator = candidates.iterator();
-                        while (candidateIterator.hasNext()) {
-                            final MetadataCache candidate = candidateIterator.next();
-                            if (candidate.trackCount != count) {
-                                candidate.close();
-                                candidateIterator.remove();
+            // Bail before querying any metadata if we can already rule out all the candidates.
+            if (candidates.isEmpty()) {
+                continue;
+            }
+
+            // Probe sampled tracks, starting with those the most candidates can vouch for, until one candidate
+            // has matched as many tracks as we are configured to compare.
+            final int needed = (int) Math.min(count, MetadataFinder.getInstance().getAutoAttachProbeCount());
+            final Map<File, Integer> matches = new HashMap<File, Integer>();
+            final Set<Integer> probed = new HashSet<Integer>();
+            int probeId = chooseProbeTrack(candidates.values(), probed);
+            while (probeId != 0) {
+                probed.add(probeId);
+                logger.info("Comparing track " + probeId + " with " + candidates.size() + " metadata cache fingerprint(s).");
+                final TrackMetadata track = MetadataFinder.getInstance().queryMetadata(new DataReference(slot, probeId),
+                        CdjStatus.TrackType.REKORDBOX, client);
+                final Iterator<Map.Entry<File, CacheFingerprint>> iterator = candidates.entrySet().iterator();
+                while (iterator.hasNext()) {
+                    final Map.Entry<File, CacheFingerprint> candidate = iterator.next();
+                    switch (candidate.getValue().compare(probeId, track)) {
+                        case MATCH:
+                            final Integer earlier = matches.get(candidate.getKey());
+                            final int matched = (earlier == null)? 1 : earlier + 1;
+                            if (matched >= needed) {
+                                final MetadataCache match = new MetadataCache(candidate.getKey());
+                                logger.info("Auto-attaching metadata cache " + match.getName() + " to slot " + slot);
+                                MetadataFinder.getInstance().attachMetadataCacheInternal(slot, match);
+                                return;
                             }
-                        }
+                            matches.put(candidate.getKey(), matched);
+                            break;
 
-                        // Bail before querying any metadata if we can already rule out all the candidates.
-                        if (candidates.isEmpty()) {
-                            continue;
-                        }
+                        case MISMATCH:
+                            iterator.remove();
+                            break;
 
-                        // Gather as many track IDs as we are configured to sample, up to the number available
-                        tracksToSample = chooseTrackSample(slot, client, (int) count);
-                    } finally {
-                        client.unlockForMenuOperations();
+                        default:
+                            break;  // The fingerprint cannot tell.
                     }
-                } else {
-                    throw new TimeoutException("Unable to lock player for menu operations.");
                 }
+                probeId = chooseProbeTrack(candidates.values(), probed);
+            }
 
-                // Winnow out any auto-attachment candidates that don't match any sampled track
-                for (final int trackId : tracksToSample) {
-                    logger.info("Comparing track " + trackId + " with " + candidates.size() + " metadata cache file(s).");
+            // Any candidates left have matched all their sampled tracks, but fewer than we are configured to compare.
+            if (!candidates.isEmpty() && probeCandidates(slot, client, playlistId, new ArrayList<File>(candidates.keySet()))) {
+                return;
+            }
+        }
+    }
 
-                    final DataReference reference = new DataReference(slot, trackId);
-                    final TrackMetadata track = MetadataFinder.getInstance().queryMetadata(reference, CdjStatus.TrackType.REKORDBOX, client);
-                    if (track == null) {
-                        logger.warn("Unable to retrieve metadata when attempting cache auto-attach for slot {}, giving up", slot);
-                        return;
+    /**
+     * Choose which track to probe in order to check a set of candidate caches against a player, preferring one
+     * which is in the sample of as many of their fingerprints as possible.
+     *
+     * @param candidates the fingerprints of the caches being considered
+     * @param probed the rekordbox IDs of tracks that have already been compared
+     *
+     * @return the rekordbox ID of the track to request, or 0 if every sampled track has already been compared
+     */
+    private static int chooseProbeTrack(Collection<CacheFingerprint> candidates, Set<Integer> probed) {
+        int best = 0;
+        int bestVotes = -1;
+        for (CacheFingerprint candidate : candidates) {
+            for (int id : candidate.getSampleIds()) {
+                if (probed.contains(id)) {
+                    continue;
+                }
+                int votes = 0;
+                for (CacheFingerprint other : candidates) {
+                    if (other.sampled(id)) {
+                        ++votes;
                     }
+                }
+                if (votes > bestVotes) {
+                    best = id;
+                    bestVotes = votes;
+                }
+            }
+        }
+        return best;
+    }
 
-                    for (int i = candidates.size() - 1; i >= 0; --i) {
-                        final MetadataCache candidate = candidates.get(i);
-                        if (!track.equals(candidate.getTrackMetadata(null, reference))) {
-                            candidate.close();
-                            candidates.remove(i);
-                        }
-                    }
+    /**
+     * The fallback stage of the auto-attach process, for candidates whose fingerprints could not decide whether
+     * they match. Opens them and compares them with a random sample of tracks from the player, as many as configured
+     * by {@link MetadataFinder#getAutoAttachProbeCount()}, and attaches the first which matches all of them.
+     *
+     * @param slot identifies the media slot we are checking for automatic cache matches
+     * @param client the dbserver client that is communicating with the appropriate player
+     * @param playlistId the playlist the candidates were created from, or 0 for all tracks
+     * @param files the candidate metadata cache files
+     *
+     * @return {@code true} if a cache was attached
+     *
+     * @throws IOException if there is a communication problem
+     * @throws InterruptedException if the thread is interrupted while trying to lock the client for menu operations
+     * @throws TimeoutException if we are unable to lock the client for menu operations
+     */
+    private static boolean probeCandidates(SlotReference slot, Client client, int playlistId, List<File> files)
+            throws IOException, InterruptedException, TimeoutException {
+        final LinkedList<MetadataCache> candidates = new LinkedList<MetadataCache>();
+        MetadataCache match = null;  // We will close any non-matched files in our finally clause,
+        // but we will leave this one open because we are attaching it.
+        try {
+            for (File file : files) {
+                candidates.add(new MetadataCache(file));
+            }
+            final ArrayList<Integer> tracksToSample;
+            if (client.tryLockingForMenuOperations(MetadataFinder.MENU_TIMEOUT, TimeUnit.SECONDS)) {
+                try {
+                    // Gather as many track IDs as we are configured to sample, up to the number available
+                    tracksToSample = chooseTrackSample(slot, client, (int) getTrackCount(slot.slot, client, playlistId));
+                } finally {
+                    client.unlockForMenuOperations();
+                }
+            } else {
+                throw new TimeoutException("Unable to lock player for menu operations.");
+            }
+
+            // Winnow out any auto-attachment candidates that don't match any sampled track
+            for (final int trackId : tracksToSample) {
+                logger.info("Comparing track " + trackId + " with " + candidates.size() + " metadata cache file(s).");
 
-                    if (candidates.isEmpty()) {
-                        break;  // No point sampling more tracks, we have ruled out all candidates in this group.
+                final DataReference reference = new DataReference(slot, trackId);
+                final TrackMetadata track = MetadataFinder.getInstance().queryMetadata(reference, CdjStatus.TrackType.REKORDBOX, client);
+                if (track == null) {
+                    logger.warn("Unable to retrieve metadata when attempting cache auto-attach for slot {}, giving up", slot);
+                    return false;
+                }
+
+                for (int i = candidates.size() - 1; i >= 0; --i) {
+                    final MetadataCache candidate = candidates.get(i);
+                    if (!track.equals(candidate.getTrackMetadata(null, reference))) {
+                        candidate.close();
+                        candidates.remove(i);
                     }
                 }
 
                 if (candidates.isEmpty()) {
-                    continue;  // This group has failed; move on to the next candidate group, if any.
+                    return false;  // No point sampling more tracks, we have ruled out all candidates in this group.
                 }
-
-                match = candidates.get(0);  // We have found at least one matching cache, use the first.
-                logger.info("Auto-attaching metadata cache " + match.getName() + " to slot " + slot);
-                MetadataFinder.getInstance().attachMetadataCacheInternal(slot, match);
-                return;
             }
-        } finally {  // No matter how we leave this function, close any of the remaining zip files we are not attaching.
-            for (Map.Entry<Integer, LinkedList<MetadataCache>> entry : candidateGroups.entrySet()) {
-                for (MetadataCache candidate : entry.getValue()) {
-                    if (candidate != match) {
-                        candidate.close();
-                    }
+
+            match = candidates.get(0);  // We have found at least one matching cache, use the first.
+            logger.info("Auto-attaching metadata cache " + match.getName() + " to slot " + slot);
+            MetadataFinder.getInstance().attachMetadataCacheInternal(slot, match);
+            return true;
+        } finally {  // No matter how we leave this function, close any of the remaining files we are not attaching.
+            for (MetadataCache candidate : candidates) {
+                if (candidate != match) {
+                    candidate.close();
                 }
             }
         }
     }
 
     /**
-     * Groups all of the metadata cache files that are candidates for auto-attachment to player slots into lists
-     * that are keyed by the playlist ID used to create the cache file. Files that cache all tracks have a playlist
-     * ID of 0.
+     * Groups the fingerprints of all of the metadata cache files that are candidates for auto-attachment to player
+     * slots into maps that are keyed by the playlist ID used to create the cache file. Files that cache all tracks
+     * have a playlist ID of 0.
      *
-     * @return a map from playlist ID to the caches holding tracks from that playlist
+     * @return a map from playlist ID to the fingerprints of the caches holding tracks from that playlist
      */
-    private static Map<Integer, LinkedList<MetadataCache>> gatherCandidateAttachmentGroups() {
-        Map<Integer,LinkedList<MetadataCache>> candidateGroups = new TreeMap<Integer, LinkedList<MetadataCache>>();
+    private static Map<Integer, Map<File, CacheFingerprint>> gatherCandidateAttachmentGroups() {
+        Map<Integer, Map<File, CacheFingerprint>> candidateGroups = new TreeMap<Integer, Map<File, CacheFingerprint>>();
         final Iterator<File> iterator = MetadataFinder.getInstance().getAutoAttachCacheFiles().iterator();
         while (iterator.hasNext()) {
             final File file = iterator.next();
             try {
-                final MetadataCache candidate = new MetadataCache(file);
+                final CacheFingerprint candidate = CacheFingerprint.forFile(file);
                 if (candidateGroups.get(candidate.sourcePlaylist) == null) {
-                    candidateGroups.put(candidate.sourcePlaylist, new LinkedList<MetadataCache>());
+                    candidateGroups.put(candidate.sourcePlaylist, new LinkedHashMap<File, CacheFingerprint>());
                 }
-                candidateGroups.get(candidate.sourcePlaylist).add(candidate);
+                candidateGroups.get(candidate.sourcePlaylist).put(file, candidate);
             } catch (Exception e) {
                 logger.error("Unable to open metadata cache file " + file + ", discarding", e);
                 iterator.remove();
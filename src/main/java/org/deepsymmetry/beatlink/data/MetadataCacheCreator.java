@@ -0,0 +1,671 @@
+package org.deepsymmetry.beatlink.data;
+
+import org.deepsymmetry.beatlink.CdjStatus;
+import org.deepsymmetry.beatlink.MediaDetails;
+import org.deepsymmetry.beatlink.dbserver.Client;
+import org.deepsymmetry.beatlink.dbserver.ConnectionManager;
+import org.deepsymmetry.beatlink.dbserver.Message;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * <p>Does the work of creating a metadata cache file for {@link MetadataCache#createMetadataCache(SlotReference, int,
+ * File, MetadataCacheCreationListener)}.</p>
+ *
+ * <p>The tracks to be cached are shared out between several dbserver connections: all but one of the connections
+ * the {@link ConnectionManager} is allowed to open to the player holding the media (so the finders can still get
+ * through), and likewise to every other player which has the same media mounted, since rekordbox IDs mean the same
+ * thing there. Each fetches its next track, hands it to the single writer of the file, and then pauses for a time
+ * based on how long its player has recently been taking to respond, so a player that slows down under the load is
+ * given more room to do its other work.</p>
+ *
+ * <p>The cache is built in a partial file, which is renamed over the cache file only once it is complete, and
+ * progress is journaled next to it as each track is written. If the process is interrupted, or a player stops
+ * responding, the partial file and journal are left in place, and the next attempt to create the same cache picks
+ * up where this one stopped.</p>
+ *
+ * <p>When updating an existing cache for {@link MetadataCache#updateMetadataCache(SlotReference, File, File,
+ * MetadataCacheCreationListener)}, the entries of tracks which have not changed are copied straight from the old
+ * file before any connections are started, so only new and changed tracks are fetched.</p>
+ *
+ * @author James Elliott
+ * @since 0.6.3
+ */
+@SuppressWarnings("deprecation")
+class MetadataCacheCreator {
+
+    private static final Logger logger = LoggerFactory.getLogger(MetadataCacheCreator.class);
+
+    /**
+     * The longest a connection will pause between tracks, however slowly its player is responding.
+     */
+    private static final long MAX_PAUSE = 2000;
+
+    /**
+     * How much weight each new response time measurement gets in the running average.
+     */
+    private static final double SMOOTHING = 0.2;
+
+    /**
+     * How often, in milliseconds, throughput is reported to a {@link MetadataCacheThroughputListener}.
+     */
+    private static final long REPORT_INTERVAL = 1000;
+
+    /**
+     * Used to number the threads which fetch tracks.
+     */
+    private static final AtomicInteger threadCount = new AtomicInteger();
+
+    /**
+     * Creates the threads which fetch tracks. They get threads of their own rather than running on the
+     * {@link org.deepsymmetry.beatlink.Scheduler}, because they run for the whole time the cache is being built,
+     * and need to be interrupted and joined.
+     */
+    private static final ThreadFactory workerFactory = new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable r) {
+            final Thread result = new Thread(r, "beat-link metadata cache creator " + threadCount.incrementAndGet());
+            result.setDaemon(true);
+            return result;
+        }
+    };
+
+    /**
+     * Keeps track of how long a player has been taking to supply tracks, and decides how long to pause between
+     * them. The pause is half the recent average response time, scaled up by how much slower that is than the
+     * fastest the player has been during this run, so it grows quickly when the player starts to struggle.
+     */
+    private static class Pacer {
+
+        /**
+         * The running average response time, in milliseconds, or a negative value if nothing has been measured yet.
+         */
+        private double average = -1;
+
+        /**
+         * The lowest the running average has been.
+         */
+        private double best = Double.MAX_VALUE;
+
+        /**
+         * Record how long it took the player to supply everything for a track.
+         *
+         * @param milliseconds the time taken
+         */
+        synchronized void record(long milliseconds) {
+            if (average < 0) {
+                average = milliseconds;
+            } else {
+                average += SMOOTHING * (milliseconds - average);
+            }
+            best = Math.min(best, average);
+        }
+
+        /**
+         * Check the running average response time.
+         *
+         * @return the number of milliseconds the player has recently been taking per track, or zero if unknown
+         */
+        synchronized long getAverage() {
+            return (average < 0)? 0 : Math.round(average);
+        }
+
+        /**
+         * Figure out how long to pause before asking the player for another track.
+         *
+         * @return the number of milliseconds to wait
+         */
+        synchronized long pause() {
+            long result = 0;
+            if (average > 0) {
+                result = Math.round(average * (average / Math.max(best, 1.0)) / 2.0);
+            }
+            return Math.min(MAX_PAUSE, Math.max(MetadataCache.getCachePauseInterval(), result));
+        }
+    }
+
+    /**
+     * The entries gathered for a track, waiting to be written to the file.
+     */
+    private static class FetchedTrack {
+        final TrackMetadata metadata;
+        final List<MetadataCacheStorage.EntryType> types = new ArrayList<MetadataCacheStorage.EntryType>();
+        final List<Integer> ids = new ArrayList<Integer>();
+        final List<ByteBuffer> contents = new ArrayList<ByteBuffer>();
+
+        FetchedTrack(TrackMetadata metadata) {
+            this.metadata = metadata;
+        }
+
+        void add(MetadataCacheStorage.EntryType type, int id, ByteBuffer content) {
+            types.add(type);
+            ids.add(id);
+            contents.add(content);
+        }
+    }
+
+    /**
+     * Names the journal kept while creating a metadata cache file.
+     *
+     * @param cache the metadata cache file being created
+     *
+     * @return the file in which progress is journaled
+     */
+    static File journalFile(File cache) {
+        return new File(cache.getPath() + ".journal");
+    }
+
+    /**
+     * The slot in which the media to be cached can be found.
+     */
+    private final SlotReference slot;
+
+    /**
+     * The file into which the metadata cache is being written.
+     */
+    private final File cache;
+
+    /**
+     * Will be informed after each track is added, and may cancel the process.
+     */
+    private final MetadataCacheCreationListener listener;
+
+    /**
+     * Writes the file; also the lock which serializes the writing of tracks and the calls to the listener.
+     */
+    private final MappedCacheStorage.Writer writer;
+
+    /**
+     * The rekordbox IDs of the tracks which have not yet been taken by a connection.
+     */
+    private final Queue<Integer> pending = new ConcurrentLinkedQueue<Integer>();
+
+    /**
+     * The artwork IDs which a connection has taken responsibility for adding, so no others fetch them.
+     */
+    private final Set<Integer> artworkClaimed = Collections.newSetFromMap(new ConcurrentHashMap<Integer, Boolean>());
+
+    /**
+     * Set when the connections should stop taking tracks, because the process was canceled or interrupted.
+     */
+    private final AtomicBoolean stopping = new AtomicBoolean();
+
+    /**
+     * Holds the first problem encountered by a connection, if any.
+     */
+    private final AtomicReference<Exception> failure = new AtomicReference<Exception>();
+
+    /**
+     * Keeps track of how quickly each player is responding, keyed by player number.
+     */
+    private final Map<Integer, Pacer> pacers = new HashMap<Integer, Pacer>();
+
+    /**
+     * The total number of tracks to be added to the cache.
+     */
+    private final int totalToAdd;
+
+    /**
+     * The number of tracks added so far, including any kept from an interrupted attempt. Guarded by {@link #writer}.
+     */
+    private int tracksAdded;
+
+    /**
+     * The number of tracks added by this attempt. Guarded by {@link #writer}.
+     */
+    private int tracksAddedNow;
+
+    /**
+     * The most recent track that was added to the cache. Guarded by {@link #writer}.
+     */
+    private TrackMetadata lastTrackAdded;
+
+    /**
+     * Set if the listener asked for the process to stop. Guarded by {@link #writer}.
+     */
+    private boolean canceled;
+
+    /**
+     * When this attempt started adding tracks.
+     */
+    private long startTime;
+
+    /**
+     * When throughput was last reported to the listener. Guarded by {@link #writer}.
+     */
+    private long lastReport;
+
+    /**
+     * The number of connections over which tracks are being fetched.
+     */
+    private int connections;
+
+    /**
+     * Open (or reopen, if an earlier attempt was interrupted) the cache file, copy any unchanged tracks from the
+     * cache being updated, and figure out which tracks still need to be fetched.
+     *
+     * @param trackIds the rekordbox IDs of the tracks to be cached, which may include duplicates if a playlist
+     *                 contains a track more than once
+     * @param playlistId the id of playlist being cached, or 0 if all tracks are being cached
+     * @param slot the slot in which the media to be cached can be found
+     * @param cache the file into which the metadata cache should be written
+     * @param listener will be informed after each track is added to the cache file being created and offered
+     *                 the opportunity to cancel the process
+     * @param base the cache being updated, or {@code null} if a new one is being created
+     * @param unchanged the IDs of tracks that can be copied from {@code base} rather than fetched
+     *
+     * @throws IOException if there is a problem reading {@code base}, or opening the file or its journal
+     */
+    private MetadataCacheCreator(List<Integer> trackIds, int playlistId, SlotReference slot, File cache,
+                                 MetadataCacheCreationListener listener, MetadataCache base, Set<Integer> unchanged)
+            throws IOException {
+        this.slot = slot;
+        this.cache = cache;
+        this.listener = listener;
+        final MediaDetails details = MetadataFinder.getInstance().getMediaDetailsFor(slot);
+        final String identity = playlistId + ":" + trackIds.size() + ":" + ((details == null)? "" : details.hashKey());
+        writer = new MappedCacheStorage.Writer(cache, playlistId, trackIds.size(), journalFile(cache), identity);
+
+        try {
+            if (details != null && !writer.hasMediaDetails()) {
+                // Record the details of the media being cached, to make it easier to recognize now that we can.
+                writer.addMediaDetails(details.getRawBytes());
+            }
+
+            final Set<Integer> ids = new LinkedHashSet<Integer>(trackIds);  // Ignore extra copies of a track on a playlist.
+            totalToAdd = ids.size();
+            int copied = 0;
+            for (int id : ids) {
+                if (!writer.hasEntry(MetadataCacheStorage.EntryType.METADATA, id)) {
+                    if (base != null && unchanged.contains(id) && MetadataCache.copyTrackEntries(base, writer, id)) {
+                        ++copied;
+                    } else {
+                        pending.add(id);
+                    }
+                }
+            }
+            writer.checkpoint();
+            tracksAdded = writer.getResumedTrackCount() + copied;
+            if (base != null) {
+                logger.info("Copied {} unchanged tracks from {} to {}", copied, base.getName(), cache);
+            }
+        } catch (IOException e) {
+            writer.abandon();
+            throw e;
+        }
+    }
+
+    /**
+     * Create a metadata cache file, resuming an interrupted attempt if its journal is found.
+     *
+     * @param trackIds the rekordbox IDs of the tracks to be cached, which may include duplicates if a playlist
+     *                 contains a track more than once
+     * @param playlistId the id of playlist being cached, or 0 if all tracks are being cached
+     * @param slot the slot in which the media to be cached can be found
+     * @param cache the file into which the metadata cache should be written
+     * @param listener will be informed after each track is added to the cache file being created and offered
+     *                 the opportunity to cancel the process
+     *
+     * @throws Exception if there is a problem communicating with the players or writing the cache file
+     */
+    static void create(List<Integer> trackIds, int playlistId, SlotReference slot, File cache,
+                       MetadataCacheCreationListener listener) throws Exception {
+        new MetadataCacheCreator(trackIds, playlistId, slot, cache, listener, null, Collections.<Integer>emptySet()).run();
+    }
+
+    /**
+     * Create a metadata cache file containing a new generation of an existing cache, copying the tracks which have
+     * not changed, and fetching the rest. Resumes an interrupted attempt if its journal is found.
+     *
+     * @param trackIds the rekordbox IDs of the tracks now in the playlist or on the media, which may include
+     *                 duplicates if a playlist contains a track more than once
+     * @param playlistId the id of playlist being cached, or 0 if all tracks are being cached
+     * @param slot the slot in which the media to be cached can be found
+     * @param cache the file into which the new generation should be written
+     * @param listener will be informed after each track is added to the cache file being created and offered
+     *                 the opportunity to cancel the process
+     * @param base the existing cache
+     * @param unchanged the IDs of tracks whose entries can be copied from {@code base}
+     *
+     * @throws Exception if there is a problem communicating with the players, or reading or writing the cache files
+     */
+    static void update(List<Integer> trackIds, int playlistId, SlotReference slot, File cache,
+                       MetadataCacheCreationListener listener, MetadataCache base, Set<Integer> unchanged)
+            throws Exception {
+        new MetadataCacheCreator(trackIds, playlistId, slot, cache, listener, base, unchanged).run();
+    }
+
+    /**
+     * Find the player slots from which the tracks can be fetched: the one we were asked to cache, and any others
+     * which have the same media mounted.
+     *
+     * @return the slots to share the work between
+     */
+    private List<SlotReference> findSources() {
+        final List<SlotReference> result = new ArrayList<SlotReference>();
+        result.add(slot);
+        final MediaDetails details = MetadataFinder.getInstance().getMediaDetailsFor(slot);
+        if (details != null) {
+            for (SlotReference candidate : MetadataFinder.getInstance().getMountedMediaSlots()) {
+                final MediaDetails candidateDetails = MetadataFinder.getInstance().getMediaDetailsFor(candidate);
+                if (candidate.player != slot.player && candidateDetails != null &&
+                        candidateDetails.hashKey().equals(details.hashKey())) {
+                    result.add(candidate);
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Start the connections fetching tracks, wait for them to finish, and then either complete the file or leave
+     * it to be resumed.
+     *
+     * @throws Exception if there is a problem communicating with the players or writing the cache file
+     */
+    private void run() throws Exception {
+        boolean complete = false;
+        boolean keepJournal = true;
+        try {
+            final List<Thread> threads = new ArrayList<Thread>();
+            // Leave a connection free for the finders. If only one is allowed, they share it with us between tracks.
+            final int perPlayer = Math.max(1, ConnectionManager.getInstance().getMaxConnectionsPerPlayer() - 1);
+            for (SlotReference source : findSources()) {
+                final Pacer pacer = new Pacer();
+                pacers.put(source.player, pacer);
+                for (int i = 0; i < perPlayer; i++) {
+                    threads.add(createThread(source, pacer));
+                }
+            }
+            connections = threads.size();
+            logger.info("Creating metadata cache {} over {} connections, {} of {} tracks remaining", cache,
+                    connections, pending.size(), totalToAdd);
+            startTime = System.currentTimeMillis();
+            lastReport = startTime;
+            for (Thread thread : threads) {
+                thread.start();
+            }
+            try {
+                for (Thread thread : threads) {
+                    thread.join();
+                }
+            } catch (InterruptedException e) {
+                stopping.set(true);
+                for (Thread thread : threads) {
+                    thread.interrupt();
+                }
+                awaitStopping(threads);
+                logger.warn("Interrupted while building metadata cache file, progress has been saved so it can be resumed", e);
+                Thread.currentThread().interrupt();
+                return;
+            }
+
+            synchronized (writer) {
+                if (canceled) {
+                    keepJournal = false;
+                    return;
+                }
+                if (!pending.isEmpty()) {
+                    final Exception problem = failure.get();
+                    if (problem != null) {
+                        logger.warn("Metadata cache creation stopped, progress has been saved so it can be resumed");
+                        throw problem;
+                    }
+                    throw new IOException("Metadata cache creation stopped with " + pending.size() + " tracks remaining");
+                }
+                reportThroughput(true);
+            }
+            writer.close();
+            complete = true;
+            try {
+                CacheFingerprint.forFile(cache);  // Have it ready for auto-attachment.
+            } catch (IOException e) {
+                logger.warn("Problem fingerprinting newly created metadata cache " + cache, e);
+            }
+        } finally {
+            if (!complete) {
+                if (keepJournal) {
+                    writer.abandon();
+                } else {
+                    writer.discard();
+                }
+            }
+        }
+    }
+
+    /**
+     * Wait for the connection threads to notice that they have been interrupted, so none of them is still writing
+     * when the file is abandoned. We were interrupted ourselves, so we need to keep trying until they are done, and
+     * then let our caller know about the interruption.
+     *
+     * @param threads the threads which were fetching tracks
+     */
+    private static void awaitStopping(List<Thread> threads) {
+        for (Thread thread : threads) {
+            while (thread.isAlive()) {
+                try {
+                    thread.join();
+                } catch (InterruptedException e) {
+                    // Keep waiting.
+                }
+            }
+        }
+    }
+
+    /**
+     * Create a thread which takes tracks to be cached and fetches them over a connection to a player, until
+     * there are none left, or the process is stopping.
+     *
+     * @param source the slot from which tracks are to be fetched
+     * @param pacer keeps track of how quickly that player is responding
+     *
+     * @return the thread, ready to be started
+     */
+    private Thread createThread(final SlotReference source, final Pacer pacer) {
+        return workerFactory.newThread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    fetchTracks(source, pacer);
+                } catch (Exception e) {
+                    if (!stopping.get()) {
+                        logger.warn("Problem fetching tracks for metadata cache from " + source, e);
+                        failure.compareAndSet(null, e);
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * Take tracks to be cached, fetch them from a player, and write them to the file, until there are none left,
+     * or the process is stopping. If a track cannot be fetched it is put back, so other connections can try it.
+     * Each track is fetched in a session of its own, so that between tracks, requests from the finders for tracks
+     * that are being loaded get their turn on the connection, even if only one is allowed to the player.
+     *
+     * @param source the slot from which tracks are being fetched
+     * @param pacer keeps track of how quickly that player is responding
+     *
+     * @throws Exception if there is a problem communicating with the player or writing the cache file
+     */
+    private void fetchTracks(final SlotReference source, Pacer pacer) throws Exception {
+        while (!stopping.get()) {
+            final Integer rekordboxId = pending.poll();
+            if (rekordboxId == null) {
+                return;
+            }
+            final long started = System.currentTimeMillis();
+            final FetchedTrack fetched;
+            try {
+                fetched = ConnectionManager.getInstance().invokeWithClientSession(source.player,
+                        new ConnectionManager.ClientTask<FetchedTrack>() {
+                            @Override
+                            public FetchedTrack useClient(Client client) throws Exception {
+                                return fetchTrack(client, source, rekordboxId);
+                            }
+                        }, "building metadata cache");
+            } catch (Exception e) {
+                pending.add(rekordboxId);
+                throw e;
+            }
+            pacer.record(System.currentTimeMillis() - started);
+            if (!store(fetched)) {
+                return;
+            }
+            Thread.sleep(pacer.pause());
+        }
+    }
+
+    /**
+     * Gather everything that needs to be cached for a single track. Once the metadata has arrived, the requests for
+     * artwork, beat grid, cue list, and waveforms are pipelined so they all share a single round trip.
+     *
+     * @param client the connection to the database server
+     * @param source the slot from which the track is being fetched
+     * @param rekordboxId the database ID of the track
+     *
+     * @return the entries to be written for the track
+     *
+     * @throws Exception if there is a problem communicating with the player
+     */
+    private FetchedTrack fetchTrack(Client client, SlotReference source, int rekordboxId) throws Exception {
+        final TrackMetadata track = MetadataFinder.getInstance().queryMetadata(new DataReference(source, rekordboxId),
+                CdjStatus.TrackType.REKORDBOX, client);
+        final FetchedTrack result = new FetchedTrack(track);
+        if (track == null) {
+            logger.warn("Unable to retrieve metadata with ID {}", rekordboxId);
+            return result;
+        }
+        final List<Message> items = new ArrayList<Message>(track.rawItems);
+        items.add(MetadataCache.MENU_FOOTER_MESSAGE);  // So we know to stop reading
+        result.add(MetadataCacheStorage.EntryType.METADATA, rekordboxId,
+                MetadataCache.encode(items.toArray(new Message[items.size()])));
+
+        final int artworkId = track.getArtworkId();
+        boolean claimedArt = false;
+        try {
+            boolean wantArt = false;
+            if (artworkId != 0 && artworkClaimed.add(artworkId)) {
+                claimedArt = true;
+                synchronized (writer) {
+                    wantArt = !writer.hasEntry(MetadataCacheStorage.EntryType.ARTWORK, artworkId);
+                }
+            }
+
+            // Send all the requests at once, so we only wait for one round trip rather than one for each.
+            // A cue list from the track data cache may not have kept its message, so always ask for the real thing.
+            final Future<Message> artRequest = wantArt?
+                    ArtFinder.getInstance().requestArtwork(artworkId, source, CdjStatus.TrackType.REKORDBOX, client) : null;
+            final Future<Message> beatGridRequest = BeatGridFinder.getInstance().requestBeatGrid(rekordboxId, source, client);
+            final Future<Message> cueListRequest = MetadataFinder.getInstance().requestCueList(rekordboxId, source.slot, client);
+            final Future<Message> previewRequest = WaveformFinder.getInstance().requestWaveformPreview(rekordboxId, source, client);
+            final Future<Message> detailRequest = WaveformFinder.getInstance().requestWaveformDetail(rekordboxId, source, client);
+
+            if (artRequest != null) {
+                final AlbumArt art = ArtFinder.getInstance().receiveArtwork(artRequest, artworkId, source);
+                result.add(MetadataCacheStorage.EntryType.ARTWORK, artworkId, art.getRawBytes());
+            }
+
+            final BeatGrid beatGrid = BeatGridFinder.getInstance().receiveBeatGrid(beatGridRequest, rekordboxId, source);
+            if (beatGrid != null) {
+                result.add(MetadataCacheStorage.EntryType.BEAT_GRID, rekordboxId, beatGrid.getRawData());
+            }
+
+            final CueList cueList = MetadataFinder.getInstance().receiveCueList(cueListRequest, rekordboxId, source.slot, client);
+            if (cueList != null) {
+                result.add(MetadataCacheStorage.EntryType.CUE_LIST, rekordboxId, MetadataCache.encode(cueList.rawMessage));
+            }
+
+            final WaveformPreview preview = WaveformFinder.getInstance().receiveWaveformPreview(previewRequest, rekordboxId, source, client);
+            result.add(MetadataCacheStorage.EntryType.WAVEFORM_PREVIEW, rekordboxId, MetadataCache.encode(preview.rawMessage));
+
+            final WaveformDetail detail = WaveformFinder.getInstance().receiveWaveformDetail(detailRequest, rekordboxId, source, client);
+            result.add(MetadataCacheStorage.EntryType.WAVEFORM_DETAIL, rekordboxId, MetadataCache.encode(detail.rawMessage));
+        } catch (Exception e) {
+            if (claimedArt) {
+                artworkClaimed.remove(artworkId);  // Let whoever retries this track fetch the art.
+            }
+            throw e;
+        }
+        return result;
+    }
+
+    /**
+     * Write the entries gathered for a track to the file, mark a checkpoint in the journal, and let the listener
+     * know.
+     *
+     * @param fetched the entries to be written
+     *
+     * @return {@code true} if the process should continue, {@code false} if it has been canceled
+     *
+     * @throws IOException if there is a problem writing the file
+     */
+    private boolean store(FetchedTrack fetched) throws IOException {
+        synchronized (writer) {
+            if (canceled) {
+                return false;
+            }
+            for (int i = 0; i < fetched.types.size(); i++) {
+                logger.debug("Adding {} entry with ID {}", fetched.types.get(i), fetched.ids.get(i));
+                writer.addEntry(fetched.types.get(i), fetched.ids.get(i), fetched.contents.get(i));
+            }
+            writer.checkpoint();
+            if (fetched.metadata != null) {
+                lastTrackAdded = fetched.metadata;
+            }
+            tracksAdded++;
+            tracksAddedNow++;
+            if (listener != null) {
+                if (!listener.cacheCreationContinuing(lastTrackAdded, tracksAdded, totalToAdd)) {
+                    logger.info("Track metadata cache creation canceled by listener");
+                    canceled = true;
+                    stopping.set(true);
+                    return false;
+                }
+                reportThroughput(false);
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Tell the listener how quickly tracks are being added, if it wants to know, and it has been long enough since
+     * we last told it. Must be called while holding the lock on {@link #writer}.
+     *
+     * @param force if {@code true}, report even if it has not been long enough
+     */
+    private void reportThroughput(boolean force) {
+        if (!(listener instanceof MetadataCacheThroughputListener)) {
+            return;
+        }
+        final long now = System.currentTimeMillis();
+        if (!force && now - lastReport < REPORT_INTERVAL) {
+            return;
+        }
+        lastReport = now;
+        final double elapsed = (now - startTime) / 1000.0;
+        final double tracksPerSecond = (elapsed > 0)? tracksAddedNow / elapsed : 0.0;
+        long responseTotal = 0;
+        for (Pacer pacer : pacers.values()) {
+            responseTotal += pacer.getAverage();
+        }
+        final long averageResponseTime = pacers.isEmpty()? 0 : responseTotal / pacers.size();
+        try {
+            ((MetadataCacheThroughputListener) listener).cacheCreationThroughput(connections, tracksPerSecond, averageResponseTime);
+        } catch (Throwable t) {
+            logger.warn("Problem delivering metadata cache throughput update to listener", t);
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package org.deepsymmetry.beatlink.data;
+
+import org.deepsymmetry.beatlink.MediaDetails;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.List;
+
+/**
+ * Reads the entries of a metadata cache file, hiding the differences between the original ZIP format and the
+ * indexed format which replaced it, so that {@link MetadataCache} can work with either.
+ *
+ * @author James Elliott
+ * @since 0.6.3
+ */
+interface MetadataCacheStorage {
+
+    /**
+     * Identifies the kinds of entry that are stored for tracks in a metadata cache.
+     */
+    enum EntryType {
+        /**
+         * The metadata menu items of a track, followed by a menu footer message, keyed by rekordbox ID.
+         */
+        METADATA,
+        /**
+         * The raw bytes of an album art image, keyed by artwork ID.
+         */
+        ARTWORK,
+        /**
+         * The raw bytes of a beat grid, keyed by rekordbox ID.
+         */
+        BEAT_GRID,
+        /**
+         * The message holding a cue list, keyed by rekordbox ID.
+         */
+        CUE_LIST,
+        /**
+         * The message holding a waveform preview, keyed by rekordbox ID.
+         */
+        WAVEFORM_PREVIEW,
+        /**
+         * The message holding a waveform detail, keyed by rekordbox ID.
+         */
+        WAVEFORM_DETAIL
+    }
+
+    /**
+     * Get the path name of the file containing the cache.
+     *
+     * @return the path name of the metadata cache file
+     */
+    String getName();
+
+    /**
+     * Get the ID of the playlist that was used to create the cache.
+     *
+     * @return the playlist ID, or 0 if it is an all-tracks cache
+     */
+    int getSourcePlaylist();
+
+    /**
+     * Get the number of tracks that were in the playlist or media when the cache was created.
+     *
+     * @return the track count recorded when the cache was created
+     */
+    int getTrackCount();
+
+    /**
+     * Get the details about the media from which the cache was created, if they were recorded.
+     *
+     * @return the media details, or {@code null} if the cache was created by a version older than 0.4.1
+     *
+     * @throws IOException if there is a problem reading the file
+     */
+    MediaDetails getSourceMedia() throws IOException;
+
+    /**
+     * Get the rekordbox IDs of the tracks contained in the cache.
+     *
+     * @return a list containing the rekordbox ID for each track present in the cache, in the order they were added
+     */
+    List<Integer> getTrackIds();
+
+    /**
+     * Look up an entry in the cache.
+     *
+     * @param type the kind of entry desired
+     * @param id the rekordbox ID of the track, or the artwork ID for album art
+     *
+     * @return a read-only buffer holding the content of the entry, or {@code null} if there is no such entry
+     *
+     * @throws IOException if there is a problem reading the entry, including the cache having been closed
+     */
+    ByteBuffer getEntry(EntryType type, int id) throws IOException;
+
+    /**
+     * Close the cache file, freeing the resources it uses. Buffers that have already been returned by
+     * {@link #getEntry(EntryType, int)} may remain valid, but no more entries can be read.
+     *
+     * @throws IOException if there is a problem closing the file
+     */
+    void close() throws IOException;
+}
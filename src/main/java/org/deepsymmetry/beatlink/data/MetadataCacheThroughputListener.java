@@ -0,0 +1,34 @@
+package org.deepsymmetry.beatlink.data;
+
+import java.io.File;
+
+/**
+ * <p>A {@link MetadataCacheCreationListener} which also wants to know how quickly the metadata cache is being
+ * created, for example to estimate how much longer it will take.</p>
+ *
+ * <p>When a listener implementing this interface is passed to
+ * {@link MetadataCache#createMetadataCache(SlotReference, int, File, MetadataCacheCreationListener)}, then in addition
+ * to {@link #cacheCreationContinuing(TrackMetadata, int, int)} being called for each track,
+ * {@link #cacheCreationThroughput(int, double, long)} is called about once a second while tracks are being added.</p>
+ *
+ * @author James Elliott
+ * @since 0.6.3
+ * @deprecated
+ * Since the discovery of how to download rekordbox track analysis files from players using Crate Digger, there
+ * is a reliable way to obtain metadata even with four real players in use, so this workaround is no longer needed.
+ */
+@SuppressWarnings("WeakerAccess")
+@Deprecated
+public interface MetadataCacheThroughputListener extends MetadataCacheCreationListener {
+    /**
+     * Called to report how quickly tracks are being added to the metadata cache file being created.
+     *
+     * @param connections the number of dbserver connections over which tracks are being fetched, which can include
+     *                    connections to other players that have the same media mounted
+     * @param tracksPerSecond the average number of tracks added each second since the process started (or was
+     *                        resumed, if it was picking up after an interrupted attempt)
+     * @param averageResponseTime the recent average number of milliseconds it has taken a player to supply all the
+     *                            data for a track
+     */
+    void cacheCreationThroughput(int connections, double tracksPerSecond, long averageResponseTime);
+}
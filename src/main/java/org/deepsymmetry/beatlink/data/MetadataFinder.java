@@ -12,7 +12,10 @@ import javax.swing.*;
 import java.io.File;
 import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 import java.util.concurrent.LinkedBlockingDeque;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
@@ -75,6 +78,47 @@ public class MetadataFinder extends LifecycleParticipant {
         return requestMetadataInternal(track, trackType, false);
     }
 
+    /**
+     * Start finding the metadata for the track a player has loaded, in the background, returning right away.
+     * The request is cancelled if the player unloads the track, or loads a different one, before it finishes.
+     *
+     * @param status the CDJ status update that will be used to determine the loaded track and ask the appropriate
+     *               player for metadata about it
+     *
+     * @return the request, which will provide the same result as {@link #requestMetadataFrom(CdjStatus)}
+     */
+    public AsyncRequest<TrackMetadata> requestMetadataAsync(final CdjStatus status) {
+        final DataReference track = AsyncRequests.loadedTrack(status);
+        if (track == null) {
+            return AsyncRequests.<TrackMetadata>completed(null);
+        }
+        final CdjStatus.TrackType trackType = status.getTrackType();
+        return AsyncRequests.submit(status.getDeviceNumber(), track, new Callable<TrackMetadata>() {
+            @Override
+            public TrackMetadata call() {
+                return requestMetadataFrom(track, trackType);
+            }
+        });
+    }
+
+    /**
+     * Start finding the metadata for a track in the background, returning right away.
+     *
+     * @param track uniquely identifies the track whose metadata is desired
+     * @param trackType identifies the type of track being requested, which affects the type of metadata request
+     *                  message that must be used
+     *
+     * @return the request, which will provide the same result as {@link #requestMetadataFrom(DataReference, CdjStatus.TrackType)}
+     */
+    public AsyncRequest<TrackMetadata> requestMetadataAsync(final DataReference track, final CdjStatus.TrackType trackType) {
+        return AsyncRequests.submit(0, null, new Callable<TrackMetadata>() {
+            @Override
+            public TrackMetadata call() {
+                return requestMetadataFrom(track, trackType);
+            }
+        });
+    }
+
     /**
      * Ask the specified player for metadata about the track in the specified slot with the specified rekordbox ID,
      * using cached media instead if it is available, and possibly giving up if we are in passive mode.
@@ -89,10 +133,19 @@ public class MetadataFinder extends LifecycleParticipant {
      */
     private TrackMetadata requestMetadataInternal(final DataReference track, final CdjStatus.TrackType trackType,
                                                   final boolean failIfPassive) {
-        // First check if we are using cached data for this request.
+        // First check if we have already obtained it recently.
+        final TrackDataCache dataCache = TrackDataCache.getInstance();
+        final TrackMetadata cached = dataCache.get(TrackDataCache.Kind.TRACK_METADATA, track);
+        if (cached != null) {
+            return cached;
+        }
+
+        // Then check if we are using cached data for this request.
         @SuppressWarnings("deprecation") MetadataCache cache = getMetadataCache(SlotReference.getSlotReference(track));
         if (cache != null && trackType == CdjStatus.TrackType.REKORDBOX) {
-            return cache.getTrackMetadata(null, track);
+            final TrackMetadata result = cache.getTrackMetadata(null, track);
+            dataCache.put(TrackDataCache.Kind.TRACK_METADATA, track, result);
+            return result;
         }
 
         // Then see if any registered metadata providers can offer it for us.
@@ -100,6 +153,7 @@ public class MetadataFinder extends LifecycleParticipant {
         if (sourceDetails != null) {
             final TrackMetadata provided = allMetadataProviders.getTrackMetadata(sourceDetails, track);
             if (provided != null) {
+                dataCache.put(TrackDataCache.Kind.TRACK_METADATA, track, provided);
                 return provided;
             }
         }
@@ -119,7 +173,9 @@ public class MetadataFinder extends LifecycleParticipant {
         };
 
         try {
-            return ConnectionManager.getInstance().invokeWithClientSession(track.player, task, "requesting metadata");
+            final TrackMetadata result = ConnectionManager.getInstance().invokeWithClientSession(track.player, task, "requesting metadata");
+            dataCache.put(TrackDataCache.Kind.TRACK_METADATA, track, result);
+            return result;
         } catch (Exception e) {
             logger.error("Problem requesting metadata, returning null", e);
         }
@@ -162,9 +218,12 @@ public class MetadataFinder extends LifecycleParticipant {
                     return null;
                 }
 
-                // Gather the cue list and all the metadata menu items
+                // Gather the cue list, unless we still have it from an earlier request, and all the metadata menu items
                 final List<Message> items = client.renderMenuItems(Message.MenuIdentifier.MAIN_MENU, track.slot, trackType, response);
-                final CueList cueList = getCueList(track.rekordboxId, track.slot, client);
+                CueList cueList = TrackDataCache.getInstance().get(TrackDataCache.Kind.CUE_LIST, track);
+                if (cueList == null) {
+                    cueList = getCueList(track.rekordboxId, track.slot, client);
+                }
                 return new TrackMetadata(track, trackType, items, cueList);
             } finally {
                 client.unlockForMenuOperations();
@@ -187,9 +246,44 @@ public class MetadataFinder extends LifecycleParticipant {
      */
     CueList getCueList(int rekordboxId, CdjStatus.TrackSourceSlot slot, Client client)
             throws IOException {
-        // First try for an extended cue list, with colors and names, and hot cues above C.
-        Message response = client.simpleRequest(Message.KnownType.CUE_LIST_EXT_REQ, null,
+        return receiveCueList(requestCueList(rekordboxId, slot, client), rekordboxId, slot, client);
+    }
+
+    /**
+     * Sends a pipelined request for the cue list of a specific track ID, so it can travel to the player along with
+     * other requests about the same track. The response must be passed to
+     * {@link #receiveCueList(Future, int, CdjStatus.TrackSourceSlot, Client)} while the client is still held.
+     *
+     * @param rekordboxId the track of interest
+     * @param slot identifies the media slot we are querying
+     * @param client the dbserver client that is communicating with the appropriate player
+     *
+     * @return the future through which the response will arrive
+     * @throws IOException if there is a communication problem
+     */
+    Future<Message> requestCueList(int rekordboxId, CdjStatus.TrackSourceSlot slot, Client client)
+            throws IOException {
+        // We would prefer an extended cue list, with colors and names, and hot cues above C.
+        return client.pipelinedRequest(Message.KnownType.CUE_LIST_EXT_REQ, null,
                 client.buildRMST(Message.MenuIdentifier.DATA, slot), new NumberField(rekordboxId), NumberField.WORD_0);
+    }
+
+    /**
+     * Builds the cue list from the response to {@link #requestCueList(int, CdjStatus.TrackSourceSlot, Client)}.
+     * Older players cannot send an extended cue list, so if that is what we got, we fall back to asking for the
+     * original Nexus one.
+     *
+     * @param extended the response to the request for the extended cue list
+     * @param rekordboxId the track of interest
+     * @param slot identifies the media slot we are querying
+     * @param client the dbserver client that is communicating with the appropriate player
+     *
+     * @return the retrieved cue list, or {@code null} if none was available
+     * @throws IOException if there is a communication problem
+     */
+    CueList receiveCueList(Future<Message> extended, int rekordboxId, CdjStatus.TrackSourceSlot slot, Client client)
+            throws IOException {
+        Message response = awaitResponse(extended);
         if (response.knownType == Message.KnownType.CUE_LIST_EXT) {
             return new CueList(response);
         }
@@ -203,6 +297,30 @@ public class MetadataFinder extends LifecycleParticipant {
         return null;
     }
 
+    /**
+     * Wait for the response to a pipelined dbserver request, reporting any problem the same way a synchronous
+     * request would have.
+     *
+     * @param response the future returned when the request was sent
+     *
+     * @return the response
+     *
+     * @throws IOException if there was a problem communicating, or the thread was interrupted while waiting
+     */
+    static Message awaitResponse(Future<Message> response) throws IOException {
+        try {
+            return response.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException("Problem obtaining dbserver response", e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for dbserver response", e);
+        }
+    }
+
     /**
      * Request the list of all tracks in the specified slot, given a dbserver connection to a player that has already
      * been set up.
@@ -332,8 +450,8 @@ public class MetadataFinder extends LifecycleParticipant {
         @Override
         public void received(DeviceUpdate update) {
             logger.debug("Received device update {}", update);
-            if (update instanceof CdjStatus) {
-                if (!pendingUpdates.offerLast((CdjStatus)update)) {
+            if (update instanceof CdjStatus) {  // Keep a stable copy if pooled, since we process it on another thread.
+                if (!pendingUpdates.offerLast(((CdjStatus)update).detach())) {
                     logger.warn("Discarding CDJ update because our queue is backed up.");
                 }
             }
@@ -449,6 +567,7 @@ public class MetadataFinder extends LifecycleParticipant {
      */
     private void clearMetadata(DeviceAnnouncement announcement) {
         final int player = announcement.getDeviceNumber();
+        AsyncRequests.cancelObsolete(player, null);
         // Iterate over a copy to avoid concurrent modification issues
         for (DeckReference deck : new HashSet<DeckReference>(hotCache.keySet())) {
             if (deck.player == player) {
@@ -594,6 +713,7 @@ public class MetadataFinder extends LifecycleParticipant {
     void attachMetadataCacheInternal(SlotReference slot, MetadataCache cache) {
         MetadataCache oldCache = metadataCacheFiles.put(slot, cache);
         if (oldCache != null) {
+            TrackDataCache.getInstance().invalidate(slot);  // Don't keep serving what the old cache told us.
             try {
                 oldCache.close();
             } catch (IOException e) {
@@ -619,6 +739,7 @@ public class MetadataFinder extends LifecycleParticipant {
     public void detachMetadataCache(SlotReference slot) {
         MetadataCache oldCache = metadataCacheFiles.remove(slot);
         if (oldCache != null) {
+            TrackDataCache.getInstance().invalidate(slot);
             try {
                 oldCache.close();
             } catch (IOException e) {
@@ -656,26 +777,19 @@ public class MetadataFinder extends LifecycleParticipant {
      */
     @Deprecated
     public void addAutoAttachCacheFile(File metadataCacheFile) throws IOException {
-        MetadataCache opened = new MetadataCache(metadataCacheFile);  // Make sure it is readable and valid.
-        try {
-            if (opened.sourceMedia != null) {  // Remove any auto-attach files created from the same media as the one being added.
-                Iterator<File> iterator = autoAttachCacheFiles.iterator();
-                while (iterator.hasNext()) {
-                    File file = iterator.next();
-                    if (!file.equals(metadataCacheFile)) {
-                        MetadataCache existing = new MetadataCache(file);
-                        try {
-                            if (existing.sourceMedia != null && existing.sourceMedia.hashKey().equals(opened.sourceMedia.hashKey())) {
-                                iterator.remove();
-                            }
-                        } finally {
-                            existing.close();
-                        }
+        // Make sure it is readable and valid; this also leaves its fingerprint ready for matching media.
+        final CacheFingerprint opened = CacheFingerprint.forFile(metadataCacheFile);
+        if (opened.sourceMedia != null) {  // Remove any auto-attach files created from the same media as the one being added.
+            Iterator<File> iterator = autoAttachCacheFiles.iterator();
+            while (iterator.hasNext()) {
+                File file = iterator.next();
+                if (!file.equals(metadataCacheFile)) {
+                    final CacheFingerprint existing = CacheFingerprint.forFile(file);
+                    if (existing.sourceMedia != null && existing.sourceMedia.hashKey().equals(opened.sourceMedia.hashKey())) {
+                        iterator.remove();
                     }
                 }
             }
-        } finally {
-            opened.close();
         }
         if (autoAttachCacheFiles.add(metadataCacheFile)) {
             for (SlotReference slot : getMountedMediaSlots()) {
@@ -837,6 +951,7 @@ public class MetadataFinder extends LifecycleParticipant {
     private void removeMount(SlotReference slot) {
         mediaDetails.remove(slot);
         if (mediaMounts.remove(slot)) {
+            TrackDataCache.getInstance().invalidate(slot);
             deliverMountUpdate(slot, false);
         }
     }
@@ -881,8 +996,8 @@ public class MetadataFinder extends LifecycleParticipant {
     /**
      * Keeps track of the registered mount update listeners.
      */
-    private final Set<MountListener> mountListeners =
-            Collections.newSetFromMap(new ConcurrentHashMap<MountListener, Boolean>());
+    private final ListenerRegistry<MountListener> mountListeners =
+            new ListenerRegistry<MountListener>();
 
     /**
      * Adds the specified mount update listener to receive updates when media is mounted or unmounted by any player.
@@ -932,8 +1047,7 @@ public class MetadataFinder extends LifecycleParticipant {
      */
     @SuppressWarnings("WeakerAccess")
     public Set<MountListener> getMountListeners() {
-        // Make a copy so callers get an immutable snapshot of the current state.
-        return Collections.unmodifiableSet(new HashSet<MountListener>(mountListeners));
+        return mountListeners.asSet();
     }
 
     /**
@@ -949,7 +1063,9 @@ public class MetadataFinder extends LifecycleParticipant {
         } else {
             logger.info("Reporting media removed from " + slot);
         }
-        for (final MountListener listener : getMountListeners()) {
+        final List<MountListener> listeners = mountListeners.snapshot();
+        for (int i = 0; i < listeners.size(); i++) {
+            final MountListener listener = listeners.get(i);
             try {
                 if (mounted) {
                     listener.mediaMounted(slot);
@@ -975,8 +1091,8 @@ public class MetadataFinder extends LifecycleParticipant {
      * is a reliable way to obtain metadata even with four real players in use, so this workaround is no longer needed.
      */
     @Deprecated
-    private final Set<MetadataCacheListener> cacheListeners =
-            Collections.newSetFromMap(new ConcurrentHashMap<MetadataCacheListener, Boolean>());
+    private final ListenerRegistry<MetadataCacheListener> cacheListeners =
+            new ListenerRegistry<MetadataCacheListener>();
 
     /**
      * Adds the specified cache update listener to receive updates when a metadata cache is attached or detached.
@@ -1035,8 +1151,7 @@ public class MetadataFinder extends LifecycleParticipant {
     @Deprecated
     @SuppressWarnings("WeakerAccess")
     public Set<MetadataCacheListener> getCacheListeners() {
-        // Make a copy so callers get an immutable snapshot of the current state.
-        return Collections.unmodifiableSet(new HashSet<MetadataCacheListener>(cacheListeners));
+        return cacheListeners.asSet();
     }
 
     /**
@@ -1051,7 +1166,9 @@ public class MetadataFinder extends LifecycleParticipant {
      */
     @Deprecated
     private void deliverCacheUpdate(SlotReference slot, MetadataCache cache) {
-        for (final MetadataCacheListener listener : getCacheListeners()) {
+        final List<MetadataCacheListener> listeners = cacheListeners.snapshot();
+        for (int i = 0; i < listeners.size(); i++) {
+            final MetadataCacheListener listener = listeners.get(i);
             try {
                 if (cache == null) {
                     listener.cacheDetached(slot);
@@ -1067,8 +1184,8 @@ public class MetadataFinder extends LifecycleParticipant {
     /**
      * Keeps track of the registered track metadata update listeners.
      */
-    private final Set<TrackMetadataListener> trackListeners =
-            Collections.newSetFromMap(new ConcurrentHashMap<TrackMetadataListener, Boolean>());
+    private final ListenerRegistry<TrackMetadataListener> trackListeners =
+            new ListenerRegistry<TrackMetadataListener>();
 
     /**
      * Adds the specified track metadata listener to receive updates when the track metadata for a player changes.
@@ -1114,17 +1231,18 @@ public class MetadataFinder extends LifecycleParticipant {
      */
     @SuppressWarnings("WeakerAccess")
     public Set<TrackMetadataListener> getTrackMetadataListeners() {
-        // Make a copy so callers get an immutable snapshot of the current state.
-        return Collections.unmodifiableSet(new HashSet<TrackMetadataListener>(trackListeners));
+        return trackListeners.asSet();
     }
 
     /**
      * Send a track metadata update announcement to all registered listeners.
      */
     private void deliverTrackMetadataUpdate(int player, TrackMetadata metadata) {
-        if (!getTrackMetadataListeners().isEmpty()) {
+        if (!trackListeners.isEmpty()) {
             final TrackMetadataUpdate update = new TrackMetadataUpdate(player, metadata);
-            for (final TrackMetadataListener listener : getTrackMetadataListeners()) {
+            final List<TrackMetadataListener> listeners = trackListeners.snapshot();
+            for (int i = 0; i < listeners.size(); i++) {
+                final TrackMetadataListener listener = listeners.get(i);
                 try {
                     listener.metadataChanged(update);
 
@@ -1371,6 +1489,9 @@ public class MetadataFinder extends LifecycleParticipant {
             recordMount(SlotReference.getSlotReference(update.getDeviceNumber(), CdjStatus.TrackSourceSlot.CD_SLOT));
         }
 
+        // Cancel any async requests made for a track this player no longer has loaded.
+        AsyncRequests.cancelObsolete(update.getDeviceNumber(), AsyncRequests.loadedTrack(update));
+
         // Now see if a track has changed that needs new metadata.
         if (update.getTrackType() == CdjStatus.TrackType.UNKNOWN ||
                 update.getTrackType() == CdjStatus.TrackType.NO_TRACK ||
@@ -1396,7 +1517,7 @@ public class MetadataFinder extends LifecycleParticipant {
                     if (activeRequests.add(update.getTrackSourcePlayer())) {
                         // We had to make sure we were not already asking for this track.
                         clearDeck(update);  // We won't know what it is until our request completes.
-                        new Thread(new Runnable() {
+                        Scheduler.getInstance().execute(Scheduler.Pool.IO, "metadata request", new Runnable() {
                             @Override
                             public void run() {
                                 try {
@@ -1410,7 +1531,7 @@ public class MetadataFinder extends LifecycleParticipant {
                                     activeRequests.remove(update.getTrackSourcePlayer());
                                 }
                             }
-                        }, "MetadataFinder metadata request").start();
+                        });
                     }
                 }
             }
@@ -1537,7 +1658,9 @@ public class MetadataFinder extends LifecycleParticipant {
                     logger.warn("Discarding media details reported for an unmounted media slot:" + details);
                     mediaDetails.remove(details.slotReference);
                 } else {
-                    for (final MountListener listener : getMountListeners()) {
+                    final List<MountListener> listeners = mountListeners.snapshot();
+                    for (int i = 0; i < listeners.size(); i++) {
+                        final MountListener listener = listeners.get(i);
                         try {
                             if (listener instanceof MediaDetailsListener) {
                                 ((MediaDetailsListener) listener).detailsAvailable(details);
@@ -0,0 +1,200 @@
+package org.deepsymmetry.beatlink.data;
+
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * <p>Mirrors the latest {@link TrackPositionUpdate} for each player into a fixed array of primitive values, so that
+ * the {@link TimeFinder} can answer position queries without looking anything up in a map, boxing the player number,
+ * or allocating anything.</p>
+ *
+ * <p>Each player gets a slot of eight longs (a cache line), guarded by a sequence number in the slot's first element.
+ * A writer makes the sequence number odd while it is changing the slot and even again when it is done; readers
+ * copy the values out and try again if the sequence number was odd or changed while they were reading. Readers never
+ * block writers, and the values they return always belong to a single update. The elements are read and written
+ * through an {@link AtomicLongArray} so that the ordering guarantees needed by this scheme hold.</p>
+ *
+ * @author James Elliott
+ * @since 0.6.3
+ */
+class PositionSlots {
+
+    /**
+     * The number of slots we maintain. Players with numbers outside this range are only tracked by the map.
+     */
+    static final int CAPACITY = 16;
+
+    /**
+     * How many elements of the array are used by each slot.
+     */
+    private static final int STRIDE = 8;
+
+    /**
+     * The offsets of the values within each slot.
+     */
+    private static final int SEQUENCE = 0;
+    private static final int TIMESTAMP = 1;
+    private static final int MILLISECONDS = 2;
+    private static final int PITCH = 3;
+    private static final int BEAT = 4;
+    private static final int FLAGS = 5;
+
+    /**
+     * The bits within the flags value. When {@link #KNOWN} is clear, we have no position for the player.
+     */
+    private static final long KNOWN = 1;
+    private static final long PLAYING = 2;
+    private static final long REVERSE = 4;
+    private static final long DEFINITIVE = 8;
+
+    /**
+     * Holds the slots themselves.
+     */
+    private final AtomicLongArray slots = new AtomicLongArray(CAPACITY * STRIDE);
+
+    /**
+     * Check whether a player's position can be found in a slot.
+     *
+     * @param player the player number of interest
+     *
+     * @return {@code true} if there is a slot for that player
+     */
+    static boolean covers(int player) {
+        return player >= 0 && player < CAPACITY;
+    }
+
+    /**
+     * Figure out, based on how much time has elapsed since a position was known, and the playback speed and
+     * direction at that moment, where the player will be at another time.
+     *
+     * @param timestamp the nanosecond timestamp at which the position was known
+     * @param milliseconds the track position at that time
+     * @param playing whether the track was playing
+     * @param pitch the playback speed, where 1.0 is normal
+     * @param reverse whether the track was playing backwards
+     * @param currentTimestamp the nanosecond timestamp for which we want to know the track position
+     *
+     * @return the playback position we believe that player reaches at that moment
+     */
+    static long interpolate(long timestamp, long milliseconds, boolean playing, double pitch, boolean reverse,
+                            long currentTimestamp) {
+        if (!playing) {
+            return milliseconds;
+        }
+        long elapsedMillis = (currentTimestamp - timestamp) / 1000000;
+        long moved = Math.round(pitch * elapsedMillis);
+        if (reverse) {
+            return milliseconds - moved;
+        }
+        return milliseconds + moved;
+    }
+
+    /**
+     * Copy the position currently held in the map for a player into that player's slot. Because the value is looked
+     * up while the slot is held, whichever thread publishes last always leaves the slot agreeing with the map, even
+     * if several threads are updating the same player at once.
+     *
+     * @param player the player number whose position has changed
+     * @param positions the map holding the authoritative position of each player
+     */
+    void publish(int player, Map<Integer, TrackPositionUpdate> positions) {
+        if (!covers(player)) {
+            return;
+        }
+        final int base = player * STRIDE;
+        long sequence;
+        do {
+            sequence = slots.get(base + SEQUENCE);
+        } while ((sequence & 1) != 0 || !slots.compareAndSet(base + SEQUENCE, sequence, sequence + 1));
+        try {
+            final TrackPositionUpdate update = positions.get(player);
+            if (update == null) {
+                slots.set(base + FLAGS, 0);
+            } else {
+                slots.set(base + TIMESTAMP, update.timestamp);
+                slots.set(base + MILLISECONDS, update.milliseconds);
+                slots.set(base + PITCH, Double.doubleToRawLongBits(update.pitch));
+                slots.set(base + BEAT, update.beatNumber);
+                slots.set(base + FLAGS, KNOWN | (update.playing? PLAYING : 0) | (update.reverse? REVERSE : 0) |
+                        (update.definitive? DEFINITIVE : 0));
+            }
+        } finally {
+            slots.set(base + SEQUENCE, sequence + 2);
+        }
+    }
+
+    /**
+     * Copy the position of a player out of its slot.
+     *
+     * @param player the player number of interest
+     * @param reading where the values should be copied
+     *
+     * @return {@code true} if a position was known for the player; if not, {@code reading} is left unchanged
+     */
+    boolean read(int player, TrackPositionReading reading) {
+        if (!covers(player)) {
+            return false;
+        }
+        final int base = player * STRIDE;
+        while (true) {
+            final long sequence = slots.get(base + SEQUENCE);
+            if ((sequence & 1) == 0) {
+                final long flags = slots.get(base + FLAGS);
+                final long timestamp = slots.get(base + TIMESTAMP);
+                final long milliseconds = slots.get(base + MILLISECONDS);
+                final long pitch = slots.get(base + PITCH);
+                final long beat = slots.get(base + BEAT);
+                if (slots.get(base + SEQUENCE) == sequence) {
+                    if ((flags & KNOWN) == 0) {
+                        return false;
+                    }
+                    reading.set(timestamp, milliseconds, (int) beat, (flags & DEFINITIVE) != 0,
+                            (flags & PLAYING) != 0, Double.longBitsToDouble(pitch), (flags & REVERSE) != 0);
+                    return true;
+                }
+            }
+        }
+    }
+
+    /**
+     * Find where a player will have reached at a particular moment, without copying its position anywhere.
+     *
+     * @param player the player number of interest
+     * @param currentTimestamp the nanosecond timestamp for which we want to know the track position
+     *
+     * @return the interpolated playback position, or -1 if we do not know it
+     */
+    long timeFor(int player, long currentTimestamp) {
+        if (!covers(player)) {
+            return -1;
+        }
+        final int base = player * STRIDE;
+        while (true) {
+            final long sequence = slots.get(base + SEQUENCE);
+            if ((sequence & 1) == 0) {
+                final long flags = slots.get(base + FLAGS);
+                final long timestamp = slots.get(base + TIMESTAMP);
+                final long milliseconds = slots.get(base + MILLISECONDS);
+                final long pitch = slots.get(base + PITCH);
+                if (slots.get(base + SEQUENCE) == sequence) {
+                    if ((flags & KNOWN) == 0) {
+                        return -1;
+                    }
+                    return interpolate(timestamp, milliseconds, (flags & PLAYING) != 0, Double.longBitsToDouble(pitch),
+                            (flags & REVERSE) != 0, currentTimestamp);
+                }
+            }
+        }
+    }
+
+    /**
+     * Bring every slot into agreement with the map, for example after it has been cleared.
+     *
+     * @param positions the map holding the authoritative position of each player
+     */
+    void publishAll(Map<Integer, TrackPositionUpdate> positions) {
+        for (int player = 0; player < CAPACITY; player++) {
+            publish(player, positions);
+        }
+    }
+}
@@ -177,8 +177,8 @@ public class SignatureFinder extends LifecycleParticipant {
     /**
      * Keeps track of the registered signature listeners.
      */
-    private final Set<SignatureListener> signatureListeners =
-            Collections.newSetFromMap(new ConcurrentHashMap<SignatureListener, Boolean>());
+    private final ListenerRegistry<SignatureListener> signatureListeners =
+            new ListenerRegistry<SignatureListener>();
 
     /**
      * <p>Adds the specified signature listener to receive updates when the track signature for a player changes.
@@ -220,12 +220,11 @@ public class SignatureFinder extends LifecycleParticipant {
      */
     @SuppressWarnings("WeakerAccess")
     public Set<SignatureListener> getSignatureListeners() {
-        // Make a copy so callers get an immutable snapshot of the current state.
-        return Collections.unmodifiableSet(new HashSet<SignatureListener>(signatureListeners));
+        return signatureListeners.asSet();
     }
 
     private void deliverSignatureUpdate(final int player, final String signature) {
-        final Set<SignatureListener> listeners = getSignatureListeners();
+        final List<SignatureListener> listeners = signatureListeners.snapshot();
         if (!listeners.isEmpty()) {
             SwingUtilities.invokeLater(new Runnable() {
                 @Override
@@ -6,10 +6,13 @@ import org.slf4j.LoggerFactory;
 
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * <p>Watches the beat packets and transport information contained in player status update to infer the current
@@ -31,6 +34,13 @@ public class TimeFinder extends LifecycleParticipant {
      */
     private final ConcurrentHashMap<Integer, TrackPositionUpdate> positions = new ConcurrentHashMap<Integer, TrackPositionUpdate>();
 
+    /**
+     * Mirrors the contents of {@link #positions} as primitive values, so that frequent queries about where players
+     * have reached can be answered without allocation. Must be republished whenever a player's entry in
+     * {@link #positions} changes.
+     */
+    private final PositionSlots slots = new PositionSlots();
+
     /**
      * Keeps track of the latest device update reported by each player, indexed by player number.
      */
@@ -50,6 +60,7 @@ public class TimeFinder extends LifecycleParticipant {
         public void deviceLost(DeviceAnnouncement announcement) {
             logger.info("Clearing position information in response to the loss of a device, {}", announcement);
             positions.remove(announcement.getDeviceNumber());
+            slots.publish(announcement.getDeviceNumber(), positions);
             updates.remove(announcement.getDeviceNumber());
         }
     };
@@ -150,15 +161,8 @@ public class TimeFinder extends LifecycleParticipant {
      * @return the playback position we believe that player has reached now
      */
     private long interpolateTimeSinceUpdate(TrackPositionUpdate update, long currentTimestamp) {
-        if (!update.playing) {
-            return update.milliseconds;
-        }
-        long elapsedMillis = (currentTimestamp - update.timestamp) / 1000000;
-        long moved = Math.round(update.pitch * elapsedMillis);
-        if (update.reverse) {
-            return update.milliseconds - moved;
-        }
-        return update.milliseconds + moved;
+        return PositionSlots.interpolate(update.timestamp, update.milliseconds, update.playing, update.pitch,
+                update.reverse, currentTimestamp);
     }
 
     /**
@@ -174,15 +178,7 @@ public class TimeFinder extends LifecycleParticipant {
         final TrackMetadata metadata = MetadataFinder.getInstance().getLatestMetadataFor(update);
         final int newBeat = update.getBeatNumber();
         if (metadata != null && metadata.getCueList() != null) {
-            for (CueList.Entry entry : metadata.getCueList().entries) {
-                final int entryBeat = beatGrid.findBeatAtTime(entry.cueTime);
-                if (Math.abs(newBeat - entryBeat) < 2) {
-                    return entry;  // We have found a cue we likely jumped to
-                }
-                if (entryBeat > newBeat) {
-                    break;  // We have moved past our location, no point scanning further.
-                }
-            }
+            return metadata.getCueList().findEntryNearBeat(beatGrid, newBeat, 1);  // A cue we likely jumped to
         }
         return null;
     }
@@ -251,6 +247,9 @@ public class TimeFinder extends LifecycleParticipant {
      * @throws IllegalStateException if the TimeFinder is not running
      */
     public long getTimeFor(int player) {
+        if (PositionSlots.covers(player)) {
+            return slots.timeFor(player, System.nanoTime());  // Avoids boxing and map lookups for real players.
+        }
         TrackPositionUpdate update = positions.get(player);
         if (update != null) {
             return interpolateTimeSinceUpdate(update, System.nanoTime());
@@ -272,26 +271,303 @@ public class TimeFinder extends LifecycleParticipant {
     }
 
     /**
-     * Keeps track of the listeners that have registered interest in closely following track playback for a particular
-     * player. The keys are the listener interface, and the values are the last update that was sent to that
-     * listener. If no information was known during the last update, the special value {@link #NO_INFORMATION} is
-     * used to represent it, rather than trying to store a {@code null} value in the hash map.
+     * <p>Copy the latest position information we have for the specified player into a reading object supplied by
+     * the caller. This is intended for code that needs to check on players many times a second, such as lighting or
+     * video engines running at frame rate: it does not lock, look anything up in a map, or allocate, so the same
+     * {@link TrackPositionReading} can be reused for every call. The values copied always come from a single
+     * consistent update, and {@link TrackPositionReading#getTimeAt(long)} can then be used to interpolate the
+     * position at any moment.</p>
+     *
+     * <p>Positions are only available this way for players numbered below 16, which includes all CDJs.</p>
+     *
+     * @param player the player number whose position is desired
+     * @param reading the object into which the position should be copied
+     *
+     * @return {@code true} if a position was known and copied, {@code false} (leaving {@code reading} unchanged)
+     *         if we don't know where the player is
+     *
+     * @since 0.6.3
+     */
+    public boolean readPosition(int player, TrackPositionReading reading) {
+        return slots.read(player, reading);
+    }
+
+    /**
+     * Keeps track of the registered frame listeners. The frame clock runs whenever there are any.
+     */
+    private final ListenerRegistry<FrameListener> frameListeners =
+            new ListenerRegistry<FrameListener>();
+
+    /**
+     * Guards the starting and stopping of the frame clock thread.
+     */
+    private final Object frameClockLock = new Object();
+
+    /**
+     * The thread delivering frames, or {@code null} if the frame clock is not running.
+     */
+    private Thread frameClock;
+
+    /**
+     * How many frames per second the frame clock produces. This matches the rate at which the waveform components
+     * animated when they each ran their own thread.
+     */
+    private final AtomicInteger frameRate = new AtomicInteger(30);
+
+    /**
+     * The most recent snapshot produced by the frame clock.
+     */
+    private final AtomicReference<FrameSnapshot> latestFrame = new AtomicReference<FrameSnapshot>();
+
+    /**
+     * Check how many frames per second are delivered to {@link FrameListener} instances. The default is 30.
+     *
+     * @return the frame rate of the frame clock
+     *
+     * @since 0.6.3
+     */
+    public int getFrameRate() {
+        return frameRate.get();
+    }
+
+    /**
+     * Set how many frames per second should be delivered to {@link FrameListener} instances. Takes effect from the
+     * next frame.
+     *
+     * @param framesPerSecond the desired frame rate of the frame clock
+     *
+     * @throws IllegalArgumentException if {@code framesPerSecond} is less than 1 or more than 1000
+     *
+     * @since 0.6.3
+     */
+    public void setFrameRate(int framesPerSecond) {
+        if (framesPerSecond < 1 || framesPerSecond > 1000) {
+            throw new IllegalArgumentException("framesPerSecond must be between 1 and 1000");
+        }
+        frameRate.set(framesPerSecond);
+    }
+
+    /**
+     * <p>Add a listener that wants a snapshot of all player positions once per frame. The first listener starts a
+     * frame clock thread, which calculates a single {@link FrameSnapshot} for each tick and hands the same one to
+     * every listener, so that multiple views of multiple players all agree with each other and the interpolation is
+     * only done once. The clock stops when the last listener is removed.</p>
+     *
+     * <p>Frames are delivered even when the {@code TimeFinder} is not running, but will not contain any positions.</p>
+     *
+     * @param listener the interface that will be called once per frame
+     *
+     * @since 0.6.3
+     */
+    public void addFrameListener(FrameListener listener) {
+        if (listener != null) {
+            synchronized (frameClockLock) {
+                frameListeners.add(listener);
+                if (frameClock == null) {
+                    frameClock = new Thread(new Runnable() {
+                        @Override
+                        public void run() {
+                            runFrameClock();
+                        }
+                    }, "beat-link TimeFinder frame clock");
+                    frameClock.setDaemon(true);
+                    frameClock.start();
+                }
+            }
+        }
+    }
+
+    /**
+     * Remove a listener that was receiving frame snapshots. If it was the last one, the frame clock stops.
+     *
+     * @param listener the interface that will no longer be called once per frame
+     *
+     * @since 0.6.3
+     */
+    public void removeFrameListener(FrameListener listener) {
+        if (listener != null) {
+            frameListeners.remove(listener);
+        }
+    }
+
+    /**
+     * Get the most recent snapshot of player positions. If the frame clock is running, this is the same snapshot
+     * that was most recently delivered to the frame listeners; otherwise a new one is calculated for the current
+     * moment. This never starts the frame clock, which only runs while there are frame listeners. As with frames
+     * delivered to listeners, if the {@code TimeFinder} is not running the snapshot will not contain any positions.
+     *
+     * @return the positions of all players at a single recent moment
+     *
+     * @since 0.6.3
+     */
+    public FrameSnapshot getLatestFrame() {
+        synchronized (frameClockLock) {
+            final FrameSnapshot latest = latestFrame.get();
+            if (frameClock != null && latest != null) {
+                return latest;
+            }
+        }
+        return buildFrame(System.nanoTime(), 0);
+    }
+
+    /**
+     * The body of the frame clock thread. Produces and delivers a snapshot on each tick until there are no
+     * more listeners. Ticks are scheduled from when the clock started rather than from when each frame finished,
+     * so that time spent delivering frames does not make the clock drift; if we fall behind, we skip ahead rather
+     * than trying to catch up with a burst of frames. The clock belongs to its listeners, so it keeps running if the
+     * thread is interrupted while any of them are still registered.
+     */
+    private void runFrameClock() {
+        long frameNumber = 0;
+        long nextTick = System.nanoTime();
+        while (true) {
+            synchronized (frameClockLock) {
+                if (frameListeners.isEmpty()) {
+                    frameClock = null;
+                    latestFrame.set(null);
+                    return;
+                }
+            }
+            final FrameSnapshot frame = buildFrame(System.nanoTime(), ++frameNumber);
+            latestFrame.set(frame);
+            final List<FrameListener> listeners = frameListeners.snapshot();
+            for (int i = 0; i < listeners.size(); i++) {
+                final FrameListener listener = listeners.get(i);
+                try {
+                    listener.frameReady(frame);
+                } catch (Throwable t) {
+                    logger.warn("Problem delivering frame to listener", t);
+                }
+            }
+            nextTick += 1000000000L / frameRate.get();
+            final long delay = nextTick - System.nanoTime();
+            if (delay > 0) {
+                try {
+                    Thread.sleep(delay / 1000000, (int) (delay % 1000000));
+                } catch (InterruptedException e) {
+                    logger.warn("Frame clock thread interrupted; continuing while frame listeners remain");
+                    nextTick = System.nanoTime();
+                }
+            } else {
+                nextTick = System.nanoTime();
+            }
+        }
+    }
+
+    /**
+     * Interpolate the positions of all players for a single moment.
+     *
+     * @param now the {@link System#nanoTime()} value for which positions are desired
+     * @param frameNumber the number to give the snapshot
+     *
+     * @return the positions, beats, and phases of all players with slots at that moment
+     */
+    private FrameSnapshot buildFrame(long now, long frameNumber) {
+        long[] values = null;  // Only allocated once we find a player whose position is known.
+        for (int player = 0; player < PositionSlots.CAPACITY; player++) {
+            final TrackPositionUpdate update = positions.get(player);
+            if (update == null) {
+                continue;
+            }
+            if (values == null) {
+                values = FrameSnapshot.unknownPositions();
+            }
+            final int base = player * FrameSnapshot.STRIDE;
+            final long time = Math.max(0, interpolateTimeSinceUpdate(update, now));
+            values[base + FrameSnapshot.TIME] = time;
+            values[base + FrameSnapshot.PITCH] = Double.doubleToRawLongBits(update.pitch);
+            values[base + FrameSnapshot.PLAYING] = update.playing? 1 : 0;
+            final BeatGrid beatGrid = update.beatGrid;
+            final int beat = beatGrid.findBeatAtTime(time);
+            values[base + FrameSnapshot.BEAT] = beat;
+            if (beat > 0) {
+                final long start = beatGrid.getTimeWithinTrack(beat);
+                long interval = 0;
+                if (beat < beatGrid.beatCount) {
+                    interval = beatGrid.getTimeWithinTrack(beat + 1) - start;
+                } else if (beat > 1) {  // Past the last beat, assume the tempo continues.
+                    interval = start - beatGrid.getTimeWithinTrack(beat - 1);
+                }
+                final double beatPhase = (interval > 0)? (double) ((time - start) % interval) / interval : 0.0;
+                values[base + FrameSnapshot.BEAT_PHASE] = Double.doubleToRawLongBits(beatPhase);
+                values[base + FrameSnapshot.BAR_PHASE] = Double.doubleToRawLongBits(barPhase(beatGrid, beat, beatPhase));
+            }
+        }
+        return new FrameSnapshot(now, frameNumber, (values == null)? FrameSnapshot.NO_POSITIONS : values);
+    }
+
+    /**
+     * Figure out how far a player has progressed through the current bar, using the beat grid to find out how many
+     * beats the bar has rather than assuming 4/4 time. The length of the bar is the position of its last beat; if
+     * the grid ends before the bar does, we assume it is as long as the previous bar.
+     *
+     * @param beatGrid the beat grid of the track being played
+     * @param beat the beat the player has reached
+     * @param beatPhase how far the player has progressed through that beat
+     *
+     * @return a value from 0.0 (at the down beat) up to, but not including, 1.0 (the next down beat)
      */
-    private final ConcurrentHashMap<TrackPositionListener, TrackPositionUpdate> trackPositionListeners =
-            new ConcurrentHashMap<TrackPositionListener, TrackPositionUpdate>();
+    private static double barPhase(BeatGrid beatGrid, int beat, double beatPhase) {
+        final int position = beatGrid.getBeatWithinBar(beat);
+        if (position < 1) {
+            return 0.0;  // The grid does not tell us where bars fall.
+        }
+        int length = position;
+        int next = beat + 1;
+        while (next <= beatGrid.beatCount && beatGrid.getBeatWithinBar(next) > 1) {
+            next++;
+        }
+        if (next <= beatGrid.beatCount) {
+            length = beatGrid.getBeatWithinBar(next - 1);
+        } else {
+            final int downBeat = beat - position + 1;
+            if (downBeat > 1) {
+                length = Math.max(position, beatGrid.getBeatWithinBar(downBeat - 1));
+            }
+        }
+        return (position - 1 + beatPhase) / Math.max(position, length);
+    }
+
+    /**
+     * Records the interest of a track position listener in a particular player, along with the last update that was
+     * sent to it, so that we can tell when it needs another one.
+     */
+    private static final class TrackPositionRegistration {
+
+        /**
+         * The listener that wants to follow the player.
+         */
+        final TrackPositionListener listener;
+
+        /**
+         * The number of the player the listener is following.
+         */
+        final int player;
+
+        /**
+         * The last update that was sent to the listener, or {@code null} if it was told there was no information.
+         */
+        final AtomicReference<TrackPositionUpdate> lastSent;
+
+        TrackPositionRegistration(TrackPositionListener listener, int player, TrackPositionUpdate initial) {
+            this.listener = listener;
+            this.player = player;
+            lastSent = new AtomicReference<TrackPositionUpdate>(initial);
+        }
+    }
 
     /**
-     * Keeps track of the player numbers that registered track position listeners are interested in.
+     * Finds the registration of each listener that has registered interest in closely following track playback for
+     * a particular player, so it can be replaced or removed.
      */
-    private final ConcurrentHashMap<TrackPositionListener, Integer> listenerPlayerNumbers =
-            new ConcurrentHashMap<TrackPositionListener, Integer>();
+    private final ConcurrentHashMap<TrackPositionListener, TrackPositionRegistration> trackPositionListeners =
+            new ConcurrentHashMap<TrackPositionListener, TrackPositionRegistration>();
 
     /**
-     * This is used to represent the fact that we have told a listener that there is no information for it, since
-     * we can't actually store a {@code null} value in a {@link ConcurrentHashMap}.
+     * Holds the same registrations as {@link #trackPositionListeners}, in the form we walk through for every update.
      */
-    private final TrackPositionUpdate NO_INFORMATION = new TrackPositionUpdate(0, 0, 0,
-            false, false, 0, false, null);
+    private final ListenerRegistry<TrackPositionRegistration> trackPositionRegistrations =
+            new ListenerRegistry<TrackPositionRegistration>();
 
     /**
      * Add a listener that wants to closely follow track playback for a particular player. The listener will be called
@@ -309,9 +585,15 @@ public class TimeFinder extends LifecycleParticipant {
      * @param listener the interface that will be called when there are changes in track playback on the player
      */
     public void addTrackPositionListener(int player, TrackPositionListener listener) {
-        listenerPlayerNumbers.put(listener, player);
         TrackPositionUpdate currentPosition = positions.get(player);
-        trackPositionListeners.put(listener, currentPosition == null? NO_INFORMATION : currentPosition);
+        final TrackPositionRegistration registration = new TrackPositionRegistration(listener, player, currentPosition);
+        synchronized (trackPositionListeners) {
+            final TrackPositionRegistration former = trackPositionListeners.put(listener, registration);
+            if (former != null) {
+                trackPositionRegistrations.remove(former);
+            }
+            trackPositionRegistrations.add(registration);
+        }
         listener.movementChanged(currentPosition);  // If this throws an exception, the caller will catch it.
     }
 
@@ -321,8 +603,12 @@ public class TimeFinder extends LifecycleParticipant {
      * @param listener the interface that will no longer be called for changes in track playback
      */
     public void removeTrackPositionListener(TrackPositionListener listener) {
-        trackPositionListeners.remove(listener);
-        listenerPlayerNumbers.remove(listener);
+        synchronized (trackPositionListeners) {
+            final TrackPositionRegistration registration = trackPositionListeners.remove(listener);
+            if (registration != null) {
+                trackPositionRegistrations.remove(registration);
+            }
+        }
     }
 
     /**
@@ -382,29 +668,30 @@ public class TimeFinder extends LifecycleParticipant {
      * @param beat if this update was triggered by a beat packet, contains the packet to pass on to interested listeners
      */
     private void updateListenersIfNeeded(int player, TrackPositionUpdate update, Beat beat) {
-        // Iterate over a copy to avoid issues with concurrent modification
-        for (Map.Entry<TrackPositionListener, TrackPositionUpdate> entry :
-                new HashMap<TrackPositionListener, TrackPositionUpdate>(trackPositionListeners).entrySet()) {
-            if (player == listenerPlayerNumbers.get(entry.getKey())) {  // This listener is interested in this player
+        // The snapshot is unaffected by listeners coming and going, and compareAndSet() below guards against races.
+        final List<TrackPositionRegistration> registrations = trackPositionRegistrations.snapshot();
+        for (int i = 0; i < registrations.size(); i++) {
+            final TrackPositionRegistration registration = registrations.get(i);
+            if (player == registration.player) {  // This listener is interested in this player
+                final TrackPositionUpdate lastUpdate = registration.lastSent.get();
                 if (update == null) {  // We are reporting a loss of information
-                    if (entry.getValue() != NO_INFORMATION) {
-                        if (trackPositionListeners.replace(entry.getKey(), entry.getValue(), NO_INFORMATION)) {
+                    if (lastUpdate != null) {
+                        if (registration.lastSent.compareAndSet(lastUpdate, null)) {
                             try {
-                                entry.getKey().movementChanged(null);
+                                registration.listener.movementChanged(null);
                             } catch (Throwable t) {
                                 logger.warn("Problem delivering null movementChanged update", t);
                             }
                         }
                     }
                 } else {  // We have some information, see if it is a significant change from what was last reported
-                    final TrackPositionUpdate lastUpdate = entry.getValue();
-                    if (lastUpdate == NO_INFORMATION ||
+                    if (lastUpdate == null ||
                             lastUpdate.playing != update.playing ||
                             Math.abs(lastUpdate.pitch - update.pitch) > 0.000001 ||
                             interpolationsDisagree(lastUpdate, update)) {
-                        if (trackPositionListeners.replace(entry.getKey(), entry.getValue(), update)) {
+                        if (registration.lastSent.compareAndSet(lastUpdate, update)) {
                             try {
-                                entry.getKey().movementChanged(update);
+                                registration.listener.movementChanged(update);
                             } catch (Throwable t) {
                                 logger.warn("Problem delivering movementChanged update", t);
                             }
@@ -413,9 +700,9 @@ public class TimeFinder extends LifecycleParticipant {
 
                     // And regardless of whether this was a significant change, if this was a new beat and the listener
                     // implements the interface that requests all beats, send that information.
-                    if (update.definitive && entry.getKey() instanceof TrackPositionBeatListener) {
+                    if (update.definitive && registration.listener instanceof TrackPositionBeatListener) {
                         try {
-                            ((TrackPositionBeatListener) entry.getKey()).newBeat(beat, update);
+                            ((TrackPositionBeatListener) registration.listener).newBeat(beat, update);
                         } catch (Throwable t) {
                             logger.warn("Problem delivering newBeat update", t);
                         }
@@ -433,7 +720,7 @@ public class TimeFinder extends LifecycleParticipant {
         @Override
         public void received(DeviceUpdate update) {
             if (update instanceof CdjStatus) {
-                updates.put(update.getDeviceNumber(), update);
+                updates.put(update.getDeviceNumber(), update.detach());  // Other threads read it after we return.
                 final BeatGrid beatGrid = BeatGridFinder.getInstance().getLatestBeatGridFor(update);
                 final int beatNumber = ((CdjStatus) update).getBeatNumber();
                 // logger.debug("Update: beat " + update.getBeatWithinBar() + " -- " + beatNumber);
@@ -471,6 +758,7 @@ public class TimeFinder extends LifecycleParticipant {
                             done = positions.replace(update.getDeviceNumber(), lastPosition, newPosition);
                         }
                         if (done) {
+                            slots.publish(update.getDeviceNumber(), positions);
                             updateListenersIfNeeded(update.getDeviceNumber(), newPosition, null);
                         } else {  // Some other thread updated the position while we were working, re-evaluate.
                             lastPosition = positions.get(update.getDeviceNumber());
@@ -478,6 +766,7 @@ public class TimeFinder extends LifecycleParticipant {
                     }
                 } else {
                     positions.remove(update.getDeviceNumber());  // We can't say where that player is.
+                    slots.publish(update.getDeviceNumber(), positions);
                     updateListenersIfNeeded(update.getDeviceNumber(), null, null);
                 }
             }
@@ -550,9 +839,11 @@ public class TimeFinder extends LifecycleParticipant {
                             timeOfBeat(beatGrid, beatNumber, beat), beatNumber, true, true,
                             Util.pitchToMultiplier(beat.getPitch()), false, beatGrid);
                     positions.put(beat.getDeviceNumber(), newPosition);
+                    slots.publish(beat.getDeviceNumber(), positions);
                     updateListenersIfNeeded(beat.getDeviceNumber(), newPosition, beat);
                 } else {
                     positions.remove(beat.getDeviceNumber());  // We can't determine where the player is.
+                    slots.publish(beat.getDeviceNumber(), positions);
                     updateListenersIfNeeded(beat.getDeviceNumber(), null, beat);
                 }
             }
@@ -610,6 +901,7 @@ public class TimeFinder extends LifecycleParticipant {
             VirtualCdj.getInstance().removeUpdateListener(updateListener);
             running.set(false);
             positions.clear();
+            slots.publishAll(positions);
             updates.clear();
             deliverLifecycleAnnouncement(logger, false);
         }
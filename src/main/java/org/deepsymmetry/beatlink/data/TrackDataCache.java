@@ -0,0 +1,399 @@
+package org.deepsymmetry.beatlink.data;
+
+import com.googlecode.concurrentlinkedhashmap.ConcurrentLinkedHashMap;
+import com.googlecode.concurrentlinkedhashmap.EvictionListener;
+import com.googlecode.concurrentlinkedhashmap.Weigher;
+import org.deepsymmetry.beatlink.dbserver.Message;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.ByteBuffer;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <p>A second-level cache shared by the {@link MetadataFinder}, {@link BeatGridFinder} and {@link WaveformFinder},
+ * which remembers the track metadata, cue lists, beat grids and waveforms they have obtained, so that loading a
+ * track which was played earlier in the set does not require asking a player for it all over again. The finders'
+ * hot caches only hold data for tracks that are loaded right now.</p>
+ *
+ * <p>Entries are keyed by the {@link DataReference} of the track they describe, and weighed by an estimate of how
+ * many bytes of memory they occupy. When the total exceeds the memory budget (which can be changed by calling
+ * {@link #setMemoryBudget(long)}), the least recently used entries are evicted. Entries belonging to a media slot
+ * are discarded when the {@link MetadataFinder} sees that media unmounted, because rekordbox IDs are only meaningful
+ * within a single media database.</p>
+ *
+ * @author James Elliott
+ * @since 0.6.3
+ */
+@SuppressWarnings("WeakerAccess")
+public class TrackDataCache {
+
+    private static final Logger logger = LoggerFactory.getLogger(TrackDataCache.class);
+
+    /**
+     * Identifies the different kinds of track data which can be kept in the cache.
+     */
+    public enum Kind {
+        /**
+         * Track metadata, as returned by {@link MetadataFinder#requestMetadataFrom(DataReference, org.deepsymmetry.beatlink.CdjStatus.TrackType)}.
+         */
+        TRACK_METADATA(TrackMetadata.class),
+        /**
+         * Cue lists, as found in {@link TrackMetadata#getCueList()}.
+         */
+        CUE_LIST(CueList.class),
+        /**
+         * Beat grids, as returned by {@link BeatGridFinder#requestBeatGridFrom(DataReference)}.
+         */
+        BEAT_GRID(BeatGrid.class),
+        /**
+         * Waveform previews, as returned by {@link WaveformFinder#requestWaveformPreviewFrom(DataReference)}.
+         */
+        WAVEFORM_PREVIEW(WaveformPreview.class),
+        /**
+         * Waveform details, as returned by {@link WaveformFinder#requestWaveformDetailFrom(DataReference)}.
+         */
+        WAVEFORM_DETAIL(WaveformDetail.class);
+
+        /**
+         * The class of the values stored under this kind of key.
+         */
+        public final Class<?> valueClass;
+
+        Kind(Class<?> valueClass) {
+            this.valueClass = valueClass;
+        }
+    }
+
+    /**
+     * The number of bytes of memory the cache will use, unless told otherwise.
+     */
+    public static final long DEFAULT_MEMORY_BUDGET = 64L * 1024 * 1024;
+
+    /**
+     * A rough allowance for the objects which surround the raw data of each cached value, and the cache entry itself.
+     */
+    private static final int OVERHEAD = 256;
+
+    /**
+     * Identifies a cache entry: a kind of data, and the track it belongs to.
+     */
+    private static final class Key {
+        final Kind kind;
+        final DataReference reference;
+
+        Key(Kind kind, DataReference reference) {
+            this.kind = kind;
+            this.reference = reference;
+        }
+
+        @Override
+        public int hashCode() {
+            return reference.hashCode() * 31 + kind.hashCode();
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            return obj instanceof Key && ((Key) obj).kind == kind && ((Key) obj).reference.equals(reference);
+        }
+
+        @Override
+        public String toString() {
+            return kind + ":" + reference;
+        }
+    }
+
+    /**
+     * Counts the number of times a value was found in the cache.
+     */
+    private final AtomicLong hits = new AtomicLong();
+
+    /**
+     * Counts the number of times a value was looked for but not found.
+     */
+    private final AtomicLong misses = new AtomicLong();
+
+    /**
+     * Counts the number of values discarded to stay within the memory budget.
+     */
+    private final AtomicLong evictions = new AtomicLong();
+
+    /**
+     * Holds the cached values, weighed by their estimated size in bytes.
+     */
+    private final ConcurrentLinkedHashMap<Key, Object> entries = new ConcurrentLinkedHashMap.Builder<Key, Object>()
+            .maximumWeightedCapacity(DEFAULT_MEMORY_BUDGET)
+            .weigher(new Weigher<Object>() {
+                @Override
+                public int weightOf(Object value) {
+                    return (int) Math.min(Integer.MAX_VALUE, estimateSize(value));
+                }
+            })
+            .listener(new EvictionListener<Key, Object>() {
+                @Override
+                public void onEviction(Key key, Object value) {
+                    evictions.incrementAndGet();
+                    logger.debug("Evicted {} to stay within memory budget", key);
+                }
+            })
+            .build();
+
+    /**
+     * Estimate how many bytes of memory a cached value occupies. This does not need to be exact, just good enough
+     * that large waveforms count for far more than small beat grids, so the budget means something.
+     *
+     * @param value the value to be weighed
+     *
+     * @return the approximate number of bytes it uses
+     */
+    static long estimateSize(Object value) {
+        long result = OVERHEAD;
+        if (value instanceof WaveformDetail) {
+            result += bufferSize(((WaveformDetail) value).getData());
+        } else if (value instanceof WaveformPreview) {
+            result += bufferSize(((WaveformPreview) value).getData());
+        } else if (value instanceof BeatGrid) {
+            // The raw beat grid holds 16 bytes per beat, and the packed array another 4.
+            result += ((BeatGrid) value).beatCount * 20L;
+        } else if (value instanceof CueList) {
+            final CueList cueList = (CueList) value;
+            result += cueList.entries.size() * 128L;
+            if (cueList.rawMessage != null) {
+                result += messageSize(cueList.rawMessage);
+            }
+            if (cueList.rawTags != null) {
+                for (ByteBuffer tag : cueList.rawTags) {
+                    result += bufferSize(tag);
+                }
+            }
+            if (cueList.rawExtendedTags != null) {
+                for (ByteBuffer tag : cueList.rawExtendedTags) {
+                    result += bufferSize(tag);
+                }
+            }
+        } else if (value instanceof TrackMetadata) {
+            final TrackMetadata metadata = (TrackMetadata) value;
+            result += 1024;  // The parsed fields and their strings.
+            if (metadata.rawItems != null) {
+                for (Message item : metadata.rawItems) {
+                    result += messageSize(item);
+                }
+            }
+            // The cue list is weighed when it is cached under its own key, so it is not counted again here.
+        }
+        return result;
+    }
+
+    /**
+     * Estimate the memory used by a dbserver message, whose fields are mostly small.
+     *
+     * @param message the message to be weighed
+     *
+     * @return the approximate number of bytes it uses
+     */
+    private static long messageSize(Message message) {
+        return 64L + message.arguments.size() * 64L;
+    }
+
+    /**
+     * Find the size of the memory backing a buffer, which is kept alive by it even if the buffer is a small slice.
+     *
+     * @param buffer the buffer to be weighed, which may be {@code null}
+     *
+     * @return the capacity of the buffer
+     */
+    private static long bufferSize(ByteBuffer buffer) {
+        return (buffer == null)? 0 : buffer.capacity();
+    }
+
+    /**
+     * Look up a value in the cache.
+     *
+     * @param kind the kind of data desired
+     * @param reference identifies the track whose data is desired
+     * @param <T> the type of value stored for that kind
+     *
+     * @return the cached value, or {@code null} if there is none
+     */
+    @SuppressWarnings("unchecked")
+    <T> T get(Kind kind, DataReference reference) {
+        final Object result = entries.get(new Key(kind, reference));
+        if (result == null) {
+            misses.incrementAndGet();
+        } else {
+            hits.incrementAndGet();
+        }
+        return (T) result;
+    }
+
+    /**
+     * Add a value to the cache, if it is not {@code null}. When track metadata is added, its cue list is added as
+     * well.
+     *
+     * @param kind the kind of data being cached
+     * @param reference identifies the track to which the data belongs
+     * @param value the value to be cached
+     *
+     * @throws IllegalArgumentException if {@code value} is not the right class for {@code kind}
+     */
+    void put(Kind kind, DataReference reference, Object value) {
+        if (value == null) {
+            return;
+        }
+        if (!kind.valueClass.isInstance(value)) {
+            throw new IllegalArgumentException("Cannot cache " + value.getClass().getName() + " as " + kind);
+        }
+        entries.put(new Key(kind, reference), value);
+        if (kind == Kind.TRACK_METADATA && ((TrackMetadata) value).getCueList() != null) {
+            entries.put(new Key(Kind.CUE_LIST, reference), ((TrackMetadata) value).getCueList());
+        }
+    }
+
+    /**
+     * Discard all cached values for tracks in a media slot, because the media has been unmounted.
+     *
+     * @param slot the slot whose media is gone
+     */
+    void invalidate(SlotReference slot) {
+        // Iterate over a copy to avoid concurrent modification issues.
+        for (Key key : new HashSet<Key>(entries.keySet())) {
+            if (SlotReference.getSlotReference(key.reference) == slot) {
+                entries.remove(key);
+            }
+        }
+        logger.debug("Discarded cached track data for unmounted slot {}", slot);
+    }
+
+    /**
+     * Discard all cached values of a particular kind, for example because a different variant of waveforms is
+     * going to be requested from now on.
+     *
+     * @param kind the kind of data to be discarded
+     */
+    void invalidate(Kind kind) {
+        final Set<Key> keys = new HashSet<Key>(entries.keySet());
+        for (Key key : keys) {
+            if (key.kind == kind) {
+                entries.remove(key);
+            }
+        }
+    }
+
+    /**
+     * Discard everything in the cache. The statistics are not affected.
+     */
+    public void clear() {
+        entries.clear();
+    }
+
+    /**
+     * Check how much memory the cache is allowed to use.
+     *
+     * @return the approximate number of bytes that cached values can occupy before the least recently used ones
+     *         are discarded
+     */
+    public long getMemoryBudget() {
+        return entries.capacity();
+    }
+
+    /**
+     * Set how much memory the cache is allowed to use. If this is smaller than the amount currently in use, the
+     * least recently used values are discarded right away until it fits.
+     *
+     * @param bytes the approximate number of bytes that cached values may occupy; zero disables the cache
+     *
+     * @throws IllegalArgumentException if {@code bytes} is negative
+     */
+    public void setMemoryBudget(long bytes) {
+        if (bytes < 0) {
+            throw new IllegalArgumentException("bytes must not be negative");
+        }
+        entries.setCapacity(bytes);
+    }
+
+    /**
+     * Check approximately how much memory the cached values are occupying.
+     *
+     * @return the sum of the estimated sizes of all values in the cache, in bytes
+     */
+    public long getMemoryUsed() {
+        return entries.weightedSize();
+    }
+
+    /**
+     * Check how many values are in the cache.
+     *
+     * @return the number of entries, counting the metadata and cue list of a track separately
+     */
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * Check how many times a finder found what it needed in the cache.
+     *
+     * @return the number of successful lookups since the program started or {@link #resetStatistics()} was called
+     */
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    /**
+     * Check how many times a finder had to ask a player, or a metadata provider, because what it needed was not
+     * in the cache.
+     *
+     * @return the number of failed lookups since the program started or {@link #resetStatistics()} was called
+     */
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    /**
+     * Check how many values have been discarded to keep within the memory budget. Values discarded because their
+     * media was unmounted are not counted.
+     *
+     * @return the number of evictions since the program started or {@link #resetStatistics()} was called
+     */
+    public long getEvictionCount() {
+        return evictions.get();
+    }
+
+    /**
+     * Start counting hits, misses, and evictions from zero again.
+     */
+    public void resetStatistics() {
+        hits.set(0);
+        misses.set(0);
+        evictions.set(0);
+    }
+
+    /**
+     * Holds the singleton instance of this class.
+     */
+    private static final TrackDataCache ourInstance = new TrackDataCache();
+
+    /**
+     * Get the singleton instance of this class.
+     *
+     * @return the only instance of this class which exists
+     */
+    public static TrackDataCache getInstance() {
+        return ourInstance;
+    }
+
+    /**
+     * Prevent direct instantiation.
+     */
+    private TrackDataCache() {
+        // Nothing to do.
+    }
+
+    @Override
+    public String toString() {
+        return "TrackDataCache[entries:" + size() + ", memoryUsed:" + getMemoryUsed() + ", memoryBudget:" +
+                getMemoryBudget() + ", hits:" + getHitCount() + ", misses:" + getMissCount() + ", evictions:" +
+                getEvictionCount() + "]";
+    }
+}
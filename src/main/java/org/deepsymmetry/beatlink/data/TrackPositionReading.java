@@ -0,0 +1,155 @@
+package org.deepsymmetry.beatlink.data;
+
+/**
+ * <p>A reusable holder for the playback position of a player, filled in by
+ * {@link TimeFinder#readPosition(int, TrackPositionReading)}. Unlike {@link TrackPositionUpdate}, which is immutable,
+ * a single instance of this class can be read into over and over, so that code which needs to know where players
+ * are many times a second (for example, to drive lighting or video at frame rate) does not create any garbage.</p>
+ *
+ * <p>Instances are not thread-safe; each thread polling positions should use its own.</p>
+ *
+ * @author James Elliott
+ * @since 0.6.3
+ */
+@SuppressWarnings("WeakerAccess")
+public class TrackPositionReading {
+
+    /**
+     * When the update this reading was taken from was received.
+     */
+    private long timestamp;
+
+    /**
+     * How far into the track the player had reached at that time.
+     */
+    private long milliseconds;
+
+    /**
+     * The beat number that was reported (or incremented) by the update.
+     */
+    private int beatNumber;
+
+    /**
+     * Whether the update was created in response to a beat packet.
+     */
+    private boolean definitive;
+
+    /**
+     * Whether the player was playing when the update was received.
+     */
+    private boolean playing;
+
+    /**
+     * The playback pitch when the update was received.
+     */
+    private double pitch;
+
+    /**
+     * Whether the player was playing backwards when the update was received.
+     */
+    private boolean reverse;
+
+    /**
+     * Fills in all the values of the reading at once.
+     *
+     * @param timestamp when the update was received
+     * @param milliseconds how far into the track the player had reached
+     * @param beatNumber the beat number that was reported (or incremented) by the update
+     * @param definitive indicates if this was based on a direct report of track position from the player (i.e. a beat)
+     * @param playing indicates whether the player was actively playing a track when the update was received
+     * @param pitch the playback pitch (where 1.0 is normal speed) when the update was received
+     * @param reverse indicates if the player was playing backwards when the update was received
+     */
+    void set(long timestamp, long milliseconds, int beatNumber, boolean definitive, boolean playing, double pitch,
+             boolean reverse) {
+        this.timestamp = timestamp;
+        this.milliseconds = milliseconds;
+        this.beatNumber = beatNumber;
+        this.definitive = definitive;
+        this.playing = playing;
+        this.pitch = pitch;
+        this.reverse = reverse;
+    }
+
+    /**
+     * Get the time at which the update this reading came from was received.
+     *
+     * @return the {@link System#nanoTime()} timestamp of the update
+     */
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    /**
+     * Get how far into the track the player had reached when the update was received.
+     *
+     * @return the track position, in milliseconds, at {@link #getTimestamp()}
+     */
+    public long getMilliseconds() {
+        return milliseconds;
+    }
+
+    /**
+     * Get the beat number that was reported (or incremented) by the update.
+     *
+     * @return the beat within the track that the player had reached
+     */
+    public int getBeatNumber() {
+        return beatNumber;
+    }
+
+    /**
+     * Check whether the update was created in response to a beat packet, so we know exactly where the player was.
+     *
+     * @return {@code true} if the position was reported by the player rather than inferred
+     */
+    public boolean isDefinitive() {
+        return definitive;
+    }
+
+    /**
+     * Check whether the player was playing when the update was received.
+     *
+     * @return {@code true} if the track was playing
+     */
+    public boolean isPlaying() {
+        return playing;
+    }
+
+    /**
+     * Get the playback pitch when the update was received.
+     *
+     * @return the playback speed, where 1.0 is normal speed
+     */
+    public double getPitch() {
+        return pitch;
+    }
+
+    /**
+     * Check whether the player was playing backwards when the update was received.
+     *
+     * @return {@code true} if the track was playing in reverse
+     */
+    public boolean isReverse() {
+        return reverse;
+    }
+
+    /**
+     * Figure out where the player will have reached at a particular moment, based on the position, pitch, and
+     * direction in this reading.
+     *
+     * @param nanoTime the {@link System#nanoTime()} value for which the track position is desired
+     *
+     * @return the playback position, in milliseconds, we believe the player reaches at that time
+     */
+    public long getTimeAt(long nanoTime) {
+        return PositionSlots.interpolate(timestamp, milliseconds, playing, pitch, reverse, nanoTime);
+    }
+
+    @Override
+    public String toString() {
+        return "TrackPositionReading[timestamp:" + timestamp + ", milliseconds:" + milliseconds +
+                ", beatNumber:" + beatNumber + ", definitive:" + definitive + ", playing:" + playing +
+                ", pitch:" + String.format("%.2f", pitch) + ", reverse:" + reverse + "]";
+    }
+}
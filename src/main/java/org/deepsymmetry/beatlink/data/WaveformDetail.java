@@ -181,6 +181,30 @@ public class WaveformDetail {
         this.isColor = isColor;
     }
 
+    /**
+     * Constructor used by the {@link WaveformFinder} to move the data of a waveform off the heap. The new waveform
+     * does not keep the raw message of the original.
+     *
+     * @param original the waveform detail whose data has been copied
+     * @param data a direct buffer holding the waveform data as will be returned by {@link #getData()}
+     */
+    WaveformDetail(WaveformDetail original, ByteBuffer data) {
+        dataReference = original.dataReference;
+        rawMessage = null;
+        detailBuffer = data;
+        isColor = original.isColor;
+    }
+
+    /**
+     * Check whether the waveform data is held outside the Java heap, as it is when the {@link WaveformFinder} has
+     * been told to use {@link WaveformFinder#setOffHeapStorage(boolean)}.
+     *
+     * @return {@code true} if the data is in a direct buffer
+     */
+    public boolean isOffHeap() {
+        return detailBuffer.isDirect() && rawMessage == null;
+    }
+
     /**
      * The different colors the monochrome (blue) waveform can be based on its intensity.
      */
@@ -488,9 +488,18 @@ public class WaveformDetailComponent extends JComponent {
     }
 
     /**
-     * Used to signal our animation thread to stop when we are no longer monitoring a player.
+     * Moves our playback position along with the monitored player on each tick of the {@link TimeFinder} frame
+     * clock, which is shared with any other components and listeners that are animating.
      */
-    private final AtomicBoolean animating = new AtomicBoolean(false);
+    private final FrameListener frameListener = new FrameListener() {
+        @Override
+        public void frameReady(FrameSnapshot snapshot) {
+            final int player = getMonitoredPlayer();
+            if (player > 0) {
+                setPlaybackPosition(snapshot.getTimeFor(player));
+            }
+        }
+    };
 
     /**
      * Configures the player whose current track waveforms and status will automatically be reflected. Whenever a new
@@ -530,30 +539,12 @@ public class WaveformDetailComponent extends JComponent {
             }
             try {
                 TimeFinder.getInstance().start();
-                if (!animating.getAndSet(true)) {
-                    // Create the thread to update our position smoothly as the track plays
-                    new Thread(new Runnable() {
-                        @Override
-                        public void run() {
-                            while (animating.get()) {
-                                try {
-                                    //noinspection BusyWait
-                                    Thread.sleep(33);  // Animate at 30 fps
-                                } catch (InterruptedException e) {
-                                    logger.warn("Waveform animation thread interrupted; ending");
-                                    animating.set(false);
-                                }
-                                setPlaybackPosition(TimeFinder.getInstance().getTimeFor(getMonitoredPlayer()));
-                            }
-                        }
-                    }).start();
-                }
+                TimeFinder.getInstance().addFrameListener(frameListener);
             } catch (Exception e) {
                 logger.error("Unable to start the TimeFinder to animate the waveform detail view");
-                animating.set(false);
             }
         } else {  // Stop monitoring any player
-            animating.set(false);
+            TimeFinder.getInstance().removeFrameListener(frameListener);
             VirtualCdj.getInstance().removeUpdateListener(updateListener);
             MetadataFinder.getInstance().removeTrackMetadataListener(metadataListener);
             WaveformFinder.getInstance().removeWaveformListener(waveformListener);
@@ -803,6 +794,12 @@ public class WaveformDetailComponent extends JComponent {
      */
     private static final int MAX_BEAT_SCALE = 9;
 
+    /**
+     * How many extra pixels to allow on either side of the region being drawn when translating it to a time range
+     * for finding cues, because converting between times and pixels does not round the same way in both directions.
+     */
+    private static final int CLIP_TIME_MARGIN = 4;
+
     /**
      * Determine the color to use to draw a cue list entry. Hot cues are green, ordinary memory points are red,
      * and loops are orange.
@@ -831,12 +828,11 @@ public class WaveformDetailComponent extends JComponent {
         final int maxHeight = axis - VERTICAL_MARGIN;
         if (currentCueList != null) {
             g.setColor(LOOP_BACKGROUND);
-            for (CueList.Entry entry : currentCueList.entries) {
-                if (entry.isLoop) {
-                    final int start = millisecondsToX(entry.cueTime);
-                    final int end = millisecondsToX(entry.loopTime);
-                    g.fillRect(start, axis - maxHeight, end - start, maxHeight * 2);
-                }
+            for (CueList.Entry entry : currentCueList.findLoopsOverlapping(getTimeForX(clipRect.x - CLIP_TIME_MARGIN),
+                    getTimeForX(clipRect.x + clipRect.width + CLIP_TIME_MARGIN))) {
+                final int start = millisecondsToX(entry.cueTime);
+                final int end = millisecondsToX(entry.loopTime);
+                g.fillRect(start, axis - maxHeight, end - start, maxHeight * 2);
             }
         }
 
@@ -926,9 +922,13 @@ public class WaveformDetailComponent extends JComponent {
      * @param maxHeight the highest waveform segment
      */
     private void paintCueList(Graphics g, Rectangle clipRect, CueList cueList, int axis, int maxHeight) {
-        for (CueList.Entry entry : cueList.entries) {
+        final int first = cueList.findEntryIndexAfter(getTimeForX(clipRect.x - 4 - CLIP_TIME_MARGIN));
+        for (CueList.Entry entry : cueList.entries.subList(first, cueList.entries.size())) {
             final int x = millisecondsToX(entry.cueTime);
-            if ((x > clipRect.x - 4) && (x < clipRect.x + clipRect.width + 4)) {
+            if (x >= clipRect.x + clipRect.width + 4) {
+                break;  // The remaining cues are all past the region being drawn.
+            }
+            if (x > clipRect.x - 4) {
                 g.setColor(entry.getColor());
                 for (int i = 0; i < 4; i++) {
                     g.drawLine(x - 3 + i, axis - maxHeight - BEAT_MARKER_HEIGHT - CUE_MARKER_HEIGHT + i,
@@ -7,8 +7,11 @@ import org.slf4j.LoggerFactory;
 
 import javax.swing.*;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.*;
+import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Future;
 import java.util.concurrent.LinkedBlockingDeque;
 import java.util.concurrent.atomic.AtomicBoolean;
 
@@ -92,13 +95,19 @@ public class WaveformFinder extends LifecycleParticipant {
     /**
      * Set whether we should obtain color versions of waveforms and previews when they are available. This will only
      * affect waveforms loaded after the setting has been changed. If this changes the setting, and we were running,
-     * stop and restart in order to flush and reload the correct waveform versions.
+     * stop and restart in order to flush and reload the correct waveform versions. Waveforms held in the
+     * {@link TrackDataCache} are discarded as well.
      *
      * @param preferColor if {@code true}, the full-color versions of waveforms will be requested, if {@code false}
      *                   only the older blue versions will be retrieved
      */
     public final void setColorPreferred(boolean preferColor) {
-        if (this.preferColor.compareAndSet(!preferColor, preferColor) && isRunning()) {
+        if (!this.preferColor.compareAndSet(!preferColor, preferColor)) {
+            return;
+        }
+        TrackDataCache.getInstance().invalidate(TrackDataCache.Kind.WAVEFORM_PREVIEW);
+        TrackDataCache.getInstance().invalidate(TrackDataCache.Kind.WAVEFORM_DETAIL);
+        if (isRunning()) {
             stop();
             try {
                 start();
@@ -118,6 +127,86 @@ public class WaveformFinder extends LifecycleParticipant {
         return preferColor.get();
     }
 
+    /**
+     * Should we move the data of the waveforms we obtain into direct buffers, outside the Java heap?
+     */
+    private final AtomicBoolean offHeapStorage = new AtomicBoolean(false);
+
+    /**
+     * <p>Set whether the data of waveforms we obtain should be kept in direct buffers, outside the Java heap. Color
+     * waveform details hold two bytes for every half-frame of a track, so keeping the waveforms of a whole set list
+     * in the {@link TrackDataCache} can otherwise add hundreds of megabytes to the heap. Once they have survived long
+     * enough to be promoted, those arrays make old-generation collections slower and more frequent; off the heap,
+     * the collector only sees the small buffer objects that refer to them.</p>
+     *
+     * <p>Waveforms stored this way give up their {@code rawMessage}, which is only needed when creating metadata
+     * cache files, and that process requests its own copies. Their memory is released once they have been evicted
+     * from the {@link TrackDataCache}, are no longer loaded in any player, and the garbage collector finds that nothing
+     * else refers to them. This only affects waveforms obtained after the setting is changed.</p>
+     *
+     * @param offHeap if {@code true}, waveform data will be copied into direct buffers as it arrives
+     */
+    public void setOffHeapStorage(boolean offHeap) {
+        offHeapStorage.set(offHeap);
+    }
+
+    /**
+     * Check whether the data of waveforms we obtain is being kept in direct buffers, outside the Java heap.
+     *
+     * @return {@code true} if waveform data is being copied into direct buffers as it arrives
+     */
+    public boolean isOffHeapStorage() {
+        return offHeapStorage.get();
+    }
+
+    /**
+     * Copy waveform data into a read-only direct buffer.
+     *
+     * @param data the data to be copied, from its position to its limit
+     *
+     * @return a direct buffer holding a copy of the data
+     */
+    private static ByteBuffer directCopy(ByteBuffer data) {
+        final ByteBuffer result = ByteBuffer.allocateDirect(data.remaining());
+        result.put(data);
+        result.flip();
+        return result.asReadOnlyBuffer();
+    }
+
+    /**
+     * Prepare a waveform preview we have obtained to be returned and remembered, moving its data off the heap if
+     * we have been configured to do that, and adding it to the {@link TrackDataCache}.
+     *
+     * @param trackReference identifies the track to which the preview belongs
+     * @param preview the preview that was obtained, or {@code null} if none was found
+     *
+     * @return the preview that should be used
+     */
+    private WaveformPreview retain(DataReference trackReference, WaveformPreview preview) {
+        if (preview != null && offHeapStorage.get() && !preview.isOffHeap()) {
+            preview = new WaveformPreview(preview, directCopy(preview.getData()));
+        }
+        TrackDataCache.getInstance().put(TrackDataCache.Kind.WAVEFORM_PREVIEW, trackReference, preview);
+        return preview;
+    }
+
+    /**
+     * Prepare a waveform detail we have obtained to be returned and remembered, moving its data off the heap if
+     * we have been configured to do that, and adding it to the {@link TrackDataCache}.
+     *
+     * @param trackReference identifies the track to which the detail belongs
+     * @param detail the detail that was obtained, or {@code null} if none was found
+     *
+     * @return the detail that should be used
+     */
+    private WaveformDetail retain(DataReference trackReference, WaveformDetail detail) {
+        if (detail != null && offHeapStorage.get() && !detail.isOffHeap()) {
+            detail = new WaveformDetail(detail, directCopy(detail.getData()));
+        }
+        TrackDataCache.getInstance().put(TrackDataCache.Kind.WAVEFORM_DETAIL, trackReference, detail);
+        return detail;
+    }
+
     /**
      * A queue used to hold metadata updates we receive from the {@link MetadataFinder} so we can process them on a
      * lower priority thread, and not hold up delivery to more time-sensitive listeners.
@@ -409,10 +498,17 @@ public class WaveformFinder extends LifecycleParticipant {
      */
     private WaveformPreview requestPreviewInternal(final DataReference trackReference, final boolean failIfPassive) {
 
-        // First check if we are using cached data for this slot
+        // First check if we have already obtained it recently.
+        final WaveformPreview cached = TrackDataCache.getInstance().get(TrackDataCache.Kind.WAVEFORM_PREVIEW, trackReference);
+        if (cached != null) {
+            return cached;
+        }
+
+        // Then check if we are using cached data for this slot
         @SuppressWarnings("deprecation") MetadataCache cache = MetadataFinder.getInstance().getMetadataCache(SlotReference.getSlotReference(trackReference));
         if (cache != null) {
-            return cache.getWaveformPreview(null, trackReference);
+            final WaveformPreview result = cache.getWaveformPreview(null, trackReference);
+            return retain(trackReference, result);
         }
 
         // Then see if any registered metadata providers can offer it for us.
@@ -420,7 +516,7 @@ public class WaveformFinder extends LifecycleParticipant {
         if (sourceDetails !=  null) {
             final WaveformPreview provided = MetadataFinder.getInstance().allMetadataProviders.getWaveformPreview(sourceDetails, trackReference);
             if (provided != null) {
-                return provided;
+                return retain(trackReference, provided);
             }
         }
 
@@ -439,7 +535,8 @@ public class WaveformFinder extends LifecycleParticipant {
         };
 
         try {
-            return ConnectionManager.getInstance().invokeWithClientSession(trackReference.player, task, "requesting waveform preview");
+            final WaveformPreview result = ConnectionManager.getInstance().invokeWithClientSession(trackReference.player, task, "requesting waveform preview");
+            return retain(trackReference, result);
         } catch (Exception e) {
             logger.error("Problem requesting waveform preview, returning null", e);
         }
@@ -466,6 +563,43 @@ public class WaveformFinder extends LifecycleParticipant {
         return requestPreviewInternal(dataReference, false);
     }
 
+    /**
+     * Start finding the waveform preview for the track a player has loaded, in the background, returning right
+     * away. The request is cancelled if the player unloads the track, or loads a different one, before it finishes.
+     *
+     * @param status a status update from the player whose loaded track's waveform preview is desired
+     *
+     * @return the request, which will provide the same result as {@link #requestWaveformPreviewFrom(DataReference)}
+     */
+    public AsyncRequest<WaveformPreview> requestWaveformPreviewAsync(final CdjStatus status) {
+        final DataReference track = AsyncRequests.loadedTrack(status);
+        if (track == null) {
+            return AsyncRequests.<WaveformPreview>completed(null);
+        }
+        return AsyncRequests.submit(status.getDeviceNumber(), track, new Callable<WaveformPreview>() {
+            @Override
+            public WaveformPreview call() {
+                return requestWaveformPreviewFrom(track);
+            }
+        });
+    }
+
+    /**
+     * Start finding a waveform preview in the background, returning right away.
+     *
+     * @param dataReference uniquely identifies the desired waveform preview
+     *
+     * @return the request, which will provide the same result as {@link #requestWaveformPreviewFrom(DataReference)}
+     */
+    public AsyncRequest<WaveformPreview> requestWaveformPreviewAsync(final DataReference dataReference) {
+        return AsyncRequests.submit(0, null, new Callable<WaveformPreview>() {
+            @Override
+            public WaveformPreview call() {
+                return requestWaveformPreviewFrom(dataReference);
+            }
+        });
+    }
+
     /**
      * Requests the waveform preview for a specific track ID, given a connection to a player that has already been
      * set up.
@@ -479,28 +613,72 @@ public class WaveformFinder extends LifecycleParticipant {
      */
     WaveformPreview getWaveformPreview(int rekordboxId, SlotReference slot, Client client)
             throws IOException {
+        return receiveWaveformPreview(requestWaveformPreview(rekordboxId, slot, client), rekordboxId, slot, client);
+    }
 
-        final NumberField idField = new NumberField(rekordboxId);
-
+    /**
+     * Sends a pipelined request for the waveform preview of a specific track ID, so it can travel to the player
+     * along with other requests about the same track. The response must be passed to
+     * {@link #receiveWaveformPreview(Future, int, SlotReference, Client)} while the client is still held.
+     *
+     * @param rekordboxId the track whose waveform preview is desired
+     * @param slot identifies the media slot we are querying
+     * @param client the dbserver client that is communicating with the appropriate player
+     *
+     * @return the future through which the response will arrive
+     * @throws IOException if there is a communication problem
+     */
+    Future<Message> requestWaveformPreview(int rekordboxId, SlotReference slot, Client client)
+            throws IOException {
         // First try to get the NXS2-style color waveform if we are supposed to.
         if (preferColor.get()) {
-            try {
-                Message response = client.simpleRequest(Message.KnownType.ANLZ_TAG_REQ, Message.KnownType.ANLZ_TAG,
-                        client.buildRMST(Message.MenuIdentifier.MAIN_MENU, slot.slot), idField,
-                        new NumberField(Message.ANLZ_FILE_TAG_COLOR_WAVEFORM_PREVIEW), new NumberField(Message.ALNZ_FILE_TYPE_EXT));
-                if (response.knownType != Message.KnownType.UNAVAILABLE && response.arguments.get(3).getSize() > 0) {
-                    return new WaveformPreview(new DataReference(slot, rekordboxId), response);
-                } else {
-                    logger.info("No color waveform preview available for slot " + slot + ", id " + rekordboxId + "; requesting blue version.");
-                }
-            } catch (Exception e) {
-                logger.info("No color waveform preview available for slot " + slot + ", id " + rekordboxId + "; requesting blue version.", e);
-            }
+            return client.pipelinedRequest(Message.KnownType.ANLZ_TAG_REQ, null,
+                    client.buildRMST(Message.MenuIdentifier.MAIN_MENU, slot.slot), new NumberField(rekordboxId),
+                    new NumberField(Message.ANLZ_FILE_TAG_COLOR_WAVEFORM_PREVIEW), new NumberField(Message.ALNZ_FILE_TYPE_EXT));
         }
+        return requestBlueWaveformPreview(rekordboxId, slot, client);
+    }
 
-        Message response = client.simpleRequest(Message.KnownType.WAVE_PREVIEW_REQ, Message.KnownType.WAVE_PREVIEW,
+    /**
+     * Sends a pipelined request for the original blue waveform preview of a specific track ID.
+     *
+     * @param rekordboxId the track whose waveform preview is desired
+     * @param slot identifies the media slot we are querying
+     * @param client the dbserver client that is communicating with the appropriate player
+     *
+     * @return the future through which the response will arrive
+     * @throws IOException if there is a communication problem
+     */
+    private Future<Message> requestBlueWaveformPreview(int rekordboxId, SlotReference slot, Client client)
+            throws IOException {
+        return client.pipelinedRequest(Message.KnownType.WAVE_PREVIEW_REQ, Message.KnownType.WAVE_PREVIEW,
                 client.buildRMST(Message.MenuIdentifier.DATA, slot.slot), NumberField.WORD_1,
-                idField, NumberField.WORD_0);
+                new NumberField(rekordboxId), NumberField.WORD_0);
+    }
+
+    /**
+     * Builds the waveform preview from the response to
+     * {@link #requestWaveformPreview(int, SlotReference, Client)}. If we asked for a color preview and the player
+     * could not supply one, falls back to asking for the blue version.
+     *
+     * @param pending the response to the waveform preview request
+     * @param rekordboxId the track whose waveform preview is desired
+     * @param slot identifies the media slot we are querying
+     * @param client the dbserver client that is communicating with the appropriate player
+     *
+     * @return the retrieved waveform preview
+     * @throws IOException if there is a communication problem
+     */
+    WaveformPreview receiveWaveformPreview(Future<Message> pending, int rekordboxId, SlotReference slot, Client client)
+            throws IOException {
+        Message response = MetadataFinder.awaitResponse(pending);
+        if (response.knownType == Message.KnownType.ANLZ_TAG && response.arguments.get(3).getSize() > 0) {
+            return new WaveformPreview(new DataReference(slot, rekordboxId), response);
+        }
+        if (response.knownType != Message.KnownType.WAVE_PREVIEW) {
+            logger.info("No color waveform preview available for slot " + slot + ", id " + rekordboxId + "; requesting blue version.");
+            response = MetadataFinder.awaitResponse(requestBlueWaveformPreview(rekordboxId, slot, client));
+        }
         return new WaveformPreview(new DataReference(slot, rekordboxId), response);
     }
 
@@ -516,10 +694,17 @@ public class WaveformFinder extends LifecycleParticipant {
      */
     private WaveformDetail requestDetailInternal(final DataReference trackReference, final boolean failIfPassive) {
 
-        // First check if we are using cached data for this slot
+        // First check if we have already obtained it recently.
+        final WaveformDetail cached = TrackDataCache.getInstance().get(TrackDataCache.Kind.WAVEFORM_DETAIL, trackReference);
+        if (cached != null) {
+            return cached;
+        }
+
+        // Then check if we are using cached data for this slot
         @SuppressWarnings("deprecation") MetadataCache cache = MetadataFinder.getInstance().getMetadataCache(SlotReference.getSlotReference(trackReference));
         if (cache != null) {
-            return cache.getWaveformDetail(null, trackReference);
+            final WaveformDetail result = cache.getWaveformDetail(null, trackReference);
+            return retain(trackReference, result);
         }
 
         // Then see if any registered metadata providers can offer it to us.
@@ -527,7 +712,7 @@ public class WaveformFinder extends LifecycleParticipant {
         if (sourceDetails !=  null) {
             final WaveformDetail provided = MetadataFinder.getInstance().allMetadataProviders.getWaveformDetail(sourceDetails, trackReference);
             if (provided != null) {
-                return provided;
+                return retain(trackReference, provided);
             }
         }
 
@@ -546,7 +731,8 @@ public class WaveformFinder extends LifecycleParticipant {
         };
 
         try {
-            return ConnectionManager.getInstance().invokeWithClientSession(trackReference.player, task, "requesting waveform detail");
+            final WaveformDetail result = ConnectionManager.getInstance().invokeWithClientSession(trackReference.player, task, "requesting waveform detail");
+            return retain(trackReference, result);
         } catch (Exception e) {
             logger.error("Problem requesting waveform preview, returning null", e);
         }
@@ -573,6 +759,43 @@ public class WaveformFinder extends LifecycleParticipant {
         return requestDetailInternal(dataReference, false);
     }
 
+    /**
+     * Start finding the waveform detail for the track a player has loaded, in the background, returning right
+     * away. The request is cancelled if the player unloads the track, or loads a different one, before it finishes.
+     *
+     * @param status a status update from the player whose loaded track's waveform detail is desired
+     *
+     * @return the request, which will provide the same result as {@link #requestWaveformDetailFrom(DataReference)}
+     */
+    public AsyncRequest<WaveformDetail> requestWaveformDetailAsync(final CdjStatus status) {
+        final DataReference track = AsyncRequests.loadedTrack(status);
+        if (track == null) {
+            return AsyncRequests.<WaveformDetail>completed(null);
+        }
+        return AsyncRequests.submit(status.getDeviceNumber(), track, new Callable<WaveformDetail>() {
+            @Override
+            public WaveformDetail call() {
+                return requestWaveformDetailFrom(track);
+            }
+        });
+    }
+
+    /**
+     * Start finding a waveform detail in the background, returning right away.
+     *
+     * @param dataReference uniquely identifies the desired waveform detail
+     *
+     * @return the request, which will provide the same result as {@link #requestWaveformDetailFrom(DataReference)}
+     */
+    public AsyncRequest<WaveformDetail> requestWaveformDetailAsync(final DataReference dataReference) {
+        return AsyncRequests.submit(0, null, new Callable<WaveformDetail>() {
+            @Override
+            public WaveformDetail call() {
+                return requestWaveformDetailFrom(dataReference);
+            }
+        });
+    }
+
     /**
      * Requests the waveform detail for a specific track ID, given a connection to a player that has already been
      * set up.
@@ -586,26 +809,72 @@ public class WaveformFinder extends LifecycleParticipant {
      */
     WaveformDetail getWaveformDetail(int rekordboxId, SlotReference slot, Client client)
             throws IOException {
-        final NumberField idField = new NumberField(rekordboxId);
+        return receiveWaveformDetail(requestWaveformDetail(rekordboxId, slot, client), rekordboxId, slot, client);
+    }
 
+    /**
+     * Sends a pipelined request for the waveform detail of a specific track ID, so it can travel to the player
+     * along with other requests about the same track. The response must be passed to
+     * {@link #receiveWaveformDetail(Future, int, SlotReference, Client)} while the client is still held.
+     *
+     * @param rekordboxId the track whose waveform detail is desired
+     * @param slot identifies the media slot we are querying
+     * @param client the dbserver client that is communicating with the appropriate player
+     *
+     * @return the future through which the response will arrive
+     * @throws IOException if there is a communication problem
+     */
+    Future<Message> requestWaveformDetail(int rekordboxId, SlotReference slot, Client client)
+            throws IOException {
         // First try to get the NXS2-style color waveform if we are supposed to.
         if (preferColor.get()) {
-            try {
-                Message response = client.simpleRequest(Message.KnownType.ANLZ_TAG_REQ, Message.KnownType.ANLZ_TAG,
-                        client.buildRMST(Message.MenuIdentifier.MAIN_MENU, slot.slot), idField,
-                        new NumberField(Message.ANLZ_FILE_TAG_COLOR_WAVEFORM_DETAIL), new NumberField(Message.ALNZ_FILE_TYPE_EXT));
-                if (response.knownType != Message.KnownType.UNAVAILABLE && response.arguments.get(3).getSize() > 0) {
-                    return new WaveformDetail(new DataReference(slot, rekordboxId), response);
-                } else {
-                    logger.info("No color waveform available for slot " + slot + ", id " + rekordboxId + "; requesting blue version.");
-                }
-            } catch (Exception e) {
-                logger.info("Problem requesting color waveform for slot " + slot + ", id " + rekordboxId + "; requesting blue version.", e);
-            }
+            return client.pipelinedRequest(Message.KnownType.ANLZ_TAG_REQ, null,
+                    client.buildRMST(Message.MenuIdentifier.MAIN_MENU, slot.slot), new NumberField(rekordboxId),
+                    new NumberField(Message.ANLZ_FILE_TAG_COLOR_WAVEFORM_DETAIL), new NumberField(Message.ALNZ_FILE_TYPE_EXT));
         }
+        return requestBlueWaveformDetail(rekordboxId, slot, client);
+    }
 
-        Message response = client.simpleRequest(Message.KnownType.WAVE_DETAIL_REQ, Message.KnownType.WAVE_DETAIL,
-                client.buildRMST(Message.MenuIdentifier.MAIN_MENU, slot.slot), idField, NumberField.WORD_0);
+    /**
+     * Sends a pipelined request for the original blue waveform detail of a specific track ID.
+     *
+     * @param rekordboxId the track whose waveform detail is desired
+     * @param slot identifies the media slot we are querying
+     * @param client the dbserver client that is communicating with the appropriate player
+     *
+     * @return the future through which the response will arrive
+     * @throws IOException if there is a communication problem
+     */
+    private Future<Message> requestBlueWaveformDetail(int rekordboxId, SlotReference slot, Client client)
+            throws IOException {
+        return client.pipelinedRequest(Message.KnownType.WAVE_DETAIL_REQ, Message.KnownType.WAVE_DETAIL,
+                client.buildRMST(Message.MenuIdentifier.MAIN_MENU, slot.slot), new NumberField(rekordboxId),
+                NumberField.WORD_0);
+    }
+
+    /**
+     * Builds the waveform detail from the response to {@link #requestWaveformDetail(int, SlotReference, Client)}.
+     * If we asked for a color waveform and the player could not supply one, falls back to asking for the blue
+     * version.
+     *
+     * @param pending the response to the waveform detail request
+     * @param rekordboxId the track whose waveform detail is desired
+     * @param slot identifies the media slot we are querying
+     * @param client the dbserver client that is communicating with the appropriate player
+     *
+     * @return the retrieved waveform detail
+     * @throws IOException if there is a communication problem
+     */
+    WaveformDetail receiveWaveformDetail(Future<Message> pending, int rekordboxId, SlotReference slot, Client client)
+            throws IOException {
+        Message response = MetadataFinder.awaitResponse(pending);
+        if (response.knownType == Message.KnownType.ANLZ_TAG && response.arguments.get(3).getSize() > 0) {
+            return new WaveformDetail(new DataReference(slot, rekordboxId), response);
+        }
+        if (response.knownType != Message.KnownType.WAVE_DETAIL) {
+            logger.info("No color waveform available for slot " + slot + ", id " + rekordboxId + "; requesting blue version.");
+            response = MetadataFinder.awaitResponse(requestBlueWaveformDetail(rekordboxId, slot, client));
+        }
         return new WaveformDetail(new DataReference(slot, rekordboxId), response);
     }
 
@@ -622,8 +891,8 @@ public class WaveformFinder extends LifecycleParticipant {
     /**
      * Keeps track of the registered waveform listeners.
      */
-    private final Set<WaveformListener> waveformListeners =
-            Collections.newSetFromMap(new ConcurrentHashMap<WaveformListener, Boolean>());
+    private final ListenerRegistry<WaveformListener> waveformListeners =
+            new ListenerRegistry<WaveformListener>();
 
     /**
      * <p>Adds the specified waveform listener to receive updates when the waveform information for a player changes.
@@ -665,8 +934,7 @@ public class WaveformFinder extends LifecycleParticipant {
      */
     @SuppressWarnings("WeakerAccess")
     public Set<WaveformListener> getWaveformListeners() {
-        // Make a copy so callers get an immutable snapshot of the current state.
-        return Collections.unmodifiableSet(new HashSet<WaveformListener>(waveformListeners));
+        return waveformListeners.asSet();
     }
 
     /**
@@ -676,7 +944,7 @@ public class WaveformFinder extends LifecycleParticipant {
      * @param preview the new waveform preview, if any
      */
     private void deliverWaveformPreviewUpdate(final int player, final WaveformPreview preview) {
-        final Set<WaveformListener> listeners = getWaveformListeners();
+        final List<WaveformListener> listeners = waveformListeners.snapshot();
         if (!listeners.isEmpty()) {
             SwingUtilities.invokeLater(new Runnable() {
                 @Override
@@ -702,12 +970,14 @@ public class WaveformFinder extends LifecycleParticipant {
      * @param detail the new waveform detail, if any
      */
     private void deliverWaveformDetailUpdate(final int player, final WaveformDetail detail) {
-        if (!getWaveformListeners().isEmpty()) {
+        if (!waveformListeners.isEmpty()) {
             SwingUtilities.invokeLater(new Runnable() {
                 @Override
                 public void run() {
                     final WaveformDetailUpdate update = new WaveformDetailUpdate(player, detail);
-                    for (final WaveformListener listener : getWaveformListeners()) {
+                    final List<WaveformListener> listeners = waveformListeners.snapshot();
+                    for (int i = 0; i < listeners.size(); i++) {
+                        final WaveformListener listener = listeners.get(i);
                         try {
                             listener.detailChanged(update);
 
@@ -749,7 +1019,7 @@ public class WaveformFinder extends LifecycleParticipant {
                 if (!foundInCache && activePreviewRequests.add(update.player)) {
                     clearDeckPreview(update);  // We won't know what it is until our request completes.
                     // We had to make sure we were not already asking for this track.
-                    new Thread(new Runnable() {
+                    Scheduler.getInstance().execute(Scheduler.Pool.IO, "waveform preview request", new Runnable() {
                         @Override
                         public void run() {
                             try {
@@ -763,7 +1033,7 @@ public class WaveformFinder extends LifecycleParticipant {
                                 activePreviewRequests.remove(update.player);
                             }
                         }
-                    }).start();
+                    });
                 }
             }
 
@@ -785,7 +1055,7 @@ public class WaveformFinder extends LifecycleParticipant {
                 if (!foundInCache && activeDetailRequests.add(update.player)) {
                     clearDeckDetail(update);  // We won't know what it is until our request completes.
                     // We had to make sure we were not already asking for this track.
-                    new Thread(new Runnable() {
+                    Scheduler.getInstance().execute(Scheduler.Pool.IO, "waveform detail request", new Runnable() {
                         @Override
                         public void run() {
                             try {
@@ -799,7 +1069,7 @@ public class WaveformFinder extends LifecycleParticipant {
                                 activeDetailRequests.remove(update.player);
                             }
                         }
-                    }).start();
+                    });
                 }
             }
         }
@@ -193,6 +193,32 @@ public class WaveformPreview {
         maxHeight = getMaxHeight();
     }
 
+    /**
+     * Constructor used by the {@link WaveformFinder} to move the data of a preview off the heap. The new preview
+     * does not keep the raw message of the original.
+     *
+     * @param original the waveform preview whose data has been copied
+     * @param data a direct buffer holding the expanded data as will be returned by {@link #getData()}
+     */
+    WaveformPreview(WaveformPreview original, ByteBuffer data) {
+        dataReference = original.dataReference;
+        rawMessage = null;
+        isColor = original.isColor;
+        expandedData = data;
+        segmentCount = original.segmentCount;
+        maxHeight = original.maxHeight;
+    }
+
+    /**
+     * Check whether the preview data is held outside the Java heap, as it is when the {@link WaveformFinder} has
+     * been told to use {@link WaveformFinder#setOffHeapStorage(boolean)}.
+     *
+     * @return {@code true} if the data is in a direct buffer
+     */
+    public boolean isOffHeap() {
+        return expandedData.isDirect() && rawMessage == null;
+    }
+
     /**
      * The color at which segments of the blue waveform marked most intense are drawn.
      */
@@ -9,7 +9,6 @@ import java.awt.*;
 import java.awt.image.BufferedImage;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicReference;
 
@@ -567,9 +566,18 @@ public class WaveformPreviewComponent extends JComponent {
     }
 
     /**
-     * Used to signal our animation thread to stop when we are no longer monitoring a player.
+     * Moves our playback position along with the monitored player on each tick of the {@link TimeFinder} frame
+     * clock, which is shared with any other components and listeners that are animating.
      */
-    private final AtomicBoolean animating = new AtomicBoolean(false);
+    private final FrameListener frameListener = new FrameListener() {
+        @Override
+        public void frameReady(FrameSnapshot snapshot) {
+            final int player = getMonitoredPlayer();
+            if (player > 0) {
+                setPlaybackPosition(snapshot.getTimeFor(player));
+            }
+        }
+    };
 
     /**
      * Configures the player whose current track waveforms and status will automatically be reflected. Whenever a new
@@ -614,30 +622,12 @@ public class WaveformPreviewComponent extends JComponent {
             VirtualCdj.getInstance().addUpdateListener(updateListener);
             try {
                 TimeFinder.getInstance().start();
-                if (!animating.getAndSet(true)) {
-                    // Create the thread to update our position smoothly as the track plays
-                    new Thread(new Runnable() {
-                        @Override
-                        public void run() {
-                            while (animating.get()) {
-                                try {
-                                    //noinspection BusyWait
-                                    Thread.sleep(33);  // Animate at 30 fps
-                                } catch (InterruptedException e) {
-                                    logger.warn("Waveform animation thread interrupted; ending");
-                                    animating.set(false);
-                                }
-                                setPlaybackPosition(TimeFinder.getInstance().getTimeFor(getMonitoredPlayer()));
-                            }
-                        }
-                    }).start();
-                }
+                TimeFinder.getInstance().addFrameListener(frameListener);
             } catch (Exception e) {
                 logger.error("Unable to start the TimeFinder to animate the waveform preview");
-                animating.set(false);
             }
         } else {  // Stop monitoring any player
-            animating.set(false);
+            TimeFinder.getInstance().removeFrameListener(frameListener);
             VirtualCdj.getInstance().removeUpdateListener(updateListener);
             MetadataFinder.getInstance().removeTrackMetadataListener(metadataListener);
             WaveformFinder.getInstance().removeWaveformListener(waveformListener);
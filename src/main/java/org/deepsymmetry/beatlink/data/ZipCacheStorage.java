@@ -0,0 +1,249 @@
+package org.deepsymmetry.beatlink.data;
+
+import org.deepsymmetry.beatlink.MediaDetails;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.*;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * Reads metadata cache files in the original format, a ZIP archive with a compressed entry for each item, which
+ * must be found by name and inflated every time it is used. Caches are no longer created in this format, but they
+ * can still be attached, or converted to the indexed format using
+ * {@link MetadataCache#convertMetadataCache(java.io.File, java.io.File)}.
+ *
+ * @author James Elliott
+ * @since 0.6.3
+ */
+@SuppressWarnings("deprecation")
+class ZipCacheStorage implements MetadataCacheStorage {
+
+    private static final Logger logger = LoggerFactory.getLogger(ZipCacheStorage.class);
+
+    /**
+     * The root under which all zip file entries were created in our cache metadata files.
+     */
+    private static final String CACHE_PREFIX = "BLTMetaCache/";
+
+    /**
+     * The file entry whose content is the cache format identifier.
+     */
+    private static final String CACHE_FORMAT_ENTRY = CACHE_PREFIX + "version";
+
+    /**
+     * The file entry whose content is the details about the source media, if available.
+     */
+    private static final String CACHE_DETAILS_ENTRY = CACHE_PREFIX + "mediaDetails";
+
+    /**
+     * The prefix for cache file entries that store track metadata.
+     */
+    private static final String CACHE_METADATA_ENTRY_PREFIX = CACHE_PREFIX + "metadata/";
+
+    /**
+     * The prefix for cache file entries that store album art.
+     */
+    private static final String CACHE_ART_ENTRY_PREFIX = CACHE_PREFIX + "artwork/";
+
+    /**
+     * The prefix for cache file entries that store beat grids.
+     */
+    private static final String CACHE_BEAT_GRID_ENTRY_PREFIX = CACHE_PREFIX + "beatGrid/";
+
+    /**
+     * The prefix for cache file entries that store cue lists.
+     */
+    private static final String CACHE_CUE_LIST_ENTRY_PREFIX = CACHE_PREFIX + "cueList/";
+
+    /**
+     * The prefix for cache file entries that store waveform previews.
+     */
+    private static final String CACHE_WAVEFORM_PREVIEW_ENTRY_PREFIX = CACHE_PREFIX + "wavePrev/";
+
+    /**
+     * The prefix for cache file entries that store waveform details.
+     */
+    private static final String CACHE_WAVEFORM_DETAIL_ENTRY_PREFIX = CACHE_PREFIX + "waveform/";
+
+    /**
+     * The file that contains our cached information.
+     */
+    private final ZipFile zipFile;
+
+    /**
+     * Holds the ID of the playlist that was used to create the cache, or 0 of it is an all-tracks cache.
+     */
+    private final int sourcePlaylist;
+
+    /**
+     * Holds the number of tracks contained in the cache.
+     */
+    private final int trackCount;
+
+    /**
+     * Open the specified ZIP file and check that it is a metadata cache.
+     *
+     * @param file the metadata cache file to be served
+     *
+     * @throws IOException if there is a problem reading the file, or if it does not have the right content
+     */
+    ZipCacheStorage(File file) throws IOException {
+        zipFile = new ZipFile(file, ZipFile.OPEN_READ);
+        String tag = getCacheFormatEntry();
+        if (tag == null || !tag.startsWith(MetadataCache.CACHE_FORMAT_IDENTIFIER)) {
+            try {
+                zipFile.close();
+            } catch (Exception e) {
+                logger.error("Problem re-closing newly opened candidate metadata cache", e);
+            }
+            throw new IOException("File does not contain a Beat Link metadata cache: " + file +
+                    " (looking for format identifier \"" + MetadataCache.CACHE_FORMAT_IDENTIFIER + "\", found: " + tag);
+        }
+        String[] pieces = tag.split(":");
+        sourcePlaylist = Integer.parseInt(pieces[1]);
+        trackCount = Integer.parseInt(pieces[2]);
+    }
+
+    /**
+     * Names the zip file entry in which an item is cached.
+     *
+     * @param type the kind of item
+     * @param id the rekordbox ID of the track, or the artwork ID for album art
+     *
+     * @return the name of the entry where that item is stored
+     */
+    private static String getEntryName(EntryType type, int id) {
+        switch (type) {
+            case METADATA:
+                return CACHE_METADATA_ENTRY_PREFIX + id;
+
+            case ARTWORK:
+                return CACHE_ART_ENTRY_PREFIX + id + ".jpg";
+
+            case BEAT_GRID:
+                return CACHE_BEAT_GRID_ENTRY_PREFIX + id;
+
+            case CUE_LIST:
+                return CACHE_CUE_LIST_ENTRY_PREFIX + id;
+
+            case WAVEFORM_PREVIEW:
+                return CACHE_WAVEFORM_PREVIEW_ENTRY_PREFIX + id;
+
+            case WAVEFORM_DETAIL:
+                return CACHE_WAVEFORM_DETAIL_ENTRY_PREFIX + id;
+
+            default:
+                throw new IllegalArgumentException("Unknown cache entry type: " + type);
+        }
+    }
+
+    /**
+     * Find and read the cache format entry in a metadata cache file.
+     *
+     * @return the content of the format entry, or {@code null} if none was found
+     *
+     * @throws IOException if there is a problem reading the file
+     */
+    private String getCacheFormatEntry() throws IOException {
+        ZipEntry zipEntry = zipFile.getEntry(CACHE_FORMAT_ENTRY);
+        if (zipEntry == null) {
+            return null;
+        }
+        InputStream is = zipFile.getInputStream(zipEntry);
+        try {
+            Scanner s = new Scanner(is, "UTF-8").useDelimiter("\\A");
+            String tag = null;
+            if (s.hasNext()) tag = s.next();
+            return tag;
+        } finally {
+            is.close();
+        }
+    }
+
+    /**
+     * Read the entire content of a zip file entry.
+     *
+     * @param zipEntry the entry to be read
+     *
+     * @return the inflated bytes of the entry
+     *
+     * @throws IOException if there is a problem reading the file
+     */
+    private byte[] readEntry(ZipEntry zipEntry) throws IOException {
+        DataInputStream is = new DataInputStream(zipFile.getInputStream(zipEntry));
+        try {
+            byte[] bytes = new byte[(int)zipEntry.getSize()];
+            is.readFully(bytes);
+            return bytes;
+        } finally {
+            try {
+                is.close();
+            } catch (Exception e) {
+                logger.error("Problem closing ZipFile input stream for reading entry " + zipEntry.getName(), e);
+            }
+        }
+    }
+
+    @Override
+    public String getName() {
+        return zipFile.getName();
+    }
+
+    @Override
+    public int getSourcePlaylist() {
+        return sourcePlaylist;
+    }
+
+    @Override
+    public int getTrackCount() {
+        return trackCount;
+    }
+
+    @Override
+    public MediaDetails getSourceMedia() throws IOException {
+        ZipEntry zipEntry = zipFile.getEntry(CACHE_DETAILS_ENTRY);
+        if (zipEntry == null) {
+            return null;  // No details available.
+        }
+        final byte[] detailBytes = readEntry(zipEntry);
+        return new MediaDetails(detailBytes, detailBytes.length);
+    }
+
+    @Override
+    public List<Integer> getTrackIds() {
+        ArrayList<Integer> results = new ArrayList<Integer>(trackCount);
+        Enumeration<? extends ZipEntry> entries = zipFile.entries();
+        while (entries.hasMoreElements()) {
+            ZipEntry entry = entries.nextElement();
+            if (entry.getName().startsWith(CACHE_METADATA_ENTRY_PREFIX)) {
+                String idPart = entry.getName().substring(CACHE_METADATA_ENTRY_PREFIX.length());
+                if (idPart.length() > 0) {
+                    results.add(Integer.valueOf(idPart));
+                }
+            }
+        }
+
+        return Collections.unmodifiableList(results);
+    }
+
+    @Override
+    public ByteBuffer getEntry(EntryType type, int id) throws IOException {
+        final ZipEntry zipEntry = zipFile.getEntry(getEntryName(type, id));
+        if (zipEntry == null) {
+            return null;
+        }
+        return ByteBuffer.wrap(readEntry(zipEntry)).asReadOnlyBuffer();
+    }
+
+    @Override
+    public void close() throws IOException {
+        zipFile.close();
+    }
+}
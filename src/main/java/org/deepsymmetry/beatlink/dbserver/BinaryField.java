@@ -93,6 +93,19 @@ public class BinaryField extends Field {
         value = extractValue();
     }
 
+    /**
+     * Constructor for use by a {@link MessageDecoder}, which has already gathered the full network representation
+     * of the field into a buffer of its own. The buffer is adopted rather than copied, so it must not be modified
+     * afterwards.
+     *
+     * @param networkBytes holds the type tag, size, and value of the field, and nothing else
+     */
+    BinaryField(final ByteBuffer networkBytes) {
+        size = networkBytes.capacity() - 5;
+        buffer = networkBytes.asReadOnlyBuffer();
+        value = extractValue();
+    }
+
     /**
      * Constructor for code.
      *
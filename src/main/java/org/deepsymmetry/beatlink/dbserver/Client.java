@@ -5,7 +5,6 @@ import org.deepsymmetry.beatlink.Util;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.io.DataInputStream;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.net.Socket;
@@ -14,8 +13,14 @@ import java.nio.channels.Channels;
 import java.nio.channels.WritableByteChannel;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.ReentrantLock;
 
@@ -36,9 +41,9 @@ public class Client {
     private final Socket socket;
 
     /**
-     * The stream used to read input from the dbserver.
+     * Reads messages sent to us by the dbserver.
      */
-    private final DataInputStream is;
+    private final MessageDecoder decoder;
 
     /**
      * The stream used to send messages to the dbserver.
@@ -73,6 +78,12 @@ public class Client {
      */
     private long transactionCounter = 0;
 
+    /**
+     * Set when there has been a problem communicating with the dbserver, after which we can no longer trust that
+     * the next message to arrive is the response to our next request, so the connection must not be reused.
+     */
+    private volatile boolean broken = false;
+
     /**
      * The dbserver client must be constructed with a freshly-opened socket to the dbserver port on the specified
      * player number. It must be in charge of all communication with that socket. The {@link ConnectionManager} is
@@ -86,7 +97,7 @@ public class Client {
      */
     Client(Socket socket, int targetPlayer, int posingAsPlayer) throws IOException {
         this.socket = socket;
-        is = new DataInputStream(socket.getInputStream());
+        decoder = new MessageDecoder(socket.getInputStream());
         os = socket.getOutputStream();
         channel = Channels.newChannel(os);
         this.targetPlayer = targetPlayer;
@@ -95,7 +106,7 @@ public class Client {
         try {
             // Exchange the greeting message, which is a 4-byte number field containing the value 1.
             sendField(GREETING_FIELD);
-            final Field response = Field.read(is);
+            final Field response = decoder.readField();
             if ((response instanceof NumberField) && (response.getSize() == 4) &&
                     (((NumberField) response).getValue() == 1)) {
                 performSetupExchange();
@@ -117,7 +128,7 @@ public class Client {
     private void performSetupExchange() throws IOException {
         Message setupRequest = new Message(0xfffffffeL, Message.KnownType.SETUP_REQ, new NumberField(posingAsPlayer, 4));
         sendMessage(setupRequest);
-        Message response = Message.read(is);
+        Message response = receiveMessage();
         if (response.knownType != Message.KnownType.MENU_AVAILABLE) {
             throw new IOException("Did not receive message type 0x4000 in response to setup message, got: " + response);
         }
@@ -144,14 +155,43 @@ public class Client {
     }
 
     /**
-     * Check whether our connection is still available for use. We will close it if there is ever a problem
-     * communicating with the dbserver.
+     * Check whether our connection is still available for use. It is not once it has been closed, or if there
+     * has ever been a problem communicating with the dbserver.
      *
      * @return {@code true} if this instance can still be used to query the connected dbserver
      */
     @SuppressWarnings("WeakerAccess")
     public boolean isConnected() {
-        return socket.isConnected();
+        return socket.isConnected() && !socket.isClosed() && !broken;
+    }
+
+    /**
+     * Read the next message from the dbserver, recording that the connection can no longer be trusted if that fails.
+     *
+     * @return the message
+     *
+     * @throws IOException if there is a problem reading it
+     */
+    private Message receiveMessage() throws IOException {
+        try {
+            return decoder.readMessage();
+        } catch (IOException e) {
+            broken = true;
+            throw e;
+        }
+    }
+
+    /**
+     * Record that the dbserver sent something other than what we expected, so we can no longer tell which
+     * response belongs to which request, and build the exception that reports this.
+     *
+     * @param message describes what went wrong
+     *
+     * @return the exception to be thrown
+     */
+    private IOException outOfStep(String message) {
+        broken = true;
+        return new IOException(message);
     }
 
     /**
@@ -174,7 +214,7 @@ public class Client {
             logger.warn("Problem closing dbserver client output stream", e);
         }
         try {
-            is.close();
+            decoder.close();
         } catch (IOException e) {
             logger.warn("Problem closing dbserver client input stream", e);
         }
@@ -230,6 +270,23 @@ public class Client {
      */
     private void sendMessage(Message message) throws IOException {
         logger.debug("Sending> {}", message);
+        try {
+            Util.writeFully(assemble(message), channel);
+        } catch (IOException e) {
+            broken = true;
+            throw e;
+        }
+    }
+
+    /**
+     * Gathers the bytes of all the fields that make up a message into a single buffer, so they can be written to
+     * the network in one go. This is package-private so the encoding cost can be measured on its own.
+     *
+     * @param message the message to be sent
+     *
+     * @return a buffer holding the encoded message, ready to be read from
+     */
+    static ByteBuffer assemble(Message message) {
         int totalSize = 0;
         for (Field field : message.fields) {
             totalSize += field.getBytes().remaining();
@@ -240,7 +297,7 @@ public class Client {
             combined.put(field.getBytes());
         }
         combined.flip();
-        Util.writeFully(combined, channel);
+        return combined;
     }
 
     /**
@@ -345,12 +402,13 @@ public class Client {
     public synchronized Message simpleRequest(Message.KnownType requestType, Message.KnownType responseType,
                                               Field... arguments)
             throws IOException {
+        drainPipelinedResponses();
         final NumberField transaction = assignTransactionNumber();
         final Message request = new Message(transaction, new NumberField(requestType.protocolValue, 2), arguments);
         sendMessage(request);
-        final Message response = Message.read(is);
+        final Message response = receiveMessage();
         if (response.transaction.getValue() != transaction.getValue()) {
-            throw new IOException("Received response with wrong transaction ID. Expected: " + transaction.getValue() +
+            throw outOfStep("Received response with wrong transaction ID. Expected: " + transaction.getValue() +
             ", got: " + response);
         }
         if (responseType != null && response.knownType != responseType) {
@@ -360,6 +418,238 @@ public class Client {
         return response;
     }
 
+    /**
+     * The maximum number of pipelined requests which can be awaiting responses at once. Sending another one will
+     * first wait for the oldest response to arrive.
+     */
+    @SuppressWarnings("WeakerAccess")
+    public static final int MAX_PIPELINED_REQUESTS = 8;
+
+    /**
+     * Tracks the pipelined requests whose responses have not yet been read, keyed by transaction number, in the
+     * order they were sent. Guarded by the client's own lock.
+     */
+    private final Map<Long, PendingResponse> pendingResponses = new LinkedHashMap<Long, PendingResponse>();
+
+    /**
+     * <p>Send a request that expects a single message as its response, without waiting for that response to
+     * arrive, so that several requests can be on their way to the player at once. This is useful when loading
+     * a track, to ask for its beat grid, cue list, and waveforms in a single round trip, rather than waiting
+     * for each in turn.</p>
+     *
+     * <p>Responses are matched to requests by transaction number. No thread is dedicated to reading them;
+     * instead, whichever thread first calls {@link Future#get()} reads responses as they arrive, handing each
+     * to the future it belongs to, until its own has arrived. So the futures must be resolved while the caller
+     * is still holding its {@link ConnectionManager} session, and any synchronous request made on this client
+     * will first collect all outstanding pipelined responses. The future completes with an
+     * {@link java.util.concurrent.ExecutionException} wrapping an {@link IOException} if there is a communication
+     * problem or the response has an unexpected type.</p>
+     *
+     * <p>Only requests answered by a single message should be pipelined; menu requests, which are answered by a
+     * header, items, and footer, must still use {@link #menuRequest(Message.KnownType, Message.MenuIdentifier, CdjStatus.TrackSourceSlot, Field...)}
+     * and {@link #renderMenuItems(Message.MenuIdentifier, CdjStatus.TrackSourceSlot, CdjStatus.TrackType, Message)}.</p>
+     *
+     * @param requestType identifies what kind of request to send
+     * @param responseType identifies the type of response we expect, or {@code null} if we’ll accept anything
+     * @param arguments The argument fields to send in the request
+     *
+     * @return a future through which the response can be obtained
+     *
+     * @throws IOException if there is a problem sending the request
+     */
+    public synchronized Future<Message> pipelinedRequest(Message.KnownType requestType, Message.KnownType responseType,
+                                                         Field... arguments)
+            throws IOException {
+        while (pendingResponses.size() >= MAX_PIPELINED_REQUESTS) {
+            readPipelinedResponse();
+        }
+        final NumberField transaction = assignTransactionNumber();
+        final PendingResponse result = new PendingResponse(responseType);
+        pendingResponses.put(transaction.getValue(), result);
+        try {
+            sendMessage(new Message(transaction, new NumberField(requestType.protocolValue, 2), arguments));
+        } catch (IOException e) {
+            failPipelinedRequests(e);
+            throw e;
+        }
+        return result;
+    }
+
+    /**
+     * Read the next response to a pipelined request, and hand it to the future that is waiting for it. If anything
+     * goes wrong, all the outstanding futures are failed, since we can no longer tell which responses are which.
+     *
+     * @throws IOException if there is a problem reading the response, or it does not match any outstanding request
+     */
+    private synchronized void readPipelinedResponse() throws IOException {
+        try {
+            final Message response = receiveMessage();
+            final PendingResponse pending = pendingResponses.remove(response.transaction.getValue());
+            if (pending == null) {
+                throw outOfStep("Received response with unexpected transaction ID: " + response);
+            }
+            pending.complete(response);
+        } catch (IOException e) {
+            failPipelinedRequests(e);
+            throw e;
+        }
+    }
+
+    /**
+     * Collect the responses to all outstanding pipelined requests, so that a synchronous request can be sent and
+     * know that the next response to arrive will be its own.
+     *
+     * @throws IOException if there is a problem reading the responses
+     */
+    private synchronized void drainPipelinedResponses() throws IOException {
+        while (!pendingResponses.isEmpty()) {
+            readPipelinedResponse();
+        }
+    }
+
+    /**
+     * Fail every outstanding pipelined request, because communication with the player has broken down.
+     *
+     * @param cause the problem that was encountered
+     */
+    private synchronized void failPipelinedRequests(IOException cause) {
+        for (PendingResponse pending : pendingResponses.values()) {
+            pending.fail(cause);
+        }
+        pendingResponses.clear();
+    }
+
+    /**
+     * Read responses until the specified one has arrived, or the deadline passes.
+     *
+     * @param pending the future whose response is needed
+     * @param timed whether to give up at the deadline
+     * @param deadline the value of {@link System#nanoTime()} after which we should give up, if {@code timed};
+     *                 since we can only stop between responses, this may be overshot by up to the socket timeout
+     *
+     * @throws InterruptedException if the thread is interrupted while waiting
+     */
+    private synchronized void awaitPipelinedResponse(PendingResponse pending, boolean timed, long deadline)
+            throws InterruptedException {
+        while (!pending.isDone() && !(timed && System.nanoTime() - deadline >= 0)) {
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+            try {
+                readPipelinedResponse();
+            } catch (IOException e) {
+                // Every outstanding future, including the one we are waiting for, has been failed with this exception.
+                logger.debug("Problem reading pipelined dbserver response", e);
+            }
+        }
+    }
+
+    /**
+     * The future returned when a pipelined request is sent, which gets completed when the response arrives.
+     */
+    private class PendingResponse implements Future<Message> {
+
+        /**
+         * The type of response expected, or {@code null} if any will do.
+         */
+        private final Message.KnownType responseType;
+
+        /**
+         * The response, once it has arrived.
+         */
+        private Message response;
+
+        /**
+         * The problem that prevented a response from being received, if any.
+         */
+        private Throwable failure;
+
+        /**
+         * Whether the request has been cancelled.
+         */
+        private boolean cancelled;
+
+        PendingResponse(Message.KnownType responseType) {
+            this.responseType = responseType;
+        }
+
+        /**
+         * Record the arrival of the response to our request.
+         *
+         * @param message the response
+         */
+        synchronized void complete(Message message) {
+            if (responseType != null && message.knownType != responseType) {
+                failure = new IOException("Received response with wrong type. Expected: " + responseType +
+                        ", got: " + message);
+            } else {
+                response = message;
+            }
+        }
+
+        /**
+         * Record that the response will never arrive.
+         *
+         * @param cause the problem that was encountered
+         */
+        synchronized void fail(Throwable cause) {
+            if (!isDone()) {
+                failure = cause;
+            }
+        }
+
+        @Override
+        public synchronized boolean cancel(boolean mayInterruptIfRunning) {
+            if (isDone()) {
+                return false;
+            }
+            cancelled = true;  // We stay in the pending map so the response is recognized and discarded when it comes.
+            return true;
+        }
+
+        @Override
+        public synchronized boolean isCancelled() {
+            return cancelled;
+        }
+
+        @Override
+        public synchronized boolean isDone() {
+            return cancelled || response != null || failure != null;
+        }
+
+        @Override
+        public Message get() throws InterruptedException, ExecutionException {
+            awaitPipelinedResponse(this, false, 0);
+            return result();
+        }
+
+        @Override
+        public Message get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+            awaitPipelinedResponse(this, true, System.nanoTime() + unit.toNanos(timeout));
+            if (!isDone()) {
+                throw new TimeoutException("No response received from dbserver within " + timeout + " " + unit);
+            }
+            return result();
+        }
+
+        /**
+         * Report the outcome of the request once it is done.
+         *
+         * @return the response
+         *
+         * @throws ExecutionException if the response could not be obtained
+         */
+        private synchronized Message result() throws ExecutionException {
+            if (cancelled) {
+                throw new CancellationException();
+            }
+            if (failure != null) {
+                throw new ExecutionException(failure);
+            }
+            return response;
+        }
+    }
+
     /**
      * Send a request for a menu that we will retrieve items from in subsequent requests. This variant works for
      * nearly all menus, but when you are trying to request metadata for an unanalyzed (non-rekordbox) track, you
@@ -552,6 +842,7 @@ public class Client {
             throw new IllegalArgumentException("count must be positive");
         }
 
+        drainPipelinedResponses();
         final ArrayList<Message> results = new ArrayList<Message>(count);
         int gathered = 0;
         while (gathered < count) {
@@ -564,24 +855,24 @@ public class Client {
                     buildRMST(targetMenu, slot, trackType), new NumberField(offset), limit, NumberField.WORD_0, total, NumberField.WORD_0);
 
             sendMessage(request);
-            Message response = Message.read(is);
+            Message response = receiveMessage();
 
             if (response.transaction.getValue() != transaction.getValue()) {
-                throw new IOException("Received response with wrong transaction ID. Expected: " + transaction.getValue() +
+                throw outOfStep("Received response with wrong transaction ID. Expected: " + transaction.getValue() +
                         ", got: " + response);
             }
             if (response.knownType != Message.KnownType.MENU_HEADER) {
-                throw new IOException("Expecting MENU_HEADER, instead got: " + response);
+                throw outOfStep("Expecting MENU_HEADER, instead got: " + response);
             }
-            response = Message.read(is);
+            response = receiveMessage();
 
             while (response.knownType == Message.KnownType.MENU_ITEM) {
                 results.add(response);
-                response = Message.read(is);
+                response = receiveMessage();
             }
 
             if (response.knownType != Message.KnownType.MENU_FOOTER) {
-                throw new IOException("Expecting MENU_ITEM or MENU_FOOTER, instead got: " + response);
+                throw outOfStep("Expecting MENU_ITEM or MENU_FOOTER, instead got: " + response);
             }
 
             offset += batchSize;
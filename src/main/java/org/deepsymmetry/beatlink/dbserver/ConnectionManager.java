@@ -10,11 +10,10 @@ import java.io.OutputStream;
 import java.net.InetSocketAddress;
 import java.net.Socket;
 import java.net.SocketException;
-import java.util.Arrays;
-import java.util.LinkedList;
-import java.util.List;
-import java.util.Map;
+import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 
@@ -39,20 +38,165 @@ public class ConnectionManager extends LifecycleParticipant {
     }
 
     /**
-     * Keeps track of the clients that are currently active, indexed by player number
+     * Holds the connections we have open to a single player, and hands them out to one session at a time, unless
+     * they are all in use for long enough that waiting sessions start sharing them.
      */
-    private final Map<Integer,Client> openClients = new ConcurrentHashMap<Integer, Client>();
+    private static class ClientPool {
+
+        /**
+         * Limits how many sessions can hold connections at once. It is fair, so that sessions get connections
+         * in the order they asked for them.
+         */
+        final Semaphore permits;
+
+        /**
+         * The connections which are open but not leased to any session, most recently used first. Guarded by the
+         * {@link ConnectionManager} lock.
+         */
+        final LinkedList<Client> idle = new LinkedList<Client>();
+
+        /**
+         * All the connections which are open, whether or not they are in use. Guarded by the
+         * {@link ConnectionManager} lock.
+         */
+        final List<Client> open = new LinkedList<Client>();
+
+        /**
+         * The number of threads using each connection which is leased out. Each leased connection holds one of the
+         * {@link #permits} until its count drops to zero. Guarded by the {@link ConnectionManager} lock.
+         */
+        final Map<Client, Integer> users = new HashMap<Client, Integer>();
+
+        /**
+         * The maximum number of connections that can be open to the player.
+         */
+        final int size;
+
+        ClientPool(int size) {
+            this.size = size;
+            permits = new Semaphore(size, true);
+        }
+
+        @Override
+        public String toString() {
+            return "ClientPool[open:" + open + ", idle:" + idle.size() + ", available permits:" +
+                    permits.availablePermits() + "]";
+        }
+    }
 
     /**
-     * Keeps track of how many tasks are currently using each client.
+     * Keeps track of the connection pools for each player we are talking to, indexed by player number.
      */
-    private final Map<Client,Integer> useCounts = new ConcurrentHashMap<Client, Integer>();
+    private final Map<Integer,ClientPool> pools = new ConcurrentHashMap<Integer, ClientPool>();
 
     /**
-     * Keeps track of the last time each client was used, so we can time out our connection.
+     * Keeps track of the last time each client was returned to its pool, so we can time out our connection.
      */
     private final Map<Client,Long> timestamps = new ConcurrentHashMap<Client, Long>();
 
+    /**
+     * Records that a thread is using a client, which pool it came from, and how deeply the sessions using it
+     * are nested.
+     */
+    private static class Lease {
+        final ClientPool pool;
+        int depth = 1;
+
+        Lease(ClientPool pool) {
+            this.pool = pool;
+        }
+    }
+
+    /**
+     * Keeps track of the clients leased by the current thread, so that a task which opens another session with
+     * the same player uses the connection it already has, rather than waiting for one that it may itself be
+     * preventing from becoming available.
+     */
+    private final ThreadLocal<Map<Client,Lease>> leases = new ThreadLocal<Map<Client, Lease>>() {
+        @Override
+        protected Map<Client, Lease> initialValue() {
+            return new HashMap<Client, Lease>();
+        }
+    };
+
+    /**
+     * The default maximum number of connections we will open to a single player.
+     */
+    @SuppressWarnings("WeakerAccess")
+    public static final int DEFAULT_MAX_CONNECTIONS_PER_PLAYER = 2;
+
+    /**
+     * The maximum number of connections we will open to a single player.
+     */
+    private final AtomicInteger maxConnectionsPerPlayer = new AtomicInteger(DEFAULT_MAX_CONNECTIONS_PER_PLAYER);
+
+    /**
+     * Set the maximum number of connections that will be opened to the dbserver of a single player, which is
+     * how many tasks (for example fetching metadata, album art, and waveforms for a track that was just loaded)
+     * can talk to that player on connections of their own at the same time. Sessions beyond this number wait for a
+     * connection, and if none is freed up within {@link #getConnectionSharingDelay()}, share one that is in use
+     * (interleaving their requests with those of its other users), so a long session like building a metadata
+     * cache cannot starve the requests made when a track is loaded. Changes affect players to which no
+     * connections are currently open. The default value is 2.
+     *
+     * @param connections how many connections may be opened to each player
+     *
+     * @throws IllegalArgumentException if a value less than 1 is supplied
+     */
+    public void setMaxConnectionsPerPlayer(int connections) {
+        if (connections < 1) {
+            throw new IllegalArgumentException("connections must be positive");
+        }
+        maxConnectionsPerPlayer.set(connections);
+    }
+
+    /**
+     * Check the maximum number of connections that will be opened to the dbserver of a single player, which is
+     * how many tasks can talk to that player at the same time. The default value is 2.
+     *
+     * @return how many connections may be opened to each player
+     */
+    public int getMaxConnectionsPerPlayer() {
+        return maxConnectionsPerPlayer.get();
+    }
+
+    /**
+     * The default number of milliseconds a session waits for a connection of its own before sharing one.
+     */
+    @SuppressWarnings("WeakerAccess")
+    public static final int DEFAULT_CONNECTION_SHARING_DELAY = 250;
+
+    /**
+     * How many milliseconds a session waits for a connection of its own before sharing one that is in use.
+     */
+    private final AtomicInteger connectionSharingDelay = new AtomicInteger(DEFAULT_CONNECTION_SHARING_DELAY);
+
+    /**
+     * Set how long a session waits for a connection to a player to become free when the maximum number are
+     * already in use, before sharing one of those connections with the sessions using it. Requests on a shared
+     * connection take turns, so this trades parallelism for never being stuck behind a long session.
+     *
+     * @param milliseconds how long to wait before sharing a connection
+     *
+     * @throws IllegalArgumentException if a negative value is supplied
+     */
+    public void setConnectionSharingDelay(int milliseconds) {
+        if (milliseconds < 0) {
+            throw new IllegalArgumentException("milliseconds cannot be negative");
+        }
+        connectionSharingDelay.set(milliseconds);
+    }
+
+    /**
+     * Check how long a session waits for a connection to a player to become free before sharing one that is in
+     * use. The default value is 250.
+     *
+     * @return how many milliseconds a session waits before sharing a connection
+     */
+    public int getConnectionSharingDelay() {
+        return connectionSharingDelay.get();
+    }
+
     /**
      * How many seconds do we allow an idle connection to stay open?
      */
@@ -88,83 +232,215 @@ public class ConnectionManager extends LifecycleParticipant {
     }
 
     /**
-     * Finds or opens a client to talk to the dbserver on the specified player, incrementing its use count.
+     * Find or create the connection pool for a player.
+     *
+     * @param targetPlayer the player number whose database needs to be interacted with
+     *
+     * @return the pool from which connections to that player are leased
+     */
+    private synchronized ClientPool getPool(int targetPlayer) {
+        ClientPool result = pools.get(targetPlayer);
+        if (result == null) {
+            result = new ClientPool(maxConnectionsPerPlayer.get());
+            pools.put(targetPlayer, result);
+        }
+        return result;
+    }
+
+    /**
+     * Leases a client to talk to the dbserver on the specified player, waiting for one to become available if
+     * the maximum number of connections to that player are already in use, and sharing one of those if none
+     * becomes available within the connection sharing delay. If the current thread already holds a lease on a
+     * client for that player, it is reused.
      *
      * @param targetPlayer the player number whose database needs to be interacted with
      * @param description a short description of the task being performed for error reporting if it fails,
      *                    should be a verb phrase like "requesting track metadata"
      *
-     * @return the communication client for talking to that player, or {@code null} if the player could not be found
+     * @return the communication client for talking to that player
+     *
+     * @throws IllegalStateException if we can't find the target player or there is no suitable player number for us
+     *                               to pretend to be
+     * @throws IOException if there is a problem communicating, or no connection becomes available within the socket
+     *                     timeout
+     * @throws InterruptedException if the thread is interrupted while waiting for a connection
+     */
+    private Client allocateClient(int targetPlayer, String description) throws IOException, InterruptedException {
+        final Map<Client,Lease> held = leases.get();
+        for (Map.Entry<Client,Lease> entry : held.entrySet()) {
+            if (entry.getKey().targetPlayer == targetPlayer) {
+                entry.getValue().depth++;
+                return entry.getKey();
+            }
+        }
+
+        final ClientPool pool = getPool(targetPlayer);
+        final long delay = Math.min(connectionSharingDelay.get(), socketTimeout.get());
+        if (!pool.permits.tryAcquire(delay, TimeUnit.MILLISECONDS)) {
+            final Client shared = shareClient(pool);
+            if (shared != null) {
+                held.put(shared, new Lease(pool));
+                return shared;
+            }
+            // No connection is open yet to share, so wait for the ones being opened.
+            if (!pool.permits.tryAcquire(socketTimeout.get() - delay, TimeUnit.MILLISECONDS)) {
+                throw new IOException("Timed out waiting for a connection to player " + targetPlayer + " " + description);
+            }
+        }
+        try {
+            final Client result = leaseClient(pool, targetPlayer, description);
+            held.put(result, new Lease(pool));
+            return result;
+        } catch (IOException e) {
+            pool.permits.release();
+            throw e;
+        } catch (RuntimeException e) {
+            pool.permits.release();
+            throw e;
+        }
+    }
+
+    /**
+     * When all the connections to a player are in use, pick the one with the fewest users for another session to
+     * share.
+     *
+     * @param pool the pool of connections to the player
+     *
+     * @return the connection to share, or {@code null} if none is available
+     */
+    private synchronized Client shareClient(ClientPool pool) {
+        Client result = null;
+        int fewest = Integer.MAX_VALUE;
+        for (Map.Entry<Client, Integer> entry : pool.users.entrySet()) {
+            if (entry.getValue() < fewest && entry.getKey().isConnected()) {
+                result = entry.getKey();
+                fewest = entry.getValue();
+            }
+        }
+        if (result != null) {
+            pool.users.put(result, fewest + 1);
+            logger.debug("Sharing busy client {}", result);
+        }
+        return result;
+    }
+
+    /**
+     * Once a session has been granted permission to use a connection to a player, find an idle one for it, or
+     * open a new one.
+     *
+     * @param pool the pool of connections to the player
+     * @param targetPlayer the player number whose database needs to be interacted with
+     * @param description a short description of the task being performed for error reporting if it fails
+     *
+     * @return the communication client for talking to that player
      *
      * @throws IllegalStateException if we can't find the target player or there is no suitable player number for us
      *                               to pretend to be
      * @throws IOException if there is a problem communicating
      */
-    private synchronized Client allocateClient(int targetPlayer, String description) throws IOException {
-        Client result = openClients.get(targetPlayer);
-        if (result == null) {
-            // We need to open a new connection.
-            final DeviceAnnouncement deviceAnnouncement = DeviceFinder.getInstance().getLatestAnnouncementFrom(targetPlayer);
-            if (deviceAnnouncement == null) {
-                throw new IllegalStateException("Player " + targetPlayer + " could not be found " + description);
+    private Client leaseClient(ClientPool pool, int targetPlayer, String description) throws IOException {
+        final Set<Integer> posingNumbers = new HashSet<Integer>();
+        synchronized (this) {
+            if (!pool.idle.isEmpty()) {
+                final Client result = pool.idle.removeFirst();  // Reuse the connection idle the shortest time.
+                pool.users.put(result, 1);
+                return result;
             }
-            final int dbServerPort = getPlayerDBServerPort(targetPlayer);
-            if (dbServerPort < 0) {
-                throw new IllegalStateException("Player " + targetPlayer + " does not have a db server " + description);
+            for (Client client : pool.open) {
+                posingNumbers.add(client.posingAsPlayer);
             }
+        }
+
+        // We need to open a new connection.
+        final DeviceAnnouncement deviceAnnouncement = DeviceFinder.getInstance().getLatestAnnouncementFrom(targetPlayer);
+        if (deviceAnnouncement == null) {
+            throw new IllegalStateException("Player " + targetPlayer + " could not be found " + description);
+        }
+        final int dbServerPort = getPlayerDBServerPort(targetPlayer);
+        if (dbServerPort < 0) {
+            throw new IllegalStateException("Player " + targetPlayer + " does not have a db server " + description);
+        }
 
-            final byte posingAsPlayerNumber = (byte) chooseAskingPlayerNumber(targetPlayer);
+        final byte posingAsPlayerNumber = (byte) chooseAskingPlayerNumber(targetPlayer, posingNumbers);
 
-            Socket socket = null;
+        Socket socket = null;
+        final Client result;
+        try {
+            InetSocketAddress address = new InetSocketAddress(deviceAnnouncement.getAddress(), dbServerPort);
+            socket = new Socket();
+            socket.connect(address, socketTimeout.get());
+            socket.setSoTimeout(socketTimeout.get());
+            result = new Client(socket, targetPlayer, posingAsPlayerNumber);
+        } catch (IOException e) {
             try {
-                InetSocketAddress address = new InetSocketAddress(deviceAnnouncement.getAddress(), dbServerPort);
-                socket = new Socket();
-                socket.connect(address, socketTimeout.get());
-                socket.setSoTimeout(socketTimeout.get());
-                result = new Client(socket, targetPlayer, posingAsPlayerNumber);
-            } catch (IOException e) {
-                try {
-                    socket.close();
-                } catch (IOException e2) {
-                    logger.error("Problem closing socket for failed client creation attempt " + description);
-                }
-                throw e;
+                socket.close();
+            } catch (IOException e2) {
+                logger.error("Problem closing socket for failed client creation attempt " + description);
             }
-            openClients.put(targetPlayer, result);
-            useCounts.put(result, 0);
+            throw e;
+        }
+        synchronized (this) {
+            pool.open.add(result);
+            pool.users.put(result, 1);
         }
-        useCounts.put(result, useCounts.get(result) + 1);
         return result;
     }
 
     /**
      * When it is time to actually close a client, do so, and clean up the related data structures.
      *
+     * @param pool the pool to which the client belongs
      * @param client the client which has been idle for long enough to be closed
      */
-    private void closeClient(Client client) {
+    private synchronized void closeClient(ClientPool pool, Client client) {
         logger.debug("Closing client {}", client);
         client.close();
-        openClients.remove(client.targetPlayer);
-        useCounts.remove(client);
+        pool.open.remove(client);
+        pool.idle.remove(client);
+        pool.users.remove(client);
         timestamps.remove(client);
+        if (pool.open.isEmpty() && pool.permits.availablePermits() == pool.size &&
+                pools.get(client.targetPlayer) == pool) {
+            pools.remove(client.targetPlayer);  // Nobody is using it, so let a new pool pick up any change in size.
+        }
     }
 
     /**
-     * Decrements the client's use count, and makes it eligible for closing if it is no longer in use.
+     * Ends the current thread's use of a client. If this was the outermost session using it on this thread, and no
+     * other thread is sharing it, the client is returned to its pool, to be reused by another session or closed
+     * once it has been idle long enough.
      *
      * @param client the dbserver connection client which is no longer being used for a task
      */
-    private synchronized void freeClient(Client client) {
-        int current = useCounts.get(client);
-        if (current > 0) {
-            timestamps.put(client, System.currentTimeMillis());  // Mark that it was used until now.
-            useCounts.put(client, current - 1);
-            if ((current == 1) && (idleLimit.get() == 0)) {
-                closeClient(client);  // This was the last use, and we are supposed to immediately close idle clients.
-            }
-        } else {
+    private void freeClient(Client client) {
+        final Map<Client,Lease> held = leases.get();
+        final Lease lease = held.get(client);
+        if (lease == null) {
             logger.error("Ignoring attempt to free a client that is not allocated: {}", client);
+            return;
+        }
+        if (--lease.depth > 0) {
+            return;
+        }
+        held.remove(client);
+
+        final ClientPool pool = lease.pool;
+        synchronized (this) {
+            final Integer users = pool.users.get(client);
+            if (users != null && users > 1) {
+                pool.users.put(client, users - 1);  // Another session is still sharing it.
+                return;
+            }
+            pool.users.remove(client);
+            pool.permits.release();
+            if (pools.get(client.targetPlayer) != pool) {
+                client.close();  // We were stopped while it was in use.
+            } else if (idleLimit.get() == 0 || !client.isConnected()) {
+                closeClient(pool, client);  // We are not keeping idle clients, or this one is broken.
+            } else {
+                timestamps.put(client, System.currentTimeMillis());  // Mark that it was used until now.
+                pool.idle.addFirst(client);
+            }
         }
     }
 
@@ -230,12 +506,12 @@ public class ConnectionManager extends LifecycleParticipant {
         @Override
         public void deviceFound(final DeviceAnnouncement announcement) {
             // logger.info("Processing device found, number: " + announcement.getNumber() + ", name: " + announcement.getName());
-            new Thread(new Runnable() {
+            Scheduler.getInstance().execute(Scheduler.Pool.IO, "dbserver port query", new Runnable() {
                 @Override
                 public void run() {
                     requestPlayerDBServerPort(announcement);
                 }
-            }).start();
+            });
         }
 
         @Override
@@ -392,35 +668,47 @@ public class ConnectionManager extends LifecycleParticipant {
     }
 
     /**
-     * Finds a valid  player number that is currently visible but which is different from the one specified, so it can
+     * <p>Finds a valid  player number that is currently visible but which is different from the one specified, so it can
      * be used as the source player for a query being sent to the specified one. If the virtual CDJ is running on an
      * acceptable player number (which must be 1-4 to request metadata from an actual CDJ, but can be anything if we
      * are talking to rekordbox), uses that, since it will always be safe. Otherwise, tries to borrow the player number
      * of another actual CDJ on the network, but we can't do that if the player we want to impersonate has mounted
-     * a track from the player that we want to talk to.
+     * a track from the player that we want to talk to.</p>
+     *
+     * <p>When we already have other connections open to the target player, we prefer to borrow a player number
+     * they are not using, so the player sees each connection coming from a different player, but will share a
+     * number if there is no other choice.</p>
      *
      * @param targetPlayer the player to which a metadata query is being sent
+     * @param inUse the player numbers that our other open connections to the target player are posing as
      *
      * @return some other currently active player number, ideally not a real player, but sometimes we have to
      *
      * @throws IllegalStateException if there is no other player number available to use
      */
-    private int chooseAskingPlayerNumber(int targetPlayer) {
+    private int chooseAskingPlayerNumber(int targetPlayer, Set<Integer> inUse) {
         final int fakeDevice = VirtualCdj.getInstance().getDeviceNumber();
         if ((targetPlayer > 15) || (fakeDevice >= 1 && fakeDevice <= 4)) {
             return fakeDevice;
         }
 
+        int shared = -1;
         for (DeviceAnnouncement candidate : DeviceFinder.getInstance().getCurrentDevices()) {
             final int realDevice = candidate.getDeviceNumber();
             if (realDevice != targetPlayer && realDevice >= 1 && realDevice <= 4) {
                 final DeviceUpdate lastUpdate =  VirtualCdj.getInstance().getLatestStatusFor(realDevice);
                 if (lastUpdate instanceof CdjStatus &&
                         ((CdjStatus) lastUpdate).getTrackSourcePlayer() != targetPlayer) {
-                    return candidate.getDeviceNumber();
+                    if (!inUse.contains(realDevice)) {
+                        return realDevice;
+                    }
+                    shared = realDevice;
                 }
             }
         }
+        if (shared > 0) {
+            return shared;
+        }
         throw new IllegalStateException("No player number available to query player " + targetPlayer +
                 ". If such a player is present on the network, it must be using Link to play a track from " +
                 "our target player, so we can't steal its channel number.");
@@ -461,13 +749,14 @@ public class ConnectionManager extends LifecycleParticipant {
      * idle timeout, and closes them.
      */
     private synchronized void closeIdleClients() {
-        List<Client> candidates = new LinkedList<Client>(openClients.values());
-        logger.debug("Scanning for idle clients; " + candidates.size() + " candidates.");
-        for (Client client : candidates) {
-            if ((useCounts.get(client) < 1) &&
-                    ((timestamps.get(client) + idleLimit.get() * 1000) <= System.currentTimeMillis())) {
-                logger.debug("Idle time reached for unused client {}", client);
-                closeClient(client);
+        final long now = System.currentTimeMillis();
+        for (ClientPool pool : new LinkedList<ClientPool>(pools.values())) {
+            logger.debug("Scanning for idle clients; " + pool.idle.size() + " candidates.");
+            for (Client client : new LinkedList<Client>(pool.idle)) {
+                if ((timestamps.get(client) + idleLimit.get() * 1000) <= now) {
+                    logger.debug("Idle time reached for unused client {}", client);
+                    closeClient(pool, client);
+                }
             }
         }
     }
@@ -515,15 +804,17 @@ public class ConnectionManager extends LifecycleParticipant {
             running.set(false);
             DeviceFinder.getInstance().removeDeviceAnnouncementListener(announcementListener);
             dbServerPorts.clear();
-            for (Client client : openClients.values()) {
-                try {
-                    client.close();
-                } catch (Exception e) {
-                    logger.warn("Problem closing " + client + " when stopping", e);
+            for (ClientPool pool : pools.values()) {
+                for (Client client : pool.idle) {
+                    try {
+                        client.close();
+                    } catch (Exception e) {
+                        logger.warn("Problem closing " + client + " when stopping", e);
+                    }
                 }
             }
-            openClients.clear();
-            useCounts.clear();
+            pools.clear();  // Clients still in use get closed when their sessions end.
+            timestamps.clear();
             deliverLifecycleAnnouncement(logger, false);
         }
     }
@@ -552,8 +843,8 @@ public class ConnectionManager extends LifecycleParticipant {
     @Override
     public String toString() {
         StringBuilder sb = new StringBuilder("ConnectionManager[running:").append(isRunning());
-        sb.append(", dbServerPorts:").append(dbServerPorts).append(", openClients:").append(openClients);
-        sb.append(", useCounts:").append(useCounts).append(", timestamps:").append(timestamps);
+        sb.append(", dbServerPorts:").append(dbServerPorts).append(", pools:").append(pools);
+        sb.append(", maxConnectionsPerPlayer:").append(maxConnectionsPerPlayer.get());
         return sb.append(", idleLimit:").append(idleLimit.get()).append("]").toString();
     }
 }
@@ -5,7 +5,9 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.DataInputStream;
+import java.io.EOFException;
 import java.io.IOException;
+import java.nio.BufferUnderflowException;
 import java.nio.ByteBuffer;
 import java.nio.channels.WritableByteChannel;
 
@@ -86,6 +88,80 @@ public abstract class Field {
         return result;
     }
 
+    /**
+     * Read a field from a buffer which holds encoded messages, such as a region of a memory-mapped metadata cache
+     * file, advancing its position past the field. Binary field values are slices of the buffer rather than copies,
+     * so the buffer must not be modified while the field is in use.
+     *
+     * @param buffer a buffer whose next byte is expected to be a type tag, followed by the field value
+     *
+     * @return the field that was found in the buffer
+     *
+     * @throws IOException if the buffer does not hold a complete, valid field
+     */
+    public static Field read(ByteBuffer buffer) throws IOException {
+        try {
+            final byte tag = buffer.get();
+            final Field result;
+            switch (tag) {
+                case 0x0f:
+                    result = new NumberField(buffer.get() & 0xff, 1);
+                    break;
+
+                case 0x10:
+                    result = new NumberField(buffer.getShort() & 0xffff, 2);
+                    break;
+
+                case 0x11:
+                    result = new NumberField(buffer.getInt() & 0xffffffffL, 4);
+                    break;
+
+                case 0x14:
+                    result = new BinaryField(extractVariableField(buffer, 1));
+                    break;
+
+                case 0x26:
+                    final ByteBuffer stringBytes = extractVariableField(buffer, 2);
+                    final byte[] bufBytes = new byte[stringBytes.remaining()];
+                    stringBytes.get(bufBytes);
+                    result = new StringField(bufBytes);
+                    break;
+
+                default:
+                    throw new IOException("Unable to read a field with type tag " + tag);
+            }
+
+            logger.debug("..received> {}", result);
+            return result;
+        } catch (BufferUnderflowException e) {
+            throw new EOFException("Buffer ended in the middle of a field");
+        }
+    }
+
+    /**
+     * Slice off the full encoded form of a variable-length field whose tag has just been read from a buffer, and
+     * advance the buffer past it.
+     *
+     * @param buffer the buffer positioned just after the type tag
+     * @param unitSize how many bytes each unit of the size header represents
+     *
+     * @return a buffer holding the tag, size header, and value of the field, and nothing else
+     *
+     * @throws IOException if the buffer does not hold the entire value
+     */
+    private static ByteBuffer extractVariableField(ByteBuffer buffer, int unitSize) throws IOException {
+        final int start = buffer.position() - 1;
+        final long size = (buffer.getInt() & 0xffffffffL) * unitSize;
+        if (size > buffer.remaining()) {
+            throw new EOFException("Buffer ends before the " + size + " byte value of a field");
+        }
+        final ByteBuffer result = buffer.duplicate();
+        result.position(start);
+        result.limit(buffer.position() + (int) size);
+        buffer.position(result.limit());
+        return result.slice();
+    }
+
     /**
      * Formats the bytes that make up this field as a hex string, for use by subclasses in their {@link #toString()}
      * methods.
@@ -851,6 +851,21 @@ public class Message {
         fields = Collections.unmodifiableList(Arrays.asList(allFields));
     }
 
+    /**
+     * Something from which the fields that make up a message can be read, one at a time. This lets the same
+     * message validation logic be used whether fields are coming from a stream or a {@link MessageDecoder}.
+     */
+    interface FieldSource {
+        /**
+         * Read the next field.
+         *
+         * @return the field that was found
+         *
+         * @throws IOException if there is a problem reading the field
+         */
+        Field readField() throws IOException;
+    }
+
     /**
      * Read the next message from the stream.
      *
@@ -860,8 +875,46 @@ public class Message {
      *
      * @throws IOException if there is a problem reading the message.
      */
-    public static Message read(DataInputStream is) throws IOException {
-        final Field start = Field.read(is);
+    public static Message read(final DataInputStream is) throws IOException {
+        return read(new FieldSource() {
+            @Override
+            public Field readField() throws IOException {
+                return Field.read(is);
+            }
+        });
+    }
+
+    /**
+     * Read the next message from a buffer holding encoded messages, advancing its position past the message. Binary
+     * field values are slices of the buffer rather than copies, which makes this an efficient way to serve messages
+     * from a memory-mapped file.
+     *
+     * @param buffer a buffer positioned at the start of a message
+     *
+     * @return the message found in the buffer
+     *
+     * @throws IOException if the buffer does not hold a complete, valid message
+     */
+    public static Message read(final ByteBuffer buffer) throws IOException {
+        return read(new FieldSource() {
+            @Override
+            public Field readField() throws IOException {
+                return Field.read(buffer);
+            }
+        });
+    }
+
+    /**
+     * Read the next message from a source of fields, checking that it is properly structured.
+     *
+     * @param source supplies the fields that make up the message
+     *
+     * @return the next full message found
+     *
+     * @throws IOException if there is a problem reading the message
+     */
+    static Message read(FieldSource source) throws IOException {
+        final Field start = source.readField();
         if (!(start instanceof NumberField)) {
             throw new IOException("Did not find number field reading start of message; got: " + start);
         }
@@ -873,7 +926,7 @@ public class Message {
             ", got: " + start);
         }
 
-        final Field transaction = Field.read(is);
+        final Field transaction = source.readField();
         if (!(transaction instanceof NumberField)) {
             throw new IOException("Did not find number field reading transaction ID of message; got: " + transaction);
         }
@@ -881,7 +934,7 @@ public class Message {
             throw new IOException("Transaction number field of message must be of size 4, got: " + transaction);
         }
 
-        final Field type = Field.read(is);
+        final Field type = source.readField();
         if (!(type instanceof NumberField)) {
             throw new IOException("Did not find number field reading type of message; got: " + type);
         }
@@ -889,7 +942,7 @@ public class Message {
             throw new IOException("Type field of message must be of size 2, got: " + type);
         }
 
-        final Field argCountField = Field.read(is);
+        final Field argCountField = source.readField();
         if (!(argCountField instanceof NumberField)) {
             throw new IOException("Did not find number field reading argument count of message; got: " + argCountField);
         }
@@ -902,7 +955,7 @@ public class Message {
             argCount);
         }
 
-        final Field argTypes = Field.read(is);
+        final Field argTypes = source.readField();
         if (!(argTypes instanceof BinaryField)) {
             throw new IOException("Did not find binary field reading argument types of message, got: " + argTypes);
         }
@@ -916,7 +969,7 @@ public class Message {
                     ((NumberField) lastArg).getValue() == 0) {
                 arguments [i] = new BinaryField(new byte[0]);  // Do not attempt to read a zero-length binary field
             } else {
-                arguments[i] = Field.read(is);
+                arguments[i] = source.readField();
             }
             lastArg = arguments[i];
             if (lastArg.getArgumentTag() != argTags[i]) {
@@ -0,0 +1,301 @@
+package org.deepsymmetry.beatlink.dbserver;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.SelectableChannel;
+
+/**
+ * <p>Reads dbserver messages from a channel, buffering what arrives so that the small fields which make up most of
+ * each message can be decoded without a system call per byte, as happens when reading them through an unbuffered
+ * {@link java.io.DataInputStream}.</p>
+ *
+ * <p>The read-ahead buffer is allocated once and reused for the life of the decoder. Binary and string fields get
+ * a buffer of exactly the right size, into which any bytes already read ahead are moved, and the rest of the value
+ * is then read straight from the channel, as many reads as it takes, so large payloads like waveforms and album
+ * art are only copied once on their way into the {@link BinaryField} that holds them. The field keeps that buffer,
+ * and {@link BinaryField#getValue()} returns slices of it.</p>
+ *
+ * <p>Decoders are not thread-safe; each one belongs to a single connection, and the {@link Client} only reads from
+ * it while holding its own lock.</p>
+ *
+ * @author James Elliott
+ * @since 0.6.3
+ */
+public class MessageDecoder implements Message.FieldSource {
+
+    private static final Logger logger = LoggerFactory.getLogger(MessageDecoder.class);
+
+    /**
+     * The size of the read-ahead buffer, which is large enough to hold several complete menu item responses.
+     */
+    public static final int BUFFER_SIZE = 8192;
+
+    /**
+     * Variable-length values with more than this many bytes left to read after draining the read-ahead buffer
+     * are read directly from the channel into their own buffer; shorter ones are read ahead and copied, to
+     * avoid lots of tiny reads.
+     */
+    private static final int DIRECT_READ_THRESHOLD = BUFFER_SIZE / 2;
+
+    /**
+     * The channel from which messages are read.
+     */
+    private final ReadableByteChannel channel;
+
+    /**
+     * Holds bytes which have been read from the channel but not yet decoded, between its position and limit.
+     */
+    private final ByteBuffer buffer;
+
+    /**
+     * Create a decoder which reads from a channel. The read-ahead buffer and binary field values are allocated
+     * as direct buffers, so that the channel can fill them without copying through a temporary buffer of its own.
+     *
+     * @param channel a blocking channel connected to a dbserver, or a stream of recorded dbserver messages
+     *
+     * @throws IllegalArgumentException if the channel is in non-blocking mode
+     */
+    public MessageDecoder(ReadableByteChannel channel) {
+        this(channel, ByteBuffer.allocateDirect(BUFFER_SIZE));
+        if (channel instanceof SelectableChannel && !((SelectableChannel) channel).isBlocking()) {
+            throw new IllegalArgumentException("MessageDecoder requires a blocking channel");
+        }
+    }
+
+    /**
+     * Create a decoder which reads from a stream, such as that of a {@link java.net.Socket} which needs to honor
+     * read timeouts. Since stream reads can only fill arrays, heap buffers are used, and values are read straight
+     * into the arrays backing them.
+     *
+     * @param is the stream connected to a dbserver
+     */
+    public MessageDecoder(InputStream is) {
+        this(new StreamChannel(is), ByteBuffer.allocate(BUFFER_SIZE));
+    }
+
+    /**
+     * Set up the decoder with an empty read-ahead buffer.
+     *
+     * @param channel the channel from which messages are read
+     * @param buffer the read-ahead buffer to use
+     */
+    private MessageDecoder(ReadableByteChannel channel, ByteBuffer buffer) {
+        this.channel = channel;
+        this.buffer = buffer;
+        buffer.limit(0);
+    }
+
+    /**
+     * Read the next message from the channel, checking that it is properly structured.
+     *
+     * @return the next full message that arrives
+     *
+     * @throws IOException if there is a problem reading the message, or the channel reaches its end first
+     */
+    public Message readMessage() throws IOException {
+        return Message.read(this);
+    }
+
+    /**
+     * Read the next field from the channel, starting with the tag that identifies the type, and reading enough
+     * to collect the corresponding value.
+     *
+     * @return the field that was found
+     *
+     * @throws IOException if there is a problem reading the field, or the channel reaches its end first
+     */
+    @Override
+    public Field readField() throws IOException {
+        require(1);
+        final byte tag = buffer.get();
+        final Field result;
+        switch (tag) {
+            case 0x0f:
+                require(1);
+                result = new NumberField(buffer.get() & 0xff, 1);
+                break;
+
+            case 0x10:
+                require(2);
+                result = new NumberField(buffer.getShort() & 0xffff, 2);
+                break;
+
+            case 0x11:
+                require(4);
+                result = new NumberField(buffer.getInt() & 0xffffffffL, 4);
+                break;
+
+            case 0x14:
+                result = new BinaryField(readValue(tag, 1));
+                break;
+
+            case 0x26:
+                result = new StringField(readValue(tag, 2).array());
+                break;
+
+            default:
+                throw new IOException("Unable to read a field with type tag " + tag);
+        }
+
+        logger.debug("..received> {}", result);
+        return result;
+    }
+
+    /**
+     * Read the size and value of a variable-length field, whose tag has already been read, into a buffer which
+     * holds the full network representation of the field.
+     *
+     * @param tag the type tag that introduced the field
+     * @param unitSize how many bytes each unit of the size header represents
+     *
+     * @return a buffer, positioned at the start, holding the tag, size header, and value
+     *
+     * @throws IOException if there is a problem reading the value, or the channel reaches its end first
+     */
+    private ByteBuffer readValue(byte tag, int unitSize) throws IOException {
+        require(4);
+        final int sizeHeader = buffer.getInt();
+        final long size = (sizeHeader & 0xffffffffL) * unitSize;
+        if (size > Integer.MAX_VALUE - 5) {
+            throw new IOException("Field with type tag " + tag + " is too large to read: " + size + " bytes");
+        }
+        final ByteBuffer result;
+        if (unitSize == 1 && buffer.isDirect()) {
+            result = ByteBuffer.allocateDirect((int) size + 5);
+        } else {
+            result = ByteBuffer.allocate((int) size + 5);  // Strings are always decoded from an array.
+        }
+        result.put(tag);
+        result.putInt(sizeHeader);
+        fill(result);
+        result.flip();
+        return result;
+    }
+
+    /**
+     * Fill the remaining space in a buffer with bytes from the channel, using up anything that has already been
+     * read ahead first.
+     *
+     * @param target the buffer to be filled
+     *
+     * @throws IOException if there is a problem reading, or the channel reaches its end first
+     */
+    private void fill(ByteBuffer target) throws IOException {
+        transfer(target);
+        if (target.remaining() > DIRECT_READ_THRESHOLD) {
+            while (target.hasRemaining()) {
+                if (channel.read(target) < 0) {
+                    throw new EOFException("dbserver channel ended with " + target.remaining() + " bytes of a field unread");
+                }
+            }
+        } else if (target.hasRemaining()) {
+            require(target.remaining());
+            transfer(target);
+        }
+    }
+
+    /**
+     * Move as many read-ahead bytes as will fit into a buffer.
+     *
+     * @param target the buffer into which bytes should be moved
+     */
+    private void transfer(ByteBuffer target) {
+        final int count = Math.min(buffer.remaining(), target.remaining());
+        final int limit = buffer.limit();
+        buffer.limit(buffer.position() + count);
+        target.put(buffer);
+        buffer.limit(limit);
+    }
+
+    /**
+     * Make sure at least the specified number of bytes have been read ahead, reading from the channel as many
+     * times as necessary.
+     *
+     * @param count the number of bytes needed, which must not be larger than {@link #BUFFER_SIZE}
+     *
+     * @throws IOException if there is a problem reading, or the channel reaches its end first
+     */
+    private void require(int count) throws IOException {
+        if (buffer.remaining() >= count) {
+            return;
+        }
+        buffer.compact();
+        try {
+            while (buffer.position() < count) {
+                if (channel.read(buffer) < 0) {
+                    throw new EOFException("dbserver channel ended in the middle of a message");
+                }
+            }
+        } finally {
+            buffer.flip();
+        }
+    }
+
+    /**
+     * Close the channel from which messages are read.
+     *
+     * @throws IOException if there is a problem closing it
+     */
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    /**
+     * Adapts an input stream to the channel interface while still letting reads go straight into the arrays
+     * backing our heap buffers, which {@link java.nio.channels.Channels#newChannel(InputStream)} does not.
+     */
+    private static class StreamChannel implements ReadableByteChannel {
+
+        /**
+         * The stream being adapted.
+         */
+        private final InputStream is;
+
+        /**
+         * Whether {@link #close()} has been called.
+         */
+        private volatile boolean open = true;
+
+        StreamChannel(InputStream is) {
+            this.is = is;
+        }
+
+        @Override
+        public int read(ByteBuffer dst) throws IOException {
+            if (!dst.hasRemaining()) {
+                return 0;
+            }
+            final int count;
+            if (dst.hasArray()) {
+                count = is.read(dst.array(), dst.arrayOffset() + dst.position(), dst.remaining());
+                if (count > 0) {
+                    dst.position(dst.position() + count);
+                }
+            } else {
+                final byte[] scratch = new byte[Math.min(dst.remaining(), BUFFER_SIZE)];
+                count = is.read(scratch);
+                if (count > 0) {
+                    dst.put(scratch, 0, count);
+                }
+            }
+            return count;
+        }
+
+        @Override
+        public boolean isOpen() {
+            return open;
+        }
+
+        @Override
+        public void close() throws IOException {
+            open = false;
+            is.close();
+        }
+    }
+}
@@ -63,6 +63,20 @@ public class StringField extends Field {
         value = new String(bufBytes, 5, (size -   2), "UTF-16BE");  // Strip off trailing NUL.
     }
 
+    /**
+     * Constructor for use by a {@link MessageDecoder}, which has already gathered the full network representation
+     * of the field into an array of its own. The array is adopted rather than copied.
+     *
+     * @param bufBytes holds the type tag, size, and characters of the field, and nothing else
+     *
+     * @throws IOException if the characters cannot be decoded
+     */
+    StringField(final byte[] bufBytes) throws IOException {
+        size = bufBytes.length - 5;
+        buffer = ByteBuffer.wrap(bufBytes).asReadOnlyBuffer();
+        value = new String(bufBytes, 5, (size - 2), "UTF-16BE");  // Strip off trailing NUL.
+    }
+
     /**
      * Constructor for code.
      *
@@ -0,0 +1,131 @@
+package org.deepsymmetry.beatlink.data;
+
+import org.deepsymmetry.beatlink.CdjStatus;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that beat grids are divided into the right segments of constant tempo, and that the beats can still be
+ * found exactly once they have been packed into those segments.
+ *
+ * @author James Elliott
+ */
+public class BeatGridTest {
+
+    private static final DataReference REFERENCE = new DataReference(1, CdjStatus.TrackSourceSlot.USB_SLOT, 1);
+
+    /**
+     * Build a beat grid from the times of its beats, in four-beat bars.
+     *
+     * @param bpms the tempo of each beat, as beats per minute multiplied by 100
+     * @param times the time at which each beat occurs, in milliseconds
+     *
+     * @return the beat grid
+     */
+    private static BeatGrid grid(int[] bpms, long[] times) {
+        final int[] beatsWithinBar = new int[times.length];
+        for (int i = 0; i < times.length; i++) {
+            beatsWithinBar[i] = (i % 4) + 1;
+        }
+        return new BeatGrid(REFERENCE, beatsWithinBar, bpms, times);
+    }
+
+    /**
+     * Make sure every beat reports the time, tempo, and bar position it was built from, and is found again from
+     * its own time and from the millisecond before the next beat.
+     */
+    private static void assertBeatsIntact(BeatGrid grid, int[] bpms, long[] times) {
+        assertEquals(times.length, grid.beatCount);
+        for (int i = 0; i < times.length; i++) {
+            final int beat = i + 1;
+            assertEquals("time of beat " + beat, times[i], grid.getTimeWithinTrack(beat));
+            assertEquals("tempo of beat " + beat, bpms[i], grid.getBpm(beat));
+            assertEquals("bar position of beat " + beat, (i % 4) + 1, grid.getBeatWithinBar(beat));
+            assertEquals("beat at " + times[i], beat, grid.findBeatAtTime(times[i]));
+            if (i + 1 < times.length && times[i + 1] > times[i] + 1) {
+                assertEquals("beat before " + times[i + 1], beat, grid.findBeatAtTime(times[i + 1] - 1));
+            }
+        }
+    }
+
+    @Test
+    public void constantTempoIsOneSegment() {
+        final int[] bpms = new int[200];
+        final long[] times = new long[200];
+        for (int i = 0; i < times.length; i++) {
+            bpms[i] = 12800;
+            times[i] = 120 + (i * 60000L) / 128;  // Rounded to whole milliseconds, as players report them.
+        }
+        final BeatGrid grid = grid(bpms, times);
+        assertEquals(1, grid.getSegmentCount());
+        assertBeatsIntact(grid, bpms, times);
+        assertEquals(-1, grid.findBeatAtTime(119));
+        assertEquals(200, grid.findBeatAtTime(times[199] + 100000));
+    }
+
+    @Test
+    public void tempoChangeStartsSegment() {
+        final int[] bpms = new int[96];
+        final long[] times = new long[96];
+        long time = 0;
+        for (int i = 0; i < times.length; i++) {
+            bpms[i] = (i < 32)? 12000 : ((i < 64)? 12500 : 12000);
+            times[i] = time;
+            time += 6000000L / bpms[i];
+        }
+        final BeatGrid grid = grid(bpms, times);
+        assertEquals(3, grid.getSegmentCount());
+        assertBeatsIntact(grid, bpms, times);
+    }
+
+    @Test
+    public void residualAtLimitStaysInSegment() {
+        final int[] bpms = { 12000, 12000, 12000 };
+        final long[] times = { 0, 40000 + 32767, 80000 };
+        final BeatGrid grid = grid(bpms, times);
+        assertEquals(1, grid.getSegmentCount());
+        assertBeatsIntact(grid, bpms, times);
+    }
+
+    @Test
+    public void residualBeyondLimitStartsSegment() {
+        final int[] bpms = { 12000, 12000, 12000 };
+        final long[] times = { 0, 40000 + 32768, 80000 };
+        final BeatGrid grid = grid(bpms, times);
+        assertEquals(2, grid.getSegmentCount());
+        assertBeatsIntact(grid, bpms, times);
+    }
+
+    @Test
+    public void negativeResidualBeyondLimitStartsSegment() {
+        final int[] bpms = { 12000, 12000, 12000 };
+        final long[] times = { 0, 40000 - 32768, 80000 };
+        final BeatGrid grid = grid(bpms, times);
+        assertEquals(2, grid.getSegmentCount());
+        assertBeatsIntact(grid, bpms, times);
+    }
+
+    @Test
+    public void gapWithinConstantTempoStartsSegment() {
+        // A long stretch where the grid stops and resumes at the same tempo, which no single interval can describe.
+        final int[] bpms = new int[64];
+        final long[] times = new long[64];
+        for (int i = 0; i < times.length; i++) {
+            bpms[i] = 12000;
+            times[i] = i * 500L + ((i < 32)? 0 : 300000);
+        }
+        final BeatGrid grid = grid(bpms, times);
+        assertTrue(grid.getSegmentCount() > 1);
+        assertBeatsIntact(grid, bpms, times);
+        assertEquals(32, grid.findBeatAtTime(times[32] - 1));
+    }
+
+    @Test
+    public void emptyGridHasNoSegments() {
+        final BeatGrid grid = grid(new int[0], new long[0]);
+        assertEquals(0, grid.getSegmentCount());
+        assertEquals(-1, grid.findBeatAtTime(1000));
+    }
+}
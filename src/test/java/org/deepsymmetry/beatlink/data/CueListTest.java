@@ -0,0 +1,135 @@
+package org.deepsymmetry.beatlink.data;
+
+import org.deepsymmetry.beatlink.CdjStatus;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+/**
+ * Checks the indexed lookups of cue list entries by time and by beat. Positions are given in half-frames, 150 of
+ * which make up a second, so that they correspond to whole numbers of milliseconds.
+ *
+ * @author James Elliott
+ */
+public class CueListTest {
+
+    private static CueList.Entry memoryPoint(long position) {
+        return new CueList.Entry(position, "", 0);
+    }
+
+    private static CueList.Entry loop(long startPosition, long endPosition) {
+        return new CueList.Entry(startPosition, endPosition, "", 0);
+    }
+
+    /**
+     * Build a beat grid of constant tempo.
+     *
+     * @param firstBeat the time of the first beat, in milliseconds
+     * @param interval the number of milliseconds between beats
+     * @param beats how many beats the grid has
+     *
+     * @return the beat grid
+     */
+    private static BeatGrid grid(long firstBeat, long interval, int beats) {
+        final int[] beatsWithinBar = new int[beats];
+        final int[] bpms = new int[beats];
+        final long[] times = new long[beats];
+        for (int i = 0; i < beats; i++) {
+            beatsWithinBar[i] = (i % 4) + 1;
+            bpms[i] = (int) (6000000L / interval);
+            times[i] = firstBeat + i * interval;
+        }
+        return new BeatGrid(new DataReference(1, CdjStatus.TrackSourceSlot.USB_SLOT, 1), beatsWithinBar, bpms, times);
+    }
+
+    @Test
+    public void entryIndexAfter() {
+        final CueList cueList = new CueList(memoryPoint(300), memoryPoint(150), loop(450, 600));
+        assertEquals(0, cueList.findEntryIndexAfter(0));
+        assertEquals(0, cueList.findEntryIndexAfter(1000));  // Exactly at the first entry.
+        assertEquals(1, cueList.findEntryIndexAfter(1010));
+        assertEquals(1, cueList.findEntryIndexAfter(2000));
+        assertEquals(2, cueList.findEntryIndexAfter(2500));
+        assertEquals(2, cueList.findEntryIndexAfter(3000));
+        assertEquals(3, cueList.findEntryIndexAfter(3010));  // Past the last entry, even though inside its loop.
+        assertEquals(0, new CueList().findEntryIndexAfter(1000));
+    }
+
+    @Test
+    public void entryIndexAfterFindsFirstOfSeveralAtSamePosition() {
+        final CueList.Entry first = memoryPoint(150);
+        final CueList.Entry second = memoryPoint(150);
+        final CueList cueList = new CueList(memoryPoint(75), first, second, memoryPoint(300));
+        assertEquals(1, cueList.findEntryIndexAfter(1000));
+        assertEquals(3, cueList.findEntryIndexAfter(1010));
+    }
+
+    @Test
+    public void loopContainingExcludesEnd() {
+        final CueList.Entry loop = loop(150, 300);  // From one second up to two.
+        final CueList cueList = new CueList(memoryPoint(0), loop, memoryPoint(600));
+        assertNull(cueList.findLoopContaining(990));  // Rounds to half-frame 149.
+        assertSame(loop, cueList.findLoopContaining(1000));
+        assertSame(loop, cueList.findLoopContaining(1980));  // Rounds to half-frame 297.
+        assertNull(cueList.findLoopContaining(2000));
+        assertNull(cueList.findLoopContaining(4000));
+        assertNull(new CueList(memoryPoint(150)).findLoopContaining(1000));
+    }
+
+    @Test
+    public void loopContainingPrefersMostRecentStart() {
+        final CueList.Entry outer = loop(150, 900);
+        final CueList.Entry inner = loop(300, 450);
+        final CueList.Entry later = loop(600, 750);
+        final CueList cueList = new CueList(outer, later, inner);
+        assertSame(outer, cueList.findLoopContaining(1500));
+        assertSame(inner, cueList.findLoopContaining(2000));
+        assertSame(outer, cueList.findLoopContaining(3000));  // The inner loop has just ended.
+        assertSame(later, cueList.findLoopContaining(4000));
+        assertSame(outer, cueList.findLoopContaining(5500));  // Must look back past both shorter loops.
+        assertNull(cueList.findLoopContaining(6000));
+    }
+
+    @Test
+    public void loopsOverlapping() {
+        final CueList.Entry first = loop(150, 300);
+        final CueList.Entry second = loop(600, 750);
+        final CueList cueList = new CueList(first, memoryPoint(450), second);
+        assertEquals(Arrays.asList(first, second), cueList.findLoopsOverlapping(0, 6000));
+        assertEquals(Collections.singletonList(second), cueList.findLoopsOverlapping(2500, 4000));
+        assertEquals(Collections.<CueList.Entry>emptyList(), cueList.findLoopsOverlapping(2500, 3500));
+    }
+
+    @Test
+    public void entryNearBeat() {
+        final CueList.Entry early = memoryPoint(150);  // One second in, the third beat.
+        final CueList.Entry late = memoryPoint(600);   // Four seconds in, the ninth beat.
+        final CueList cueList = new CueList(late, early);
+        final BeatGrid grid = grid(0, 500, 32);
+        assertSame(early, cueList.findEntryNearBeat(grid, 3, 0));
+        assertNull(cueList.findEntryNearBeat(grid, 4, 0));
+        assertSame(early, cueList.findEntryNearBeat(grid, 4, 1));
+        assertSame(early, cueList.findEntryNearBeat(grid, 1, 2));
+        assertNull(cueList.findEntryNearBeat(grid, 6, 2));
+        assertSame(late, cueList.findEntryNearBeat(grid, 7, 2));
+        assertSame(early, cueList.findEntryNearBeat(grid, 6, 3));  // Both in range, the earliest wins.
+        assertNull(cueList.findEntryNearBeat(grid, 20, 4));
+    }
+
+    @Test
+    public void entryNearBeatFollowsBeatGrid() {
+        final CueList.Entry cue = memoryPoint(150);
+        final CueList cueList = new CueList(cue);
+        final BeatGrid grid = grid(0, 500, 32);
+        final BeatGrid shifted = grid(250, 500, 32);  // One second in is now during the second beat.
+        assertSame(cue, cueList.findEntryNearBeat(grid, 3, 0));
+        assertSame(cue, cueList.findEntryNearBeat(shifted, 2, 0));
+        assertNull(cueList.findEntryNearBeat(shifted, 3, 0));
+        assertSame(cue, cueList.findEntryNearBeat(grid, 3, 0));
+    }
+}